@@ -1,18 +1,25 @@
 package com.alerts;
 
-import java.util.Objects;
-
 /**
  * Represents an alert triggered for a patient based on vital signs monitoring.
  * Contains information about the patient, the vital sign reading that triggered
  * the alert, and the time the alert was generated.
+ * <p>
+ * Rules create their alerts with {@link #formatted}, keeping the values and
+ * thresholds that explain the alert as structured fields. The description is
+ * only rendered from them when it is first asked for, so alerts dropped as
+ * duplicates never pay for formatting.
  */
 public class Alert implements IAlert {
     private final int patientId;
     private final PatientRecord vitals;
     private final long timestamp;
     private final String alertType;
-    private final String description;
+    // a format string and its arguments, or just the description when args is null
+    private final String descriptionFormat;
+    private final Object[] descriptionArgs;
+    // rendered on first use, a race only renders it twice
+    private String description;
 
     /**
      * Creates a new alert for a specific patient
@@ -42,7 +49,50 @@ public class Alert implements IAlert {
         this.vitals = vitals;
         this.timestamp = timestamp;
         this.alertType = alertType.trim();
-        this.description = description.trim();
+        this.descriptionFormat = description.trim();
+        this.descriptionArgs = null;
+        this.description = this.descriptionFormat;
+    }
+
+    private Alert(int patientId, PatientRecord vitals, long timestamp, String alertType,
+            String descriptionFormat, Object[] descriptionArgs) {
+        if (vitals == null) {
+            throw new IllegalArgumentException("Vitals cannot be null");
+        }
+        if (alertType == null || alertType.trim().isEmpty()) {
+            throw new IllegalArgumentException("Alert type cannot be null or empty");
+        }
+        if (descriptionFormat == null || descriptionFormat.trim().isEmpty()) {
+            throw new IllegalArgumentException("Description cannot be null or empty");
+        }
+        if (timestamp <= 0) {
+            throw new IllegalArgumentException("Timestamp must be positive");
+        }
+
+        this.patientId = patientId;
+        this.vitals = vitals;
+        this.timestamp = timestamp;
+        this.alertType = alertType.trim();
+        this.descriptionFormat = descriptionFormat;
+        this.descriptionArgs = descriptionArgs;
+    }
+
+    /**
+     * Creates an alert whose description is rendered with
+     * {@link String#format} when it is first asked for
+     *
+     * @param patientId         the ID of the patient
+     * @param vitals            the vital measurements that triggered the alert
+     * @param timestamp         the time when the alert was generated (milliseconds since epoch)
+     * @param alertType         the type of alert, which names the rule that fired
+     * @param descriptionFormat the description as a format string
+     * @param descriptionArgs   the values and thresholds the description shows
+     * @return the alert
+     * @throws IllegalArgumentException if any required field is null or invalid
+     */
+    public static Alert formatted(int patientId, PatientRecord vitals, long timestamp, String alertType,
+            String descriptionFormat, Object... descriptionArgs) {
+        return new Alert(patientId, vitals, timestamp, alertType, descriptionFormat, descriptionArgs);
     }
 
     @Override
@@ -67,7 +117,22 @@ public class Alert implements IAlert {
 
     @Override
     public String getDescription() {
-        return this.description;
+        String rendered = description;
+        if (rendered == null) {
+            rendered = String.format(descriptionFormat, descriptionArgs).trim();
+            description = rendered;
+        }
+        return rendered;
+    }
+
+    /**
+     * Returns the values and thresholds the description shows, in the order
+     * of the format string, without rendering it.
+     *
+     * @return a copy of the arguments, empty for an alert created with a plain description
+     */
+    public Object[] getDescriptionArgs() {
+        return descriptionArgs == null ? new Object[0] : descriptionArgs.clone();
     }
 
     /**
@@ -88,7 +153,8 @@ public class Alert implements IAlert {
      */
     @Override
     public int hashCode() {
-        return Objects.hash(patientId, alertType, timestamp);
+        int result = 31 * patientId + alertType.hashCode();
+        return 31 * result + Long.hashCode(timestamp);
     }
 
     @Override
@@ -96,7 +162,7 @@ public class Alert implements IAlert {
         return "Alert{" +
                 "patientId=" + patientId +
                 ", type='" + alertType + '\'' +
-                ", description='" + description + '\'' +
+                ", description='" + getDescription() + '\'' +
                 ", timestamp=" + timestamp +
                 ", vitals=" + vitals +
                 '}';
@@ -1,9 +1,17 @@
 package com.alerts;
 
 import java.util.ArrayList;
-import java.util.HashMap;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Comparator;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
 
 import com.alerts.factory.AlertFactory;
 import com.alerts.factory.BloodPressureAlertFactory;
@@ -17,44 +25,103 @@ import com.data_management.DataStorage;
 import com.data_management.Patient;
 import com.data_management.PatientRecord;
 
+/**
+ * Checks patients' records against the alert factories and strategies.
+ * <p>
+ * Each evaluation only looks at the records a patient got since the last one:
+ * a cursor per patient remembers how many records were seen. Every new record
+ * is checked, but a watermark per patient and vital holds the newest timestamp
+ * added to the vital's window, and a record that arrives older than that is
+ * checked against the thresholds only, without a history, so the window stays
+ * in timestamp order.
+ * <p>
+ * Each strategy declares the record types it checks, and a record only
+ * reaches the factory and strategies of its type, looked up by type id. The
+ * {@link VitalWindow} handed to the strategies only keeps the last
+ * {@value #HISTORY_WINDOW_MS} ms of each vital, which is the longest window a
+ * strategy looks back, and at least the last {@value #MIN_HISTORY} readings
+ * for trends. Vitals no strategy checks, like ECG, get no window at all.
+ * <p>
+ * {@link #evaluateAll(Collection)} evaluates many patients in parallel on a
+ * pool, the common fork-join pool unless another one is given. The same
+ * patient can still be evaluated by two threads at once, for instance by an
+ * {@link AlertScheduler} task and a call to evaluateAll, so an evaluation
+ * holds the lock of its patient's state; evaluations of different patients
+ * never wait for each other.
+ */
 public class AlertGenerator {
+    /** How far back the history of a vital goes, the longest strategy window. */
+    public static final long HISTORY_WINDOW_MS = 10 * 60 * 1000;
+    /** Records kept in a history regardless of their age, for the trend checks. */
+    public static final int MIN_HISTORY = 3;
+    // tasks per pool thread, so threads that finish early can take over work
+    private static final int TASKS_PER_THREAD = 4;
+    private static final AlertStrategy[] NO_STRATEGIES = new AlertStrategy[0];
+
     private DataStorage dataStorage;
     private AlertManager alertManager;
-    private Map<String, AlertFactory> alertFactories;
-    private List<AlertStrategy> alertStrategies;
+    // the factory of each record type id, null where there is none
+    private AlertFactory[] alertFactories;
+    // the strategies of each record type id
+    private AlertStrategy[][] strategiesByType;
     
-    private Map<String, Map<Integer, List<PatientRecord>>> vitalHistories;
+    private Map<Integer, PatientState> patientStates;
+    private ExecutorService pool;
     
     public AlertGenerator(DataStorage dataStorage, AlertManager alertManager) {
+        this(dataStorage, alertManager, ForkJoinPool.commonPool());
+    }
+
+    /**
+     * Creates a generator that evaluates patients on the given pool.
+     * @param dataStorage the storage the patients are in
+     * @param alertManager where alerts go
+     * @param pool runs {@link #evaluateAll(Collection)}, it is not shut down by this generator
+     */
+    public AlertGenerator(DataStorage dataStorage, AlertManager alertManager, ExecutorService pool) {
         this.dataStorage = dataStorage;
         this.alertManager = alertManager;
-        this.vitalHistories = new HashMap<>();
+        this.pool = pool;
+        this.patientStates = new ConcurrentHashMap<>();
         initializeFactories();
         initializeStrategies();
     }
     
     private void initializeFactories() {
-        alertFactories = new HashMap<>();
+        alertFactories = new AlertFactory[RecordTypes.count()];
         
         BloodPressureAlertFactory bpFactory = new BloodPressureAlertFactory();
-        alertFactories.put("SystolicPressure", bpFactory);
-        alertFactories.put("DiastolicPressure", bpFactory);
+        alertFactories[RecordTypes.SYSTOLIC_PRESSURE] = bpFactory;
+        alertFactories[RecordTypes.DIASTOLIC_PRESSURE] = bpFactory;
         BloodOxygenAlertFactory boFactory = new BloodOxygenAlertFactory();
-        alertFactories.put("BloodSaturation", boFactory);
-        alertFactories.put("Saturation", boFactory);
+        alertFactories[RecordTypes.BLOOD_SATURATION] = boFactory;
+        alertFactories[RecordTypes.SATURATION] = boFactory;
         ECGAlertFactory ecgFactory = new ECGAlertFactory();
-        alertFactories.put("ECG", ecgFactory);
+        alertFactories[RecordTypes.ECG] = ecgFactory;
     }
     
     private void initializeStrategies() {
-        alertStrategies = new ArrayList<>();
+        List<AlertStrategy> alertStrategies = new ArrayList<>();
         alertStrategies.add(new BloodPressureStrategy());
         alertStrategies.add(new HeartRateStrategy());
         alertStrategies.add(new OxygenSaturationStrategy());
+
+        strategiesByType = new AlertStrategy[RecordTypes.count()][];
+        Arrays.fill(strategiesByType, NO_STRATEGIES);
+        for (AlertStrategy strategy : alertStrategies) {
+            for (int typeId : strategy.getRecordTypeIds()) {
+                AlertStrategy[] current = strategiesByType[typeId];
+                AlertStrategy[] updated = Arrays.copyOf(current, current.length + 1);
+                updated[current.length] = strategy;
+                strategiesByType[typeId] = updated;
+            }
+        }
     }
     
     /**
-     * Analyzes patient data and triggers alerts using appropriate strategies.
+     * Analyzes the patient's new data and triggers alerts using appropriate strategies.
+     * Records seen by an earlier call are not evaluated again. A record whose
+     * evaluation fails is reported and the patient's later records are still evaluated.
      * @param patient the patient to evaluate
      */
     public void evaluateData(Patient patient) {
@@ -63,41 +130,88 @@ public class AlertGenerator {
         }
 
         int patientId = patient.getPatientId();
-        List<PatientRecord> records = patient.getAllRecords();
-        
-        records.sort((r1, r2) -> Long.compare(r1.getTimestamp(), r2.getTimestamp()));
-        
-        for (PatientRecord record : records) {
-            updateHistory(patientId, record);
-            processRecord(patientId, record);
+        PatientState state = patientStates.compute(patientId,
+            (id, current) -> current != null && current.patient == patient ? current : new PatientState(patient));
+        // the cursor and windows must not be moved by two evaluations at once
+        synchronized (state) {
+            List<PatientRecord> records = patient.getRecordsFrom(state.cursor);
+            state.cursor += records.size();
+
+            records.sort(Comparator.comparingLong(PatientRecord::getTimestamp));
+
+            for (PatientRecord record : records) {
+                int typeId = RecordTypes.idOf(record.getRecordType());
+                long timestamp = record.getTimestamp();
+                double value = record.getMeasurementValue();
+                AlertStrategy[] strategies = typeId < strategiesByType.length ? strategiesByType[typeId] : NO_STRATEGIES;
+                VitalWindow window = null;
+                // a late reading can't go last in the window, it gets no history
+                if (state.advance(typeId, timestamp) && strategies.length > 0) {
+                    window = state.window(typeId);
+                    window.add(timestamp, value);
+                }
+                try {
+                    processRecord(patientId, typeId, timestamp, value, strategies, window);
+                } catch (RuntimeException e) {
+                    // the cursor is already past this record, the rest of the batch must still be checked
+                    System.err.println("Error evaluating " + record.getRecordType() + " reading of patient "
+                        + patientId + " at " + timestamp + ": " + e.getMessage());
+                }
+            }
         }
     }
 
-    private void updateHistory(int patientId, PatientRecord record) {
-        String vitalType = record.getRecordType();
-        vitalHistories.computeIfAbsent(vitalType, k -> new HashMap<>());
-        vitalHistories.get(vitalType).computeIfAbsent(patientId, k -> new ArrayList<>());
-        vitalHistories.get(vitalType).get(patientId).add(record);
+    /**
+     * Evaluates the new data of many patients in parallel and returns when all are done.
+     * A patient whose evaluation fails is reported and the others go on.
+     * @param patients the patients to evaluate
+     */
+    public void evaluateAll(Collection<Patient> patients) {
+        List<Patient> list = new ArrayList<>(patients);
+        if (list.isEmpty()) {
+            return;
+        }
+        int threads = pool instanceof ForkJoinPool ? ((ForkJoinPool) pool).getParallelism()
+            : Runtime.getRuntime().availableProcessors();
+        int chunkSize = Math.max(1, (list.size() + threads * TASKS_PER_THREAD - 1) / (threads * TASKS_PER_THREAD));
+        List<Callable<Void>> tasks = new ArrayList<>();
+        for (int from = 0; from < list.size(); from += chunkSize) {
+            List<Patient> chunk = list.subList(from, Math.min(list.size(), from + chunkSize));
+            tasks.add(() -> {
+                for (Patient patient : chunk) {
+                    try {
+                        evaluateData(patient);
+                    } catch (RuntimeException e) {
+                        System.err.println("Error evaluating patient " + patient.getPatientId() + ": " + e.getMessage());
+                    }
+                }
+                return null;
+            });
+        }
+        try {
+            for (Future<Void> future : pool.invokeAll(tasks)) {
+                future.get();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (ExecutionException e) {
+            throw new IllegalStateException("Alert evaluation failed", e.getCause());
+        }
     }
 
-    private void processRecord(int patientId, PatientRecord record) {
-        String vitalType = record.getRecordType();
-        long timestamp = record.getTimestamp();
-
-        AlertFactory factory = alertFactories.get(vitalType);
+    // runs the numeric rules, nothing is allocated unless an alert fires
+    private void processRecord(int patientId, int typeId, long timestamp, double value,
+            AlertStrategy[] strategies, VitalWindow history) {
+        AlertFactory factory = typeId < alertFactories.length ? alertFactories[typeId] : null;
         if (factory != null) {
-            Alert alert = factory.createAlert(patientId, new com.alerts.PatientRecord(vitalType, String.valueOf(record.getMeasurementValue())), timestamp);
+            Alert alert = factory.evaluate(patientId, typeId, timestamp, value);
             if (alert != null) {
                 alertManager.handleAlert(alert);
             }
         }
 
-        List<PatientRecord> history = vitalHistories.getOrDefault(vitalType, new HashMap<>())
-                .getOrDefault(patientId, new ArrayList<>());
-        for (AlertStrategy strategy : alertStrategies) {
-            Alert alert = strategy.checkAlert(patientId, 
-                new com.alerts.PatientRecord(vitalType, String.valueOf(record.getMeasurementValue())), 
-                history);
+        for (AlertStrategy strategy : strategies) {
+            Alert alert = strategy.evaluate(patientId, typeId, timestamp, value, history);
             if (alert != null) {
                 alertManager.handleAlert(alert);
             }
@@ -107,4 +221,52 @@ public class AlertGenerator {
     public AlertManager getAlertManager() {
         return alertManager;
     }
+
+    /**
+     * What was already evaluated of one patient. A patient whose records were
+     * cleared is a new {@link Patient} object and starts over.
+     */
+    private static class PatientState {
+        final Patient patient;
+        // number of the patient's records already fetched
+        int cursor;
+        // the newest timestamp added to the window of each record type id
+        long[] watermarks = new long[0];
+        // the window of each record type id a strategy checks, created on the first reading
+        VitalWindow[] windows = new VitalWindow[0];
+
+        PatientState(Patient patient) {
+            this.patient = patient;
+        }
+
+        /**
+         * Moves the watermark of a vital to the given time.
+         * @return false if the time is before the watermark, a reading taken
+         *         at the same time still keeps the window in order
+         */
+        boolean advance(int typeId, long timestamp) {
+            if (typeId >= watermarks.length) {
+                int oldLength = watermarks.length;
+                watermarks = Arrays.copyOf(watermarks, RecordTypes.count());
+                Arrays.fill(watermarks, oldLength, watermarks.length, Long.MIN_VALUE);
+            }
+            if (timestamp < watermarks[typeId]) {
+                return false;
+            }
+            watermarks[typeId] = timestamp;
+            return true;
+        }
+
+        VitalWindow window(int typeId) {
+            if (typeId >= windows.length) {
+                windows = Arrays.copyOf(windows, RecordTypes.count());
+            }
+            VitalWindow window = windows[typeId];
+            if (window == null) {
+                window = new VitalWindow(HISTORY_WINDOW_MS, MIN_HISTORY);
+                windows[typeId] = window;
+            }
+            return window;
+        }
+    }
 }
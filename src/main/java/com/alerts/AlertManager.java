@@ -1,19 +1,94 @@
 package com.alerts;
 
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.LongSupplier;
 
 /**
  * Manages alerts in a thread-safe way.
+ * Alerts can be handed in from many threads at once without a shared lock;
+ * listeners are called on the thread that handed in the alert, so they may
+ * be called concurrently.
+ * <p>
+ * Alerts are only remembered for a while, to drop duplicates: they go into
+ * the current generation, which becomes the previous one after the horizon
+ * and is forgotten after another. An alert is kept for between one and two
+ * horizons after it first came in, and memory follows the recent alert rate
+ * instead of growing for as long as the manager runs. A rotation happening at
+ * the very moment two threads hand in the same alert can let both through;
+ * the alert generator never does that, as a patient is only evaluated by one
+ * thread at a time.
  */
 public class AlertManager {
-    private final Set<Alert> alerts;
+    /** How long alerts are remembered by default, in milliseconds. */
+    public static final long DEFAULT_DEDUP_HORIZON_MS = 60 * 60 * 1000;
+
     private final List<AlertListener> listeners;
-    private final Object lock = new Object();
+    private final long horizonMs;
+    private final LongSupplier clock;
+    private final AtomicReference<Generations> generations;
 
     public AlertManager() {
-        this.alerts = Collections.synchronizedSet(new HashSet<>());
+        this(DEFAULT_DEDUP_HORIZON_MS);
+    }
+
+    /**
+     * Creates a manager that remembers alerts for the given time.
+     * @param horizonMs how long an alert is at least remembered, in milliseconds
+     */
+    public AlertManager(long horizonMs) {
+        this(horizonMs, System::currentTimeMillis);
+    }
+
+    /**
+     * Creates a manager that remembers alerts for the given time, as told by the given clock.
+     * @param horizonMs how long an alert is at least remembered, in milliseconds
+     * @param clock the current time in milliseconds
+     */
+    public AlertManager(long horizonMs, LongSupplier clock) {
+        if (horizonMs <= 0) {
+            throw new IllegalArgumentException("Dedup horizon must be positive");
+        }
         this.listeners = new CopyOnWriteArrayList<>();
+        this.horizonMs = horizonMs;
+        this.clock = clock;
+        this.generations = new AtomicReference<>(new Generations(Collections.emptySet(), clock.getAsLong()));
+    }
+
+    /**
+     * The alerts remembered, the current generation collects new ones
+     * since the start time.
+     */
+    private static final class Generations {
+        final Set<Alert> current = ConcurrentHashMap.newKeySet();
+        final Set<Alert> previous;
+        final long start;
+
+        Generations(Set<Alert> previous, long start) {
+            this.previous = previous;
+            this.start = start;
+        }
+    }
+
+    // rotates the generations the clock has moved past, and returns the ones in use
+    private Generations generations() {
+        long now = clock.getAsLong();
+        Generations current = generations.get();
+        while (now - current.start >= horizonMs) {
+            Generations next = now - current.start >= 2 * horizonMs
+                ? new Generations(Collections.emptySet(), now)
+                : new Generations(current.current, current.start + horizonMs);
+            // whoever loses the race uses the winner's generations
+            generations.compareAndSet(current, next);
+            current = generations.get();
+        }
+        return current;
+    }
+
+    public long getDedupHorizonMs() {
+        return horizonMs;
     }
 
     /**
@@ -37,10 +112,10 @@ public class AlertManager {
             throw new IllegalArgumentException("Alert cannot be null");
         }
 
-        synchronized (lock) {
-            if (alerts.add(alert)) {
-                notifyListeners(alert);
-            }
+        // only the thread that added the alert notifies, outside of any lock
+        Generations current = generations();
+        if (!current.previous.contains(alert) && current.current.add(alert)) {
+            notifyListeners(alert);
         }
     }
 
@@ -61,39 +136,36 @@ public class AlertManager {
     }
 
     /**
-     * Returns all alerts.
+     * Returns the alerts still remembered.
      * @return a list of alerts
      */
     public List<Alert> getAllAlerts() {
-        synchronized (lock) {
-            return new ArrayList<>(alerts);
-        }
+        Generations current = generations();
+        List<Alert> all = new ArrayList<>(current.previous);
+        all.addAll(current.current);
+        return all;
     }
 
     /**
-     * Returns alerts for a specific patient.
+     * Returns the alerts still remembered for a specific patient.
      * @param patientId the patient’s ID
      * @return a list of alerts for that patient
      */
     public List<Alert> getAlertsForPatient(int patientId) {
-        synchronized (lock) {
-            List<Alert> patientAlerts = new ArrayList<>();
-            for (Alert alert : alerts) {
-                if (alert.getPatientId() == patientId) {
-                    patientAlerts.add(alert);
-                }
+        List<Alert> patientAlerts = new ArrayList<>();
+        for (Alert alert : getAllAlerts()) {
+            if (alert.getPatientId() == patientId) {
+                patientAlerts.add(alert);
             }
-            return patientAlerts;
         }
+        return patientAlerts;
     }
 
     /**
      * Clears all alerts.
      */
     public void clearAlerts() {
-        synchronized (lock) {
-            alerts.clear();
-        }
+        generations.set(new Generations(Collections.emptySet(), clock.getAsLong()));
     }
 
     /**
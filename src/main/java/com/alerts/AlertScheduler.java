@@ -0,0 +1,165 @@
+package com.alerts;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+import com.data_management.DataStorage;
+import com.data_management.Patient;
+import com.data_management.PatientDataListener;
+
+/**
+ * Evaluates a patient's alerts as soon as the patient gets new data, instead
+ * of polling every patient on a timer.
+ * <p>
+ * Each patient moves through idle, scheduled and running. New data schedules
+ * an evaluation only when the patient is idle; while one is scheduled more data
+ * just joins it, and data that arrives while it runs schedules exactly one more
+ * afterwards. A burst of readings therefore costs one or two evaluations, and
+ * a patient is never evaluated by two threads at once.
+ */
+public class AlertScheduler implements PatientDataListener {
+    private static final int IDLE = 0;
+    private static final int SCHEDULED = 1;
+    private static final int RUNNING = 2;
+    // running, and data arrived that the running evaluation may have missed
+    private static final int RUNNING_DIRTY = 3;
+
+    private final DataStorage dataStorage;
+    private final AlertGenerator alertGenerator;
+    private final Executor executor;
+    private final Map<Integer, PatientTask> tasks = new ConcurrentHashMap<>();
+    private final LongAdder notifications = new LongAdder();
+    private final LongAdder evaluations = new LongAdder();
+
+    /**
+     * Creates a scheduler, call {@link #start()} to have it listen.
+     *
+     * @param dataStorage    where the data arrives
+     * @param alertGenerator evaluates the patients
+     * @param executor       runs the evaluations
+     */
+    public AlertScheduler(DataStorage dataStorage, AlertGenerator alertGenerator, Executor executor) {
+        this.dataStorage = dataStorage;
+        this.alertGenerator = alertGenerator;
+        this.executor = executor;
+    }
+
+    /**
+     * Starts evaluating patients as their data arrives.
+     */
+    public void start() {
+        dataStorage.addListener(this);
+    }
+
+    /**
+     * Stops listening, evaluations already scheduled still run.
+     */
+    public void stop() {
+        dataStorage.removeListener(this);
+    }
+
+    @Override
+    public void dataAdded(Patient patient) {
+        notifications.increment();
+        PatientTask task = tasks.get(patient.getPatientId());
+        if (task == null || task.patient != patient) {
+            // a patient whose records were cleared is a new object
+            task = tasks.compute(patient.getPatientId(),
+                (id, current) -> current != null && current.patient == patient ? current : new PatientTask(patient));
+        }
+        task.request();
+    }
+
+    /**
+     * Returns the number of times new data was reported.
+     */
+    public long getNotifications() {
+        return notifications.sum();
+    }
+
+    /**
+     * Returns the number of evaluations run, fewer than the notifications when bursts were coalesced.
+     */
+    public long getEvaluations() {
+        return evaluations.sum();
+    }
+
+    /**
+     * Returns whether no evaluation is scheduled or running.
+     */
+    public boolean isIdle() {
+        for (PatientTask task : tasks.values()) {
+            if (task.state.get() != IDLE) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Returns a one line summary of the notifications and evaluations so far.
+     */
+    public String report() {
+        long requested = getNotifications();
+        long run = getEvaluations();
+        return "notifications " + requested + ", evaluations " + run + ", coalesced " + Math.max(0, requested - run);
+    }
+
+    /**
+     * The evaluation state of one patient.
+     */
+    private final class PatientTask implements Runnable {
+        final Patient patient;
+        final AtomicInteger state = new AtomicInteger(IDLE);
+
+        PatientTask(Patient patient) {
+            this.patient = patient;
+        }
+
+        void request() {
+            while (true) {
+                int current = state.get();
+                if (current == SCHEDULED || current == RUNNING_DIRTY) {
+                    return;
+                }
+                if (current == IDLE && state.compareAndSet(IDLE, SCHEDULED)) {
+                    submit();
+                    return;
+                }
+                if (current == RUNNING && state.compareAndSet(RUNNING, RUNNING_DIRTY)) {
+                    return;
+                }
+            }
+        }
+
+        private void submit() {
+            try {
+                executor.execute(this);
+            } catch (RejectedExecutionException e) {
+                state.set(IDLE);
+                System.err.println("Could not schedule alert evaluation of patient " + patient.getPatientId()
+                    + ": " + e.getMessage());
+            }
+        }
+
+        @Override
+        public void run() {
+            state.set(RUNNING);
+            try {
+                alertGenerator.evaluateData(patient);
+            } catch (RuntimeException e) {
+                System.err.println("Error evaluating patient " + patient.getPatientId() + ": " + e.getMessage());
+            }
+            evaluations.increment();
+            if (!state.compareAndSet(RUNNING, IDLE)) {
+                // more data came in while running, go again behind the other patients
+                state.set(SCHEDULED);
+                submit();
+            }
+        }
+    }
+}
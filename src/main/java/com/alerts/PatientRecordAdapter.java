@@ -25,4 +25,15 @@ public class PatientRecordAdapter {
     public static com.alerts.PatientRecord createAlertRecord(String recordType, double value) {
         return new com.alerts.PatientRecord(recordType, String.valueOf(value));
     }
-} 
\ No newline at end of file
+
+    /**
+     * this creates an alert system PatientRecord for a reading that fired an alert
+     * 
+     * @param typeId The record type id, see {@link RecordTypes}
+     * @param value The measurement value
+     * @return A new alert system PatientRecord
+     */
+    public static com.alerts.PatientRecord createAlertRecord(int typeId, double value) {
+        return createAlertRecord(RecordTypes.nameOf(typeId), value);
+    }
+}
@@ -0,0 +1,74 @@
+package com.alerts;
+
+import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Gives every record type name a small int id, so rules can compare and index
+ * record types without comparing strings. The types the alert rules know about
+ * have constants; any other name gets the next free id the first time it is
+ * looked up, and keeps it for the life of the JVM.
+ */
+public final class RecordTypes {
+    private static final Map<String, Integer> ids = new ConcurrentHashMap<>();
+    // names by id, replaced as a whole when a type is added
+    private static volatile String[] names = new String[0];
+
+    public static final int SYSTOLIC_PRESSURE = idOf("SystolicPressure");
+    public static final int DIASTOLIC_PRESSURE = idOf("DiastolicPressure");
+    public static final int SATURATION = idOf("Saturation");
+    public static final int BLOOD_SATURATION = idOf("BloodSaturation");
+    public static final int HEART_RATE = idOf("HeartRate");
+    public static final int ECG = idOf("ECG");
+
+    private RecordTypes() {
+    }
+
+    /**
+     * Returns the id of a record type, registering it if it is new.
+     *
+     * @param name the record type, like "HeartRate"
+     * @return the id, from 0 up to {@link #count()}
+     */
+    public static int idOf(String name) {
+        if (name == null) {
+            throw new IllegalArgumentException("Record type cannot be null");
+        }
+        Integer id = ids.get(name);
+        return id != null ? id : register(name);
+    }
+
+    private static synchronized int register(String name) {
+        Integer id = ids.get(name);
+        if (id != null) {
+            return id;
+        }
+        String[] current = names;
+        String[] updated = Arrays.copyOf(current, current.length + 1);
+        updated[current.length] = name;
+        names = updated;
+        ids.put(name, current.length);
+        return current.length;
+    }
+
+    /**
+     * Returns the name of a record type id.
+     *
+     * @throws IllegalArgumentException if no type has the id
+     */
+    public static String nameOf(int id) {
+        String[] current = names;
+        if (id < 0 || id >= current.length) {
+            throw new IllegalArgumentException("Unknown record type id: " + id);
+        }
+        return current[id];
+    }
+
+    /**
+     * Returns the number of record types registered so far.
+     */
+    public static int count() {
+        return names.length;
+    }
+}
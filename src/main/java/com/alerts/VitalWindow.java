@@ -0,0 +1,269 @@
+package com.alerts;
+
+import java.util.List;
+
+/**
+ * The recent readings of one vital of one patient, as timestamp and value
+ * pairs in a ring buffer, oldest first.
+ * <p>
+ * Adding a reading evicts the readings that are more than the span older than
+ * it, but always keeps the last few for trend checks. The buffer only grows
+ * when the readings within the span don't fit, so once a vital's rate is
+ * steady adding a reading allocates nothing. Readings have to be added in
+ * timestamp order for the lookups by time to work.
+ * <p>
+ * The window also keeps two monotonic deques, the readings that are the
+ * largest and the smallest of everything after them, so
+ * {@link #maxIndexFrom(long)} and {@link #minIndexFrom(long)} find the extremes
+ * of the last few minutes without scanning the readings. Keeping them costs
+ * amortized O(1) per reading.
+ */
+public class VitalWindow {
+    private static final int INITIAL_CAPACITY = 16;
+
+    private final long span;
+    private final int minSize;
+    private long[] timestamps;
+    private double[] values;
+    // index of the oldest reading in the arrays
+    private int head;
+    private int size;
+    // sequence number of the oldest reading, counting every reading ever added
+    private long firstSequence;
+    private final MonotonicDeque maxima = new MonotonicDeque(true);
+    private final MonotonicDeque minima = new MonotonicDeque(false);
+
+    /**
+     * Creates an empty window.
+     *
+     * @param span    how far back from the newest reading the window goes, in milliseconds
+     * @param minSize readings kept regardless of their age
+     */
+    public VitalWindow(long span, int minSize) {
+        if (span < 0 || minSize < 0) {
+            throw new IllegalArgumentException("Span and minimum size must not be negative");
+        }
+        this.span = span;
+        this.minSize = minSize;
+        this.timestamps = new long[INITIAL_CAPACITY];
+        this.values = new double[INITIAL_CAPACITY];
+    }
+
+    /**
+     * Creates a window holding all of the given records, for callers that
+     * still keep their history as a list.
+     *
+     * @param records readings of one vital, oldest first
+     * @return a window that never evicts
+     */
+    public static VitalWindow of(List<com.data_management.PatientRecord> records) {
+        VitalWindow window = new VitalWindow(Long.MAX_VALUE, Integer.MAX_VALUE);
+        for (com.data_management.PatientRecord record : records) {
+            window.add(record.getTimestamp(), record.getMeasurementValue());
+        }
+        return window;
+    }
+
+    /**
+     * Adds the newest reading and evicts the ones that fell out of the window.
+     */
+    public void add(long timestamp, double value) {
+        if (size == timestamps.length) {
+            grow();
+        }
+        int tail = (head + size) & (timestamps.length - 1);
+        timestamps[tail] = timestamp;
+        values[tail] = value;
+        size++;
+        long sequence = firstSequence + size - 1;
+        maxima.add(sequence, timestamp, value);
+        minima.add(sequence, timestamp, value);
+        if (span != Long.MAX_VALUE) {
+            long oldest = timestamp - span;
+            while (size > minSize && timestamps[head] < oldest) {
+                maxima.evict(firstSequence);
+                minima.evict(firstSequence);
+                head = (head + 1) & (timestamps.length - 1);
+                size--;
+                firstSequence++;
+            }
+        }
+    }
+
+    // doubles the arrays, unrolling the ring so the oldest reading is first
+    private void grow() {
+        int capacity = timestamps.length * 2;
+        long[] newTimestamps = new long[capacity];
+        double[] newValues = new double[capacity];
+        int firstPart = Math.min(size, timestamps.length - head);
+        System.arraycopy(timestamps, head, newTimestamps, 0, firstPart);
+        System.arraycopy(timestamps, 0, newTimestamps, firstPart, size - firstPart);
+        System.arraycopy(values, head, newValues, 0, firstPart);
+        System.arraycopy(values, 0, newValues, firstPart, size - firstPart);
+        timestamps = newTimestamps;
+        values = newValues;
+        head = 0;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    /**
+     * Returns the timestamp of a reading, 0 being the oldest.
+     */
+    public long getTimestamp(int index) {
+        return timestamps[slot(index)];
+    }
+
+    /**
+     * Returns the value of a reading, 0 being the oldest.
+     */
+    public double getValue(int index) {
+        return values[slot(index)];
+    }
+
+    /**
+     * Returns the timestamp of the newest reading, or {@link Long#MIN_VALUE} if there is none.
+     */
+    public long getLatestTimestamp() {
+        return size == 0 ? Long.MIN_VALUE : getTimestamp(size - 1);
+    }
+
+    /**
+     * Returns the index of the oldest reading at or after the given time, or
+     * {@link #size()} if there is none, by binary search.
+     */
+    public int indexFrom(long timestamp) {
+        int low = 0;
+        int high = size;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (getTimestamp(mid) < timestamp) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+
+    /**
+     * Returns the index of the largest reading at or after the given time,
+     * the newest of equal ones, or -1 if there is none.
+     */
+    public int maxIndexFrom(long timestamp) {
+        return maxima.indexFrom(timestamp);
+    }
+
+    /**
+     * Returns the index of the smallest reading at or after the given time,
+     * the newest of equal ones, or -1 if there is none.
+     */
+    public int minIndexFrom(long timestamp) {
+        return minima.indexFrom(timestamp);
+    }
+
+    private int slot(int index) {
+        if (index < 0 || index >= size) {
+            throw new IndexOutOfBoundsException("Index " + index + " out of " + size + " readings");
+        }
+        return (head + index) & (timestamps.length - 1);
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder text = new StringBuilder("VitalWindow[");
+        for (int i = 0; i < size; i++) {
+            if (i > 0) {
+                text.append(", ");
+            }
+            text.append(getTimestamp(i)).append('=').append(getValue(i));
+        }
+        return text.append(']').toString();
+    }
+
+    /**
+     * The readings, oldest first, that are larger (or smaller) than every
+     * reading after them. The front is the extreme of the whole window, and
+     * the first entry at or after a time is the extreme from that time on.
+     */
+    private final class MonotonicDeque {
+        private final boolean keepsMaxima;
+        private long[] sequences = new long[INITIAL_CAPACITY];
+        private long[] times = new long[INITIAL_CAPACITY];
+        private double[] readings = new double[INITIAL_CAPACITY];
+        private int first;
+        private int count;
+
+        MonotonicDeque(boolean keepsMaxima) {
+            this.keepsMaxima = keepsMaxima;
+        }
+
+        // drops the readings the new one outdoes, they can't be an extreme any more
+        void add(long sequence, long timestamp, double value) {
+            while (count > 0) {
+                double last = readings[(first + count - 1) & (readings.length - 1)];
+                if (keepsMaxima ? last > value : last < value) {
+                    break;
+                }
+                count--;
+            }
+            if (count == sequences.length) {
+                grow();
+            }
+            int slot = (first + count) & (sequences.length - 1);
+            sequences[slot] = sequence;
+            times[slot] = timestamp;
+            readings[slot] = value;
+            count++;
+        }
+
+        void evict(long sequence) {
+            if (count > 0 && sequences[first] == sequence) {
+                first = (first + 1) & (sequences.length - 1);
+                count--;
+            }
+        }
+
+        // binary search, the deque is short and in timestamp order
+        int indexFrom(long timestamp) {
+            int low = 0;
+            int high = count;
+            while (low < high) {
+                int mid = (low + high) >>> 1;
+                if (times[(first + mid) & (times.length - 1)] < timestamp) {
+                    low = mid + 1;
+                } else {
+                    high = mid;
+                }
+            }
+            if (low == count) {
+                return -1;
+            }
+            return (int) (sequences[(first + low) & (sequences.length - 1)] - firstSequence);
+        }
+
+        private void grow() {
+            int capacity = sequences.length * 2;
+            int firstPart = Math.min(count, sequences.length - first);
+            long[] newSequences = new long[capacity];
+            long[] newTimes = new long[capacity];
+            double[] newReadings = new double[capacity];
+            System.arraycopy(sequences, first, newSequences, 0, firstPart);
+            System.arraycopy(sequences, 0, newSequences, firstPart, count - firstPart);
+            System.arraycopy(times, first, newTimes, 0, firstPart);
+            System.arraycopy(times, 0, newTimes, firstPart, count - firstPart);
+            System.arraycopy(readings, first, newReadings, 0, firstPart);
+            System.arraycopy(readings, 0, newReadings, firstPart, count - firstPart);
+            sequences = newSequences;
+            times = newTimes;
+            readings = newReadings;
+            first = 0;
+        }
+    }
+}
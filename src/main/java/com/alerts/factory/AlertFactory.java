@@ -2,9 +2,23 @@ package com.alerts.factory;
 
 import com.alerts.Alert;
 import com.alerts.PatientRecord;
+import com.alerts.RecordTypes;
 
 public abstract class AlertFactory {
     
+    /**
+     * factory method to create an alert for a reading, the alert is only
+     * built when the reading calls for one
+     * 
+     * @param patientId The Id of the patient
+     * @param typeId The record type, see {@link RecordTypes}
+     * @param timestamp The time when the alert was generated
+     * @param value The reading
+     * @return A new Alert instance, or null if the reading is fine
+     * @throws IllegalArgumentException if the factory doesn't handle the record type
+     */
+    public abstract Alert evaluate(int patientId, int typeId, long timestamp, double value);
+
     /**
      * factory method to create an alert based on patient data
      * 
@@ -13,7 +27,10 @@ public abstract class AlertFactory {
      * @param timestamp The time when the alert was generated
      * @return A new Alert instance
      */
-    public abstract Alert createAlert(int patientId, PatientRecord vitals, long timestamp);
+    public Alert createAlert(int patientId, PatientRecord vitals, long timestamp) {
+        validateParameters(patientId, vitals, timestamp);
+        return evaluate(patientId, RecordTypes.idOf(vitals.vitalType), timestamp, Double.parseDouble(vitals.vitalValue));
+    }
     
     /**
      * Helper method to validate common alert parameters
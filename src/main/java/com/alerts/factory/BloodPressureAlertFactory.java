@@ -1,7 +1,8 @@
 package com.alerts.factory;
 
 import com.alerts.Alert;
-import com.alerts.PatientRecord;
+import com.alerts.PatientRecordAdapter;
+import com.alerts.RecordTypes;
 
 public class BloodPressureAlertFactory extends AlertFactory {
     private static final double CRITICAL_HIGH_SYSTOLIC = 180.0;
@@ -15,56 +16,43 @@ public class BloodPressureAlertFactory extends AlertFactory {
     private static final double CRITICAL_LOW_DIASTOLIC = 50.0;
 
     @Override
-    public Alert createAlert(int patientId, PatientRecord vitals, long timestamp) {
-        if ( vitals == null) {
-            throw new IllegalArgumentException("Vitals cannot be null");
-        }
-        if (timestamp < 0) 
-        {
-            throw new IllegalArgumentException("Timestamp must be non-negative");
-        }
-
-        String type = vitals.vitalType;
-        double value = Double.parseDouble(vitals.vitalValue);
-
-
-        
-        if ("SystolicPressure".equals(type)) {
+    public Alert evaluate(int patientId, int typeId, long timestamp, double value) {
+        if (typeId == RecordTypes.SYSTOLIC_PRESSURE) {
 
             if (value >= CRITICAL_HIGH_SYSTOLIC) {
-                return new Alert(patientId, vitals, timestamp, "CriticalHighSystolicPressure",
-                    String.format("Critical high systolic pressure: %.1f mmHg", value));
+                return Alert.formatted(patientId, PatientRecordAdapter.createAlertRecord(typeId, value), timestamp, "CriticalHighSystolicPressure",
+                    "Critical high systolic pressure: %.1f mmHg", value);
             } else if (value >= HIGH_SYSTOLIC) {
-                return new Alert(patientId, vitals, timestamp, "HighSystolicPressure",
-                    String.format("High systolic pressure: %.1f mmHg", value));
+                return Alert.formatted(patientId, PatientRecordAdapter.createAlertRecord(typeId, value), timestamp, "HighSystolicPressure",
+                    "High systolic pressure: %.1f mmHg", value);
             } else if (value <= CRITICAL_LOW_SYSTOLIC) {
-                return new Alert(patientId, vitals, timestamp, "CriticalLowSystolicPressure",
-                    String.format("Critical low systolic pressure: %.1f mmHg", value));
+                return Alert.formatted(patientId, PatientRecordAdapter.createAlertRecord(typeId, value), timestamp, "CriticalLowSystolicPressure",
+                    "Critical low systolic pressure: %.1f mmHg", value);
             } else if (value <= LOW_SYSTOLIC) {
-                return new Alert(patientId, vitals, timestamp, "LowSystolicPressure",
-                    String.format("Low systolic pressure: %.1f mmHg", value));
+                return Alert.formatted(patientId, PatientRecordAdapter.createAlertRecord(typeId, value), timestamp, "LowSystolicPressure",
+                    "Low systolic pressure: %.1f mmHg", value);
 
             }
         } 
         
-        else if ("DiastolicPressure".equals(type)) {
+        else if (typeId == RecordTypes.DIASTOLIC_PRESSURE) {
             if (value >= CRITICAL_HIGH_DIASTOLIC) {
-                return new Alert(patientId, vitals, timestamp, "CriticalHighDiastolicPressure",
-                    String.format("Critical high diastolic pressure: %.1f mmHg", value));
+                return Alert.formatted(patientId, PatientRecordAdapter.createAlertRecord(typeId, value), timestamp, "CriticalHighDiastolicPressure",
+                    "Critical high diastolic pressure: %.1f mmHg", value);
             } else if (value >= HIGH_DIASTOLIC) {
-                return new Alert(patientId, vitals, timestamp, "HighDiastolicPressure",
-                    String.format("High diastolic pressure: %.1f mmHg", value));
+                return Alert.formatted(patientId, PatientRecordAdapter.createAlertRecord(typeId, value), timestamp, "HighDiastolicPressure",
+                    "High diastolic pressure: %.1f mmHg", value);
             } else if (value <= CRITICAL_LOW_DIASTOLIC) {
-                return new Alert(patientId, vitals, timestamp, "CriticalLowDiastolicPressure",
-                    String.format("Critical low diastolic pressure: %.1f mmHg", value));
+                return Alert.formatted(patientId, PatientRecordAdapter.createAlertRecord(typeId, value), timestamp, "CriticalLowDiastolicPressure",
+                    "Critical low diastolic pressure: %.1f mmHg", value);
             } else if (value <= LOW_DIASTOLIC) {
-                return new Alert(patientId, vitals, timestamp, "LowDiastolicPressure",
-                    String.format("Low diastolic pressure: %.1f mmHg", value));
+                return Alert.formatted(patientId, PatientRecordAdapter.createAlertRecord(typeId, value), timestamp, "LowDiastolicPressure",
+                    "Low diastolic pressure: %.1f mmHg", value);
 
             }
         } 
         else {
-            throw new IllegalArgumentException("Invalid vital type: " + type);
+            throw new IllegalArgumentException("Invalid vital type: " + RecordTypes.nameOf(typeId));
         }
 
         return null; // No alert needed for normal values
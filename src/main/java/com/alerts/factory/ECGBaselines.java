@@ -0,0 +1,144 @@
+package com.alerts.factory;
+
+import java.util.Arrays;
+
+/**
+ * The last few ECG magnitudes of every patient and their running sum, kept in
+ * primitive arrays keyed by patient id so a sample costs no allocation and no
+ * scan of the window.
+ * <p>
+ * Patients are spread over stripes, each an open-addressing table with its own
+ * lock, so patients evaluated in parallel rarely wait for each other.
+ */
+class ECGBaselines {
+    private static final int STRIPES = 16;
+
+    private final int windowSize;
+    private final Stripe[] stripes = new Stripe[STRIPES];
+
+    /**
+     * @param windowSize readings the average is taken over
+     */
+    ECGBaselines(int windowSize) {
+        this.windowSize = windowSize;
+        for (int i = 0; i < STRIPES; i++) {
+            stripes[i] = new Stripe();
+        }
+    }
+
+    /**
+     * Adds a patient's reading to their window and returns the average over
+     * the window, the new reading included.
+     *
+     * @param patientId the patient
+     * @param magnitude the absolute value of the reading
+     * @return the average, or NaN until the window is full of non-zero readings
+     */
+    double add(int patientId, double magnitude) {
+        Stripe stripe = stripes[mix(patientId) & (STRIPES - 1)];
+        synchronized (stripe) {
+            return stripe.add(patientId, magnitude);
+        }
+    }
+
+    private static int mix(int key) {
+        int h = key * 0x9E3779B9;
+        return h ^ (h >>> 16);
+    }
+
+    /**
+     * The patients of one stripe. Patient {@code p} has slot {@code s}: their
+     * readings are {@code readings[s * windowSize ...]}, and the next one goes
+     * to {@code positions[s]}.
+     */
+    private final class Stripe {
+        // slot + 1 of the patient hashed to each entry, 0 for an empty entry
+        private int[] table = new int[16];
+        private int[] ids = new int[8];
+        private double[] readings = new double[8 * windowSize];
+        private double[] sums = new double[8];
+        private int[] positions = new int[8];
+        private int[] counts = new int[8];
+        // zero readings in the window, which the baseline waits out
+        private int[] zeros = new int[8];
+        private int slots;
+
+        double add(int patientId, double magnitude) {
+            int slot = slotOf(patientId);
+            int offset = slot * windowSize;
+            int position = positions[slot];
+            double old = readings[offset + position];
+            readings[offset + position] = magnitude;
+            if (counts[slot] < windowSize) {
+                counts[slot]++;
+            } else if (old == 0.0) {
+                zeros[slot]--;
+            }
+            if (magnitude == 0.0) {
+                zeros[slot]++;
+            }
+            position = position + 1 == windowSize ? 0 : position + 1;
+            positions[slot] = position;
+            if (position == 0) {
+                // start over once per round so rounding errors don't pile up
+                double sum = 0;
+                for (int i = 0; i < windowSize; i++) {
+                    sum += readings[offset + i];
+                }
+                sums[slot] = sum;
+            } else {
+                sums[slot] += magnitude - old;
+            }
+            if (counts[slot] < windowSize || zeros[slot] > 0) {
+                return Double.NaN;
+            }
+            return sums[slot] / windowSize;
+        }
+
+        private int slotOf(int patientId) {
+            int mask = table.length - 1;
+            int i = mix(patientId) & mask;
+            while (table[i] != 0) {
+                int slot = table[i] - 1;
+                if (ids[slot] == patientId) {
+                    return slot;
+                }
+                i = (i + 1) & mask;
+            }
+            int slot = slots++;
+            if (slot == ids.length) {
+                growSlots();
+            }
+            ids[slot] = patientId;
+            table[i] = slot + 1;
+            if (slots * 2 > table.length) {
+                rehash();
+            }
+            return slot;
+        }
+
+        private void growSlots() {
+            int capacity = ids.length * 2;
+            ids = Arrays.copyOf(ids, capacity);
+            readings = Arrays.copyOf(readings, capacity * windowSize);
+            sums = Arrays.copyOf(sums, capacity);
+            positions = Arrays.copyOf(positions, capacity);
+            counts = Arrays.copyOf(counts, capacity);
+            zeros = Arrays.copyOf(zeros, capacity);
+        }
+
+        // keeps the table at most half full
+        private void rehash() {
+            int[] newTable = new int[table.length * 2];
+            int mask = newTable.length - 1;
+            for (int slot = 0; slot < slots; slot++) {
+                int i = mix(ids[slot]) & mask;
+                while (newTable[i] != 0) {
+                    i = (i + 1) & mask;
+                }
+                newTable[i] = slot + 1;
+            }
+            table = newTable;
+        }
+    }
+}
@@ -2,23 +2,49 @@ package com.alerts.strategy;
 
 import com.alerts.Alert;
 import com.alerts.PatientRecord;
+import com.alerts.RecordTypes;
+import com.alerts.VitalWindow;
 import java.util.List;
 
 public interface AlertStrategy {
+    /**
+     * checks a reading for an alert, without allocating anything unless
+     * the alert fires
+     *
+     * @param patientId The Id of the patient
+     * @param typeId the record type, see {@link RecordTypes}
+     * @param timestamp when the reading was taken
+     * @param value the reading
+     * @param history recent readings of the same vital for trend analysis, the current one last, may be null
+     * @return Alert if conditions are met, null otherwise
+     */
+    Alert evaluate(int patientId, int typeId, long timestamp, double value, VitalWindow history);
+
     /**
      * checks if an alert should be generated based on the patient's vital records
      * 
      * @param patientId The Id of the patient
      * @param currentRecord The current vital record being evaluated
-     * @param history Previous records for trend analysis
+     * @param history Previous records for trend analysis, oldest first, may be null
      * @return Alert if conditions are met, null otherwise
      */
-    Alert checkAlert(int patientId, PatientRecord currentRecord, List<com.data_management.PatientRecord> history);
+    default Alert checkAlert(int patientId, PatientRecord currentRecord, List<com.data_management.PatientRecord> history) {
+        return evaluate(patientId, RecordTypes.idOf(currentRecord.vitalType), System.currentTimeMillis(),
+            Double.parseDouble(currentRecord.vitalValue), history == null ? null : VitalWindow.of(history));
+    }
     
+    /**
+     * gets the record types this strategy checks, records of other types
+     * are not passed to it
+     * 
+     * @return the record type ids, see {@link RecordTypes}
+     */
+    int[] getRecordTypeIds();
+
     /**
      * gets the type of vital sign of strategy monitor
      * 
      * @return the vital sign type (for example"BloodPressure", "HeartRate", etc.)
      */
     String getVitalType();
-} 
\ No newline at end of file
+}
@@ -1,8 +1,9 @@
 package com.alerts.strategy;
 
 import com.alerts.Alert;
-import com.alerts.PatientRecord;
-import java.util.List;
+import com.alerts.PatientRecordAdapter;
+import com.alerts.RecordTypes;
+import com.alerts.VitalWindow;
 
 public class BloodPressureStrategy implements AlertStrategy {
     private static final double SYSTOLIC_HIGH_THRESHOLD = 180.0;
@@ -12,79 +13,84 @@ public class BloodPressureStrategy implements AlertStrategy {
     private static final double BP_TREND_THRESHOLD = 10.0;
     
     @Override
-    public Alert checkAlert(int patientId, PatientRecord currentRecord, List<com.data_management.PatientRecord> history) {
-        String recordType =  currentRecord.vitalType;
-        double value = Double.parseDouble(currentRecord.vitalValue );
-        Alert immediateAlert = checkThresholds(patientId, currentRecord,  value);
+    public Alert evaluate(int patientId, int typeId, long timestamp, double value, VitalWindow history) {
+        if (typeId != RecordTypes.SYSTOLIC_PRESSURE && typeId != RecordTypes.DIASTOLIC_PRESSURE) {
+            return null;
+        }
+        Alert immediateAlert = checkThresholds(patientId, typeId,  value);
         if (immediateAlert != null ) {
             return immediateAlert;
         }
         if (history != null && history.size() >= 3) {
-            return checkTrend(patientId, currentRecord, history);
+            return checkTrend(patientId, typeId, value, history);
         }
         
         return null; 
     }
     
-    private Alert checkThresholds(int patientId, PatientRecord record, double value) {
-        if ("SystolicPressure".equals(record.vitalType)) {
+    private Alert checkThresholds(int patientId, int typeId, double value) {
+        if (typeId == RecordTypes.SYSTOLIC_PRESSURE) {
 
             if (value > SYSTOLIC_HIGH_THRESHOLD) {
-                return new Alert(patientId, record, System.currentTimeMillis(),
+                return Alert.formatted(patientId, PatientRecordAdapter.createAlertRecord(typeId, value), System.currentTimeMillis(),
                     "CriticalHighSystolicPressure",
-                    String.format("Critical high systolic pressure: %.1f mmHg (>180)", value));
+                    "Critical high systolic pressure: %.1f mmHg (>%.0f)", value, SYSTOLIC_HIGH_THRESHOLD);
             } 
             else if (value < SYSTOLIC_LOW_THRESHOLD) {
-                return new Alert(patientId, record, System.currentTimeMillis(),
+                return Alert.formatted(patientId, PatientRecordAdapter.createAlertRecord(typeId, value), System.currentTimeMillis(),
                     "CriticalLowSystolicPressure",
-                    String.format("Critical low systolic pressure: %.1f mmHg (<90)", value));
+                    "Critical low systolic pressure: %.1f mmHg (<%.0f)", value, SYSTOLIC_LOW_THRESHOLD);
             }
 
         } 
-        else if ("DiastolicPressure".equals(record.vitalType)) {
+        else if (typeId == RecordTypes.DIASTOLIC_PRESSURE) {
 
             if (value > DIASTOLIC_HIGH_THRESHOLD) {
-                return new Alert(patientId, record, System.currentTimeMillis(),
+                return Alert.formatted(patientId, PatientRecordAdapter.createAlertRecord(typeId, value), System.currentTimeMillis(),
                     "CriticalHighDiastolicPressure",
-                    String.format("Critical high diastolic pressure: %.1f mmHg (>120)", value));
+                    "Critical high diastolic pressure: %.1f mmHg (>%.0f)", value, DIASTOLIC_HIGH_THRESHOLD);
             } 
             else if (value < DIASTOLIC_LOW_THRESHOLD) {
-                return new Alert(patientId, record, System.currentTimeMillis(),
+                return Alert.formatted(patientId, PatientRecordAdapter.createAlertRecord(typeId, value), System.currentTimeMillis(),
                     "CriticalLowDiastolicPressure",
-                    String.format("Critical low diastolic pressure: %.1f mmHg (<60)", value));
+                    "Critical low diastolic pressure: %.1f mmHg (<%.0f)", value, DIASTOLIC_LOW_THRESHOLD);
             }
 
         }
         return null;
     }
     
-    private Alert checkTrend(int patientId, PatientRecord currentRecord, List<com.data_management.PatientRecord> history) {
+    private Alert checkTrend(int patientId, int typeId, double val3, VitalWindow history) {
         int lastIndex = history.size() - 1;
 
-        double val1 = history.get(lastIndex - 2).getMeasurementValue();
-        double val2 = history.get(lastIndex - 1).getMeasurementValue();
-        double val3 = Double.parseDouble(currentRecord.vitalValue);
+        double val1 = history.getValue(lastIndex - 2);
+        double val2 = history.getValue(lastIndex - 1);
         
-        String pressureType = currentRecord.vitalType.contains("Systolic") ? "systolic" : "diastolic";
+        String pressureType = typeId == RecordTypes.SYSTOLIC_PRESSURE ? "systolic" : "diastolic";
          
         if ((val2 - val1) > BP_TREND_THRESHOLD  && (val3 - val2) >  BP_TREND_THRESHOLD
         ) {
-            return new Alert(patientId, currentRecord, System.currentTimeMillis(),
+            return Alert.formatted(patientId, PatientRecordAdapter.createAlertRecord(typeId, val3), System.currentTimeMillis(),
                 "BloodPressureIncreasingTrend",
-                String.format("Increasing trend in %s blood pressure: %.1f → %.1f → %.1f mmHg",
-                    pressureType, val1, val2, val3));
+                "Increasing trend in %s blood pressure: %.1f → %.1f → %.1f mmHg",
+                    pressureType, val1, val2, val3);
         }
         
         if ((val1 - val2) >  BP_TREND_THRESHOLD && (val2 - val3) > BP_TREND_THRESHOLD) {
-            return new Alert(patientId,  currentRecord, System.currentTimeMillis(),
+            return Alert.formatted(patientId, PatientRecordAdapter.createAlertRecord(typeId, val3), System.currentTimeMillis(),
                 "BloodPressureDecreasingTrend",
-                String.format("Decreasing trend in %s blood pressure: %.1f → %.1f → %.1f mmHg",
-                    pressureType, val1, val2, val3));
+                "Decreasing trend in %s blood pressure: %.1f → %.1f → %.1f mmHg",
+                    pressureType, val1, val2, val3);
         }
         
         return null;
     }
     
+    @Override
+    public int[] getRecordTypeIds() {
+        return new int[] {RecordTypes.SYSTOLIC_PRESSURE, RecordTypes.DIASTOLIC_PRESSURE};
+    }
+
     @Override
     public String getVitalType() {
         return "BloodPressure";
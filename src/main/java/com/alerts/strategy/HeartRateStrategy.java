@@ -1,8 +1,9 @@
 package com.alerts.strategy;
 
 import com.alerts.Alert;
-import com.alerts.PatientRecord;
-import java.util.List;
+import com.alerts.PatientRecordAdapter;
+import com.alerts.RecordTypes;
+import com.alerts.VitalWindow;
 
 public class HeartRateStrategy implements AlertStrategy {
     private static final double HEART_RATE_HIGH_THRESHOLD = 120.0;
@@ -13,73 +14,77 @@ public class HeartRateStrategy implements AlertStrategy {
     private static final long RAPID_CHANGE_TIME_WINDOW = 5 * 60 * 1000; // 5 mins
     
     @Override
-    public Alert checkAlert(int patientId, PatientRecord currentRecord, List<com.data_management.PatientRecord> history) {
-        if (!"HeartRate".equals(currentRecord.vitalType)) {
+    public Alert evaluate(int patientId, int typeId, long timestamp, double currentRate, VitalWindow history) {
+        if (typeId != RecordTypes.HEART_RATE) {
             return null;
         }
-        double currentRate = Double.parseDouble(currentRecord.vitalValue );
-        Alert thresholdAlert = checkThresholds(patientId, currentRecord, currentRate);
+        Alert thresholdAlert = checkThresholds(patientId, typeId, currentRate);
         if (thresholdAlert != null) {
             return thresholdAlert;
         }
         if (history != null && !history.isEmpty()) {
-            return checkRapidChanges(patientId, currentRecord, history);
+            return checkRapidChanges(patientId, typeId, currentRate, history);
         }
         return null;
     }
     
-    private Alert checkThresholds(int patientId, PatientRecord record, double rate) {
+    private Alert checkThresholds(int patientId, int typeId, double rate) {
         if (rate >= HEART_RATE_CRITICAL_HIGH) {
-            return new Alert(patientId, record, System.currentTimeMillis(),
+            return Alert.formatted(patientId, PatientRecordAdapter.createAlertRecord(typeId, rate), System.currentTimeMillis(),
                 "CriticalTachycardia",
-                String.format("Critical high heart rate: %.0f bpm (>150)", rate));
+                "Critical high heart rate: %.0f bpm (>%.0f)", rate, HEART_RATE_CRITICAL_HIGH);
         } 
         else if (rate <= HEART_RATE_CRITICAL_LOW) {
-            return new Alert(patientId, record, System.currentTimeMillis(),
+            return Alert.formatted(patientId, PatientRecordAdapter.createAlertRecord(typeId, rate), System.currentTimeMillis(),
                 "CriticalBradycardia",
-                String.format("Critical low heart rate: %.0f bpm (<40)", rate));
+                "Critical low heart rate: %.0f bpm (<%.0f)", rate, HEART_RATE_CRITICAL_LOW);
         } 
         else if (rate > HEART_RATE_HIGH_THRESHOLD) {
-            return new Alert(patientId, record, System.currentTimeMillis(),
+            return Alert.formatted(patientId, PatientRecordAdapter.createAlertRecord(typeId, rate), System.currentTimeMillis(),
                 "Tachycardia",
-                String.format("High heart rate: %.0f bpm (>120)", rate));
+                "High heart rate: %.0f bpm (>%.0f)", rate, HEART_RATE_HIGH_THRESHOLD);
         } 
         else if (rate < HEART_RATE_LOW_THRESHOLD) {
-            return new Alert(patientId, record, System.currentTimeMillis(),
+            return Alert.formatted(patientId, PatientRecordAdapter.createAlertRecord(typeId, rate), System.currentTimeMillis(),
                 "Bradycardia",
-                String.format("Low heart rate: %.0f bpm (<50)", rate));
+                "Low heart rate: %.0f bpm (<%.0f)", rate, HEART_RATE_LOW_THRESHOLD);
         }
         return null;
     }
     
-    private Alert checkRapidChanges(int patientId, PatientRecord currentRecord, List<com.data_management.PatientRecord> history) {
-       
-        double currentRate = Double.parseDouble(currentRecord.vitalValue);
-
+    private Alert checkRapidChanges(int patientId, int typeId, double currentRate, VitalWindow history) {
         long currentTime = System.currentTimeMillis();
         
-        for (com.data_management.PatientRecord previousRecord : history) {
-            long timeDiff = currentTime - previousRecord.getTimestamp();
-            if (timeDiff > RAPID_CHANGE_TIME_WINDOW) {
-                continue;
-                 
-            } 
-            
-            double previousRate  = previousRecord.getMeasurementValue();
-            double rateChange = Math.abs(currentRate - previousRate) ;
-            
-            if (rateChange >= RAPID_CHANGE_THRESHOLD) {
-                String changeType = currentRate > previousRate ? "increase" : "decrease";
-                return new Alert(patientId, currentRecord,  System.currentTimeMillis(),
-                    "RapidHeartRateChange",
-                    String.format("Rapid heart rate %s: %.0f to %.0f bpm (change of %.0f bpm) in %d minutes",
-                        changeType, previousRate, currentRate, rateChange, timeDiff / 60000));
-            }
+        // the largest change is against the highest or the lowest rate in the time window
+        long from = currentTime - RAPID_CHANGE_TIME_WINDOW;
+        int highest = history.maxIndexFrom(from);
+        if (highest < 0) {
+            return null;
+        }
+        int lowest = history.minIndexFrom(from);
+        double rise = currentRate - history.getValue(lowest);
+        double fall = history.getValue(highest) - currentRate;
+        int previous = rise >= fall ? lowest : highest;
+        double previousRate = history.getValue(previous);
+        double rateChange = Math.abs(currentRate - previousRate);
+        
+        if (rateChange >= RAPID_CHANGE_THRESHOLD) {
+            long timeDiff = currentTime - history.getTimestamp(previous);
+            String changeType = currentRate > previousRate ? "increase" : "decrease";
+            return Alert.formatted(patientId, PatientRecordAdapter.createAlertRecord(typeId, currentRate), System.currentTimeMillis(),
+                "RapidHeartRateChange",
+                "Rapid heart rate %s: %.0f to %.0f bpm (change of %.0f bpm) in %d minutes",
+                    changeType, previousRate, currentRate, rateChange, timeDiff / 60000);
         }
         
         return null;
     }
     
+    @Override
+    public int[] getRecordTypeIds() {
+        return new int[] {RecordTypes.HEART_RATE};
+    }
+
     @Override
     public String getVitalType() {
         return "HeartRate";
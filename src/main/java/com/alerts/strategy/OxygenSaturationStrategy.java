@@ -1,8 +1,9 @@
 package com.alerts.strategy;
 
 import com.alerts.Alert;
-import com.alerts.PatientRecord;
-import java.util.List;
+import com.alerts.PatientRecordAdapter;
+import com.alerts.RecordTypes;
+import com.alerts.VitalWindow;
 
 public class OxygenSaturationStrategy implements AlertStrategy {
     private static final double SATURATION_LOW_THRESHOLD = 92.0;
@@ -11,62 +12,63 @@ public class OxygenSaturationStrategy implements AlertStrategy {
     private static final long RAPID_DROP_TIME_WINDOW = 10 * 60 * 1000; // 10 mins, idk
     
     @Override
-    public Alert checkAlert(int patientId, PatientRecord currentRecord, List<com.data_management.PatientRecord> history) {
+    public Alert evaluate(int patientId, int typeId, long timestamp, double currentSaturation, VitalWindow history) {
         
-        if (!("BloodSaturation".equals(currentRecord.vitalType) || 
-              "Saturation".equals(currentRecord.vitalType))) {
+        if (typeId != RecordTypes.BLOOD_SATURATION && typeId != RecordTypes.SATURATION) {
 
             return null;
         }
         
-        double currentSaturation = Double.parseDouble(currentRecord.vitalValue);
-        Alert thresholdAlert = checkThresholds(patientId, currentRecord, currentSaturation);
+        Alert thresholdAlert = checkThresholds(patientId, typeId, currentSaturation);
         if (thresholdAlert != null) {
             return thresholdAlert;
         }
         if (history != null && !history.isEmpty()) {
-            return checkRapidDrop(patientId, currentRecord, history);
+            return checkRapidDrop(patientId, typeId, currentSaturation, history);
         }
         
         return null;
     }
     
-    private Alert checkThresholds(int patientId, PatientRecord record, double saturation) {
+    private Alert checkThresholds(int patientId, int typeId, double saturation) {
         if (saturation <= SATURATION_CRITICAL_THRESHOLD) {
-            return new Alert(patientId, record, System.currentTimeMillis(),
+            return Alert.formatted(patientId, PatientRecordAdapter.createAlertRecord(typeId, saturation), System.currentTimeMillis(),
                 "CriticalLowOxygenSaturation",
-                String.format("Critical low oxygen saturation: %.1f%% (≤88%%)", saturation));
+                "Critical low oxygen saturation: %.1f%% (≤%.0f%%)", saturation, SATURATION_CRITICAL_THRESHOLD);
         } else if (saturation < SATURATION_LOW_THRESHOLD) {
-            return new Alert(patientId, record, System.currentTimeMillis(),
+            return Alert.formatted(patientId, PatientRecordAdapter.createAlertRecord(typeId, saturation), System.currentTimeMillis(),
                 "LowOxygenSaturation",
-                String.format("Low oxygen saturation: %.1f%% (<92%%)", saturation));
+                "Low oxygen saturation: %.1f%% (<%.0f%%)", saturation, SATURATION_LOW_THRESHOLD);
         }
         return null;
     }
     
-    private Alert checkRapidDrop(int patientId, PatientRecord currentRecord, List<com.data_management.PatientRecord> history) {
-        double currentSaturation = Double.parseDouble(currentRecord.vitalValue);
+    private Alert checkRapidDrop(int patientId, int typeId, double currentSaturation, VitalWindow history) {
         long currentTime = System.currentTimeMillis();
         
-        for (com.data_management.PatientRecord previousRecord : history) {
-            long timeDiff = currentTime - previousRecord.getTimestamp();
-            if (timeDiff > RAPID_DROP_TIME_WINDOW) {
-                continue;
-            }
-            
-            double previousSaturation = previousRecord.getMeasurementValue();
-            double drop = previousSaturation - currentSaturation;
-            
-            if (drop >= SATURATION_DROP_THRESHOLD) {
-                return new Alert(patientId, currentRecord, System.currentTimeMillis(),
-                    "RapidSaturationDrop",
-                    String.format("Rapid drop in oxygen saturation: %.1f%% to %.1f%% (drop of %.1f%%) in %d minutes",
-                        previousSaturation, currentSaturation, drop, timeDiff / 60000));
-            }
+        // the largest drop is from the highest saturation in the time window
+        int highest = history.maxIndexFrom(currentTime - RAPID_DROP_TIME_WINDOW);
+        if (highest < 0) {
+            return null;
+        }
+        double previousSaturation = history.getValue(highest);
+        double drop = previousSaturation - currentSaturation;
+        
+        if (drop >= SATURATION_DROP_THRESHOLD) {
+            long timeDiff = currentTime - history.getTimestamp(highest);
+            return Alert.formatted(patientId, PatientRecordAdapter.createAlertRecord(typeId, currentSaturation), System.currentTimeMillis(),
+                "RapidSaturationDrop",
+                "Rapid drop in oxygen saturation: %.1f%% to %.1f%% (drop of %.1f%%) in %d minutes",
+                    previousSaturation, currentSaturation, drop, timeDiff / 60000);
         }
         return null;
     }
     
+    @Override
+    public int[] getRecordTypeIds() {
+        return new int[] {RecordTypes.BLOOD_SATURATION, RecordTypes.SATURATION};
+    }
+
     @Override
     public String getVitalType() {
         return "OxygenSaturation";
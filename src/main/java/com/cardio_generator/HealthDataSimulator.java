@@ -11,15 +11,18 @@ import com.cardio_generator.generators.BloodPressureDataGenerator;
 import com.cardio_generator.generators.BloodSaturationDataGenerator;
 import com.cardio_generator.generators.BloodLevelsDataGenerator;
 import com.cardio_generator.generators.ECGDataGenerator;
+import com.cardio_generator.outputs.ColumnarOutputStrategy;
 import com.cardio_generator.outputs.ConsoleOutputStrategy;
 import com.cardio_generator.outputs.FileOutputStrategy;
 import com.cardio_generator.outputs.OutputStrategy;
 import com.cardio_generator.outputs.TcpOutputStrategy;
 import com.cardio_generator.outputs.WebSocketOutputStrategy;
+import com.data_management.VitalsDeflateExtension;
 
 import java.util.Collections;
 import java.util.List;
 import java.util.Random;
+import java.io.Closeable;
 import java.io.IOException;
 import java.nio.file.Files;
 import java.nio.file.Path;
@@ -184,6 +187,9 @@ public class HealthDataSimulator {
         String outputType = "console";
         String outputPath = null;
         long duration = 0;
+        int batchSize = 1;
+        long batchDelay = 50;
+        VitalsDeflateExtension compression = null;
         
         for (String arg : args) {
             if (arg.startsWith("--output=")) {
@@ -196,6 +202,24 @@ public class HealthDataSimulator {
                 } catch (NumberFormatException e) {
                     System.err.println("Invalid duration format. Using default.");
                 }
+            } else if (arg.startsWith("--batch-size=")) {
+                try {
+                    batchSize = Integer.parseInt(arg.substring("--batch-size=".length()));
+                } catch (NumberFormatException e) {
+                    System.err.println("Invalid batch size format. Using default.");
+                }
+            } else if (arg.startsWith("--deflate=")) {
+                try {
+                    compression = VitalsDeflateExtension.parse(arg.substring("--deflate=".length()));
+                } catch (IllegalArgumentException e) {
+                    System.err.println("Invalid deflate setting, sending uncompressed: " + e.getMessage());
+                }
+            } else if (arg.startsWith("--batch-delay=")) {
+                try {
+                    batchDelay = Long.parseLong(arg.substring("--batch-delay=".length()));
+                } catch (NumberFormatException e) {
+                    System.err.println("Invalid batch delay format. Using default.");
+                }
             }
         }
 
@@ -208,11 +232,29 @@ public class HealthDataSimulator {
                 }
                 outputStrategy = new FileOutputStrategy(outputPath);
                 break;
+            case "columnar":
+                if (outputPath == null) {
+                    System.err.println("Columnar output requires --path argument");
+                    return;
+                }
+                try {
+                    outputStrategy = new ColumnarOutputStrategy(outputPath);
+                } catch (IOException e) {
+                    System.err.println("Error creating columnar file " + outputPath + ": " + e.getMessage());
+                    return;
+                }
+                break;
             case "tcp":
                 outputStrategy = new TcpOutputStrategy(8080);
                 break;
             case "websocket":
-                outputStrategy = new WebSocketOutputStrategy(8081);
+                outputStrategy = new WebSocketOutputStrategy(8081, Math.max(1, batchSize), batchDelay,
+                        WebSocketOutputStrategy.DEFAULT_REPLAY_CAPACITY, compression);
+                if (compression != null) {
+                    VitalsDeflateExtension.Stats stats = compression.getStats();
+                    Runtime.getRuntime().addShutdownHook(new Thread(
+                            () -> System.out.println("Compression: " + stats.report()), "deflate-report"));
+                }
                 break;
             case "console":
             default:
@@ -220,6 +262,19 @@ public class HealthDataSimulator {
                 break;
         }
 
+        if (outputStrategy instanceof Closeable) {
+            // columnar files get their index on close, also when the simulator is killed
+            Closeable closeable = (Closeable) outputStrategy;
+            Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+                simulator.stopSimulation();
+                try {
+                    closeable.close();
+                } catch (IOException e) {
+                    System.err.println("Error closing output: " + e.getMessage());
+                }
+            }));
+        }
+
         simulator.addOutputStrategy(outputStrategy);
         simulator.initializeGenerators(10);
         simulator.startSimulation(1000, duration);
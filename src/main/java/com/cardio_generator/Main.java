@@ -1,6 +1,8 @@
 package com.cardio_generator;
 
+import java.io.Closeable;
 import java.io.IOException;
+import com.cardio_generator.outputs.ColumnarOutputStrategy;
 import com.cardio_generator.outputs.OutputStrategy;
 import com.cardio_generator.outputs.ConsoleOutputStrategy;
 import com.cardio_generator.outputs.FileOutputStrategy;
@@ -65,6 +67,8 @@ public class Main {
         String outputType = "console";
         String outputPath = null;
         long duration = 1000;
+        int batchSize = 1;
+        long batchDelay = 50;
         
         for (String arg : args) {
             if (arg.startsWith("--output=")) {
@@ -82,6 +86,22 @@ public class Main {
                     System.err.println("Invalid duration format. Using default.");
                 }
             }
+            else if (arg.startsWith("--batch-size=")) {
+                try {
+                    batchSize = Integer.parseInt(arg.substring("--batch-size=".length()));
+                } 
+                catch (NumberFormatException e) {
+                    System.err.println("Invalid batch size format. Using default.");
+                }
+            }
+            else if (arg.startsWith("--batch-delay=")) {
+                try {
+                    batchDelay = Long.parseLong(arg.substring("--batch-delay=".length()));
+                } 
+                catch (NumberFormatException e) {
+                    System.err.println("Invalid batch delay format. Using default.");
+                }
+            }
         }
 
         OutputStrategy outputStrategy;
@@ -93,11 +113,23 @@ public class Main {
                 }
                 outputStrategy = new FileOutputStrategy(outputPath);
                 break;
+            case "columnar":
+                if (outputPath == null) {
+                    System.err.println("Columnar output requires --path argument");
+                    return;
+                }
+                try {
+                    outputStrategy = new ColumnarOutputStrategy(outputPath);
+                } catch (IOException e) {
+                    System.err.println("Error creating columnar file " + outputPath + ": " + e.getMessage());
+                    return;
+                }
+                break;
             case "tcp":
                 outputStrategy = new TcpOutputStrategy(8080);
                 break;
             case "websocket":
-                outputStrategy = new WebSocketOutputStrategy(8081);
+                outputStrategy = new WebSocketOutputStrategy(8081, Math.max(1, batchSize), batchDelay);
                 break;
             case "console":
             default:
@@ -116,6 +148,15 @@ public class Main {
             simulator.stopSimulation();
             Thread.currentThread().interrupt();
         }
+
+        // columnar files get their index on close
+        if (outputStrategy instanceof Closeable) {
+            try {
+                ((Closeable) outputStrategy).close();
+            } catch (IOException e) {
+                System.err.println("Error closing output: " + e.getMessage());
+            }
+        }
     }
 
     /**
@@ -132,5 +173,8 @@ public class Main {
         System.out.println("Examples:");
         System.out.println("  java -jar cardio_generator.jar datastorage --input=/path/to/data");
         System.out.println("  java -jar cardio_generator.jar simulator --output file:/path/to/output");
+        System.out.println("  java -jar cardio_generator.jar simulator --output=columnar --path=/path/to/vitals.col");
+        System.out.println("  java -jar cardio_generator.jar datastorage --columnar=/path/to/vitals.col");
+        System.out.println("  java -jar cardio_generator.jar simulator --output=websocket --batch-size=100 --batch-delay=50");
     }
 }
@@ -0,0 +1,170 @@
+package com.cardio_generator.outputs;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.HashMap;
+import java.util.Map;
+
+import com.data_management.ColumnarFormat;
+import com.data_management.VitalsLineParser;
+
+/**
+ * Writes data to a single file in the binary {@link ColumnarFormat}.
+ * Readings are collected per patient and written as a block once a patient
+ * has enough of them. The block index is written by {@link #close()}, so the
+ * file is only readable after the strategy has been closed.
+ */
+public class ColumnarOutputStrategy implements OutputStrategy, Closeable {
+    private final Path file;
+    private final int blockRows;
+    private final Map<Integer, ColumnarFormat.BlockBuilder> blocks = new HashMap<>();
+    private final VitalsLineParser parser = new VitalsLineParser();
+    private ByteBuffer buffer = ByteBuffer.allocate(64 * 1024);
+    private ByteBuffer index = ByteBuffer.allocate(ColumnarFormat.INDEX_ENTRY_SIZE * 64);
+    private int blockCount;
+    private FileChannel channel;
+
+    /**
+     * Creates the file, replacing any existing one.
+     *
+     * @param filePath where to write
+     * @throws IOException if the file can't be created
+     */
+    public ColumnarOutputStrategy(String filePath) throws IOException {
+        this(filePath, ColumnarFormat.DEFAULT_BLOCK_ROWS);
+    }
+
+    /**
+     * Creates the file, replacing any existing one.
+     *
+     * @param filePath  where to write
+     * @param blockRows rows per patient collected before a block is written
+     * @throws IOException if the file can't be created
+     */
+    public ColumnarOutputStrategy(String filePath, int blockRows) throws IOException {
+        if (blockRows <= 0) {
+            throw new IllegalArgumentException("Block rows must be positive");
+        }
+        this.file = Paths.get(filePath);
+        this.blockRows = blockRows;
+        Path dir = file.toAbsolutePath().getParent();
+        if (dir != null) {
+            Files.createDirectories(dir);
+        }
+        channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING);
+        ByteBuffer header = ByteBuffer.allocate(ColumnarFormat.HEADER_SIZE);
+        header.putInt(ColumnarFormat.MAGIC).putShort(ColumnarFormat.VERSION).putShort((short) 0).flip();
+        writeFully(header);
+    }
+
+    /**
+     * Adds a reading to its patient's block. Data that isn't numeric, like the
+     * simulator's alert states, is converted the same way the file reader does.
+     *
+     * @param patientId which patient is this for
+     * @param timestamp when it happened
+     * @param label     what kind of data
+     * @param data      the actual info to save
+     */
+    @Override
+    public synchronized void output(int patientId, long timestamp, String label, String data) {
+        if (channel == null) {
+            return;
+        }
+        try {
+            parser.parsePayload(patientId, timestamp, label, data, this::add);
+        } catch (IllegalArgumentException e) {
+            System.err.println("Skipping reading that can't be stored: " + e.getMessage());
+        }
+    }
+
+    private void add(int patientId, double value, String recordType, long timestamp) {
+        ColumnarFormat.BlockBuilder block = blocks.computeIfAbsent(patientId,
+                id -> new ColumnarFormat.BlockBuilder(id, blockRows));
+        if (!block.add(timestamp, recordType, value)) {
+            flushBlock(block);
+            block.add(timestamp, recordType, value);
+        }
+        if (block.getRowCount() == blockRows) {
+            flushBlock(block);
+        }
+    }
+
+    private void flushBlock(ColumnarFormat.BlockBuilder block) {
+        if (block.getRowCount() == 0) {
+            return;
+        }
+        try {
+            int needed = block.maxEncodedSize();
+            if (buffer.capacity() < needed) {
+                buffer = ByteBuffer.allocate(Math.max(needed, buffer.capacity() * 2));
+            }
+            buffer.clear();
+            block.encode(buffer);
+            buffer.flip();
+
+            long offset = channel.position();
+            int length = buffer.remaining();
+            writeFully(buffer);
+
+            if (index.remaining() < ColumnarFormat.INDEX_ENTRY_SIZE) {
+                ByteBuffer grown = ByteBuffer.allocate(index.capacity() * 2);
+                index.flip();
+                grown.put(index);
+                index = grown;
+            }
+            index.putInt(block.getPatientId()).putLong(block.getMinTimestamp()).putLong(block.getMaxTimestamp())
+                    .putLong(offset).putInt(length).putInt(block.getRowCount());
+            blockCount++;
+        } catch (IOException e) {
+            System.err.println("Error writing to file " + file + ": " + e.getMessage());
+        } finally {
+            block.clear();
+        }
+    }
+
+    /**
+     * Writes the remaining blocks, the block index and the footer, and closes the file.
+     *
+     * @throws IOException if the file can't be written
+     */
+    @Override
+    public synchronized void close() throws IOException {
+        if (channel == null) {
+            return;
+        }
+        try {
+            for (ColumnarFormat.BlockBuilder block : blocks.values()) {
+                flushBlock(block);
+            }
+            long indexOffset = channel.position();
+            ByteBuffer count = ByteBuffer.allocate(Integer.BYTES);
+            count.putInt(blockCount).flip();
+            writeFully(count);
+            index.flip();
+            writeFully(index);
+
+            ByteBuffer footer = ByteBuffer.allocate(ColumnarFormat.FOOTER_SIZE);
+            footer.putLong(indexOffset).putInt(ColumnarFormat.MAGIC).flip();
+            writeFully(footer);
+            channel.force(true);
+        } finally {
+            channel.close();
+            channel = null;
+            blocks.clear();
+        }
+    }
+
+    private void writeFully(ByteBuffer data) throws IOException {
+        while (data.hasRemaining()) {
+            channel.write(data);
+        }
+    }
+}
@@ -0,0 +1,85 @@
+package com.cardio_generator.outputs;
+
+import com.data_management.RecordBatch;
+
+/**
+ * keeps the most recent readings sent by the websocket server, with their
+ * sequence numbers, so a client that reconnects can ask for what it missed.
+ * readings must be added with consecutive sequence numbers; once full the
+ * oldest ones are overwritten. not thread safe
+ */
+class ReplayBuffer {
+    private final long[] sequences;
+    private final int[] patientIds;
+    private final double[] values;
+    private final String[] recordTypes;
+    private final long[] timestamps;
+    // index of the oldest reading
+    private int head;
+    private int size;
+
+    /**
+     * @param capacity most readings kept
+     */
+    ReplayBuffer(int capacity) {
+        if (capacity < 1) {
+            throw new IllegalArgumentException("Replay capacity must be at least 1");
+        }
+        sequences = new long[capacity];
+        patientIds = new int[capacity];
+        values = new double[capacity];
+        recordTypes = new String[capacity];
+        timestamps = new long[capacity];
+    }
+
+    /**
+     * adds the readings of a batch, which must follow the newest reading kept
+     */
+    void addAll(RecordBatch batch) {
+        int capacity = sequences.length;
+        for (int i = 0; i < batch.size(); i++) {
+            int slot;
+            if (size == capacity) {
+                slot = head;
+                head = (head + 1) % capacity;
+            } else {
+                slot = (head + size) % capacity;
+                size++;
+            }
+            sequences[slot] = batch.getSequence(i);
+            patientIds[slot] = batch.getPatientId(i);
+            values[slot] = batch.getMeasurementValue(i);
+            recordTypes[slot] = batch.getRecordType(i);
+            timestamps[slot] = batch.getTimestamp(i);
+        }
+    }
+
+    /**
+     * returns the sequence number of the oldest reading kept, 0 when empty
+     */
+    long getOldestSequence() {
+        return size == 0 ? 0 : sequences[head];
+    }
+
+    /**
+     * copies readings from the given sequence number on into a batch, starting
+     * at the oldest one kept if that one is newer
+     *
+     * @param fromSequence first sequence number wanted
+     * @param max most readings to copy
+     * @param into where the readings go, with their sequence numbers
+     * @return the number of readings copied, 0 when there are none that new
+     */
+    int copy(long fromSequence, int max, RecordBatch into) {
+        if (size == 0) {
+            return 0;
+        }
+        long skip = Math.max(0, fromSequence - sequences[head]);
+        int copied = 0;
+        for (long i = skip; i < size && copied < max; i++, copied++) {
+            int slot = (int) ((head + i) % sequences.length);
+            into.addPatientData(sequences[slot], patientIds[slot], values[slot], recordTypes[slot], timestamps[slot]);
+        }
+        return copied;
+    }
+}
@@ -1,22 +1,73 @@
 package com.cardio_generator.outputs;
 
 import org.java_websocket.WebSocket;
+import org.java_websocket.drafts.Draft_6455;
+import org.java_websocket.exceptions.WebsocketNotConnectedException;
+import org.java_websocket.extensions.IExtension;
 import org.java_websocket.handshake.ClientHandshake;
+import org.java_websocket.protocols.IProtocol;
+import org.java_websocket.protocols.Protocol;
 import org.java_websocket.server.WebSocketServer;
 import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.data_management.RecordBatch;
+import com.data_management.VitalsBinaryCodec;
+import com.data_management.VitalsDeflateExtension;
+import com.data_management.VitalsLineParser;
+import com.data_management.VitalsMessageParser;
 
 /**
  * sends data to connected websocket clients,
- * this class starts a websocket server and broadcasts data to all connected clients
+ * this class starts a websocket server and broadcasts data to all connected clients.
+ * each reading is a json object with patientId, timestamp, recordType and value;
+ * with batching on, readings are collected and sent as one json array per frame.
+ * clients that ask for the binary subprotocol get {@link VitalsBinaryCodec} frames instead.
+ * every reading gets a sequence number, and the most recent ones are kept so a
+ * client that reconnects can send {@link VitalsMessageParser#replayRequest(long, long)}
+ * and get what it missed. sequence numbers start at 1 every time a server starts,
+ * so every reading and frame also carries the server's epoch, its start time,
+ * and replay requests for another epoch are turned down. with a
+ * {@link VitalsDeflateExtension} the server offers permessage-deflate, and
+ * clients that ask for it get larger frames compressed
  */
 public class WebSocketOutputStrategy implements OutputStrategy {
+    /** readings kept for replay by default */
+    public static final int DEFAULT_REPLAY_CAPACITY = 65_536;
+    // most readings per replayed frame
+    private static final int REPLAY_FRAME_SIZE = 1000;
+    // last epoch handed out, so servers started within the same millisecond still differ
+    private static final AtomicLong LAST_EPOCH = new AtomicLong();
+
     // the websocket server that handles client connections
     private final SimpleWebSocketServer server;
     // flag to track if server is running
     private volatile boolean isRunning;
+    // most readings per frame, 1 sends every reading on its own
+    private final int batchSize;
+    // turns the simulator's data text into numeric readings
+    private final VitalsLineParser parser = new VitalsLineParser();
+    // readings waiting for the next frame, guarded by this
+    private final RecordBatch pending = new RecordBatch();
+    private final VitalsBinaryCodec codec = new VitalsBinaryCodec();
+    private final StringBuilder json = new StringBuilder();
+    // tells this server's sequence numbers apart from those of earlier runs
+    private final long epoch = LAST_EPOCH.accumulateAndGet(System.currentTimeMillis(),
+        (last, now) -> Math.max(last + 1, now));
+    // sequence number of the next reading, guarded by this
+    private long nextSequence = 1;
+    // readings already sent, guarded by this
+    private final ReplayBuffer replayBuffer;
+    // sends unfinished batches after the batch delay
+    private ScheduledExecutorService flusher;
 
     /**
      * creates a new websocket server on the given port
@@ -24,8 +75,63 @@ public class WebSocketOutputStrategy implements OutputStrategy {
      * @param port the port number to listen on
      */
     public WebSocketOutputStrategy(int port) {
-        this.server = new SimpleWebSocketServer(port);
+        this(port, 1, 0);
+    }
+
+    /**
+     * creates a new websocket server on the given port that sends readings in batches
+     *
+     * @param port the port number to listen on
+     * @param batchSize most readings per frame, 1 turns batching off
+     * @param batchDelayMs longest a reading waits for its batch to fill up, in milliseconds
+     */
+    public WebSocketOutputStrategy(int port, int batchSize, long batchDelayMs) {
+        this(port, batchSize, batchDelayMs, DEFAULT_REPLAY_CAPACITY);
+    }
+
+    /**
+     * creates a new websocket server on the given port that sends readings in batches
+     * and keeps the given number of readings for replay
+     *
+     * @param port the port number to listen on
+     * @param batchSize most readings per frame, 1 turns batching off
+     * @param batchDelayMs longest a reading waits for its batch to fill up, in milliseconds
+     * @param replayCapacity most readings kept for clients that reconnect
+     */
+    public WebSocketOutputStrategy(int port, int batchSize, long batchDelayMs, int replayCapacity) {
+        this(port, batchSize, batchDelayMs, replayCapacity, null);
+    }
+
+    /**
+     * creates a new websocket server on the given port that sends readings in batches,
+     * keeps the given number of readings for replay and can compress its frames
+     *
+     * @param port the port number to listen on
+     * @param batchSize most readings per frame, 1 turns batching off
+     * @param batchDelayMs longest a reading waits for its batch to fill up, in milliseconds
+     * @param replayCapacity most readings kept for clients that reconnect
+     * @param compression permessage-deflate settings offered to clients, null to send uncompressed
+     */
+    public WebSocketOutputStrategy(int port, int batchSize, long batchDelayMs, int replayCapacity,
+            VitalsDeflateExtension compression) {
+        if (batchSize < 1) {
+            throw new IllegalArgumentException("Batch size must be at least 1");
+        }
+        if (batchSize > 1 && batchDelayMs <= 0) {
+            throw new IllegalArgumentException("Batching needs a positive batch delay");
+        }
+        this.batchSize = batchSize;
+        this.replayBuffer = new ReplayBuffer(replayCapacity);
+        this.server = new SimpleWebSocketServer(port, compression);
         startServer();
+        if (batchSize > 1) {
+            flusher = Executors.newSingleThreadScheduledExecutor(r -> {
+                Thread thread = new Thread(r, "websocket-batch-flusher");
+                thread.setDaemon(true);
+                return thread;
+            });
+            flusher.scheduleAtFixedRate(this::flush, batchDelayMs, batchDelayMs, TimeUnit.MILLISECONDS);
+        }
     }
 
     // starts the websocket server
@@ -39,7 +145,9 @@ public class WebSocketOutputStrategy implements OutputStrategy {
     }
 
     /**
-     * sends data to all connected clients
+     * sends data to all connected clients, right away or with the next batch.
+     * data that isn't a plain number, like "97.0%" or the blood levels, is
+     * turned into numeric readings first so every message is valid json
      * 
      * @param patientId Id of the patient
      * @param timestamp When the data was recorded
@@ -47,41 +155,179 @@ public class WebSocketOutputStrategy implements OutputStrategy {
      * @param data The actual measurement value
      */
     @Override
-    public void output(int patientId, long timestamp, String label, String data) {
+    public synchronized void output(int patientId, long timestamp, String label, String data) {
         if (!isRunning) {
             return;
         }
 
-        // make a json message with the data
-        String message = String.format(
-            "{\"patientId\":%d,\"timestamp\":%d,\"recordType\":\"%s\",\"value\":%s}",
-            patientId, timestamp, label, data
-        );
+        try {
+            parser.parsePayload(patientId, timestamp, label, data, this::append);
+        } catch (IllegalArgumentException e) {
+            System.err.println("Skipping reading that can't be sent: " + e.getMessage());
+        }
+        if (pending.size() >= batchSize) {
+            sendPending();
+        }
+    }
+
+    // adds one reading to the pending frame, json can't carry NaN or infinity
+    private void append(int patientId, double value, String recordType, long timestamp) {
+        if (!Double.isNaN(value) && !Double.isInfinite(value)) {
+            pending.addPatientData(nextSequence++, patientId, value, recordType, timestamp);
+        }
+    }
+
+    /**
+     * sends the readings waiting in an unfinished batch
+     */
+    public synchronized void flush() {
+        sendPending();
+    }
+
+    // sends the pending readings to every client in the format it negotiated,
+    // then keeps them for replay even if no client was connected
+    private void sendPending() {
+        if (pending.isEmpty()) {
+            return;
+        }
+        ByteBuffer binary = null;
+        String text = null;
+        for (WebSocket conn : server.connections) {
+            if (!conn.isOpen()) {
+                continue;
+            }
+            try {
+                if (isBinary(conn)) {
+                    if (binary == null) {
+                        try {
+                            binary = codec.encode(pending, epoch);
+                        } catch (IllegalArgumentException e) {
+                            System.err.println("Skipping batch that can't be sent as binary: " + e.getMessage());
+                            continue;
+                        }
+                    }
+                    conn.send(binary.duplicate());
+                } else if (batchSize > 1) {
+                    if (text == null) {
+                        text = toJson(pending, 0, pending.size(), true);
+                    }
+                    conn.send(text);
+                } else {
+                    // readings that expand into several, like blood levels, still go one per frame
+                    for (int i = 0; i < pending.size(); i++) {
+                        conn.send(toJson(pending, i, i + 1, false));
+                    }
+                }
+            } catch (WebsocketNotConnectedException e) {
+                // closed since the check, the client asks for a replay when it is back
+            }
+        }
+        replayBuffer.addAll(pending);
+        pending.clear();
+    }
+
+    // sends a reconnected client the kept readings from the given sequence number on
+    private synchronized void replay(WebSocket conn, VitalsMessageParser.ReplayRequest request) {
+        if (request.getEpoch() != epoch) {
+            // the numbers are from another run of the server, they don't match ours
+            System.err.println("Turning down replay request for epoch " + request.getEpoch() + " from "
+                + conn.getRemoteSocketAddress() + ", this server's epoch is " + epoch);
+            return;
+        }
+        long fromSequence = request.getFromSequence();
+        long oldest = replayBuffer.getOldestSequence();
+        if (oldest > fromSequence) {
+            System.err.println("Readings " + fromSequence + " to " + (oldest - 1)
+                + " are no longer kept, replaying from " + oldest);
+        }
+        RecordBatch chunk = new RecordBatch(REPLAY_FRAME_SIZE);
+        long next = fromSequence;
+        int replayed = 0;
+        int copied;
+        try {
+            while (conn.isOpen() && (copied = replayBuffer.copy(next, REPLAY_FRAME_SIZE, chunk)) > 0) {
+                next = chunk.getSequence(copied - 1) + 1;
+                if (isBinary(conn)) {
+                    conn.send(codec.encode(chunk, epoch));
+                } else {
+                    conn.send(toJson(chunk, 0, copied, true));
+                }
+                replayed += copied;
+                chunk.clear();
+            }
+        } catch (WebsocketNotConnectedException e) {
+            // closed during the replay, the client asks again from what it got
+        }
+        System.out.println("Replayed " + replayed + " readings to " + conn.getRemoteSocketAddress());
+    }
+
+    // writes readings as a json object, or as an array
+    private String toJson(RecordBatch batch, int from, int to, boolean asArray) {
+        json.setLength(0);
+        if (asArray) {
+            json.append('[');
+        }
+        for (int i = from; i < to; i++) {
+            if (i > from) {
+                json.append(',');
+            }
+            json.append("{\"epoch\":").append(epoch)
+                .append(",\"seq\":").append(batch.getSequence(i))
+                .append(",\"patientId\":").append(batch.getPatientId(i))
+                .append(",\"timestamp\":").append(batch.getTimestamp(i))
+                .append(",\"recordType\":\"");
+            String recordType = batch.getRecordType(i);
+            for (int c = 0; c < recordType.length(); c++) {
+                char ch = recordType.charAt(c);
+                if (ch == '"' || ch == '\\') {
+                    json.append('\\');
+                }
+                json.append(ch);
+            }
+            json.append("\",\"value\":").append(batch.getMeasurementValue(i)).append('}');
+        }
+        if (asArray) {
+            json.append(']');
+        }
+        return json.toString();
+    }
 
-        // send to all clients
-        server.broadcast(message);
+    /**
+     * checks whether a client negotiated binary frames
+     */
+    private static boolean isBinary(WebSocket conn) {
+        IProtocol protocol = conn.getProtocol();
+        return protocol != null && VitalsBinaryCodec.PROTOCOL.equals(protocol.getProvidedProtocol());
     }
 
     /**
      * internal server class that handles websocket connections
+     * and replay requests from clients
      */
-    private static class SimpleWebSocketServer extends WebSocketServer {
+    private class SimpleWebSocketServer extends WebSocketServer {
         // keeps track of all connected clients
         private final Set<WebSocket> connections;
 
         /**
-         * creates server on specified port
+         * creates server on specified port, offering the binary subprotocol
+         * and plain json for clients that don't ask for it, and compression
+         * if it is given
          */
-        public SimpleWebSocketServer(int port) {
-            super(new InetSocketAddress(port));
+        public SimpleWebSocketServer(int port, VitalsDeflateExtension compression) {
+            super(new InetSocketAddress(port), Collections.singletonList(new Draft_6455(
+                compression == null ? Collections.<IExtension>emptyList() : Collections.<IExtension>singletonList(compression),
+                Arrays.asList(new Protocol(VitalsBinaryCodec.PROTOCOL), new Protocol("")))));
             this.connections = Collections.newSetFromMap(new ConcurrentHashMap<>());
+            // a restarted server can bind while old connections are still closing
+            setReuseAddr(true);
         }
 
         @Override
         public void onOpen(WebSocket conn, ClientHandshake handshake) {
             // add new client to our list
             connections.add(conn);
-            System.out.println("New connection from " + conn.getRemoteSocketAddress());
+            System.out.println("New " + (isBinary(conn) ? "binary" : "json") + " connection from "
+                + conn.getRemoteSocketAddress());
         }
 
         @Override
@@ -93,6 +339,11 @@ public class WebSocketOutputStrategy implements OutputStrategy {
 
         @Override
         public void onMessage(WebSocket conn, String message) {
+            // the only thing clients send is a replay request after reconnecting
+            VitalsMessageParser.ReplayRequest request = VitalsMessageParser.parseReplayRequest(message);
+            if (request != null) {
+                replay(conn, request);
+            }
         }
 
         @Override
@@ -110,21 +361,13 @@ public class WebSocketOutputStrategy implements OutputStrategy {
 
             System.out.println("WebSocket server started successfully");
         }
+    }
 
-        /**
-         * sends a message to all connected clients
-         */
-        public void broadcast(String message) {
-            synchronized (connections) {
-                // loop through all clients and send message
-                for (WebSocket conn : connections) {
-                    if (conn.isOpen()) {
-
-                        conn.send(message);
-                    }
-                }
-            }
-        }
+    /**
+     * gets the epoch this server's readings are numbered in
+     */
+    public long getEpoch() {
+        return epoch;
     }
 
     /**
@@ -132,6 +375,10 @@ public class WebSocketOutputStrategy implements OutputStrategy {
      */
     public void stop() {
         isRunning = false; 
+        if (flusher != null) {
+            flusher.shutdown();
+            flush();
+        }
         if (server != null ) {
             try {
                 server.stop();
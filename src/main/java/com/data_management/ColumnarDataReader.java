@@ -0,0 +1,213 @@
+package com.data_management;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Reads a file in the {@link ColumnarFormat}. The data section is memory mapped
+ * once and only the index is read up front; blocks whose time range lies outside
+ * the requested one, or that belong to other patients, are never touched.
+ */
+public class ColumnarDataReader implements DataReader {
+    private final Path file;
+    private final long startTime;
+    private final long endTime;
+    // what the last read found, for report()
+    private int recordsRead;
+    private int blocksRead;
+    private int blockCount;
+
+    /**
+     * Creates a reader for every record in the file.
+     *
+     * @param filePath the columnar file
+     */
+    public ColumnarDataReader(String filePath) {
+        this(filePath, Long.MIN_VALUE, Long.MAX_VALUE);
+    }
+
+    /**
+     * Creates a reader for the records in a time range.
+     *
+     * @param filePath  the columnar file
+     * @param startTime first timestamp to read, inclusive
+     * @param endTime   last timestamp to read, inclusive
+     */
+    public ColumnarDataReader(String filePath, long startTime, long endTime) {
+        if (startTime > endTime) {
+            throw new IllegalArgumentException("Start time is after end time");
+        }
+        this.file = Paths.get(filePath);
+        this.startTime = startTime;
+        this.endTime = endTime;
+    }
+
+    @Override
+    public void readData(DataStorage dataStorage) throws IOException {
+        read(dataStorage, null);
+    }
+
+    /**
+     * Reads the records of a single patient.
+     *
+     * @param sink      where the records go
+     * @param patientId the patient to read
+     * @return the number of records read
+     * @throws IOException if the file can't be read or is not a columnar file
+     */
+    public int readPatientData(PatientDataSink sink, int patientId) throws IOException {
+        return read(sink, patientId);
+    }
+
+    /**
+     * Returns a one line summary of the last read.
+     */
+    public String report() {
+        return "read " + recordsRead + " records from " + blocksRead + " of " + blockCount + " blocks in " + file;
+    }
+
+    private int read(PatientDataSink sink, Integer patientId) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            List<BlockEntry> index = readIndex(channel);
+            long dataEnd = 0;
+            for (BlockEntry entry : index) {
+                dataEnd = Math.max(dataEnd, entry.offset + entry.length);
+            }
+            // the data section, mapped once; only a file past 2 GB needs another mapping
+            MappedByteBuffer data = null;
+            long dataStart = 0;
+            recordsRead = 0;
+            blocksRead = 0;
+            blockCount = index.size();
+            for (BlockEntry entry : index) {
+                if (entry.maxTimestamp < startTime || entry.minTimestamp > endTime
+                        || (patientId != null && entry.patientId != patientId)) {
+                    continue;
+                }
+                if (data == null || entry.offset < dataStart || entry.offset + entry.length > dataStart + data.capacity()) {
+                    dataStart = entry.offset;
+                    data = channel.map(FileChannel.MapMode.READ_ONLY, dataStart,
+                            Math.min(dataEnd - dataStart, Integer.MAX_VALUE));
+                }
+                ByteBuffer block = data.duplicate();
+                block.position((int) (entry.offset - dataStart));
+                block.limit(block.position() + entry.length);
+                block = block.slice();
+                checkBlockHeader(block, entry);
+                try {
+                    recordsRead += ColumnarFormat.decodeBlock(block, startTime, endTime, sink);
+                } catch (IllegalArgumentException e) {
+                    throw new IOException("Corrupt block at offset " + entry.offset + " in " + file + ": "
+                            + e.getMessage(), e);
+                }
+                if (block.hasRemaining()) {
+                    throw new IOException("Block at offset " + entry.offset + " in " + file + " has "
+                            + block.remaining() + " bytes after its last row");
+                }
+                blocksRead++;
+            }
+            return recordsRead;
+        }
+    }
+
+    // the block has to be the one the index describes
+    private void checkBlockHeader(ByteBuffer block, BlockEntry entry) throws IOException {
+        if (block.remaining() < 2 * Integer.BYTES) {
+            throw new IOException("Corrupt block at offset " + entry.offset + " in " + file + ": too short");
+        }
+        int patientId = block.getInt(0);
+        int rowCount = block.getInt(Integer.BYTES);
+        if (patientId != entry.patientId || rowCount != entry.rowCount) {
+            throw new IOException("Block at offset " + entry.offset + " in " + file + " holds " + rowCount
+                    + " rows of patient " + patientId + " but the index says " + entry.rowCount + " rows of patient "
+                    + entry.patientId);
+        }
+    }
+
+    /**
+     * Reads the footer and the block index at the end of the file.
+     */
+    private List<BlockEntry> readIndex(FileChannel channel) throws IOException {
+        long size = channel.size();
+        if (size < ColumnarFormat.HEADER_SIZE + ColumnarFormat.FOOTER_SIZE) {
+            throw new IOException(file + " is too short to be a columnar file");
+        }
+
+        ByteBuffer header = readFully(channel, 0, ColumnarFormat.HEADER_SIZE);
+        if (header.getInt() != ColumnarFormat.MAGIC) {
+            throw new IOException(file + " is not a columnar file");
+        }
+        short version = header.getShort();
+        if (version != ColumnarFormat.VERSION) {
+            throw new IOException("Unsupported columnar file version " + version + " in " + file);
+        }
+
+        ByteBuffer footer = readFully(channel, size - ColumnarFormat.FOOTER_SIZE, ColumnarFormat.FOOTER_SIZE);
+        long indexOffset = footer.getLong();
+        if (footer.getInt() != ColumnarFormat.MAGIC) {
+            // the writer never closed the file, so there is no index
+            throw new IOException(file + " has no index, it was not closed properly");
+        }
+        long indexLength = size - ColumnarFormat.FOOTER_SIZE - indexOffset;
+        if (indexOffset < ColumnarFormat.HEADER_SIZE || indexLength < Integer.BYTES
+                || indexLength > Integer.MAX_VALUE) {
+            throw new IOException("Bad index offset " + indexOffset + " in " + file);
+        }
+
+        ByteBuffer index = readFully(channel, indexOffset, (int) indexLength);
+        int blockCount = index.getInt();
+        if (blockCount < 0 || (long) blockCount * ColumnarFormat.INDEX_ENTRY_SIZE != indexLength - Integer.BYTES) {
+            throw new IOException("Bad block count " + blockCount + " in " + file);
+        }
+        List<BlockEntry> entries = new ArrayList<>(blockCount);
+        for (int i = 0; i < blockCount; i++) {
+            BlockEntry entry = new BlockEntry(index.getInt(), index.getLong(), index.getLong(), index.getLong(),
+                    index.getInt(), index.getInt());
+            if (entry.offset < ColumnarFormat.HEADER_SIZE || entry.offset + entry.length > indexOffset) {
+                throw new IOException("Block " + i + " lies outside the data section of " + file);
+            }
+            entries.add(entry);
+        }
+        return entries;
+    }
+
+    private static ByteBuffer readFully(FileChannel channel, long position, int length) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(length);
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer, position + buffer.position()) < 0) {
+                throw new EOFException("Unexpected end of file");
+            }
+        }
+        buffer.flip();
+        return buffer;
+    }
+
+    /**
+     * One entry of the block index.
+     */
+    private static class BlockEntry {
+        final int patientId;
+        final long minTimestamp;
+        final long maxTimestamp;
+        final long offset;
+        final int length;
+        final int rowCount;
+
+        BlockEntry(int patientId, long minTimestamp, long maxTimestamp, long offset, int length, int rowCount) {
+            this.patientId = patientId;
+            this.minTimestamp = minTimestamp;
+            this.maxTimestamp = maxTimestamp;
+            this.offset = offset;
+            this.length = length;
+            this.rowCount = rowCount;
+        }
+    }
+}
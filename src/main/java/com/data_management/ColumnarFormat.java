@@ -0,0 +1,288 @@
+package com.data_management;
+
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * The binary columnar vitals file format, shared by {@link ColumnarDataReader}
+ * and the simulator's columnar output.
+ *
+ * <pre>
+ * file   := header block* index footer
+ * header := int magic, short version, short reserved
+ * block  := int patientId, int rowCount,
+ *           byte typeCount, (short length, utf8 name)*     record type dictionary
+ *           long firstTimestamp, varint zigzag delta*       timestamps
+ *           byte typeIndex*                                 only if typeCount &gt; 1
+ *           byte encoding, values                           raw doubles or XOR compressed
+ * index  := int blockCount, (int patientId, long minTs, long maxTs, long offset, int length, int rowCount)*
+ * footer := long indexOffset, int magic
+ * </pre>
+ *
+ * Each block holds rows of a single patient. XOR compressed values store each
+ * value's bits XORed with the previous value as a trailing zero count plus a varint,
+ * which suits slowly changing vitals. All numbers are big endian.
+ */
+public final class ColumnarFormat {
+    /** "VCOL" */
+    public static final int MAGIC = 0x56434F4C;
+    public static final short VERSION = 1;
+    public static final int HEADER_SIZE = 8;
+    public static final int FOOTER_SIZE = 12;
+    public static final int INDEX_ENTRY_SIZE = 36;
+    /** Rows a writer collects for one patient before it writes a block. */
+    public static final int DEFAULT_BLOCK_ROWS = 4096;
+    public static final int MAX_TYPES_PER_BLOCK = 255;
+
+    static final byte ENCODING_RAW = 0;
+    static final byte ENCODING_XOR = 1;
+    private static final int XOR_REPEAT = 0x80;
+
+    private ColumnarFormat() {
+    }
+
+    /**
+     * Collects the rows of one patient until they are encoded as a block.
+     * Not thread safe.
+     */
+    public static class BlockBuilder {
+        private final int patientId;
+        private final int capacity;
+        private final long[] timestamps;
+        private final byte[] typeIndexes;
+        private final double[] values;
+        private final String[] types = new String[MAX_TYPES_PER_BLOCK];
+        private int typeCount;
+        private int rowCount;
+        private long minTimestamp = Long.MAX_VALUE;
+        private long maxTimestamp = Long.MIN_VALUE;
+
+        /**
+         * @param patientId the patient whose rows go into this block
+         * @param capacity  the most rows the block holds
+         */
+        public BlockBuilder(int patientId, int capacity) {
+            this.patientId = patientId;
+            this.capacity = capacity;
+            this.timestamps = new long[capacity];
+            this.typeIndexes = new byte[capacity];
+            this.values = new double[capacity];
+        }
+
+        /**
+         * Adds a row.
+         *
+         * @return false if the block is full, or has no room for another record type
+         */
+        public boolean add(long timestamp, String recordType, double value) {
+            if (rowCount == capacity) {
+                return false;
+            }
+            int typeIndex = indexOfType(recordType);
+            if (typeIndex < 0) {
+                if (typeCount == MAX_TYPES_PER_BLOCK) {
+                    return false;
+                }
+                typeIndex = typeCount;
+                types[typeCount++] = recordType;
+            }
+            timestamps[rowCount] = timestamp;
+            typeIndexes[rowCount] = (byte) typeIndex;
+            values[rowCount] = value;
+            rowCount++;
+            minTimestamp = Math.min(minTimestamp, timestamp);
+            maxTimestamp = Math.max(maxTimestamp, timestamp);
+            return true;
+        }
+
+        private int indexOfType(String recordType) {
+            for (int i = 0; i < typeCount; i++) {
+                // record types usually come from the same String constants
+                if (types[i] == recordType || types[i].equals(recordType)) {
+                    return i;
+                }
+            }
+            return -1;
+        }
+
+        public int getPatientId() {
+            return patientId;
+        }
+
+        public int getRowCount() {
+            return rowCount;
+        }
+
+        public long getMinTimestamp() {
+            return minTimestamp;
+        }
+
+        public long getMaxTimestamp() {
+            return maxTimestamp;
+        }
+
+        /**
+         * Encodes the collected rows at the buffer's position.
+         *
+         * @param out buffer with enough room, see {@link #maxEncodedSize()}
+         */
+        public void encode(ByteBuffer out) {
+            out.putInt(patientId);
+            out.putInt(rowCount);
+
+            out.put((byte) typeCount);
+            for (int i = 0; i < typeCount; i++) {
+                byte[] name = types[i].getBytes(StandardCharsets.UTF_8);
+                out.putShort((short) name.length);
+                out.put(name);
+            }
+
+            out.putLong(timestamps[0]);
+            for (int i = 1; i < rowCount; i++) {
+                long delta = timestamps[i] - timestamps[i - 1];
+                putVarLong(out, (delta << 1) ^ (delta >> 63));
+            }
+
+            if (typeCount > 1) {
+                out.put(typeIndexes, 0, rowCount);
+            }
+
+            int encodingPosition = out.position();
+            out.put(ENCODING_XOR);
+            long previous = 0;
+            for (int i = 0; i < rowCount; i++) {
+                long bits = Double.doubleToRawLongBits(values[i]);
+                long xor = bits ^ previous;
+                previous = bits;
+                if (xor == 0) {
+                    out.put((byte) XOR_REPEAT);
+                } else {
+                    int trailingZeros = Long.numberOfTrailingZeros(xor);
+                    out.put((byte) trailingZeros);
+                    putVarLong(out, xor >>> trailingZeros);
+                }
+            }
+
+            if (out.position() - encodingPosition - 1 >= rowCount * Double.BYTES) {
+                // values too noisy to compress, store them raw
+                out.position(encodingPosition);
+                out.put(ENCODING_RAW);
+                for (int i = 0; i < rowCount; i++) {
+                    out.putDouble(values[i]);
+                }
+            }
+        }
+
+        /**
+         * Returns an upper bound of the encoded block size.
+         */
+        public int maxEncodedSize() {
+            int size = 9 + 8 + rowCount * (10 + 1 + 11) + 1;
+            for (int i = 0; i < typeCount; i++) {
+                size += 2 + types[i].length() * 3;
+            }
+            return size;
+        }
+
+        /**
+         * Empties the block so it can be filled again.
+         */
+        public void clear() {
+            Arrays.fill(types, 0, typeCount, null);
+            typeCount = 0;
+            rowCount = 0;
+            minTimestamp = Long.MAX_VALUE;
+            maxTimestamp = Long.MIN_VALUE;
+        }
+    }
+
+    /**
+     * Decodes a block and hands the rows within the time range to the sink.
+     *
+     * @param block     buffer positioned at the start of the block
+     * @param startTime first timestamp to keep, inclusive
+     * @param endTime   last timestamp to keep, inclusive
+     * @param sink      where the rows go
+     * @return the number of rows handed to the sink
+     * @throws IllegalArgumentException if the block is corrupt
+     */
+    public static int decodeBlock(ByteBuffer block, long startTime, long endTime, PatientDataSink sink) {
+        try {
+            int patientId = block.getInt();
+            int rowCount = block.getInt();
+            if (rowCount <= 0) {
+                throw new IllegalArgumentException("Bad row count " + rowCount);
+            }
+
+            int typeCount = block.get() & 0xFF;
+            String[] types = new String[typeCount];
+            for (int i = 0; i < typeCount; i++) {
+                byte[] name = new byte[block.getShort() & 0xFFFF];
+                block.get(name);
+                types[i] = new String(name, StandardCharsets.UTF_8).intern();
+            }
+
+            long[] timestamps = new long[rowCount];
+            timestamps[0] = block.getLong();
+            for (int i = 1; i < rowCount; i++) {
+                long zigzag = getVarLong(block);
+                timestamps[i] = timestamps[i - 1] + ((zigzag >>> 1) ^ -(zigzag & 1));
+            }
+
+            int typesPosition = block.position();
+            if (typeCount > 1) {
+                block.position(typesPosition + rowCount);
+            }
+
+            byte encoding = block.get();
+            int emitted = 0;
+            long previous = 0;
+            for (int i = 0; i < rowCount; i++) {
+                double value;
+                if (encoding == ENCODING_RAW) {
+                    value = block.getDouble();
+                } else if (encoding == ENCODING_XOR) {
+                    int control = block.get() & 0xFF;
+                    if (control != XOR_REPEAT) {
+                        previous ^= getVarLong(block) << control;
+                    }
+                    value = Double.longBitsToDouble(previous);
+                } else {
+                    throw new IllegalArgumentException("Unknown value encoding " + encoding);
+                }
+
+                long timestamp = timestamps[i];
+                if (timestamp >= startTime && timestamp <= endTime) {
+                    String type = typeCount == 1 ? types[0] : types[block.get(typesPosition + i) & 0xFF];
+                    sink.addPatientData(patientId, value, type, timestamp);
+                    emitted++;
+                }
+            }
+            return emitted;
+        } catch (BufferUnderflowException | IndexOutOfBoundsException e) {
+            throw new IllegalArgumentException("Truncated block", e);
+        }
+    }
+
+    static void putVarLong(ByteBuffer out, long value) {
+        while ((value & ~0x7FL) != 0) {
+            out.put((byte) ((value & 0x7F) | 0x80));
+            value >>>= 7;
+        }
+        out.put((byte) value);
+    }
+
+    static long getVarLong(ByteBuffer in) {
+        long value = 0;
+        for (int shift = 0; shift < 64; shift += 7) {
+            byte b = in.get();
+            value |= (long) (b & 0x7F) << shift;
+            if (b >= 0) {
+                return value;
+            }
+        }
+        throw new IllegalArgumentException("Varint too long");
+    }
+}
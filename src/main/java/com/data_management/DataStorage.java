@@ -1,32 +1,51 @@
 package com.data_management;
 
 import java.util.ArrayList;
-import java.util.HashMap;
+import java.util.Arrays;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ForkJoinPool;
 import java.io.IOException;
 
 import com.alerts.AlertGenerator;
 import com.alerts.AlertManager;
+import com.alerts.AlertScheduler;
 import com.alerts.thresholds.PatientThresholdProfile;
 
 /**
  * Manages storage and retrieval of patient data within a healthcare monitoring
  * system using the Singleton pattern.
  * This class serves as a repository for all patient records, organized by
- * patient IDs.
+ * patient IDs. It is thread safe, so readers on several threads can store data
+ * while the alert system reads it. {@link PatientDataListener}s are told about
+ * every patient that got new data.
  */
-public class DataStorage {
+public class DataStorage implements PatientDataSink {
     private Map<Integer, Patient> patientMap; // Stores patient objects indexed by their unique patient ID.
     private static DataStorage instance;
     private static final Object LOCK = new Object();
+    // how to start main, printed when the arguments are missing or wrong
+    private static final String USAGE = "Use --input=<directory> [--follow] [--checkpoint=<file>] for file input,"
+        + " --columnar=<file> for a columnar file,"
+        + " --websocket=<url>[,<url>...] for WebSocket connections"
+        + " (add --deflate=<level>[:<threshold>] to offer compression)"
+        + " or --tcp=[<host>:]<port> to connect to or listen for TCP producers,"
+        + " or --replay=<directory> [--speed=<factor>] to replay recorded files in time order"
+        + " (speed 0 is as fast as possible)."
+        + " --eval-threads=<n> evaluates alerts on n threads instead of one per core,"
+        + " --event-driven evaluates a patient as soon as its data arrives"
+        + " instead of every second or once at the end,"
+        + " --alert-dedup-minutes=<n> forgets alerts for duplicate checks after n minutes (60 by default).";
+    private final List<PatientDataListener> listeners = new CopyOnWriteArrayList<>();
 
     /**
      * Private constructor to prevent direct instantiation.
      * Initializes the underlying storage structure.
      */
     private DataStorage() {
-        this.patientMap = new HashMap<>();
+        this.patientMap = new ConcurrentHashMap<>();
     }
 
     /**
@@ -59,13 +78,69 @@ public class DataStorage {
      * @param timestamp        the time at which the measurement was taken, in
      *                         milliseconds since the Unix epoch
      */
+    @Override
     public void addPatientData(int patientId, double measurementValue, String recordType, long timestamp) {
+        Patient patient = getOrCreatePatient(patientId);
+        patient.addRecord(measurementValue, recordType, timestamp);
+        notifyListeners(patient);
+    }
+
+    private Patient getOrCreatePatient(int patientId) {
         Patient patient = patientMap.get(patientId);
         if (patient == null) {
-            patient = new Patient(patientId);
-            patientMap.put(patientId, patient);
+            patient = patientMap.computeIfAbsent(patientId, Patient::new);
         }
-        patient.addRecord(measurementValue, recordType, timestamp);
+        return patient;
+    }
+
+    /**
+     * Adds all measurements of a batch. Consecutive measurements of the same
+     * patient, the common case for batched messages, share one patient lookup
+     * and are added under one lock.
+     *
+     * @param batch the measurements to add
+     */
+    public void addBatch(RecordBatch batch) {
+        int from = 0;
+        while (from < batch.size()) {
+            int patientId = batch.getPatientId(from);
+            int to = from + 1;
+            while (to < batch.size() && batch.getPatientId(to) == patientId) {
+                to++;
+            }
+            Patient patient = getOrCreatePatient(patientId);
+            patient.addRecords(batch, from, to);
+            notifyListeners(patient);
+            from = to;
+        }
+    }
+
+    private void notifyListeners(Patient patient) {
+        for (PatientDataListener listener : listeners) {
+            try {
+                listener.dataAdded(patient);
+            } catch (RuntimeException e) {
+                System.err.println("Error notifying data listener: " + e.getMessage());
+            }
+        }
+    }
+
+    /**
+     * Adds a listener that is told about every patient that gets new data.
+     *
+     * @param listener the listener to add
+     */
+    public void addListener(PatientDataListener listener) {
+        listeners.add(listener);
+    }
+
+    /**
+     * Removes a data listener.
+     *
+     * @param listener the listener to remove
+     */
+    public void removeListener(PatientDataListener listener) {
+        listeners.remove(listener);
     }
 
     /**
@@ -131,6 +206,35 @@ public class DataStorage {
         patientMap.remove(patientId);
     }
 
+    /**
+     * Reads the whole number after an option's prefix, or ends the program with
+     * the usage message if it is not a number in the given range.
+     */
+    private static long parseNumber(String arg, String prefix, long min, long max) {
+        long value;
+        try {
+            value = Long.parseLong(arg.substring(prefix.length()));
+        } catch (NumberFormatException e) {
+            throw usageError(arg, "not a whole number");
+        }
+        if (value < min || value > max) {
+            throw usageError(arg, "must be " + min + " to " + max);
+        }
+        return value;
+    }
+
+    /**
+     * Prints what is wrong with an argument and the usage message, and ends the
+     * program. Declared to return an exception so callers can throw it and the
+     * compiler knows the code after it is not reached.
+     */
+    private static IllegalStateException usageError(String arg, String problem) {
+        System.err.println("Invalid argument " + arg + ": " + problem);
+        System.out.println(USAGE);
+        System.exit(1);
+        return new IllegalStateException(problem);
+    }
+
     /**
      * The main method for the DataStorage class.
      * Initializes the system, reads data into storage, and continuously monitors
@@ -140,20 +244,22 @@ public class DataStorage {
      */
     public static void main(String[] args) {
         DataStorage storage = DataStorage.getInstance();
-        AlertManager alertManager = new AlertManager();
-        
-        // Example alert listener implementation to handle alerts
-        alertManager.addListener(alert -> {
-            System.out.println("ALERT RECEIVED: " + alert.getDescription());
-            System.out.println("Patient ID: " + alert.getPatientId());
-            System.out.println("Alert Type: " + alert.getAlertType());
-            System.out.println("Timestamp: " + alert.getTimestamp());
-            System.out.println("------------------------------------");
-        });
 
         // Process command line arguments
         String dataDir = null;
         String wsUrl = null;
+        boolean follow = false;
+        String checkpointFile = null;
+        String columnarFile = null;
+        String tcpAddress = null;
+        String tcpHost = null;
+        int tcpPort = 0;
+        String replayDir = null;
+        double replaySpeed = 1;
+        VitalsDeflateExtension compression = null;
+        int evaluationThreads = 0;
+        boolean eventDriven = false;
+        long dedupHorizonMs = AlertManager.DEFAULT_DEDUP_HORIZON_MS;
         DataReader reader = null;
 
         for (String arg : args) {
@@ -161,43 +267,159 @@ public class DataStorage {
                 dataDir = arg.substring("--input=".length());
             } else if (arg.startsWith("--websocket=")) {
                 wsUrl = arg.substring("--websocket=".length());
+            } else if (arg.equals("--follow")) {
+                follow = true;
+            } else if (arg.startsWith("--checkpoint=")) {
+                checkpointFile = arg.substring("--checkpoint=".length());
+            } else if (arg.startsWith("--columnar=")) {
+                columnarFile = arg.substring("--columnar=".length());
+            } else if (arg.startsWith("--tcp=")) {
+                tcpAddress = arg.substring("--tcp=".length());
+                // just a port to listen for producers, or the host and port to connect to
+                int colon = tcpAddress.lastIndexOf(':');
+                tcpHost = colon < 0 ? null : tcpAddress.substring(0, colon);
+                String portPrefix = "--tcp=" + tcpAddress.substring(0, colon + 1);
+                tcpPort = (int) parseNumber(arg, portPrefix, 0, 65535);
+            } else if (arg.startsWith("--replay=")) {
+                replayDir = arg.substring("--replay=".length());
+            } else if (arg.startsWith("--deflate=")) {
+                try {
+                    compression = VitalsDeflateExtension.parse(arg.substring("--deflate=".length()));
+                } catch (IllegalArgumentException e) {
+                    throw usageError(arg, e.getMessage());
+                }
+            } else if (arg.equals("--event-driven")) {
+                eventDriven = true;
+            } else if (arg.startsWith("--eval-threads=")) {
+                // the most threads a ForkJoinPool takes
+                evaluationThreads = (int) parseNumber(arg, "--eval-threads=", 1, 32767);
+            } else if (arg.startsWith("--speed=")) {
+                try {
+                    replaySpeed = Double.parseDouble(arg.substring("--speed=".length()));
+                } catch (NumberFormatException e) {
+                    throw usageError(arg, "not a number");
+                }
+                if (!(replaySpeed >= 0) || Double.isInfinite(replaySpeed)) {
+                    throw usageError(arg, "must be 0 or a positive factor");
+                }
+            } else if (arg.startsWith("--alert-dedup-minutes=")) {
+                dedupHorizonMs = parseNumber(arg, "--alert-dedup-minutes=", 1, Long.MAX_VALUE / (60 * 1000)) * 60 * 1000;
             }
         }
 
+        AlertManager alertManager = new AlertManager(dedupHorizonMs);
+        
+        // Example alert listener implementation to handle alerts,
+        // printed at once as patients are evaluated in parallel
+        alertManager.addListener(alert -> System.out.println("ALERT RECEIVED: " + alert.getDescription()
+                + "\nPatient ID: " + alert.getPatientId()
+                + "\nAlert Type: " + alert.getAlertType()
+                + "\nTimestamp: " + alert.getTimestamp()
+                + "\n------------------------------------"));
+
         try {
-            if (wsUrl != null) {
-                reader = new WebSocketDataReader(wsUrl);
+            if (wsUrl != null && wsUrl.contains(",")) {
+                MultiWebSocketDataReader multiReader = new MultiWebSocketDataReader(Arrays.asList(wsUrl.split(",")));
+                multiReader.setCompression(compression);
+                reader = multiReader;
+                System.out.println("Connecting to WebSocket servers at: " + wsUrl);
+            } else if (wsUrl != null) {
+                WebSocketDataReader webSocketReader = new WebSocketDataReader(wsUrl);
+                webSocketReader.setCompression(compression);
+                reader = webSocketReader;
                 System.out.println("Connecting to WebSocket server at: " + wsUrl);
+            } else if (tcpAddress != null) {
+                if (tcpHost == null) {
+                    reader = new TcpDataReader(tcpPort);
+                } else {
+                    reader = new TcpDataReader(tcpHost, tcpPort);
+                    System.out.println("Connecting to TCP server at: " + tcpAddress);
+                }
+            } else if (replayDir != null) {
+                reader = new ReplayDataReader(replayDir, replaySpeed);
+                System.out.println("Replaying data from " + replayDir + " at "
+                        + (replaySpeed == 0 ? "full speed" : replaySpeed + "x"));
             } else if (dataDir != null) {
-                reader = new FileDataReader(dataDir);
-                System.out.println("Reading data from directory: " + dataDir);
+                FileDataReader fileReader = new FileDataReader(dataDir, follow);
+                if (checkpointFile != null) {
+                    fileReader.setCheckpointFile(checkpointFile);
+                    System.out.println("Resuming from checkpoints in: " + checkpointFile);
+                }
+                reader = fileReader;
+                System.out.println((follow ? "Following" : "Reading") + " data from directory: " + dataDir);
+            } else if (columnarFile != null) {
+                reader = new ColumnarDataReader(columnarFile);
+                System.out.println("Reading data from columnar file: " + columnarFile);
             } else {
-                System.out.println("No input source specified. Use --input=<directory> for file input or --websocket=<url> for WebSocket connection.");
+                System.out.println("No input source specified. " + USAGE);
                 System.exit(1);
             }
 
-            reader.readData(storage);
+            // initialize the AlertGenerator with the storag, patients are evaluated
+            // on the common fork-join pool unless a thread count is given
+            ForkJoinPool evaluationPool = evaluationThreads > 0 ? new ForkJoinPool(evaluationThreads)
+                    : ForkJoinPool.commonPool();
+            AlertGenerator alertGenerator = new AlertGenerator(storage, alertManager, evaluationPool);
+            boolean longRunning = wsUrl != null || tcpAddress != null || follow;
+            AlertScheduler scheduler = null;
+            if (eventDriven) {
+                // evaluate each patient as its data arrives, from the first reading on,
+                // a replay or one-shot read too so its alerts come out as they would live
+                scheduler = new AlertScheduler(storage, alertGenerator, evaluationPool);
+                scheduler.start();
+            }
 
-            // initialize the AlertGenerator with the storag
-            AlertGenerator alertGenerator = new AlertGenerator(storage, alertManager);
+            reader.readData(storage);
+            if (reader instanceof ReplayDataReader) {
+                System.out.println("Replay: " + ((ReplayDataReader) reader).report());
+            } else if (reader instanceof ColumnarDataReader) {
+                System.out.println("Columnar: " + ((ColumnarDataReader) reader).report());
+            }
 
-            // for WebSocket connections, keep the application running
-            if (wsUrl != null) {
-                System.out.println("WebSocket connection established. Waiting for real-time data...");
+            // for WebSocket connections and followed directories, keep the application running
+            if (longRunning) {
+                // a long running read ends with Ctrl+C, the error summary is printed then
+                Runtime.getRuntime().addShutdownHook(new Thread(
+                        () -> System.out.println(IngestErrors.getInstance().report()), "ingest-error-report"));
+                System.out.println(wsUrl != null || tcpAddress != null
+                        ? "Connection established. Waiting for real-time data..."
+                        : "Waiting for new data in " + dataDir + "...");
                 // Keep the main thread alive
-                while (true) {
+                for (int tick = 1; ; tick++) {
                     Thread.sleep(1000);
-                    // Evaluate  all patients' data periodically
-                    for (Patient  patient : storage.getAllPatients()) {
-                        alertGenerator.evaluateData(patient);
+                    if (reader instanceof WebSocketDataReader && tick % 10 == 0) {
+                        System.out.println("Ingest: " + ((WebSocketDataReader) reader).getPipeline().report());
+                    } else if (reader instanceof MultiWebSocketDataReader && tick % 10 == 0) {
+                        System.out.println(((MultiWebSocketDataReader) reader).report());
+                    } else if (reader instanceof TcpDataReader && tick % 10 == 0) {
+                        System.out.println("TCP: " + ((TcpDataReader) reader).report());
+                    }
+                    if (compression != null && tick % 10 == 0) {
+                        System.out.println("Compression: " + compression.getStats().report());
+                    }
+                    if (scheduler != null) {
+                        if (tick % 10 == 0) {
+                            System.out.println("Alerts: " + scheduler.report());
+                        }
+                    } else {
+                        // Evaluate  all patients' data periodically
+                        alertGenerator.evaluateAll(storage.getAllPatients());
                     }
                 }
             } 
             else {
-                // For file input, evaluate once and exit
-                for (Patient patient : storage.getAllPatients()) {
-                    alertGenerator.evaluateData(patient);
+                if (scheduler != null) {
+                    // let the evaluations of the last readings finish before the final pass
+                    scheduler.stop();
+                    while (!scheduler.isIdle()) {
+                        Thread.sleep(10);
+                    }
+                    System.out.println("Alerts: " + scheduler.report());
                 }
+                // For file input, evaluate once and exit, after an event driven read
+                // this only picks up what a scheduled evaluation missed
+                alertGenerator.evaluateAll(storage.getAllPatients());
+                System.out.println(IngestErrors.getInstance().report());
                 System.out.println("Data processing complete.");
             }
 
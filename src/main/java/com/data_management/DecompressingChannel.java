@@ -0,0 +1,179 @@
+package com.data_management;
+
+import java.io.BufferedInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.GZIPInputStream;
+
+/**
+ * Decompresses a .gz or .zst file on a background thread and hands out the
+ * decompressed bytes as a channel. A small bounded queue sits in between, so
+ * decompression runs ahead of parsing without holding the whole file in memory.
+ * Zstandard needs zstd-jni (com.github.luben:zstd-jni) on the classpath.
+ */
+class DecompressingChannel implements ReadableByteChannel {
+    private static final int CHUNK_SIZE = 64 * 1024;
+    private static final int QUEUED_CHUNKS = 16;
+    private static final ByteBuffer END = ByteBuffer.allocate(0);
+
+    private final Path file;
+    private final long skipBytes;
+    private final BlockingQueue<ByteBuffer> chunks = new ArrayBlockingQueue<>(QUEUED_CHUNKS);
+    private volatile boolean closed;
+    private volatile IOException failure;
+    private ByteBuffer current;
+
+    /**
+     * Starts decompressing the file on the executor.
+     *
+     * @param file      the compressed file
+     * @param skipBytes decompressed bytes to drop before the first chunk, to resume a partial read
+     * @param executor  where the decompression runs
+     */
+    DecompressingChannel(Path file, long skipBytes, Executor executor) {
+        this.file = file;
+        this.skipBytes = skipBytes;
+        executor.execute(this::decompress);
+    }
+
+    /**
+     * Checks whether a file name has a compression suffix this class can read.
+     */
+    static boolean isCompressed(Path file) {
+        String name = file.getFileName().toString();
+        return name.endsWith(".gz") || name.endsWith(".zst");
+    }
+
+    /**
+     * Returns the file name without its compression suffix.
+     */
+    static String stripCompressionSuffix(String name) {
+        if (name.endsWith(".gz")) {
+            return name.substring(0, name.length() - 3);
+        }
+        if (name.endsWith(".zst")) {
+            return name.substring(0, name.length() - 4);
+        }
+        return name;
+    }
+
+    private void decompress() {
+        try (InputStream in = open(file)) {
+            long toSkip = skipBytes;
+            while (toSkip > 0) {
+                long skipped = in.skip(toSkip);
+                if (skipped <= 0) {
+                    if (in.read() < 0) {
+                        throw new IOException("File is shorter than its checkpoint");
+                    }
+                    skipped = 1;
+                }
+                toSkip -= skipped;
+            }
+
+            while (!closed) {
+                byte[] chunk = new byte[CHUNK_SIZE];
+                int n = in.readNBytes(chunk, 0, CHUNK_SIZE);
+                if (n <= 0) {
+                    break;
+                }
+                enqueue(ByteBuffer.wrap(chunk, 0, n));
+            }
+        } catch (IOException e) {
+            failure = e;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            try {
+                enqueue(END);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    /**
+     * Waits for room in the queue, giving up once the reader has closed the channel.
+     */
+    private void enqueue(ByteBuffer chunk) throws InterruptedException {
+        while (!closed) {
+            if (chunks.offer(chunk, 100, TimeUnit.MILLISECONDS)) {
+                return;
+            }
+        }
+    }
+
+    /**
+     * Opens a decompressing stream for the file, picked by its suffix.
+     */
+    private static InputStream open(Path file) throws IOException {
+        InputStream raw = Files.newInputStream(file);
+        try {
+            if (file.getFileName().toString().endsWith(".gz")) {
+                return new GZIPInputStream(raw, CHUNK_SIZE);
+            }
+            return openZstd(new BufferedInputStream(raw, CHUNK_SIZE));
+        } catch (IOException | RuntimeException e) {
+            raw.close();
+            throw e;
+        }
+    }
+
+    private static InputStream openZstd(InputStream raw) throws IOException {
+        try {
+            Class<?> type = Class.forName("com.github.luben.zstd.ZstdInputStream");
+            return (InputStream) type.getConstructor(InputStream.class).newInstance(raw);
+        } catch (ClassNotFoundException e) {
+            throw new IOException("Reading .zst files needs zstd-jni on the classpath");
+        } catch (ReflectiveOperationException e) {
+            throw new IOException("Could not open zstd stream: " + e.getMessage(), e);
+        }
+    }
+
+    @Override
+    public int read(ByteBuffer dst) throws IOException {
+        if (closed) {
+            throw new ClosedChannelException();
+        }
+        if (current == null || (current != END && !current.hasRemaining())) {
+            try {
+                current = chunks.take();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IOException("Interrupted while waiting for " + file.getFileName(), e);
+            }
+        }
+        if (current == END) {
+            if (failure != null) {
+                throw failure;
+            }
+            return -1;
+        }
+        int n = Math.min(dst.remaining(), current.remaining());
+        int limit = current.limit();
+        current.limit(current.position() + n);
+        dst.put(current);
+        current.limit(limit);
+        return n;
+    }
+
+    @Override
+    public boolean isOpen() {
+        return !closed;
+    }
+
+    @Override
+    public void close() {
+        closed = true;
+        chunks.clear();
+    }
+}
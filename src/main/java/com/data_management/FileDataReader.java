@@ -1,25 +1,120 @@
 package com.data_management;
 
 import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.*;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
 import java.util.stream.Stream;
 
 /**
  * Reads patient data from .txt files in a given directory.
+ * Lines can be plain CSV or the labelled lines the simulator's file output writes,
+ * both are parsed straight from the read buffer by {@link VitalsLineParser}.
+ * Files ending in .gz (or .zst, with zstd-jni on the classpath) are decompressed
+ * while they are read, without being unpacked to disk first.
+ * Keeps a byte offset per file, so reading the same directory again only
+ * ingests data appended since the last read. A file that was replaced, by
+ * rotation or by being rewritten, is noticed by its changed file key or by the
+ * byte before its offset no longer being the one read there, and read from the
+ * start. In follow mode it keeps watching
+ * the directory after the first pass and picks up appended lines and new files.
+ * With a checkpoint file the offsets survive restarts, see {@link IngestCheckpoints}.
+ * Bad lines are skipped and counted per file in {@link IngestErrors}.
  */
 public class FileDataReader implements DataReader {
+    private static final int READ_BUFFER_SIZE = 64 * 1024;
+    private static final long DEFAULT_POLL_INTERVAL_MS = 1000;
+    // how often a follower with file events walks the whole tree anyway, in case events were missed
+    private static final long WATCHED_RESCAN_INTERVAL_MS = 60 * 1000;
+    // how much data or time may pass between two checkpoint writes
+    private static final long CHECKPOINT_INTERVAL_BYTES = 8 * 1024 * 1024;
+    private static final long CHECKPOINT_INTERVAL_MS = 1000;
+    // compressed files decompressing at the same time, including the one being parsed
+    private static final int PREFETCH_FILES = 2;
+
     private String directoryPath;
+    private final boolean follow;
+    private final long pollIntervalMs;
+    // read position of every file seen so far
+    private final Map<Path, FileState> fileStates = new HashMap<>();
+    private ByteBuffer readBuffer = ByteBuffer.allocate(READ_BUFFER_SIZE);
+    // the byte before a file's offset, read to check the file was only appended to
+    private final ByteBuffer boundaryByte = ByteBuffer.allocate(1);
+    private final VitalsLineParser lineParser = new VitalsLineParser();
+
+    private IngestCheckpoints checkpoints;
+    private long uncommittedBytes;
+    private long lastCheckpointSave;
+
+    private volatile boolean following;
+    private Thread followerThread;
+    private WatchService watchService;
+    private ExecutorService decompressionExecutor;
 
     /**
      * Sets the folder path to read files from.
      * @param directoryPath path of the folder containing data files
      */
     public FileDataReader(String directoryPath) {
+        this(directoryPath, false);
+    }
+
+    /**
+     * Sets the folder path and whether to keep following it after the first read.
+     * @param directoryPath path of the folder containing data files
+     * @param follow true to keep ingesting appended data and new files
+     */
+    public FileDataReader(String directoryPath, boolean follow) {
+        this(directoryPath, follow, DEFAULT_POLL_INTERVAL_MS);
+    }
+
+    /**
+     * Sets the folder path, follow mode and how often to rescan the folder
+     * when the platform has no file system events.
+     * @param directoryPath path of the folder containing data files
+     * @param follow true to keep ingesting appended data and new files
+     * @param pollIntervalMs rescan interval in milliseconds
+     */
+    public FileDataReader(String directoryPath, boolean follow, long pollIntervalMs) {
+        if (pollIntervalMs <= 0) {
+            throw new IllegalArgumentException("Poll interval must be positive");
+        }
         this.directoryPath = directoryPath;
+        this.follow = follow;
+        this.pollIntervalMs = pollIntervalMs;
+    }
+
+    /**
+     * Persists read offsets in the given file and resumes from the offsets already in it.
+     * An offset is only committed once every line before it has been handed to
+     * {@link DataStorage#addPatientData}.
+     * @param checkpointPath file to keep checkpoints in, created if missing
+     * @throws IOException if an existing checkpoint file can't be read
+     */
+    public void setCheckpointFile(String checkpointPath) throws IOException {
+        IngestCheckpoints store = new IngestCheckpoints(Paths.get(checkpointPath));
+        store.load();
+        this.checkpoints = store;
     }
 
     /**
      * Reads all .txt files in the specified folder and feeds the data into DataStorage.
+     * In follow mode this returns after the first pass and keeps reading new data
+     * on a background thread until {@link #stop()} is called.
      * @param dataStorage storage for patient data
      * @throws IOException if folder or files can't be read
      */
@@ -31,52 +126,426 @@ public class FileDataReader implements DataReader {
             throw new IOException("Directory does not exist or is not a directory: " + directoryPath);
         }
 
-        // Read all .txt files in the directory
-        try (Stream<Path> files = Files.walk(dir)) {
-            files.filter(Files::isRegularFile)
-                    .filter(path -> path.toString().endsWith(".txt") || path.toString().endsWith(".csv"))
-                    .forEach(file -> {
-                        try {
-                            readFile(file, dataStorage);
-                        } catch (IOException e) {
-                            System.err.println("Error reading file " + file + ": " + e.getMessage());
+        boolean startFollowing = follow && !following;
+        if (startFollowing) {
+            // watch before the first pass, so nothing written in between is missed
+            watchService = openWatchService(dir);
+        }
+        try {
+            // in follow mode a writer may be halfway through its last line, so leave it for later
+            scanDirectory(dir, dataStorage, !follow);
+        } catch (IOException | UncheckedIOException e) {
+            closeWatchService();
+            throw e;
+        } finally {
+            if (!follow) {
+                // a one-shot read is done with its decompressors, a later read starts new ones
+                shutdownDecompression();
+            }
+        }
+        saveCheckpoints();
+
+        if (startFollowing) {
+            startFollowing(dir, dataStorage);
+        }
+    }
+
+    /**
+     * Stops following the directory. Returns once the follower has saved its
+     * checkpoints and ended, so the decompression pool isn't shut down under it.
+     */
+    public void stop() {
+        following = false;
+        if (followerThread != null) {
+            followerThread.interrupt();
+            try {
+                followerThread.join(5000);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            followerThread = null;
+        }
+        shutdownDecompression();
+    }
+
+    private void shutdownDecompression() {
+        if (decompressionExecutor != null) {
+            decompressionExecutor.shutdownNow();
+            decompressionExecutor = null;
+        }
+    }
+
+    /**
+     * Reads every data file below the directory from its last known offset.
+     * @param dir folder to scan
+     * @param dataStorage where to put the data
+     * @param consumeTrailingLine whether a last line without newline counts as complete
+     * @throws IOException if the folder can't be listed
+     */
+    private void scanDirectory(Path dir, DataStorage dataStorage, boolean consumeTrailingLine) throws IOException {
+        // Collect all .txt and .csv files in the directory, compressed or not
+        List<Path> files;
+        try (Stream<Path> paths = Files.walk(dir)) {
+            files = paths.filter(Files::isRegularFile)
+                    .filter(FileDataReader::isDataFile)
+                    .collect(Collectors.toList());
+        }
+        // files that are gone were deleted or rotated away
+        forget(dir, new HashSet<>(files));
+        readFiles(files, dataStorage, consumeTrailingLine);
+    }
+
+    /**
+     * Drops the read state and checkpoint of every file below the path,
+     * the path itself included, that is not among the kept files.
+     */
+    private void forget(Path path, Set<Path> keep) {
+        Iterator<Path> known = fileStates.keySet().iterator();
+        while (known.hasNext()) {
+            Path file = known.next();
+            if (file.startsWith(path) && !keep.contains(file)) {
+                known.remove();
+                if (checkpoints != null) {
+                    checkpoints.remove(file);
+                }
+            }
+        }
+    }
+
+    /**
+     * Reads the files in order. Compressed files are decompressed on background
+     * threads up to {@link #PREFETCH_FILES} files ahead, so inflating the next
+     * archive overlaps with parsing the current one.
+     */
+    private void readFiles(List<Path> files, DataStorage dataStorage, boolean consumeTrailingLine) {
+        int count = files.size();
+        DecompressingChannel[] prefetched = new DecompressingChannel[count];
+        int ahead = 0;     // next file to consider for prefetching
+        int inFlight = 0;  // compressed files being decompressed but not parsed yet
+
+        try {
+            for (int i = 0; i < count; i++) {
+                while (ahead < count && (ahead <= i || inFlight < PREFETCH_FILES)) {
+                    Path candidate = files.get(ahead);
+                    if (DecompressingChannel.isCompressed(candidate)) {
+                        prefetched[ahead] = startDecompressing(candidate);
+                        if (prefetched[ahead] != null) {
+                            inFlight++;
                         }
-                    });
+                    }
+                    ahead++;
+                }
+
+                Path file = files.get(i);
+                if (DecompressingChannel.isCompressed(file)) {
+                    if (prefetched[i] != null) {
+                        inFlight--;
+                        readCompressedSafely(file, prefetched[i], dataStorage);
+                        prefetched[i] = null;
+                    }
+                } else {
+                    readFileSafely(file, dataStorage, consumeTrailingLine);
+                }
+            }
+        } finally {
+            // don't leave decompressors waiting for a reader that is gone
+            for (DecompressingChannel channel : prefetched) {
+                if (channel != null) {
+                    channel.close();
+                }
+            }
+        }
+    }
+
+    private static boolean isDataFile(Path path) {
+        String name = DecompressingChannel.stripCompressionSuffix(path.getFileName().toString());
+        return name.endsWith(".txt") || name.endsWith(".csv");
+    }
+
+    private void readFileSafely(Path file, DataStorage dataStorage, boolean consumeTrailingLine) {
+        if (DecompressingChannel.isCompressed(file)) {
+            DecompressingChannel channel = startDecompressing(file);
+            if (channel != null) {
+                readCompressedSafely(file, channel, dataStorage);
+            }
+            return;
+        }
+        try {
+            readFile(file, dataStorage, consumeTrailingLine);
+        } catch (IOException e) {
+            System.err.println("Error reading file " + file + ": " + e.getMessage());
         }
     }
 
     /**
-     * Reads a single file and adds its content to storage.
+     * Reads a single file from its last offset and adds its content to storage.
      * @param filePath path of the file to read
      * @param dataStorage where to put the data
+     * @param consumeTrailingLine whether a last line without newline counts as complete
      * @throws IOException if the file can't be read
      */
-    private void readFile(Path filePath, DataStorage dataStorage) throws IOException {
-        try (BufferedReader reader = Files.newBufferedReader(filePath)) {
-            String line;
-            int lineNumber = 0;
+    private void readFile(Path filePath, DataStorage dataStorage, boolean consumeTrailingLine) throws IOException {
+        BasicFileAttributes attributes = Files.readAttributes(filePath, BasicFileAttributes.class);
+        long size = attributes.size();
+        long modifiedTime = attributes.lastModifiedTime().toMillis();
+        FileState state = stateFor(filePath, size, modifiedTime, false);
 
-            while ((line = reader.readLine()) != null) {
-                lineNumber++;
-                line = line.trim();
+        Object fileKey = attributes.fileKey();
+        if (size < state.offset || (state.fileKey != null && !state.fileKey.equals(fileKey))) {
+            // file was truncated or replaced by another one, start over
+            state.reset();
+        }
+        state.fileKey = fileKey;
+        boolean modified = modifiedTime != state.modifiedTime;
+        state.size = size;
+        state.modifiedTime = modifiedTime;
+        if (size == state.offset) {
+            return; // nothing new
+        }
 
-                if (line.isEmpty() || line.startsWith("#")) {
-                    continue; // Skip empty lines and comments
+        try (FileChannel channel = FileChannel.open(filePath, StandardOpenOption.READ)) {
+            if (modified && state.offset > 0 && state.lastByte >= 0 && !endsAt(channel, state.offset, state.lastByte)) {
+                // rewritten in place and already longer than what was read, the offset is mid-line
+                state.reset();
+            }
+            channel.position(state.offset);
+            readLines(channel, filePath, state, dataStorage, consumeTrailingLine);
+        }
+        commitCheckpoint(filePath, state, true);
+    }
+
+    /**
+     * Checks that the byte before the offset is still the one read there.
+     */
+    private boolean endsAt(FileChannel channel, long offset, int lastByte) throws IOException {
+        boundaryByte.clear();
+        return channel.read(boundaryByte, offset - 1) == 1 && (boundaryByte.get(0) & 0xFF) == lastByte;
+    }
+
+    /**
+     * Starts decompressing a compressed file from its last offset, which counts
+     * decompressed bytes. Returns null if the archive is unchanged since it was
+     * last read to the end, or can't be opened.
+     */
+    private DecompressingChannel startDecompressing(Path filePath) {
+        try {
+            long size = Files.size(filePath);
+            long modifiedTime = Files.getLastModifiedTime(filePath).toMillis();
+            FileState state = stateFor(filePath, size, modifiedTime, true);
+
+            boolean unchanged = size == state.size && modifiedTime == state.modifiedTime;
+            if (state.complete && unchanged) {
+                return null; // nothing new
+            }
+            if (size < state.size || (size == state.size && !unchanged)) {
+                // archive was rewritten, start over; a grown one had members appended
+                state.reset();
+            }
+            state.size = size;
+            state.modifiedTime = modifiedTime;
+            state.complete = false;
+            return new DecompressingChannel(filePath, state.offset, decompressionExecutor());
+        } catch (IOException e) {
+            System.err.println("Error reading file " + filePath + ": " + e.getMessage());
+            return null;
+        }
+    }
+
+    private void readCompressedSafely(Path filePath, DecompressingChannel channel, DataStorage dataStorage) {
+        FileState state = fileStates.get(filePath);
+        try (DecompressingChannel source = channel) {
+            // a compressed stream only ends cleanly after its last byte, so the last line is complete
+            readLines(source, filePath, state, dataStorage, true);
+            state.complete = true;
+        } catch (IOException e) {
+            System.err.println("Error reading file " + filePath + ": " + e.getMessage());
+        }
+        commitCheckpoint(filePath, state, true);
+    }
+
+    /**
+     * Parses lines from the channel until it ends. Only complete lines are consumed,
+     * the offset always points just past the last newline that was processed.
+     */
+    private void readLines(ReadableByteChannel channel, Path filePath, FileState state, DataStorage dataStorage,
+                           boolean consumeTrailingLine) throws IOException {
+        ByteBuffer buffer = readBuffer;
+        buffer.clear();
+
+        while (channel.read(buffer) > 0) {
+            byte[] bytes = buffer.array();
+            int limit = buffer.position();
+            int lineStart = 0;
+
+            for (int i = 0; i < limit; i++) {
+                if (bytes[i] == '\n') {
+                    processLine(buffer, lineStart, i, filePath, state, dataStorage);
+                    lineStart = i + 1;
                 }
+            }
+            state.offset += lineStart;
+            if (lineStart > 0) {
+                state.lastByte = '\n';
+            }
+            uncommittedBytes += lineStart;
+            commitCheckpoint(filePath, state, false);
 
-                try {
-                    parseLine(line, dataStorage);
-                } catch (Exception e) {
-                    System.err.println("Error parsing line " + lineNumber + " in file " +
-                            filePath.getFileName() + ": " + e.getMessage());
+            if (lineStart == 0 && limit == buffer.capacity()) {
+                // a single line is longer than the buffer
+                buffer = growBuffer(buffer);
+            } else {
+                buffer.flip();
+                buffer.position(lineStart);
+                buffer.compact();
+            }
+        }
+
+        int remaining = buffer.position();
+        if (consumeTrailingLine && remaining > 0) {
+            processLine(buffer, 0, remaining, filePath, state, dataStorage);
+            state.offset += remaining;
+            state.lastByte = buffer.get(remaining - 1) & 0xFF;
+        }
+    }
+
+    /**
+     * Returns the read state of a file, creating it on first sight. A new state
+     * starts at the file's checkpoint if one exists and the file was not
+     * rewritten since.
+     */
+    private FileState stateFor(Path filePath, long size, long modifiedTime, boolean compressed) {
+        FileState state = fileStates.get(filePath);
+        if (state != null) {
+            return state;
+        }
+        state = new FileState();
+        // the path below the input directory, files in different folders may share a name
+        state.source = Paths.get(directoryPath).relativize(filePath).toString();
+        if (checkpoints != null) {
+            IngestCheckpoints.Checkpoint checkpoint = checkpoints.get(filePath);
+            boolean valid = checkpoint != null && (compressed
+                    ? checkpoint.isUnchangedOrGrown(size, modifiedTime)
+                    : checkpoint.isValidFor(size, modifiedTime));
+            if (valid) {
+                state.offset = checkpoint.getOffset();
+                state.lineNumber = checkpoint.getLineNumber();
+                state.size = checkpoint.getSize();
+                state.modifiedTime = checkpoint.getModifiedTime();
+                state.complete = checkpoint.isComplete();
+            }
+        }
+        state.compressed = compressed;
+        fileStates.put(filePath, state);
+        return state;
+    }
+
+    private ExecutorService decompressionExecutor() {
+        if (decompressionExecutor == null) {
+            decompressionExecutor = Executors.newFixedThreadPool(PREFETCH_FILES, task -> {
+                Thread thread = new Thread(task, "file-data-decompressor");
+                thread.setDaemon(true);
+                return thread;
+            });
+        }
+        return decompressionExecutor;
+    }
+
+    /**
+     * Records the file's current offset and writes the checkpoint file when
+     * enough data or time has passed since the last write.
+     * @param force whether to write regardless of the intervals
+     */
+    private void commitCheckpoint(Path filePath, FileState state, boolean force) {
+        if (checkpoints == null) {
+            return;
+        }
+        // for compressed files the offset counts decompressed bytes and can exceed the size
+        long size = state.compressed ? state.size : Math.max(state.size, state.offset);
+        checkpoints.put(filePath, new IngestCheckpoints.Checkpoint(state.offset, size,
+                state.modifiedTime, state.lineNumber, state.complete));
+        long now = System.currentTimeMillis();
+        if (uncommittedBytes >= CHECKPOINT_INTERVAL_BYTES
+                || (force && now - lastCheckpointSave >= CHECKPOINT_INTERVAL_MS)) {
+            saveCheckpoints();
+        }
+    }
+
+    /**
+     * Writes all pending checkpoints to disk, errors are reported but don't stop reading.
+     */
+    private void saveCheckpoints() {
+        if (checkpoints == null) {
+            return;
+        }
+        try {
+            checkpoints.save();
+            uncommittedBytes = 0;
+            lastCheckpointSave = System.currentTimeMillis();
+        } catch (IOException e) {
+            System.err.println("Error saving checkpoints: " + e.getMessage());
+        }
+    }
+
+    private ByteBuffer growBuffer(ByteBuffer buffer) {
+        ByteBuffer bigger = ByteBuffer.allocate(buffer.capacity() * 2);
+        buffer.flip();
+        bigger.put(buffer);
+        readBuffer = bigger;
+        return bigger;
+    }
+
+    /**
+     * Parses one line from the buffer, errors are counted and skipped.
+     * Labelled and regular CSV lines never become Strings, only lines in the
+     * alternative CSV order take the slower String based path; lines without
+     * enough fields for it don't.
+     */
+    private void processLine(ByteBuffer buffer, int from, int to, Path filePath, FileState state,
+                             DataStorage dataStorage) {
+        state.lineNumber++;
+        byte[] bytes = buffer.array();
+        while (from < to && bytes[from] <= ' ') {
+            from++;
+        }
+        while (to > from && bytes[to - 1] <= ' ') {
+            to--;
+        }
+
+        if (from == to || bytes[from] == '#') {
+            return; // Skip empty lines and comments
+        }
+
+        try {
+            if (VitalsLineParser.isLabelledLine(buffer, from, to)) {
+                lineParser.parseLabelled(buffer, from, to, dataStorage);
+                return;
+            }
+            try {
+                lineParser.parseCsv(buffer, from, to, dataStorage);
+            } catch (IllegalArgumentException e) {
+                if (countCommas(bytes, from, to) < 3) {
+                    throw e;
                 }
+                parseLine(new String(bytes, from, to - from, StandardCharsets.UTF_8), dataStorage);
+            }
+        } catch (Exception e) {
+            IngestErrors.getInstance().record(state.source, e);
+        }
+    }
+
+    private static int countCommas(byte[] bytes, int from, int to) {
+        int commas = 0;
+        for (int i = from; i < to; i++) {
+            if (bytes[i] == ',') {
+                commas++;
             }
         }
+        return commas;
     }
 
     /**
      * Parses a line and adds it to DataStorage.
-     * Expected: PatientID,Timestamp,RecordType,Value 
+     * Expected: PatientID,Timestamp,RecordType,Value
      * or: PatientID,Value,RecordType,Timestamp.
      * @param line the line to parse
      * @param dataStorage storage for parsed data
@@ -85,7 +554,7 @@ public class FileDataReader implements DataReader {
         String[] parts = line.split(",");
 
         if (parts.length < 4) {
-            throw new IllegalArgumentException("Invalid line format: " + line);
+            throw new MalformedDataException("Invalid line format", line);
         }
 
         try {
@@ -108,8 +577,166 @@ public class FileDataReader implements DataReader {
                 dataStorage.addPatientData(patientId, value, recordType, timestamp);
 
             } catch (NumberFormatException e2) {
-                throw new IllegalArgumentException("Unable to parse numeric values in line: " + line);
+                throw new MalformedDataException("Unable to parse numeric values in line", line);
             }
         }
     }
+
+    /**
+     * Starts the background thread that follows the directory.
+     */
+    private void startFollowing(Path dir, DataStorage dataStorage) {
+        following = true;
+        followerThread = new Thread(() -> followDirectory(dir, dataStorage), "file-data-follower");
+        followerThread.setDaemon(true);
+        followerThread.start();
+    }
+
+    /**
+     * Waits for file system events and reads the files they point at, and
+     * forgets deleted files. When the platform has no WatchService the whole
+     * directory is rescanned every poll interval instead; with one, only after
+     * an overflow and, in case events went missing, when none arrived for
+     * {@link #WATCHED_RESCAN_INTERVAL_MS}. A rescan only costs a size check for
+     * files that did not grow.
+     */
+    private void followDirectory(Path dir, DataStorage dataStorage) {
+        try {
+            while (following) {
+                if (watchService == null) {
+                    Thread.sleep(pollIntervalMs);
+                    rescan(dir, dataStorage);
+                    saveCheckpoints();
+                    continue;
+                }
+
+                WatchKey key = watchService.poll(Math.max(pollIntervalMs, WATCHED_RESCAN_INTERVAL_MS),
+                        TimeUnit.MILLISECONDS);
+                if (key == null) {
+                    rescan(dir, dataStorage);
+                    saveCheckpoints();
+                    continue;
+                }
+
+                Set<Path> changedFiles = new HashSet<>();
+                boolean overflow = false;
+                do {
+                    Path keyDir = (Path) key.watchable();
+                    for (WatchEvent<?> event : key.pollEvents()) {
+                        if (event.kind() == StandardWatchEventKinds.OVERFLOW) {
+                            overflow = true;
+                            continue;
+                        }
+                        Path changed = keyDir.resolve((Path) event.context());
+                        if (event.kind() == StandardWatchEventKinds.ENTRY_DELETE) {
+                            changedFiles.removeIf(file -> file.startsWith(changed));
+                            forget(changed, Collections.emptySet());
+                        } else if (Files.isDirectory(changed)) {
+                            // new sub folder, watch it and read whatever is already in it
+                            registerTree(changed);
+                            rescan(changed, dataStorage);
+                        } else if (isDataFile(changed)) {
+                            changedFiles.add(changed);
+                        }
+                    }
+                    key.reset();
+                } while ((key = watchService.poll()) != null);
+
+                if (overflow) {
+                    rescan(dir, dataStorage);
+                } else {
+                    for (Path file : changedFiles) {
+                        if (Files.isRegularFile(file)) {
+                            readFileSafely(file, dataStorage, false);
+                        }
+                    }
+                }
+                saveCheckpoints();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (ClosedWatchServiceException e) {
+            // stopped
+        } finally {
+            closeWatchService();
+            saveCheckpoints();
+        }
+    }
+
+    private void rescan(Path dir, DataStorage dataStorage) {
+        try {
+            scanDirectory(dir, dataStorage, false);
+        } catch (IOException | UncheckedIOException e) {
+            System.err.println("Error scanning directory " + dir + ": " + e.getMessage());
+        }
+    }
+
+    /**
+     * Opens a watch service for the directory tree, or returns null so the
+     * follower falls back to polling.
+     */
+    private WatchService openWatchService(Path dir) {
+        try {
+            watchService = dir.getFileSystem().newWatchService();
+            registerTree(dir);
+            return watchService;
+        } catch (IOException | UnsupportedOperationException e) {
+            System.err.println("File watching not available, polling every " + pollIntervalMs + " ms");
+            closeWatchService();
+            return null;
+        }
+    }
+
+    private void registerTree(Path root) {
+        try (Stream<Path> dirs = Files.walk(root)) {
+            dirs.filter(Files::isDirectory).forEach(d -> {
+                try {
+                    d.register(watchService, StandardWatchEventKinds.ENTRY_CREATE,
+                            StandardWatchEventKinds.ENTRY_MODIFY, StandardWatchEventKinds.ENTRY_DELETE);
+                } catch (IOException e) {
+                    System.err.println("Could not watch " + d + ": " + e.getMessage());
+                }
+            });
+        } catch (IOException e) {
+            System.err.println("Could not watch " + root + ": " + e.getMessage());
+        }
+    }
+
+    private void closeWatchService() {
+        if (watchService != null) {
+            try {
+                watchService.close();
+            } catch (IOException e) {
+                // nothing left to do
+            }
+            watchService = null;
+        }
+    }
+
+    /**
+     * Read position inside one file.
+     */
+    private static class FileState {
+        // name the file's errors are counted under
+        String source;
+        // for compressed files the offset counts decompressed bytes
+        long offset;
+        int lineNumber;
+        long size;
+        long modifiedTime;
+        boolean compressed;
+        // whether a compressed file was read to its end
+        boolean complete;
+        // identity of the file read, null if the file system has none
+        Object fileKey;
+        // the byte before the offset, -1 if unknown as after a restart
+        int lastByte = -1;
+
+        void reset() {
+            offset = 0;
+            lineNumber = 0;
+            complete = false;
+            lastByte = -1;
+        }
+    }
 }
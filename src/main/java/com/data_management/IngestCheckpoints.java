@@ -0,0 +1,223 @@
+package com.data_management;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Stores how far each input file has been ingested, so an interrupted run can
+ * resume where it stopped instead of starting from byte 0.
+ * The checkpoint file is plain text with one tab separated line per input file:
+ * offset, size, modification time, line number, whether the file was read to
+ * its end, and path.
+ */
+public class IngestCheckpoints {
+    private static final String HEADER = "# ingest checkpoints v2: offset\tsize\tmtime\tline\tcomplete\tpath";
+
+    private final Path checkpointFile;
+    private final Map<Path, Checkpoint> checkpoints = new HashMap<>();
+
+    /**
+     * Creates a store backed by the given file. Nothing is read until {@link #load()}.
+     *
+     * @param checkpointFile where checkpoints are kept
+     */
+    public IngestCheckpoints(Path checkpointFile) {
+        this.checkpointFile = checkpointFile;
+    }
+
+    /**
+     * Reads the checkpoint file if it exists. Lines that can't be parsed are skipped,
+     * which only means those files are read from the start again.
+     *
+     * @throws IOException if the file exists but can't be read
+     */
+    public void load() throws IOException {
+        checkpoints.clear();
+        if (!Files.exists(checkpointFile)) {
+            return;
+        }
+        try (BufferedReader reader = Files.newBufferedReader(checkpointFile, StandardCharsets.UTF_8)) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                if (line.isEmpty() || line.startsWith("#")) {
+                    continue;
+                }
+                String[] parts = line.split("\t", 6);
+                if (parts.length < 5) {
+                    continue;
+                }
+                try {
+                    // v1 lines have no completion column
+                    boolean complete = parts.length == 6 && "1".equals(parts[4]);
+                    String path = parts[parts.length - 1];
+                    Checkpoint checkpoint = new Checkpoint(Long.parseLong(parts[0]), Long.parseLong(parts[1]),
+                            Long.parseLong(parts[2]), Integer.parseInt(parts[3]), complete);
+                    checkpoints.put(Paths.get(path).toAbsolutePath().normalize(), checkpoint);
+                } catch (NumberFormatException e) {
+                    System.err.println("Skipping bad checkpoint line: " + line);
+                }
+            }
+        }
+    }
+
+    /**
+     * Returns the checkpoint for a file, or null if it was never committed.
+     *
+     * @param file the input file
+     * @return its last committed checkpoint
+     */
+    public Checkpoint get(Path file) {
+        return checkpoints.get(file.toAbsolutePath().normalize());
+    }
+
+    /**
+     * Records the committed position of a file. Call {@link #save()} to make it durable.
+     *
+     * @param file the input file
+     * @param checkpoint how far it has been ingested
+     */
+    public void put(Path file, Checkpoint checkpoint) {
+        checkpoints.put(file.toAbsolutePath().normalize(), checkpoint);
+    }
+
+    /**
+     * Drops the checkpoint of a file that no longer exists. Call {@link #save()} to make it durable.
+     *
+     * @param file the input file
+     */
+    public void remove(Path file) {
+        checkpoints.remove(file.toAbsolutePath().normalize());
+    }
+
+    /**
+     * Writes all checkpoints to a temporary file, forces it to disk and moves it over
+     * the old checkpoint file, so a crash leaves either the old or the new version.
+     *
+     * @throws IOException if the checkpoint file can't be written
+     */
+    public void save() throws IOException {
+        Path dir = checkpointFile.toAbsolutePath().getParent();
+        if (dir != null) {
+            Files.createDirectories(dir);
+        }
+        Path temp = checkpointFile.resolveSibling(checkpointFile.getFileName() + ".tmp");
+
+        try (FileChannel channel = FileChannel.open(temp, StandardOpenOption.CREATE,
+                StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            Writer writer = Channels.newWriter(channel, StandardCharsets.UTF_8.newEncoder(), -1);
+            writer.write(HEADER);
+            writer.write('\n');
+            for (Map.Entry<Path, Checkpoint> entry : checkpoints.entrySet()) {
+                Checkpoint c = entry.getValue();
+                writer.write(c.offset + "\t" + c.size + "\t" + c.modifiedTime + "\t" + c.lineNumber
+                        + "\t" + (c.complete ? "1" : "0") + "\t" + entry.getKey() + "\n");
+            }
+            writer.flush();
+            channel.force(true);
+        }
+
+        try {
+            Files.move(temp, checkpointFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (AtomicMoveNotSupportedException e) {
+            Files.move(temp, checkpointFile, StandardCopyOption.REPLACE_EXISTING);
+        }
+    }
+
+    /**
+     * Committed position inside one input file, together with the size and
+     * modification time the file had at that moment.
+     */
+    public static class Checkpoint {
+        private final long offset;
+        private final long size;
+        private final long modifiedTime;
+        private final int lineNumber;
+        private final boolean complete;
+
+        /**
+         * @param offset       bytes of the file already handed to storage
+         * @param size         file size when the offset was committed
+         * @param modifiedTime file modification time in milliseconds at that moment
+         * @param lineNumber   number of lines consumed up to the offset
+         */
+        public Checkpoint(long offset, long size, long modifiedTime, int lineNumber) {
+            this(offset, size, modifiedTime, lineNumber, false);
+        }
+
+        /**
+         * @param offset       bytes already handed to storage, decompressed bytes for compressed files
+         * @param size         file size when the offset was committed
+         * @param modifiedTime file modification time in milliseconds at that moment
+         * @param lineNumber   number of lines consumed up to the offset
+         * @param complete     whether the file had been read to its end
+         */
+        public Checkpoint(long offset, long size, long modifiedTime, int lineNumber, boolean complete) {
+            this.offset = offset;
+            this.size = size;
+            this.modifiedTime = modifiedTime;
+            this.lineNumber = lineNumber;
+            this.complete = complete;
+        }
+
+        public long getOffset() {
+            return offset;
+        }
+
+        public long getSize() {
+            return size;
+        }
+
+        public long getModifiedTime() {
+            return modifiedTime;
+        }
+
+        public int getLineNumber() {
+            return lineNumber;
+        }
+
+        public boolean isComplete() {
+            return complete;
+        }
+
+        /**
+         * Checks whether ingestion of the file can resume at this checkpoint.
+         * A file that shrank below the offset, or kept its size but was modified,
+         * was rewritten and has to be read again from the start.
+         *
+         * @param currentSize         the file's size now
+         * @param currentModifiedTime the file's modification time now
+         * @return true if the bytes before the offset are still the ones ingested
+         */
+        public boolean isValidFor(long currentSize, long currentModifiedTime) {
+            return currentSize >= offset && isUnchangedOrGrown(currentSize, currentModifiedTime);
+        }
+
+        /**
+         * Checks the file against the recorded size and modification time only, for
+         * files whose offset is not a position in the file itself, like compressed ones.
+         *
+         * @param currentSize         the file's size now
+         * @param currentModifiedTime the file's modification time now
+         * @return true if the file is unchanged or has grown
+         */
+        public boolean isUnchangedOrGrown(long currentSize, long currentModifiedTime) {
+            if (currentSize == size) {
+                return currentModifiedTime == modifiedTime;
+            }
+            // grown files are treated as appended to
+            return currentSize > size;
+        }
+    }
+}
@@ -0,0 +1,222 @@
+package com.data_management;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Counts the bad input the readers skip, per source (a file, a connection)
+ * and per error class, instead of printing every bad line. Each class keeps a
+ * few example messages. It is logged when first seen, then at most once per
+ * log interval with the number of errors since, so a feed full of garbage
+ * costs a counter increment per error and not a console write.
+ * <p>
+ * The readers report to the shared {@link #getInstance() instance}; call
+ * {@link #report()} for a summary at the end of a run. Thread safe.
+ */
+public class IngestErrors {
+    /** Example messages kept per error class. */
+    public static final int SAMPLES_PER_CLASS = 3;
+    /** Default time between log lines of one error class, in milliseconds. */
+    public static final long DEFAULT_LOG_INTERVAL_MS = 5000;
+    // keeps a feed with ever new error messages or connections from growing the maps without bound
+    private static final int MAX_SOURCES = 256;
+    private static final int MAX_CLASSES_PER_SOURCE = 32;
+    private static final String OTHER = "other";
+
+    private static final IngestErrors INSTANCE = new IngestErrors(DEFAULT_LOG_INTERVAL_MS);
+
+    private final long logIntervalNanos;
+    private final Map<String, Map<String, ErrorClass>> sources = new ConcurrentHashMap<>();
+    private final LongAdder total = new LongAdder();
+
+    /**
+     * Creates an instance, for tests or to keep a reader's errors apart.
+     *
+     * @param logIntervalMs least time between two log lines of one error class, 0 logs every error
+     */
+    public IngestErrors(long logIntervalMs) {
+        this.logIntervalNanos = logIntervalMs * 1_000_000;
+    }
+
+    /**
+     * Returns the instance the readers report to.
+     */
+    public static IngestErrors getInstance() {
+        return INSTANCE;
+    }
+
+    /**
+     * Records a parse error. Errors of this package's parsers are classed by
+     * their reason, others by the part of their message before the first colon.
+     *
+     * @param source where the input came from, e.g. a file path below the input directory
+     * @param error  the error
+     */
+    public void record(String source, Exception error) {
+        String errorClass;
+        if (error instanceof MalformedDataException) {
+            errorClass = ((MalformedDataException) error).getReason();
+        } else {
+            String message = String.valueOf(error.getMessage());
+            int colon = message.indexOf(':');
+            errorClass = colon > 0 ? message.substring(0, colon) : error.getClass().getSimpleName();
+        }
+        // the message usually starts with the class, the example is what follows it
+        String example = String.valueOf(error.getMessage());
+        if (example.equals(errorClass)) {
+            example = null;
+        } else if (example.startsWith(errorClass + ": ")) {
+            example = example.substring(errorClass.length() + 2);
+        }
+        record(source, errorClass, example);
+    }
+
+    /**
+     * Records an error.
+     *
+     * @param source     where the input came from, e.g. a file path below the input directory
+     * @param errorClass what kind of error it is, the same for every error of this kind
+     * @param example    the offending input or what else sets this error apart, kept if the
+     *                   class has few examples yet; null if there is nothing beyond the class
+     */
+    public void record(String source, String errorClass, String example) {
+        total.increment();
+        ErrorClass counter = classFor(source, errorClass);
+        counter.count.increment();
+        if (example != null) {
+            counter.sample(example);
+        }
+
+        long now = System.nanoTime();
+        long last = counter.lastLogNanos.get();
+        if (now - last >= logIntervalNanos && counter.lastLogNanos.compareAndSet(last, now)) {
+            long suppressed = counter.suppressed.sumThenReset();
+            System.err.println("[" + source + "] " + errorClass + (example != null ? ": " + example : "")
+                    + (suppressed > 0 ? " (" + suppressed + " more since last logged)" : ""));
+        } else {
+            counter.suppressed.increment();
+        }
+    }
+
+    private ErrorClass classFor(String source, String errorClass) {
+        Map<String, ErrorClass> classes = sources.get(source);
+        if (classes == null) {
+            String key = sources.size() < MAX_SOURCES ? source : OTHER;
+            classes = sources.computeIfAbsent(key, k -> new ConcurrentHashMap<>());
+        }
+        ErrorClass counter = classes.get(errorClass);
+        if (counter == null) {
+            String key = classes.size() < MAX_CLASSES_PER_SOURCE ? errorClass : OTHER;
+            counter = classes.computeIfAbsent(key, k -> new ErrorClass(logIntervalNanos));
+        }
+        return counter;
+    }
+
+    /**
+     * Returns the number of errors recorded since the start or the last {@link #clear()}.
+     */
+    public long getTotal() {
+        return total.sum();
+    }
+
+    /**
+     * Returns the number of errors of one class from one source.
+     */
+    public long getCount(String source, String errorClass) {
+        Map<String, ErrorClass> classes = sources.get(source);
+        ErrorClass counter = classes == null ? null : classes.get(errorClass);
+        return counter == null ? 0 : counter.count.sum();
+    }
+
+    /**
+     * Returns the number of errors from one source, of all classes.
+     */
+    public long getCount(String source) {
+        Map<String, ErrorClass> classes = sources.get(source);
+        long count = 0;
+        if (classes != null) {
+            for (ErrorClass counter : classes.values()) {
+                count += counter.count.sum();
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Returns the example messages kept for one class from one source, oldest first.
+     */
+    public List<String> getSamples(String source, String errorClass) {
+        Map<String, ErrorClass> classes = sources.get(source);
+        ErrorClass counter = classes == null ? null : classes.get(errorClass);
+        return counter == null ? new ArrayList<>() : counter.samples();
+    }
+
+    /**
+     * Returns a summary of every error class of every source with its count and
+     * examples, or a single line when there were no errors.
+     */
+    public String report() {
+        if (getTotal() == 0) {
+            return "No ingest errors";
+        }
+        StringBuilder report = new StringBuilder("Ingest errors: ").append(getTotal());
+        for (Map.Entry<String, Map<String, ErrorClass>> source : sources.entrySet()) {
+            for (Map.Entry<String, ErrorClass> errorClass : source.getValue().entrySet()) {
+                report.append("\n  [").append(source.getKey()).append("] ").append(errorClass.getKey())
+                        .append(": ").append(errorClass.getValue().count.sum());
+                for (String sample : errorClass.getValue().samples()) {
+                    report.append("\n    e.g. ").append(sample);
+                }
+            }
+        }
+        return report.toString();
+    }
+
+    /**
+     * Forgets every error recorded so far.
+     */
+    public void clear() {
+        sources.clear();
+        total.reset();
+    }
+
+    /**
+     * Counters and examples of one error class from one source.
+     */
+    private static final class ErrorClass {
+        final LongAdder count = new LongAdder();
+        final LongAdder suppressed = new LongAdder();
+        final AtomicLong lastLogNanos;
+        private final String[] samples = new String[SAMPLES_PER_CLASS];
+        // read without the lock to skip the common case, when all examples are taken
+        private volatile int sampleCount;
+
+        ErrorClass(long logIntervalNanos) {
+            // the first error is logged right away
+            lastLogNanos = new AtomicLong(System.nanoTime() - logIntervalNanos);
+        }
+
+        void sample(String example) {
+            if (sampleCount < SAMPLES_PER_CLASS) {
+                synchronized (this) {
+                    if (sampleCount < SAMPLES_PER_CLASS) {
+                        samples[sampleCount] = example;
+                        sampleCount++;
+                    }
+                }
+            }
+        }
+
+        synchronized List<String> samples() {
+            List<String> list = new ArrayList<>(sampleCount);
+            for (int i = 0; i < sampleCount; i++) {
+                list.add(samples[i]);
+            }
+            return list;
+        }
+    }
+}
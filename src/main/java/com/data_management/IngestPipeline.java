@@ -0,0 +1,328 @@
+package com.data_management;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Moves parsing and storing of WebSocket frames off the network thread.
+ * Readers only {@link #submit} raw frames into a bounded queue; worker threads
+ * take them in groups, parse them into a {@link RecordBatch} and store each
+ * group with one {@link DataStorage#addBatch(RecordBatch)} call. What happens when
+ * the queue is full is set by the {@link OverflowPolicy}.
+ * <p>
+ * With one worker, frames are stored in the order they were submitted. More
+ * workers parse in parallel, but frames handled by different workers may be
+ * stored out of order.
+ * <p>
+ * Frames submitted with a {@link SequenceTracker} have the readings the
+ * connection already stored, e.g. replayed after a reconnect, dropped before
+ * they are stored; a frame from a restarted server, with a new epoch, starts
+ * the tracking over. Bad frames are counted in {@link IngestErrors} under the
+ * source they were submitted with.
+ */
+public class IngestPipeline implements AutoCloseable {
+    /** Frames queued by default before the overflow policy applies. */
+    public static final int DEFAULT_CAPACITY = 10_000;
+    private static final int MAX_FRAMES_PER_BATCH = 64;
+    // errors of frames submitted without a source are counted under this name
+    private static final String DEFAULT_SOURCE = "websocket";
+
+    /**
+     * What {@link #submit} does when the queue is full.
+     */
+    public enum OverflowPolicy {
+        /** Wait for room, which pushes back on the sender through the socket. */
+        BLOCK,
+        /** Drop the frame being submitted. */
+        DROP_NEWEST,
+        /** Drop the oldest queued frame to make room. */
+        DROP_OLDEST
+    }
+
+    private final DataStorage dataStorage;
+    private final IngestErrors errors = IngestErrors.getInstance();
+    private final BlockingQueue<Object> queue;
+    private final OverflowPolicy overflowPolicy;
+    private final List<Thread> workers = new ArrayList<>();
+    private volatile boolean closed;
+
+    private final LongAdder submitted = new LongAdder();
+    private final LongAdder dropped = new LongAdder();
+    private final LongAdder processedFrames = new LongAdder();
+    private final LongAdder rejectedFrames = new LongAdder();
+    private final LongAdder storedReadings = new LongAdder();
+    private final LongAdder duplicateReadings = new LongAdder();
+    private final AtomicInteger maxQueueDepth = new AtomicInteger();
+
+    /**
+     * Creates a pipeline with one worker, the default capacity and the BLOCK policy.
+     *
+     * @param dataStorage where the readings go
+     */
+    public IngestPipeline(DataStorage dataStorage) {
+        this(dataStorage, DEFAULT_CAPACITY, 1, OverflowPolicy.BLOCK);
+    }
+
+    /**
+     * Creates a pipeline and starts its workers.
+     *
+     * @param dataStorage    where the readings go
+     * @param capacity       most frames waiting in the queue
+     * @param workerCount    number of worker threads
+     * @param overflowPolicy what to do when the queue is full
+     */
+    public IngestPipeline(DataStorage dataStorage, int capacity, int workerCount, OverflowPolicy overflowPolicy) {
+        if (capacity < 1 || workerCount < 1) {
+            throw new IllegalArgumentException("Capacity and worker count must be at least 1");
+        }
+        this.dataStorage = dataStorage;
+        this.queue = new ArrayBlockingQueue<>(capacity);
+        this.overflowPolicy = overflowPolicy;
+        for (int i = 0; i < workerCount; i++) {
+            Thread worker = new Thread(this::work, "ingest-worker-" + i);
+            worker.setDaemon(true);
+            workers.add(worker);
+            worker.start();
+        }
+    }
+
+    /**
+     * Queues a JSON text frame.
+     *
+     * @param message the frame as received
+     * @return false if the frame was dropped
+     */
+    public boolean submit(String message) {
+        return enqueue(message);
+    }
+
+    /**
+     * Queues a JSON text frame of a named source, e.g. a sequenced feed.
+     *
+     * @param message   the frame as received
+     * @param source    where the frame came from, its errors are counted under this name
+     * @param sequences the connection's tracker, which drops readings seen before, or null
+     * @return false if the frame was dropped
+     */
+    public boolean submit(String message, String source, SequenceTracker sequences) {
+        return enqueue(new SourcedFrame(message, source, sequences));
+    }
+
+    /**
+     * Queues a binary frame. The buffer must not be changed after it is submitted.
+     *
+     * @param frame the frame as received
+     * @return false if the frame was dropped
+     */
+    public boolean submit(ByteBuffer frame) {
+        return enqueue(frame);
+    }
+
+    /**
+     * Queues a binary frame of a named source, e.g. a sequenced feed. The buffer
+     * must not be changed after it is submitted.
+     *
+     * @param frame     the frame as received
+     * @param source    where the frame came from, its errors are counted under this name
+     * @param sequences the connection's tracker, which drops readings seen before, or null
+     * @return false if the frame was dropped
+     */
+    public boolean submit(ByteBuffer frame, String source, SequenceTracker sequences) {
+        return enqueue(new SourcedFrame(frame, source, sequences));
+    }
+
+    private boolean enqueue(Object frame) {
+        if (closed) {
+            dropped.increment();
+            return false;
+        }
+        submitted.increment();
+        boolean queued;
+        switch (overflowPolicy) {
+            case BLOCK:
+                try {
+                    queue.put(frame);
+                    queued = true;
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    queued = false;
+                }
+                break;
+            case DROP_OLDEST:
+                queued = queue.offer(frame);
+                while (!queued) {
+                    if (queue.poll() != null) {
+                        dropped.increment();
+                    }
+                    queued = queue.offer(frame);
+                }
+                break;
+            case DROP_NEWEST:
+            default:
+                queued = queue.offer(frame);
+                break;
+        }
+        if (!queued) {
+            dropped.increment();
+            return false;
+        }
+        int depth = queue.size();
+        int max;
+        while (depth > (max = maxQueueDepth.get()) && !maxQueueDepth.compareAndSet(max, depth)) {
+            // retry until the maximum is at least this depth
+        }
+        return true;
+    }
+
+    private void work() {
+        VitalsMessageParser messageParser = new VitalsMessageParser();
+        VitalsBinaryCodec binaryCodec = new VitalsBinaryCodec();
+        RecordBatch batch = new RecordBatch();
+        List<Object> frames = new ArrayList<>(MAX_FRAMES_PER_BATCH);
+
+        while (!closed || !queue.isEmpty()) {
+            try {
+                Object first = queue.poll(100, TimeUnit.MILLISECONDS);
+                if (first == null) {
+                    continue;
+                }
+                frames.add(first);
+            } catch (InterruptedException e) {
+                // workers only stop once the pipeline is closed and drained
+                continue;
+            }
+            queue.drainTo(frames, MAX_FRAMES_PER_BATCH - 1);
+
+            for (Object frame : frames) {
+                int start = batch.size();
+                String source = DEFAULT_SOURCE;
+                SequenceTracker sequences = null;
+                if (frame instanceof SourcedFrame) {
+                    source = ((SourcedFrame) frame).source;
+                    sequences = ((SourcedFrame) frame).sequences;
+                    frame = ((SourcedFrame) frame).payload;
+                }
+                boolean text = frame instanceof String;
+                try {
+                    if (text) {
+                        messageParser.parse((String) frame, batch);
+                    } else {
+                        binaryCodec.decode((ByteBuffer) frame, batch);
+                    }
+                } catch (IllegalArgumentException e) {
+                    // valid readings of a partly bad JSON batch are still in the batch
+                    rejectedFrames.increment();
+                    errors.record(source, e);
+                }
+                if (sequences != null) {
+                    long epoch = text ? messageParser.getEpoch() : binaryCodec.getEpoch();
+                    duplicateReadings.add(sequences.filter(batch, start, epoch));
+                }
+            }
+            try {
+                dataStorage.addBatch(batch);
+                storedReadings.add(batch.size());
+            } catch (RuntimeException e) {
+                errors.record(DEFAULT_SOURCE, "Error storing readings", String.valueOf(e.getMessage()));
+            }
+            processedFrames.add(frames.size());
+            frames.clear();
+            batch.clear();
+        }
+    }
+
+    /**
+     * Returns the number of frames waiting in the queue.
+     */
+    public int getQueueDepth() {
+        return queue.size();
+    }
+
+    /**
+     * Returns the most frames that have been waiting in the queue at once.
+     */
+    public int getMaxQueueDepth() {
+        return maxQueueDepth.get();
+    }
+
+    public long getSubmittedFrames() {
+        return submitted.sum();
+    }
+
+    public long getDroppedFrames() {
+        return dropped.sum();
+    }
+
+    public long getProcessedFrames() {
+        return processedFrames.sum();
+    }
+
+    /**
+     * Returns the number of frames that were malformed or had invalid readings.
+     */
+    public long getRejectedFrames() {
+        return rejectedFrames.sum();
+    }
+
+    public long getStoredReadings() {
+        return storedReadings.sum();
+    }
+
+    /**
+     * Returns the number of readings of sequenced frames dropped because they were stored before.
+     */
+    public long getDuplicateReadings() {
+        return duplicateReadings.sum();
+    }
+
+    /**
+     * Returns a one line summary of the pipeline's metrics.
+     */
+    public String report() {
+        return "queue " + getQueueDepth() + " (max " + getMaxQueueDepth() + "), submitted " + getSubmittedFrames()
+                + ", dropped " + getDroppedFrames() + ", processed " + getProcessedFrames()
+                + ", rejected " + getRejectedFrames() + ", stored readings " + getStoredReadings()
+                + ", duplicates " + getDuplicateReadings();
+    }
+
+    /**
+     * Stops accepting frames, lets the workers store what is already queued and
+     * waits for them to finish.
+     */
+    @Override
+    public void close() {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        for (Thread worker : workers) {
+            try {
+                worker.join(5000);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+        }
+    }
+
+    /**
+     * A queued frame together with the connection it came from.
+     */
+    private static final class SourcedFrame {
+        final Object payload;
+        final String source;
+        final SequenceTracker sequences;
+
+        SourcedFrame(Object payload, String source, SequenceTracker sequences) {
+            this.payload = payload;
+            this.source = source;
+            this.sequences = sequences;
+        }
+    }
+}
@@ -0,0 +1,44 @@
+package com.data_management;
+
+/**
+ * Thrown by the parsers for input that can't be read. It carries the reason
+ * apart from the offending text, so {@link IngestErrors} can count it by
+ * reason, and it skips the stack trace: bad input is expected and a feed full
+ * of it should not spend its time walking the stack.
+ */
+public class MalformedDataException extends IllegalArgumentException {
+    private static final long serialVersionUID = 1L;
+
+    private final String reason;
+
+    /**
+     * @param reason what is wrong, the same for every input with this problem
+     * @param input  the offending input, or null
+     */
+    public MalformedDataException(String reason, String input) {
+        super(input == null ? reason : reason + ": " + input);
+        this.reason = reason;
+    }
+
+    /**
+     * @param reason  what is wrong, the same for every input with this problem
+     * @param message the full message
+     * @param cause   the underlying error, or null
+     */
+    public MalformedDataException(String reason, String message, Throwable cause) {
+        super(message, cause);
+        this.reason = reason;
+    }
+
+    /**
+     * Returns what is wrong, without the offending input.
+     */
+    public String getReason() {
+        return reason;
+    }
+
+    @Override
+    public synchronized Throwable fillInStackTrace() {
+        return this;
+    }
+}
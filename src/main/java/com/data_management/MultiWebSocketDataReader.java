@@ -0,0 +1,269 @@
+package com.data_management;
+
+import java.io.IOException;
+import java.net.URISyntaxException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.java_websocket.handshake.ServerHandshake;
+
+/**
+ * Reads patient data from several websocket servers at once, one connection
+ * per endpoint. All connections hand their frames to one shared
+ * {@link IngestPipeline}, and each keeps its own traffic counters. Every
+ * connection reconnects on its own and asks for the readings it missed, see
+ * {@link PatientDataWebSocketClient}.
+ */
+public class MultiWebSocketDataReader implements DataReader {
+    private static final int CONNECTION_TIMEOUT_SECONDS = 10;
+
+    private final List<String> serverUris;
+    private final List<EndpointClient> clients = new ArrayList<>();
+    private IngestPipeline pipeline;
+    // whether stop() should close the pipeline, false when it was passed in
+    private final boolean ownsPipeline;
+    // permessage-deflate settings, null for none
+    private VitalsDeflateExtension compression;
+
+    /**
+     * Creates a reader for the given endpoints with its own pipeline.
+     *
+     * @param serverUris the addresses of the servers to connect to
+     */
+    public MultiWebSocketDataReader(List<String> serverUris) {
+        this(serverUris, null, true);
+    }
+
+    /**
+     * Creates a reader for the given endpoints that hands its frames to a shared pipeline.
+     *
+     * @param serverUris the addresses of the servers to connect to
+     * @param pipeline   where received frames go, it is not closed by {@link #stop()}
+     */
+    public MultiWebSocketDataReader(List<String> serverUris, IngestPipeline pipeline) {
+        this(serverUris, pipeline, false);
+    }
+
+    private MultiWebSocketDataReader(List<String> serverUris, IngestPipeline pipeline, boolean ownsPipeline) {
+        if (serverUris.isEmpty()) {
+            throw new IllegalArgumentException("No endpoints given");
+        }
+        this.serverUris = new ArrayList<>(serverUris);
+        this.pipeline = pipeline;
+        this.ownsPipeline = ownsPipeline;
+    }
+
+    /**
+     * Offers permessage-deflate to every endpoint, call before {@link #readData}.
+     *
+     * @param compression the compression settings shared by all connections, null to turn it off
+     */
+    public void setCompression(VitalsDeflateExtension compression) {
+        this.compression = compression;
+    }
+
+    /**
+     * Connects to all endpoints in parallel and waits until each has connected or failed.
+     * Endpoints that can't be reached are reported and retried in the background.
+     *
+     * @param dataStorage where to store the received data
+     * @throws IOException if no endpoint could be reached
+     */
+    @Override
+    public void readData(DataStorage dataStorage) throws IOException {
+        if (pipeline == null) {
+            pipeline = new IngestPipeline(dataStorage);
+        }
+        CountDownLatch settled = new CountDownLatch(serverUris.size());
+        for (String serverUri : serverUris) {
+            try {
+                EndpointClient client = new EndpointClient(serverUri, pipeline, compression, settled);
+                clients.add(client);
+                client.connect();
+            } catch (URISyntaxException e) {
+                System.err.println("Bad server address " + serverUri + ": " + e.getMessage());
+                settled.countDown();
+            }
+        }
+
+        try {
+            settled.await(CONNECTION_TIMEOUT_SECONDS, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Connection was interrupted", e);
+        }
+
+        int connected = 0;
+        for (EndpointClient client : clients) {
+            if (client.isOpen()) {
+                connected++;
+            } else {
+                System.err.println("Could not connect to " + client.stats.getServerUri());
+            }
+        }
+        if (connected == 0) {
+            stop();
+            throw new IOException("Failed to connect to any of " + serverUris.size() + " endpoints");
+        }
+        System.out.println("Connected to " + connected + " of " + serverUris.size() + " endpoints");
+    }
+
+    /**
+     * Disconnects from all servers, and stores the frames still queued.
+     */
+    public void stop() {
+        for (EndpointClient client : clients) {
+            client.stopReconnecting();
+        }
+        if (ownsPipeline && pipeline != null) {
+            pipeline.close();
+        }
+    }
+
+    /**
+     * Gets the pipeline the frames are handed to, for its metrics.
+     *
+     * @return the pipeline, or null before {@link #readData} was called
+     */
+    public IngestPipeline getPipeline() {
+        return pipeline;
+    }
+
+    /**
+     * Gets the traffic counters of every connection, in the order the endpoints were given.
+     *
+     * @return one entry per connection that could be created
+     */
+    public List<ConnectionStats> getConnectionStats() {
+        List<ConnectionStats> stats = new ArrayList<>(clients.size());
+        for (EndpointClient client : clients) {
+            stats.add(client.stats);
+        }
+        return stats;
+    }
+
+    /**
+     * Returns a summary of the pipeline and every connection, one line each.
+     */
+    public String report() {
+        StringBuilder report = new StringBuilder();
+        report.append("Ingest: ").append(pipeline == null ? "not started" : pipeline.report());
+        for (EndpointClient client : clients) {
+            ConnectionStats stats = client.stats;
+            report.append('\n').append(stats.getServerUri())
+                    .append(stats.isConnected() ? " connected" : " disconnected")
+                    .append(", frames ").append(stats.getFrames())
+                    .append(", bytes ").append(stats.getBytes())
+                    .append(", dropped ").append(stats.getDroppedFrames())
+                    .append(", duplicates ").append(client.getSequenceTracker().getDuplicates())
+                    .append(", missing ").append(client.getSequenceTracker().getMissing());
+        }
+        return report.toString();
+    }
+
+    /**
+     * Traffic counters of one connection.
+     */
+    public static class ConnectionStats {
+        private final String serverUri;
+        private final LongAdder frames = new LongAdder();
+        private final LongAdder bytes = new LongAdder();
+        private final LongAdder droppedFrames = new LongAdder();
+        private volatile boolean connected;
+        private volatile long lastMessageTime;
+
+        ConnectionStats(String serverUri) {
+            this.serverUri = serverUri;
+        }
+
+        public String getServerUri() {
+            return serverUri;
+        }
+
+        public long getFrames() {
+            return frames.sum();
+        }
+
+        /**
+         * Returns the payload bytes received, counting text frames by their length in characters.
+         */
+        public long getBytes() {
+            return bytes.sum();
+        }
+
+        /**
+         * Returns the frames of this connection the pipeline dropped on overflow.
+         */
+        public long getDroppedFrames() {
+            return droppedFrames.sum();
+        }
+
+        public boolean isConnected() {
+            return connected;
+        }
+
+        /**
+         * Returns when the last frame arrived, in milliseconds since the Unix epoch, or 0.
+         */
+        public long getLastMessageTime() {
+            return lastMessageTime;
+        }
+
+        void received(int size, boolean queued) {
+            frames.increment();
+            bytes.add(size);
+            if (!queued) {
+                droppedFrames.increment();
+            }
+            lastMessageTime = System.currentTimeMillis();
+        }
+    }
+
+    /**
+     * One connection, counting its traffic and handing frames to the pipeline.
+     */
+    private static class EndpointClient extends PatientDataWebSocketClient {
+        private final CountDownLatch settled;
+        private final AtomicBoolean hasSettled = new AtomicBoolean();
+        private final ConnectionStats stats;
+
+        EndpointClient(String serverUri, IngestPipeline pipeline, VitalsDeflateExtension compression,
+                CountDownLatch settled) throws URISyntaxException {
+            super(serverUri, pipeline, compression);
+            this.settled = settled;
+            this.stats = new ConnectionStats(serverUri);
+        }
+
+        @Override
+        public void onOpen(ServerHandshake handshake) {
+            stats.connected = true;
+            // logs the connection with the endpoint's address
+            super.onOpen(handshake);
+            settle();
+        }
+
+        @Override
+        protected void frameReceived(int size, boolean queued) {
+            stats.received(size, queued);
+        }
+
+        @Override
+        public void onClose(int code, String reason, boolean remote) {
+            stats.connected = false;
+            // a failed connect ends here without onOpen
+            settle();
+            super.onClose(code, reason, remote);
+        }
+
+        // counts this endpoint as connected or failed, once
+        private void settle() {
+            if (hasSettled.compareAndSet(false, true)) {
+                settled.countDown();
+            }
+        }
+    }
+}
@@ -10,11 +10,12 @@ import com.alerts.thresholds.PatientThresholdProfile;
  * This class stores patient-specific data, allowing for the addition and
  * retrieval
  * of medical records based on specified criteria.
+ * Records can be added and read from different threads.
  */
 public class Patient {
     private int patientId;
     private List<PatientRecord> patientRecords;
-    private PatientThresholdProfile profile = new PatientThresholdProfile();
+    private volatile PatientThresholdProfile profile = new PatientThresholdProfile();
 
     /**
      * Constructs a new Patient with a specified ID.
@@ -44,11 +45,25 @@ public class Patient {
      * @param timestamp        the time at which the measurement was taken, in
      *                         milliseconds since UNIX epoch
      */
-    public void addRecord(double measurementValue, String recordType, long timestamp) {
+    public synchronized void addRecord(double measurementValue, String recordType, long timestamp) {
         PatientRecord record = new PatientRecord(this.patientId, measurementValue, recordType, timestamp);
         this.patientRecords.add(record);
     }
 
+    /**
+     * Adds a run of records of this patient from a batch.
+     *
+     * @param batch the batch holding the records
+     * @param from  index of the first record to add
+     * @param to    index after the last record to add
+     */
+    synchronized void addRecords(RecordBatch batch, int from, int to) {
+        for (int i = from; i < to; i++) {
+            patientRecords.add(new PatientRecord(patientId, batch.getMeasurementValue(i),
+                    batch.getRecordType(i), batch.getTimestamp(i)));
+        }
+    }
+
     /**
      * Retrieves a list of PatientRecord objects for this patient that fall within a
      * specified time range.
@@ -60,7 +75,7 @@ public class Patient {
      * @return a list of PatientRecord objects that fall within the specified time
      *         range
      */
-    public List<PatientRecord> getRecords(long startTime, long endTime) {
+    public synchronized List<PatientRecord> getRecords(long startTime, long endTime) {
         List<PatientRecord> filteredRecords = new ArrayList<>();
         
         for (PatientRecord record : patientRecords) {
@@ -87,7 +102,22 @@ public class Patient {
      * 
      * @return a list of all patient records
      */
-    public List<PatientRecord> getAllRecords() {
+    public synchronized List<PatientRecord> getAllRecords() {
         return new ArrayList<>(patientRecords);
     }
+
+    /**
+     * Gets the records added after the first {@code index} ones, in the order
+     * they were added. Records are never reordered, so a reader that keeps
+     * the number it has seen only copies what is new.
+     *
+     * @param index the number of records already seen
+     * @return the newer records, empty if there are none
+     */
+    public synchronized List<PatientRecord> getRecordsFrom(int index) {
+        if (index >= patientRecords.size()) {
+            return new ArrayList<>();
+        }
+        return new ArrayList<>(patientRecords.subList(index, patientRecords.size()));
+    }
 }
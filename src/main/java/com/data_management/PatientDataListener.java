@@ -0,0 +1,16 @@
+package com.data_management;
+
+/**
+ * Gets told when {@link DataStorage} stored new data, e.g. to evaluate alerts
+ * as soon as readings arrive instead of polling.
+ */
+public interface PatientDataListener {
+    /**
+     * Called on the storing thread after new records were added to a patient.
+     * A batch calls this once per run of records of the same patient, so it
+     * should return quickly and leave the work to another thread.
+     *
+     * @param patient the patient that got new records
+     */
+    void dataAdded(Patient patient);
+}
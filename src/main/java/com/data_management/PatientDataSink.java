@@ -0,0 +1,18 @@
+package com.data_management;
+
+/**
+ * Something that accepts parsed patient measurements, like {@link DataStorage}.
+ * Parsers hand their results to a sink one value at a time, so they never
+ * need to build intermediate record objects.
+ */
+public interface PatientDataSink {
+    /**
+     * Accepts one measurement.
+     *
+     * @param patientId        the unique identifier of the patient
+     * @param measurementValue the value of the health metric being recorded
+     * @param recordType       the type of record, e.g., "HeartRate", "ECG"
+     * @param timestamp        the time of the measurement, in milliseconds since the Unix epoch
+     */
+    void addPatientData(int patientId, double measurementValue, String recordType, long timestamp);
+}
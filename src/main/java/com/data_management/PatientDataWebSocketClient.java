@@ -1,63 +1,152 @@
 package com.data_management;
 
 import org.java_websocket.client.WebSocketClient;
+import org.java_websocket.drafts.Draft_6455;
+import org.java_websocket.extensions.IExtension;
 import org.java_websocket.handshake.ServerHandshake;
-import com.fasterxml.jackson.databind.ObjectMapper;
-import com.fasterxml.jackson.databind.JsonNode;
+import org.java_websocket.protocols.Protocol;
 
 import java.net.URI;
 import java.net.URISyntaxException;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
 /**
  * Connects to a websocket server and receives patient data,
- * automatically tries to reconnect if connection is lost
+ * automatically tries to reconnect if connection is lost.
+ * messages are handed to an {@link IngestPipeline} that parses and stores them.
+ * <p>
+ * Reconnects are scheduled with exponential backoff and jitter on one scheduler
+ * thread shared by all clients. After reconnecting, the client asks the server
+ * to replay everything after the last sequence number it stored, and its
+ * {@link SequenceTracker} drops readings that arrive twice. The request carries
+ * the epoch of the server session those numbers belong to, so a restarted
+ * server, which numbers from 1 again, turns it down instead of replaying the
+ * wrong readings. With a {@link VitalsDeflateExtension} the client offers
+ * permessage-deflate.
  */
 public class PatientDataWebSocketClient extends WebSocketClient {
-    private final DataStorage dataStorage;
-    private final ObjectMapper objectMapper;
-    private static final int RECONNECT_DELAY_MS = 5000;
-    private boolean shouldReconnect = true;
+    private static final long MIN_RECONNECT_DELAY_MS = 50;
+    private static final long MAX_RECONNECT_DELAY_MS = 30_000;
+    private static final ScheduledExecutorService RECONNECTS = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread thread = new Thread(r, "websocket-reconnect");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    private final IngestPipeline pipeline;
+    // whether stopReconnecting() should close the pipeline, false when it was passed in
+    private final boolean ownsPipeline;
+    private final SequenceTracker sequences = new SequenceTracker();
+    // name this connection's bad frames are counted under and its log lines mention
+    private final String source;
+    // failed attempts since the last connection, sets the backoff
+    private final AtomicInteger attempts = new AtomicInteger();
+    // keeps a scheduled reconnect from reopening a client that was just stopped
+    private final Object reconnectLock = new Object();
+    private volatile boolean shouldReconnect = true;
+    // set by the first frame, the pipeline may not have tracked it yet when we reconnect
+    private volatile boolean hasReceived;
 
     /**
-     * Creates new client to receive patient data
+     * Creates new client to receive patient data,
+     * asks for binary frames and falls back to json if the server doesn't offer them
      * 
      * @param serverUri Address of the server to connect to
      * @param dataStorage Where to store the received data
      */
     public PatientDataWebSocketClient(String serverUri, DataStorage dataStorage) throws URISyntaxException {
-        super(new URI(serverUri));
-        this.dataStorage = dataStorage;
-        this.objectMapper = new ObjectMapper();
+        this(serverUri, new IngestPipeline(dataStorage), true, null);
+    }
+
+    /**
+     * Creates new client that hands its messages to a shared pipeline
+     * 
+     * @param serverUri Address of the server to connect to
+     * @param pipeline Where received messages go, it is not closed by this client
+     */
+    public PatientDataWebSocketClient(String serverUri, IngestPipeline pipeline) throws URISyntaxException {
+        this(serverUri, pipeline, false, null);
+    }
+
+    /**
+     * Creates new client that hands its messages to a shared pipeline and
+     * offers compression
+     * 
+     * @param serverUri Address of the server to connect to
+     * @param pipeline Where received messages go, it is not closed by this client
+     * @param compression permessage-deflate settings, null to not offer compression
+     */
+    public PatientDataWebSocketClient(String serverUri, IngestPipeline pipeline, VitalsDeflateExtension compression)
+            throws URISyntaxException {
+        this(serverUri, pipeline, false, compression);
+    }
+
+    private PatientDataWebSocketClient(String serverUri, IngestPipeline pipeline, boolean ownsPipeline,
+            VitalsDeflateExtension compression) throws URISyntaxException {
+        // the client's draft is used as it is, so it gets its own copy of the extension
+        super(new URI(serverUri), new Draft_6455(
+            compression == null ? Collections.<IExtension>emptyList()
+                : Collections.<IExtension>singletonList(compression.copyInstance()),
+            Arrays.asList(new Protocol(VitalsBinaryCodec.PROTOCOL), new Protocol(""))));
+        this.pipeline = pipeline;
+        this.ownsPipeline = ownsPipeline;
+        this.source = serverUri;
     }
 
     /**
-     * Called when we connect to the server
+     * Called when we connect to the server, asks for what was missed
+     * if this is a reconnect
      */
     @Override
     public void onOpen(ServerHandshake handshake) {
-        System.out.println("Connected to server");
+        attempts.set(0);
+        if (hasReceived) {
+            long epoch = sequences.getEpoch();
+            long from = sequences.getAcknowledged() + 1;
+            // a restarted server has a new epoch and turns the request down
+            System.out.println("Reconnected to " + source + ", asking for replay of epoch " + epoch + " from " + from);
+            send(VitalsMessageParser.replayRequest(epoch, from));
+        } else {
+            System.out.println("Connected to " + source);
+        }
     }
 
     /**
-     * Handles data messages from the server,
-     * expects json with patientId, value, recordType and timestamp
+     * Queues data messages from the server,
+     * json with patientId, value, recordType and timestamp,
+     * or a batch of those as a json array or newline delimited json
      */
     @Override
     public void onMessage(String message) {
-        try {
-            JsonNode data = objectMapper.readTree(message);
-            
-            //get all the values from the message
-            int patientId = data.get("patientId").asInt();
-            double value = data.get("value").asDouble();
-            String recordType = data.get("recordType").asText();
-            long timestamp = data.get("timestamp").asLong();
-
-            //save
-            dataStorage.addPatientData(patientId, value, recordType, timestamp);
-        } catch (Exception e) {
-            System.err.println("Error processing message: " + e.getMessage());
-        }
+        hasReceived = true;
+        frameReceived(message.length(), pipeline.submit(message, source, sequences));
+    }
+
+    /**
+     * Queues binary frames, sent when the binary subprotocol was negotiated
+     */
+    @Override
+    public void onMessage(ByteBuffer bytes) {
+        hasReceived = true;
+        int size = bytes.remaining();
+        frameReceived(size, pipeline.submit(bytes, source, sequences));
+    }
+
+    /**
+     * Called for every frame after it was handed to the pipeline, for subclasses
+     * that count traffic
+     *
+     * @param size   payload bytes, or characters of a text frame
+     * @param queued false if the pipeline dropped the frame
+     */
+    protected void frameReceived(int size, boolean queued) {
     }
 
     /**
@@ -65,7 +154,8 @@ public class PatientDataWebSocketClient extends WebSocketClient {
      */
     @Override
     public void onClose(int code, String reason, boolean remote) {
-        System.out.println( "Connection closed by " + (remote ? "server" : "us") + " Code: " + code + " Reason: " + reason);
+        System.out.println("Connection to " + source + " closed by " + (remote ? "server" : "us")
+                + " Code: " + code + " Reason: " + reason);
         //try to reconnect if we should
         if (shouldReconnect) {
             handleReconnect();
@@ -77,38 +167,45 @@ public class PatientDataWebSocketClient extends WebSocketClient {
      */
     @Override
     public void onError(Exception ex) {
-
-        System.err.println("WebSocket error: " + ex.getMessage());
+        System.err.println("WebSocket error on " + source + ": " + ex.getMessage());
     }
 
     /**
-     * Tries to reconnect to the server after waiting a bit
+     * Schedules the next reconnect, the delay doubles with every failed attempt
+     * up to a limit, and is picked at random from its upper half so clients
+     * cut off together don't all come back at once
      */
     private void handleReconnect() {
-
-        new Thread(() -> {
-            try {
-                // wait before trying to reconnect
-                Thread.sleep(RECONNECT_DELAY_MS);
+        int attempt = attempts.getAndIncrement();
+        long ceiling = Math.min(MAX_RECONNECT_DELAY_MS, MIN_RECONNECT_DELAY_MS << Math.min(attempt, 20));
+        long delay = ThreadLocalRandom.current().nextLong(ceiling / 2, ceiling + 1);
+        RECONNECTS.schedule(() -> {
+            synchronized (reconnectLock) {
                 if (shouldReconnect) {
-                    // try connecting again
+                    // try connecting again, a failure ends up in onClose
                     reconnect();
-
                 }
-            } 
-            catch (InterruptedException e) {
-                Thread.currentThread().interrupt();
             }
-        }
-        ).start();
+        }, delay, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * gets the tracker of the sequence numbers received, for its gap and duplicate counts
+     */
+    public SequenceTracker getSequenceTracker() {
+        return sequences;
     }
 
     /**
      * stops trying to reconnect and closes connection
      */
     public void stopReconnecting() {
-        shouldReconnect = false;
-        
+        synchronized (reconnectLock) {
+            shouldReconnect = false;
+        }
         close();
+        if (ownsPipeline) {
+            pipeline.close();
+        }
     }
 } 
\ No newline at end of file
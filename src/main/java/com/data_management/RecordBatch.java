@@ -0,0 +1,123 @@
+package com.data_management;
+
+import java.util.Arrays;
+
+/**
+ * A reusable batch of measurements kept in parallel primitive arrays, so a
+ * parser can collect a whole message before it is stored in one call to
+ * {@link DataStorage#addBatch(RecordBatch)}. Not thread safe.
+ */
+public class RecordBatch implements SequencedDataSink {
+    private long[] sequences;
+    private int[] patientIds;
+    private double[] values;
+    private String[] recordTypes;
+    private long[] timestamps;
+    private int size;
+
+    /**
+     * Creates a batch with room for 64 measurements; it grows as needed.
+     */
+    public RecordBatch() {
+        this(64);
+    }
+
+    /**
+     * @param initialCapacity measurements the batch holds before it grows
+     */
+    public RecordBatch(int initialCapacity) {
+        int capacity = Math.max(1, initialCapacity);
+        sequences = new long[capacity];
+        patientIds = new int[capacity];
+        values = new double[capacity];
+        recordTypes = new String[capacity];
+        timestamps = new long[capacity];
+    }
+
+    @Override
+    public void addPatientData(int patientId, double measurementValue, String recordType, long timestamp) {
+        addPatientData(0, patientId, measurementValue, recordType, timestamp);
+    }
+
+    @Override
+    public void addPatientData(long sequence, int patientId, double measurementValue, String recordType,
+                               long timestamp) {
+        if (size == patientIds.length) {
+            int capacity = size * 2;
+            sequences = Arrays.copyOf(sequences, capacity);
+            patientIds = Arrays.copyOf(patientIds, capacity);
+            values = Arrays.copyOf(values, capacity);
+            recordTypes = Arrays.copyOf(recordTypes, capacity);
+            timestamps = Arrays.copyOf(timestamps, capacity);
+        }
+        sequences[size] = sequence;
+        patientIds[size] = patientId;
+        values[size] = measurementValue;
+        recordTypes[size] = recordType;
+        timestamps[size] = timestamp;
+        size++;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    /**
+     * Returns the feed sequence number of a measurement, 0 if it has none.
+     */
+    public long getSequence(int index) {
+        return sequences[index];
+    }
+
+    public int getPatientId(int index) {
+        return patientIds[index];
+    }
+
+    public double getMeasurementValue(int index) {
+        return values[index];
+    }
+
+    public String getRecordType(int index) {
+        return recordTypes[index];
+    }
+
+    public long getTimestamp(int index) {
+        return timestamps[index];
+    }
+
+    /**
+     * Copies a measurement over another one, to compact the batch after filtering.
+     *
+     * @param from index of the measurement to copy
+     * @param to   index to copy it to
+     */
+    void copy(int from, int to) {
+        sequences[to] = sequences[from];
+        patientIds[to] = patientIds[from];
+        values[to] = values[from];
+        recordTypes[to] = recordTypes[from];
+        timestamps[to] = timestamps[from];
+    }
+
+    /**
+     * Drops the measurements from the given index on.
+     *
+     * @param newSize the number of measurements to keep
+     */
+    void truncate(int newSize) {
+        Arrays.fill(recordTypes, newSize, size, null);
+        size = newSize;
+    }
+
+    /**
+     * Empties the batch, keeping its arrays for the next message.
+     */
+    public void clear() {
+        Arrays.fill(recordTypes, 0, size, null);
+        size = 0;
+    }
+}
@@ -0,0 +1,366 @@
+package com.data_management;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.locks.LockSupport;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * Replays recorded data files as if the readings were arriving live, to load
+ * test the alerting. Reads the same .txt and .csv files as {@link FileDataReader},
+ * compressed or not, and emits the readings of all files in timestamp order
+ * by a k-way merge over one cursor per file.
+ * <p>
+ * A virtual clock starts at the first timestamp and runs {@code speed} times
+ * faster than the wall clock; each reading is stored once the virtual clock
+ * reaches its timestamp. Speed 0 replays as fast as possible. Each file must
+ * be in timestamp order for the merge to be; readings that are not are
+ * stored right away and counted as late. Bad lines are counted in {@link IngestErrors}.
+ */
+public class ReplayDataReader implements DataReader {
+    private static final int READ_BUFFER_SIZE = 64 * 1024;
+    private static final int MAX_BATCH = 512;
+    // waits shorter than this are caught up with by the next readings instead
+    private static final long MIN_SLEEP_NANOS = 1_000_000;
+
+    private final String directoryPath;
+    private final double speed;
+    private volatile boolean stopped;
+    private ExecutorService decompressionExecutor;
+
+    private volatile long replayedRecords;
+    private volatile long lateRecords;
+    private volatile long rejectedLines;
+    private volatile long virtualSpanMs;
+    private volatile long elapsedNanos;
+
+    /**
+     * Creates a reader that replays at the given speed.
+     *
+     * @param directoryPath folder with the recorded files
+     * @param speed         how many times faster than recorded to replay, 0 for as fast as possible
+     */
+    public ReplayDataReader(String directoryPath, double speed) {
+        if (speed < 0 || Double.isNaN(speed) || Double.isInfinite(speed)) {
+            throw new IllegalArgumentException("Speed must be 0 or positive: " + speed);
+        }
+        this.directoryPath = directoryPath;
+        this.speed = speed;
+    }
+
+    /**
+     * Replays every file of the directory and returns when the last reading
+     * was stored or {@link #stop()} was called.
+     *
+     * @param dataStorage where the readings go
+     * @throws IOException if the folder can't be listed or a file can't be opened
+     */
+    @Override
+    public void readData(DataStorage dataStorage) throws IOException {
+        Path dir = Paths.get(directoryPath);
+        if (!Files.isDirectory(dir)) {
+            throw new IOException("Directory does not exist or is not a directory: " + directoryPath);
+        }
+        List<Path> files;
+        try (Stream<Path> paths = Files.walk(dir)) {
+            files = paths.filter(Files::isRegularFile)
+                    .filter(path -> {
+                        String name = DecompressingChannel.stripCompressionSuffix(path.getFileName().toString());
+                        return name.endsWith(".txt") || name.endsWith(".csv");
+                    })
+                    .sorted()
+                    .collect(Collectors.toList());
+        }
+
+        // earliest timestamp first, ties in file order so a replay is repeatable
+        PriorityQueue<FileCursor> cursors = new PriorityQueue<>(Math.max(1, files.size()),
+                Comparator.comparingLong(FileCursor::timestamp).thenComparingInt(cursor -> cursor.index));
+        try {
+            for (int i = 0; i < files.size(); i++) {
+                FileCursor cursor = new FileCursor(i, files.get(i), dir.relativize(files.get(i)).toString(),
+                        open(files.get(i)));
+                if (cursor.advance()) {
+                    cursors.add(cursor);
+                } else {
+                    cursor.close();
+                }
+            }
+            replay(cursors, dataStorage);
+        } finally {
+            for (FileCursor cursor : cursors) {
+                cursor.close();
+            }
+            if (decompressionExecutor != null) {
+                decompressionExecutor.shutdownNow();
+                decompressionExecutor = null;
+            }
+        }
+    }
+
+    private void replay(PriorityQueue<FileCursor> cursors, DataStorage dataStorage) throws IOException {
+        RecordBatch out = new RecordBatch(MAX_BATCH);
+        if (cursors.isEmpty()) {
+            return;
+        }
+        long firstTimestamp = cursors.peek().timestamp();
+        long lastTimestamp = firstTimestamp;
+        long startNanos = System.nanoTime();
+        long replayed = 0;
+        long late = 0;
+
+        while (!cursors.isEmpty() && !stopped) {
+            FileCursor cursor = cursors.poll();
+            long timestamp = cursor.timestamp();
+            if (timestamp < lastTimestamp) {
+                late++;
+            } else {
+                lastTimestamp = timestamp;
+                if (speed > 0) {
+                    long dueNanos = startNanos + (long) ((timestamp - firstTimestamp) * 1_000_000 / speed);
+                    long waitNanos = dueNanos - System.nanoTime();
+                    if (waitNanos >= MIN_SLEEP_NANOS) {
+                        // the readings due so far go in before the clock moves on
+                        flush(out, dataStorage);
+                        LockSupport.parkNanos(waitNanos);
+                    }
+                }
+            }
+            cursor.copyTo(out);
+            replayed++;
+            if (out.size() >= MAX_BATCH) {
+                flush(out, dataStorage);
+            }
+            if (cursor.advance()) {
+                cursors.add(cursor);
+            } else {
+                cursor.close();
+            }
+            if ((replayed & 1023) == 0) {
+                updateStats(replayed, late, lastTimestamp - firstTimestamp, startNanos);
+            }
+        }
+        flush(out, dataStorage);
+        updateStats(replayed, late, lastTimestamp - firstTimestamp, startNanos);
+    }
+
+    private void updateStats(long replayed, long late, long spanMs, long startNanos) {
+        replayedRecords = replayed;
+        lateRecords = late;
+        virtualSpanMs = spanMs;
+        elapsedNanos = System.nanoTime() - startNanos;
+    }
+
+    private static void flush(RecordBatch out, DataStorage dataStorage) {
+        if (!out.isEmpty()) {
+            dataStorage.addBatch(out);
+            out.clear();
+        }
+    }
+
+    private ReadableByteChannel open(Path file) throws IOException {
+        if (!DecompressingChannel.isCompressed(file)) {
+            return FileChannel.open(file, StandardOpenOption.READ);
+        }
+        if (decompressionExecutor == null) {
+            // every compressed file is open for the whole replay, each needs its own thread
+            decompressionExecutor = Executors.newCachedThreadPool(r -> {
+                Thread thread = new Thread(r, "replay-decompressor");
+                thread.setDaemon(true);
+                return thread;
+            });
+        }
+        return new DecompressingChannel(file, 0, decompressionExecutor);
+    }
+
+    /**
+     * Stops a replay running on another thread after the current reading.
+     */
+    public void stop() {
+        stopped = true;
+    }
+
+    public long getReplayedRecords() {
+        return replayedRecords;
+    }
+
+    /**
+     * Returns the number of readings that were older than one replayed before them.
+     */
+    public long getLateRecords() {
+        return lateRecords;
+    }
+
+    /**
+     * Returns the number of lines that could not be parsed.
+     */
+    public long getRejectedLines() {
+        return rejectedLines;
+    }
+
+    /**
+     * Returns the readings stored per second of wall clock time so far.
+     */
+    public double getAchievedRate() {
+        long nanos = elapsedNanos;
+        return nanos == 0 ? 0 : replayedRecords * 1e9 / nanos;
+    }
+
+    /**
+     * Returns the readings per second the speed factor asks for, given the
+     * timestamps replayed so far, or infinity at speed 0.
+     */
+    public double getTargetRate() {
+        if (speed == 0) {
+            return Double.POSITIVE_INFINITY;
+        }
+        long spanMs = virtualSpanMs;
+        return spanMs == 0 ? 0 : replayedRecords * 1000.0 * speed / spanMs;
+    }
+
+    /**
+     * Returns a one line summary of the replay's progress.
+     */
+    public String report() {
+        String target = speed == 0 ? "as fast as possible" : String.format("%.1f/s target at %sx", getTargetRate(),
+                speed);
+        return String.format("replayed %d readings in %.2fs, %.1f/s achieved, %s, %d late, %d rejected lines",
+                getReplayedRecords(), elapsedNanos / 1e9, getAchievedRate(), target, getLateRecords(),
+                getRejectedLines());
+    }
+
+    /**
+     * Reads one file a line at a time and holds the readings of the current line.
+     */
+    private final class FileCursor {
+        final int index;
+        private final Path file;
+        // name the file's errors are counted under
+        private final String source;
+        private final ReadableByteChannel channel;
+        private final VitalsLineParser lineParser = new VitalsLineParser();
+        // readings of the current line, a blood levels line has several
+        private final RecordBatch records = new RecordBatch(4);
+        private ByteBuffer buffer = ByteBuffer.allocate(READ_BUFFER_SIZE);
+        private int lineStart;
+        private int next = -1;
+        private boolean endOfFile;
+
+        FileCursor(int index, Path file, String source, ReadableByteChannel channel) {
+            this.index = index;
+            this.file = file;
+            this.source = source;
+            this.channel = channel;
+            buffer.limit(0);
+        }
+
+        long timestamp() {
+            return records.getTimestamp(next);
+        }
+
+        void copyTo(RecordBatch out) {
+            out.addPatientData(records.getPatientId(next), records.getMeasurementValue(next),
+                    records.getRecordType(next), records.getTimestamp(next));
+        }
+
+        /**
+         * Moves to the next reading.
+         *
+         * @return false once the file is exhausted
+         */
+        boolean advance() throws IOException {
+            if (++next < records.size()) {
+                return true;
+            }
+            records.clear();
+            next = 0;
+            while (records.isEmpty()) {
+                int lineEnd = nextLineEnd();
+                if (lineEnd < 0) {
+                    return false;
+                }
+                parseLine(lineStart, lineEnd);
+                lineStart = lineEnd + 1;
+            }
+            return true;
+        }
+
+        /**
+         * Returns the index of the next line break, reading more of the file as
+         * needed, or -1 at the end. A last line without a line break ends at the limit.
+         */
+        private int nextLineEnd() throws IOException {
+            int searchFrom = lineStart;
+            while (true) {
+                byte[] bytes = buffer.array();
+                for (int i = searchFrom; i < buffer.limit(); i++) {
+                    if (bytes[i] == '\n') {
+                        return i;
+                    }
+                }
+                if (endOfFile) {
+                    // the line after a trailing line starts past the limit, which ends the file
+                    return lineStart < buffer.limit() ? buffer.limit() : -1;
+                }
+                // keep the partial line and read more behind it
+                searchFrom = buffer.limit() - lineStart;
+                buffer.position(lineStart);
+                buffer.compact();
+                if (!buffer.hasRemaining()) {
+                    ByteBuffer bigger = ByteBuffer.allocate(buffer.capacity() * 2);
+                    buffer.flip();
+                    bigger.put(buffer);
+                    buffer = bigger;
+                }
+                lineStart = 0;
+                if (channel.read(buffer) < 0) {
+                    endOfFile = true;
+                }
+                buffer.flip();
+            }
+        }
+
+        private void parseLine(int from, int to) {
+            byte[] bytes = buffer.array();
+            while (from < to && bytes[from] <= ' ') {
+                from++;
+            }
+            while (to > from && bytes[to - 1] <= ' ') {
+                to--;
+            }
+            if (from == to || bytes[from] == '#') {
+                return;
+            }
+            try {
+                if (VitalsLineParser.isLabelledLine(buffer, from, to)) {
+                    lineParser.parseLabelled(buffer, from, to, records);
+                } else {
+                    lineParser.parseCsv(buffer, from, to, records);
+                }
+            } catch (IllegalArgumentException e) {
+                rejectedLines++;
+                IngestErrors.getInstance().record(source, e);
+            }
+        }
+
+        void close() {
+            try {
+                channel.close();
+            } catch (IOException e) {
+                System.err.println("Error closing " + file.getFileName() + ": " + e.getMessage());
+            }
+        }
+    }
+}
@@ -0,0 +1,221 @@
+package com.data_management;
+
+import java.util.Arrays;
+
+/**
+ * Keeps track of which feed sequence numbers of one connection have been
+ * stored, so replayed or repeated readings are dropped and gaps are noticed.
+ * <p>
+ * Everything up to the acknowledged sequence number has been seen. Above it,
+ * a window of {@value #WINDOW} sequence numbers remembers which arrived out
+ * of order. A reading that lands beyond the window pushes it forward, and
+ * whatever is still missing at its old start counts as lost. The first
+ * sequence number seen is where tracking starts. Thread safe, as
+ * pipeline workers and the connection thread both use it.
+ * <p>
+ * A server numbers its readings from 1 again every time it starts, and tells
+ * its sessions apart by an epoch, its start time. Readings of a newer epoch
+ * start tracking over; readings of an older one, still on their way when the
+ * epoch changed, can't be checked any more and are let through.
+ */
+public class SequenceTracker {
+    /** How far ahead of the acknowledged sequence number readings are remembered. */
+    public static final int WINDOW = 1 << 16;
+    private static final int WORDS = WINDOW / 64;
+
+    // bit (sequence % WINDOW) is set when that sequence number arrived above acknowledged
+    private final long[] seen = new long[WORDS];
+    // epoch of the session being tracked, 0 for a feed without epochs
+    private long epoch;
+    private long acknowledged;
+    private long highest;
+    private long duplicates;
+    private long lost;
+
+    /**
+     * Checks whether a reading is new and records it.
+     *
+     * @param sequence the reading's sequence number, 0 if the feed has none
+     * @return false if the reading was seen before and should be dropped
+     */
+    public synchronized boolean accept(long sequence) {
+        if (sequence <= 0) {
+            return true;
+        }
+        if (highest == 0) {
+            // joined a running feed, what came before is not ours to miss
+            acknowledged = sequence - 1;
+        }
+        if (sequence <= acknowledged || isSeen(sequence)) {
+            duplicates++;
+            return false;
+        }
+        if (sequence > acknowledged + WINDOW) {
+            skipTo(sequence - WINDOW + 1);
+        }
+        seen[index(sequence) >>> 6] |= 1L << index(sequence);
+        highest = Math.max(highest, sequence);
+        while (isSeen(acknowledged + 1)) {
+            acknowledged++;
+            seen[index(acknowledged) >>> 6] &= ~(1L << index(acknowledged));
+        }
+        return true;
+    }
+
+    /**
+     * Checks whether a reading of a server session is new and records it.
+     *
+     * @param epoch    the session's epoch, 0 if the feed has none
+     * @param sequence the reading's sequence number, 0 if the feed has none
+     * @return false if the reading was seen before and should be dropped
+     */
+    public synchronized boolean accept(long epoch, long sequence) {
+        if (epoch != this.epoch && epoch != 0 && sequence > 0) {
+            if (epoch < this.epoch) {
+                return true;
+            }
+            startEpoch(epoch);
+        }
+        return accept(sequence);
+    }
+
+    // the server restarted and numbers its readings from 1 again
+    private void startEpoch(long newEpoch) {
+        if (epoch != 0) {
+            System.out.println("Feed restarted, epoch " + epoch + " is now " + newEpoch
+                    + ", tracking sequence numbers from the start");
+        }
+        epoch = newEpoch;
+        Arrays.fill(seen, 0L);
+        acknowledged = 0;
+        highest = 0;
+    }
+
+    /**
+     * Drops the readings of a batch that were seen before, from the given index on.
+     *
+     * @param batch the batch to filter in place
+     * @param from  index of the first reading to check
+     * @return the number of readings dropped
+     */
+    public int filter(RecordBatch batch, int from) {
+        return filter(batch, from, 0);
+    }
+
+    /**
+     * Drops the readings of a batch that were seen before, from the given index on.
+     *
+     * @param batch the batch to filter in place
+     * @param from  index of the first reading to check
+     * @param epoch the epoch of the session the readings came from, 0 if the feed has none
+     * @return the number of readings dropped
+     */
+    public int filter(RecordBatch batch, int from, long epoch) {
+        int kept = from;
+        for (int i = from; i < batch.size(); i++) {
+            if (accept(epoch, batch.getSequence(i))) {
+                if (kept != i) {
+                    batch.copy(i, kept);
+                }
+                kept++;
+            }
+        }
+        int dropped = batch.size() - kept;
+        batch.truncate(kept);
+        return dropped;
+    }
+
+    /**
+     * Gives up on every sequence number below the given one, e.g. because the
+     * server no longer holds them for replay. The ones not seen count as lost.
+     *
+     * @param sequence the first sequence number still expected
+     */
+    public synchronized void skipTo(long sequence) {
+        long target = sequence - 1;
+        if (target - acknowledged > WINDOW) {
+            // everything in the window is below the target
+            long seenCount = 0;
+            for (long word : seen) {
+                seenCount += Long.bitCount(word);
+            }
+            lost += target - acknowledged - seenCount;
+            Arrays.fill(seen, 0L);
+            acknowledged = target;
+        }
+        while (acknowledged < target) {
+            acknowledged++;
+            int bit = index(acknowledged);
+            if ((seen[bit >>> 6] & (1L << bit)) == 0) {
+                lost++;
+            } else {
+                seen[bit >>> 6] &= ~(1L << bit);
+            }
+        }
+        highest = Math.max(highest, acknowledged);
+        while (isSeen(acknowledged + 1)) {
+            acknowledged++;
+            seen[index(acknowledged) >>> 6] &= ~(1L << index(acknowledged));
+        }
+    }
+
+    private boolean isSeen(long sequence) {
+        if (sequence <= acknowledged || sequence > acknowledged + WINDOW) {
+            return false;
+        }
+        int bit = index(sequence);
+        return (seen[bit >>> 6] & (1L << bit)) != 0;
+    }
+
+    private static int index(long sequence) {
+        return (int) (sequence & (WINDOW - 1));
+    }
+
+    /**
+     * Returns the epoch of the session being tracked, 0 before the first one
+     * or if the feed has none.
+     */
+    public synchronized long getEpoch() {
+        return epoch;
+    }
+
+    /**
+     * Returns the highest sequence number up to which every reading was seen,
+     * where a replay should start after it.
+     */
+    public synchronized long getAcknowledged() {
+        return acknowledged;
+    }
+
+    /**
+     * Returns the highest sequence number seen.
+     */
+    public synchronized long getHighest() {
+        return highest;
+    }
+
+    /**
+     * Returns the number of sequence numbers between the acknowledged and the
+     * highest one that have not arrived yet.
+     */
+    public synchronized long getMissing() {
+        long missing = 0;
+        for (long sequence = acknowledged + 1; sequence < highest; sequence++) {
+            if (!isSeen(sequence)) {
+                missing++;
+            }
+        }
+        return missing;
+    }
+
+    public synchronized long getDuplicates() {
+        return duplicates;
+    }
+
+    /**
+     * Returns the number of readings that were given up on and will not be stored.
+     */
+    public synchronized long getLost() {
+        return lost;
+    }
+}
@@ -0,0 +1,19 @@
+package com.data_management;
+
+/**
+ * A {@link PatientDataSink} that also takes the feed sequence number of each
+ * measurement, so duplicates and gaps can be detected. Parsers check for this
+ * interface and pass the sequence number when the feed carries one.
+ */
+public interface SequencedDataSink extends PatientDataSink {
+    /**
+     * Accepts one measurement with its sequence number.
+     *
+     * @param sequence         the measurement's position in the feed, 0 if the feed has none
+     * @param patientId        the unique identifier of the patient
+     * @param measurementValue the value of the health metric being recorded
+     * @param recordType       the type of record, e.g., "HeartRate", "ECG"
+     * @param timestamp        the time of the measurement, in milliseconds since the Unix epoch
+     */
+    void addPatientData(long sequence, int patientId, double measurementValue, String recordType, long timestamp);
+}
@@ -0,0 +1,456 @@
+package com.data_management;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedSelectorException;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayDeque;
+import java.util.Iterator;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Reads patient data over plain TCP on one selector thread. It either listens
+ * for any number of producers or connects to the simulator's TCP output.
+ * <p>
+ * A connection carries either text lines, in the CSV layout
+ * {@code patientId,timestamp,label,data} the simulator sends or its labelled
+ * layout, or {@link VitalsBinaryCodec} frames each preceded by their length as
+ * a big endian int. A connection whose first byte is 0 is binary; no text line
+ * starts with one, and the length of a frame below 16 MiB always does.
+ * <p>
+ * Data is read into direct buffers from a shared pool, and lines and frames
+ * are parsed in place without becoming Strings. An idle connection with no
+ * partial line left gives its buffer back to the pool. The readings of each
+ * selector round are stored with one {@link DataStorage#addBatch(RecordBatch)} call.
+ * Bad lines and frames are counted per connection in {@link IngestErrors}, as
+ * are connections that fail while being accepted; those are closed and the
+ * reader goes on with the others.
+ */
+public class TcpDataReader implements DataReader {
+    private static final int BUFFER_SIZE = 64 * 1024;
+    private static final int MAX_POOLED_BUFFERS = 64;
+    private static final int MAX_FRAME_SIZE = 16 * 1024 * 1024;
+    // how long the listener stops accepting after accept itself failed
+    private static final long ACCEPT_PAUSE_MS = 100;
+
+    private final String host;
+    private final int port;
+    private final ArrayDeque<ByteBuffer> bufferPool = new ArrayDeque<>();
+    private final VitalsLineParser lineParser = new VitalsLineParser();
+    private final VitalsBinaryCodec binaryCodec = new VitalsBinaryCodec();
+    private final RecordBatch batch = new RecordBatch();
+    private final IngestErrors errors = IngestErrors.getInstance();
+    private Selector selector;
+    private Thread selectorThread;
+    private volatile boolean running;
+    private volatile int openConnections;
+    private volatile int localPort = -1;
+    // the listener's key while accepting is paused, and when it resumes
+    private SelectionKey pausedAccept;
+    private long acceptResumesAt;
+
+    private final LongAdder acceptedConnections = new LongAdder();
+    private final LongAdder bytesRead = new LongAdder();
+    private final LongAdder storedReadings = new LongAdder();
+    private final LongAdder rejectedMessages = new LongAdder();
+
+    /**
+     * Creates a reader that listens for producers on the given port.
+     *
+     * @param port the port to listen on, 0 picks a free one
+     */
+    public TcpDataReader(int port) {
+        this(null, port);
+    }
+
+    /**
+     * Creates a reader that connects to a TCP server, e.g. the simulator's TCP output.
+     *
+     * @param host the server's host name
+     * @param port the server's port
+     */
+    public TcpDataReader(String host, int port) {
+        this.host = host;
+        this.port = port;
+    }
+
+    /**
+     * Binds or connects and starts reading on a background thread.
+     *
+     * @param dataStorage where to store the received data
+     * @throws IOException if the port can't be bound or the server can't be reached
+     */
+    @Override
+    public void readData(DataStorage dataStorage) throws IOException {
+        if (running) {
+            return;
+        }
+        selector = Selector.open();
+        try {
+            if (host == null) {
+                ServerSocketChannel server = ServerSocketChannel.open();
+                server.socket().setReuseAddress(true);
+                server.bind(new InetSocketAddress(port));
+                server.configureBlocking(false);
+                server.register(selector, SelectionKey.OP_ACCEPT);
+                localPort = server.socket().getLocalPort();
+                System.out.println("Listening for TCP producers on port " + localPort);
+            } else {
+                SocketChannel channel = SocketChannel.open(new InetSocketAddress(host, port));
+                register(channel);
+                System.out.println("Connected to TCP server " + host + ":" + port);
+            }
+        } catch (IOException e) {
+            closeAll();
+            throw e;
+        }
+
+        running = true;
+        selectorThread = new Thread(() -> selectLoop(dataStorage), "tcp-reader");
+        selectorThread.setDaemon(true);
+        selectorThread.start();
+    }
+
+    /**
+     * Closes every connection and stops the selector thread.
+     */
+    public void stop() {
+        running = false;
+        if (selector != null) {
+            selector.wakeup();
+        }
+        if (selectorThread != null) {
+            try {
+                selectorThread.join(5000);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            selectorThread = null;
+        }
+    }
+
+    /**
+     * Returns the port the reader listens on, or -1 if it doesn't listen.
+     */
+    public int getLocalPort() {
+        return localPort;
+    }
+
+    private void register(SocketChannel channel) throws IOException {
+        channel.configureBlocking(false);
+        channel.socket().setTcpNoDelay(true);
+        channel.register(selector, SelectionKey.OP_READ, new Connection(channel));
+        openConnections++;
+    }
+
+    private void selectLoop(DataStorage dataStorage) {
+        try {
+            while (running) {
+                selector.select(pausedAccept != null ? ACCEPT_PAUSE_MS : 1000);
+                if (pausedAccept != null && System.currentTimeMillis() >= acceptResumesAt) {
+                    pausedAccept.interestOps(SelectionKey.OP_ACCEPT);
+                    pausedAccept = null;
+                }
+                Iterator<SelectionKey> keys = selector.selectedKeys().iterator();
+                while (keys.hasNext()) {
+                    SelectionKey key = keys.next();
+                    keys.remove();
+                    if (!key.isValid()) {
+                        continue;
+                    }
+                    if (key.isAcceptable()) {
+                        accept(key);
+                    } else if (key.isReadable()) {
+                        read(key);
+                    }
+                }
+                store(dataStorage);
+            }
+        } catch (IOException | ClosedSelectorException e) {
+            if (running) {
+                System.err.println("TCP reader stopped: " + e.getMessage());
+            }
+        } finally {
+            store(dataStorage);
+            closeAll();
+        }
+    }
+
+    // one producer failing to connect must not close the listener or the other connections
+    private void accept(SelectionKey key) {
+        ServerSocketChannel server = (ServerSocketChannel) key.channel();
+        while (true) {
+            SocketChannel channel;
+            try {
+                channel = server.accept();
+            } catch (IOException e) {
+                // e.g. out of file descriptors, the connection stays queued so wait before trying again
+                errors.record("tcp", "Error accepting connection", String.valueOf(e.getMessage()));
+                key.interestOps(0);
+                pausedAccept = key;
+                acceptResumesAt = System.currentTimeMillis() + ACCEPT_PAUSE_MS;
+                return;
+            }
+            if (channel == null) {
+                return;
+            }
+            acceptedConnections.increment();
+            try {
+                register(channel);
+            } catch (IOException e) {
+                // the peer may have reset the connection already
+                errors.record("tcp", "Error setting up connection", String.valueOf(e.getMessage()));
+                try {
+                    channel.close();
+                } catch (IOException closeError) {
+                    System.err.println("Error closing a failed TCP connection: " + closeError.getMessage());
+                }
+            }
+        }
+    }
+
+    private void read(SelectionKey key) {
+        Connection connection = (Connection) key.attachment();
+        if (connection.buffer == null) {
+            connection.buffer = takeBuffer();
+        }
+        int read;
+        try {
+            read = connection.channel.read(connection.buffer);
+        } catch (IOException e) {
+            System.err.println("Error reading from " + connection.name + ": " + e.getMessage());
+            read = -1;
+        }
+        if (read > 0) {
+            bytesRead.add(read);
+            if (!consume(connection, false)) {
+                read = -1;
+            }
+        }
+        if (read < 0) {
+            // the producer is gone, a last line without a line break still counts
+            consume(connection, true);
+            close(key, connection);
+        }
+    }
+
+    /**
+     * Parses the complete lines or frames in the connection's buffer and keeps
+     * the rest for the next read.
+     *
+     * @return false if the connection sent something that can't be framed
+     */
+    private boolean consume(Connection connection, boolean endOfStream) {
+        ByteBuffer buffer = connection.buffer;
+        int limit = buffer.position();
+        if (limit == 0) {
+            return true;
+        }
+        if (connection.binary == null) {
+            connection.binary = buffer.get(0) == 0;
+        }
+        int consumed = connection.binary ? consumeFrames(connection, buffer, limit)
+                : consumeLines(connection, buffer, limit, endOfStream);
+        if (consumed < 0) {
+            return false;
+        }
+
+        buffer.limit(limit);
+        buffer.position(consumed);
+        buffer.compact();
+        if (buffer.position() == 0) {
+            releaseBuffer(buffer);
+            connection.buffer = null;
+        } else if (!buffer.hasRemaining()) {
+            // a single line or frame is larger than the buffer
+            ByteBuffer bigger = ByteBuffer.allocateDirect(buffer.capacity() * 2);
+            buffer.flip();
+            bigger.put(buffer);
+            connection.buffer = bigger;
+        }
+        return true;
+    }
+
+    private int consumeLines(Connection connection, ByteBuffer buffer, int limit, boolean endOfStream) {
+        int lineStart = 0;
+        for (int i = 0; i < limit; i++) {
+            if (buffer.get(i) == '\n') {
+                parseLine(connection, buffer, lineStart, i);
+                lineStart = i + 1;
+            }
+        }
+        if (endOfStream && lineStart < limit) {
+            parseLine(connection, buffer, lineStart, limit);
+            lineStart = limit;
+        }
+        return lineStart;
+    }
+
+    private void parseLine(Connection connection, ByteBuffer buffer, int from, int to) {
+        while (from < to && buffer.get(from) <= ' ') {
+            from++;
+        }
+        while (to > from && buffer.get(to - 1) <= ' ') {
+            to--;
+        }
+        if (from == to) {
+            return;
+        }
+        try {
+            if (VitalsLineParser.isLabelledLine(buffer, from, to)) {
+                lineParser.parseLabelled(buffer, from, to, batch);
+            } else {
+                lineParser.parseCsv(buffer, from, to, batch);
+            }
+        } catch (IllegalArgumentException e) {
+            rejectedMessages.increment();
+            errors.record(connection.name, e);
+        }
+    }
+
+    /**
+     * @return the bytes consumed, or -1 if a frame length is out of range
+     */
+    private int consumeFrames(Connection connection, ByteBuffer buffer, int limit) {
+        int frameStart = 0;
+        while (limit - frameStart >= 4) {
+            int length = buffer.getInt(frameStart);
+            if (length < 1 || length > MAX_FRAME_SIZE) {
+                rejectedMessages.increment();
+                errors.record(connection.name, "Bad frame length, connection closed", String.valueOf(length));
+                return -1;
+            }
+            if (limit - frameStart - 4 < length) {
+                break;
+            }
+            buffer.limit(frameStart + 4 + length);
+            buffer.position(frameStart + 4);
+            try {
+                binaryCodec.decode(buffer, batch);
+            } catch (IllegalArgumentException e) {
+                rejectedMessages.increment();
+                errors.record(connection.name, e);
+            }
+            buffer.limit(buffer.capacity());
+            frameStart += 4 + length;
+        }
+        return frameStart;
+    }
+
+    private void store(DataStorage dataStorage) {
+        if (batch.isEmpty()) {
+            return;
+        }
+        try {
+            dataStorage.addBatch(batch);
+            storedReadings.add(batch.size());
+        } catch (RuntimeException e) {
+            errors.record("tcp", "Error storing readings", String.valueOf(e.getMessage()));
+        }
+        batch.clear();
+    }
+
+    private ByteBuffer takeBuffer() {
+        ByteBuffer buffer = bufferPool.poll();
+        return buffer != null ? buffer : ByteBuffer.allocateDirect(BUFFER_SIZE);
+    }
+
+    private void releaseBuffer(ByteBuffer buffer) {
+        // grown buffers are left to the garbage collector
+        if (buffer.capacity() == BUFFER_SIZE && bufferPool.size() < MAX_POOLED_BUFFERS) {
+            buffer.clear();
+            bufferPool.push(buffer);
+        }
+    }
+
+    private void close(SelectionKey key, Connection connection) {
+        key.cancel();
+        try {
+            connection.channel.close();
+        } catch (IOException e) {
+            System.err.println("Error closing " + connection.name + ": " + e.getMessage());
+        }
+        if (connection.buffer != null) {
+            releaseBuffer(connection.buffer);
+            connection.buffer = null;
+        }
+        openConnections--;
+    }
+
+    private void closeAll() {
+        if (selector == null) {
+            return;
+        }
+        try {
+            for (SelectionKey key : selector.keys()) {
+                if (key.attachment() instanceof Connection) {
+                    close(key, (Connection) key.attachment());
+                } else {
+                    key.channel().close();
+                }
+            }
+            selector.close();
+        } catch (IOException | ClosedSelectorException e) {
+            System.err.println("Error closing TCP reader: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Returns the number of producer connections currently open.
+     */
+    public int getOpenConnections() {
+        return openConnections;
+    }
+
+    /**
+     * Returns the number of producer connections accepted since the reader started listening.
+     */
+    public long getAcceptedConnections() {
+        return acceptedConnections.sum();
+    }
+
+    public long getBytesRead() {
+        return bytesRead.sum();
+    }
+
+    public long getStoredReadings() {
+        return storedReadings.sum();
+    }
+
+    /**
+     * Returns the number of lines and frames that could not be parsed.
+     */
+    public long getRejectedMessages() {
+        return rejectedMessages.sum();
+    }
+
+    /**
+     * Returns a one line summary of the reader's metrics.
+     */
+    public String report() {
+        return "connections " + getOpenConnections() + " (accepted " + getAcceptedConnections() + "), bytes "
+                + getBytesRead() + ", stored readings " + getStoredReadings() + ", rejected "
+                + getRejectedMessages();
+    }
+
+    /**
+     * One producer connection and its partly read data.
+     */
+    private static final class Connection {
+        final SocketChannel channel;
+        final String name;
+        // null while the connection has no partial line or frame
+        ByteBuffer buffer;
+        // null until the first byte arrived
+        Boolean binary;
+
+        Connection(SocketChannel channel) throws IOException {
+            this.channel = channel;
+            this.name = "tcp:" + channel.getRemoteAddress();
+        }
+    }
+}
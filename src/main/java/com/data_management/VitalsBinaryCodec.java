@@ -0,0 +1,207 @@
+package com.data_management;
+
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * Encodes and decodes the binary WebSocket frame format for vitals, used instead
+ * of JSON when both ends negotiate the {@value #PROTOCOL} subprotocol.
+ *
+ * <pre>
+ * frame := byte version, long epoch, long firstSequence, byte typeCount, (byte length, utf8 name)*,
+ *          int rowCount, row*
+ * row   := int patientId, short typeId, long timestamp, double value
+ * </pre>
+ *
+ * The record type names are sent once per frame and rows refer to them by
+ * index, so every row has the same {@value #ROW_SIZE} byte size. Rows carry
+ * consecutive feed sequence numbers starting at firstSequence, or none when
+ * it is 0. The epoch tells the sessions of a server apart, as their sequence
+ * numbers all start at 1; 0 means the sender has none. Version 2 frames, which
+ * have no epoch, are still decoded.
+ * Numbers are big endian. One instance per connection; it is not thread safe.
+ */
+public class VitalsBinaryCodec {
+    /** WebSocket subprotocol name of this format. */
+    public static final String PROTOCOL = "vitals.binary.v3";
+    public static final byte VERSION = 3;
+    public static final int ROW_SIZE = 22;
+    private static final byte VERSION_WITHOUT_EPOCH = 2;
+    private static final int MAX_TYPES = 255;
+    private static final int TYPE_CACHE_SIZE = 64;
+
+    private final String[] frameTypes = new String[MAX_TYPES];
+    private final String[] cachedTypes = new String[TYPE_CACHE_SIZE];
+    private final byte[][] cachedTypeBytes = new byte[TYPE_CACHE_SIZE][];
+    // epoch of the last decoded frame
+    private long epoch;
+
+    /**
+     * Encodes a batch as one frame without an epoch.
+     *
+     * @param batch the readings to send
+     * @return the frame, ready to be sent
+     * @throws IllegalArgumentException if the batch has more than 255 record types
+     */
+    public ByteBuffer encode(RecordBatch batch) {
+        return encode(batch, 0);
+    }
+
+    /**
+     * Encodes a batch as one frame. The sequence numbers of the batch are kept
+     * if they are consecutive, otherwise the frame is sent without any.
+     *
+     * @param batch the readings to send
+     * @param epoch the sender's session, 0 for none
+     * @return the frame, ready to be sent
+     * @throws IllegalArgumentException if the batch has more than 255 record types
+     */
+    public ByteBuffer encode(RecordBatch batch, long epoch) {
+        int rows = batch.size();
+        short[] typeIds = new short[rows];
+        int typeCount = 0;
+        int dictionarySize = 0;
+        byte[][] names = new byte[Math.min(rows, MAX_TYPES)][];
+        for (int i = 0; i < rows; i++) {
+            String type = batch.getRecordType(i);
+            int id = -1;
+            for (int t = 0; t < typeCount; t++) {
+                if (frameTypes[t] == type || frameTypes[t].equals(type)) {
+                    id = t;
+                    break;
+                }
+            }
+            if (id < 0) {
+                if (typeCount == MAX_TYPES) {
+                    Arrays.fill(frameTypes, 0, typeCount, null);
+                    throw new IllegalArgumentException("Too many record types for one frame");
+                }
+                byte[] name = type.getBytes(StandardCharsets.UTF_8);
+                if (name.length > 255) {
+                    Arrays.fill(frameTypes, 0, typeCount, null);
+                    throw new IllegalArgumentException("Record type name too long: " + type);
+                }
+                id = typeCount;
+                frameTypes[typeCount] = type;
+                names[typeCount++] = name;
+                dictionarySize += 1 + name.length;
+            }
+            typeIds[i] = (short) id;
+        }
+
+        long firstSequence = rows == 0 ? 0 : batch.getSequence(0);
+        for (int i = 1; i < rows && firstSequence != 0; i++) {
+            if (batch.getSequence(i) != firstSequence + i) {
+                firstSequence = 0;
+            }
+        }
+
+        ByteBuffer frame = ByteBuffer.allocate(18 + dictionarySize + 4 + rows * ROW_SIZE);
+        frame.put(VERSION).putLong(epoch).putLong(firstSequence).put((byte) typeCount);
+        for (int t = 0; t < typeCount; t++) {
+            frame.put((byte) names[t].length).put(names[t]);
+        }
+        frame.putInt(rows);
+        for (int i = 0; i < rows; i++) {
+            frame.putInt(batch.getPatientId(i))
+                    .putShort(typeIds[i])
+                    .putLong(batch.getTimestamp(i))
+                    .putDouble(batch.getMeasurementValue(i));
+        }
+        Arrays.fill(frameTypes, 0, typeCount, null);
+        frame.flip();
+        return frame;
+    }
+
+    /**
+     * Decodes a frame and hands its readings to the sink, with their sequence
+     * numbers if the sink is a {@link SequencedDataSink}.
+     *
+     * @param frame the frame, from its position to its limit
+     * @param sink  where the readings go
+     * @return the number of readings handed to the sink
+     * @throws MalformedDataException if the frame is malformed
+     */
+    public int decode(ByteBuffer frame, PatientDataSink sink) {
+        epoch = 0;
+        try {
+            byte version = frame.get();
+            if (version != VERSION && version != VERSION_WITHOUT_EPOCH) {
+                throw new MalformedDataException("Unsupported binary frame version", String.valueOf(version));
+            }
+            long frameEpoch = version == VERSION ? frame.getLong() : 0;
+            long firstSequence = frame.getLong();
+            int typeCount = frame.get() & 0xFF;
+            for (int t = 0; t < typeCount; t++) {
+                frameTypes[t] = typeName(frame, frame.get() & 0xFF);
+            }
+            int rows = frame.getInt();
+            if (rows < 0 || frame.remaining() != (long) rows * ROW_SIZE) {
+                throw new MalformedDataException("Frame size doesn't match its row count", String.valueOf(rows));
+            }
+            // validate every row before handing out any, so a bad frame stores nothing
+            int base = frame.position();
+            for (int i = 0; i < rows; i++) {
+                int typeId = frame.getShort(base + i * ROW_SIZE + 4) & 0xFFFF;
+                if (typeId >= typeCount) {
+                    throw new MalformedDataException("Unknown type id", typeId + " in row " + i);
+                }
+            }
+            SequencedDataSink sequencedSink = firstSequence > 0 && sink instanceof SequencedDataSink
+                    ? (SequencedDataSink) sink : null;
+            for (int i = 0; i < rows; i++) {
+                int patientId = frame.getInt();
+                String type = frameTypes[frame.getShort() & 0xFFFF];
+                long timestamp = frame.getLong();
+                double value = frame.getDouble();
+                if (sequencedSink != null) {
+                    sequencedSink.addPatientData(firstSequence + i, patientId, value, type, timestamp);
+                } else {
+                    sink.addPatientData(patientId, value, type, timestamp);
+                }
+            }
+            epoch = frameEpoch;
+            return rows;
+        } catch (BufferUnderflowException | IndexOutOfBoundsException e) {
+            throw new MalformedDataException("Truncated binary frame", "Truncated binary frame", e);
+        }
+    }
+
+    /**
+     * Returns the epoch of the last frame decoded, 0 if it had none or was malformed.
+     */
+    public long getEpoch() {
+        return epoch;
+    }
+
+    /**
+     * Reads a record type name, reusing the String of an earlier frame with
+     * the same name so steady traffic allocates none.
+     */
+    private String typeName(ByteBuffer frame, int length) {
+        int start = frame.position();
+        int hash = 0;
+        for (int i = 0; i < length; i++) {
+            hash = 31 * hash + frame.get(start + i);
+        }
+        int slot = (hash ^ (hash >>> 16)) & (TYPE_CACHE_SIZE - 1);
+        byte[] cached = cachedTypeBytes[slot];
+        if (cached != null && cached.length == length) {
+            boolean same = true;
+            for (int i = 0; i < length && same; i++) {
+                same = cached[i] == frame.get(start + i);
+            }
+            if (same) {
+                frame.position(start + length);
+                return cachedTypes[slot];
+            }
+        }
+        byte[] name = new byte[length];
+        frame.get(name);
+        cachedTypeBytes[slot] = name;
+        cachedTypes[slot] = new String(name, StandardCharsets.UTF_8);
+        return cachedTypes[slot];
+    }
+}
@@ -0,0 +1,335 @@
+package com.data_management;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+import org.java_websocket.enums.Opcode;
+import org.java_websocket.exceptions.InvalidDataException;
+import org.java_websocket.exceptions.InvalidFrameException;
+import org.java_websocket.extensions.permessage_deflate.PerMessageDeflateExtension;
+import org.java_websocket.framing.CloseFrame;
+import org.java_websocket.framing.DataFrame;
+import org.java_websocket.framing.Framedata;
+import org.java_websocket.framing.FramedataImpl1;
+
+/**
+ * The permessage-deflate WebSocket extension with a configurable compression
+ * level and a size threshold, for feeds that cross a slow link. Messages
+ * smaller than the threshold are sent as they are, as deflating a single
+ * reading costs more CPU than it saves bytes. Both sides of a connection need
+ * this extension, or another one that honours the RSV1 bit of each message.
+ * <p>
+ * The negotiation asks for no context takeover, so each message is deflated on
+ * its own. Pass one instance to a {@code WebSocketOutputStrategy} or a reader;
+ * every connection gets a copy, and all copies count into the same {@link Stats}.
+ */
+public class VitalsDeflateExtension extends PerMessageDeflateExtension {
+    /** Messages smaller than this many bytes are not compressed by default. */
+    public static final int DEFAULT_THRESHOLD = 256;
+    // the empty stored block every deflated message ends with, left off on the wire
+    private static final byte[] TAIL = {0, 0, (byte) 0xff, (byte) 0xff};
+
+    private final int level;
+    private final int threshold;
+    private final Stats stats;
+    private final Deflater deflater;
+    private Inflater inflater = new Inflater(true);
+    private byte[] scratch = new byte[1024];
+    // whether the message the current frame belongs to is compressed, for fragmented messages
+    private boolean deflatingMessage;
+    private boolean inflatingMessage;
+
+    /**
+     * Creates the extension with the default level and threshold.
+     */
+    public VitalsDeflateExtension() {
+        this(Deflater.DEFAULT_COMPRESSION, DEFAULT_THRESHOLD);
+    }
+
+    /**
+     * Creates the extension.
+     *
+     * @param level     deflate level from 1 (fastest) to 9 (smallest), or -1 for the default
+     * @param threshold smallest message in bytes that is compressed, 0 compresses every message
+     */
+    public VitalsDeflateExtension(int level, int threshold) {
+        this(level, threshold, new Stats());
+    }
+
+    private VitalsDeflateExtension(int level, int threshold, Stats stats) {
+        if (level != Deflater.DEFAULT_COMPRESSION && (level < 1 || level > 9)) {
+            throw new IllegalArgumentException("Compression level must be 1 to 9, or -1 for the default: " + level);
+        }
+        if (threshold < 0) {
+            throw new IllegalArgumentException("Threshold must not be negative: " + threshold);
+        }
+        this.level = level;
+        this.threshold = threshold;
+        this.stats = stats;
+        this.deflater = new Deflater(level, true);
+    }
+
+    /**
+     * Creates the extension from a command line setting.
+     *
+     * @param spec {@code level} or {@code level:threshold}
+     * @return the extension
+     * @throws IllegalArgumentException if the setting is malformed or out of range
+     */
+    public static VitalsDeflateExtension parse(String spec) {
+        int colon = spec.indexOf(':');
+        try {
+            if (colon < 0) {
+                return new VitalsDeflateExtension(Integer.parseInt(spec.trim()), DEFAULT_THRESHOLD);
+            }
+            return new VitalsDeflateExtension(Integer.parseInt(spec.substring(0, colon).trim()),
+                    Integer.parseInt(spec.substring(colon + 1).trim()));
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Expected level or level:threshold: " + spec);
+        }
+    }
+
+    public int getLevel() {
+        return level;
+    }
+
+    public int getThreshold() {
+        return threshold;
+    }
+
+    /**
+     * Returns the counters shared by this extension and all its copies.
+     */
+    public Stats getStats() {
+        return stats;
+    }
+
+    @Override
+    public void encodeFrame(Framedata frame) {
+        if (!(frame instanceof DataFrame)) {
+            return;
+        }
+        ByteBuffer payload = frame.getPayloadData();
+        if (frame.getOpcode() != Opcode.CONTINUOUS) {
+            // the first frame decides for the whole message
+            deflatingMessage = payload.remaining() >= threshold;
+            if (!deflatingMessage) {
+                stats.skipped.increment();
+                return;
+            }
+            ((DataFrame) frame).setRSV1(true);
+        } else if (!deflatingMessage) {
+            return;
+        }
+
+        long start = System.nanoTime();
+        int size = payload.remaining();
+        setInput(payload);
+        int length = 0;
+        while (true) {
+            length += deflater.deflate(scratch, length, scratch.length - length, Deflater.SYNC_FLUSH);
+            if (length < scratch.length) {
+                break;
+            }
+            scratch = Arrays.copyOf(scratch, scratch.length * 2);
+        }
+        if (frame.isFin()) {
+            if (endsWithTail(scratch, length)) {
+                length -= TAIL.length;
+            }
+            deflater.reset();
+        }
+        ((FramedataImpl1) frame).setPayload(ByteBuffer.wrap(Arrays.copyOf(scratch, length)));
+        stats.deflateNanos.add(System.nanoTime() - start);
+        stats.deflatedBytesIn.add(size);
+        stats.deflatedBytesOut.add(length);
+        if (frame.isFin()) {
+            stats.deflated.increment();
+        }
+    }
+
+    private void setInput(ByteBuffer payload) {
+        if (payload.hasArray()) {
+            deflater.setInput(payload.array(), payload.arrayOffset() + payload.position(), payload.remaining());
+        } else {
+            byte[] copy = new byte[payload.remaining()];
+            payload.duplicate().get(copy);
+            deflater.setInput(copy);
+        }
+    }
+
+    private static boolean endsWithTail(byte[] bytes, int length) {
+        if (length < TAIL.length) {
+            return false;
+        }
+        for (int i = 0; i < TAIL.length; i++) {
+            if (bytes[length - TAIL.length + i] != TAIL[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    @Override
+    public void decodeFrame(Framedata frame) throws InvalidDataException {
+        if (!(frame instanceof DataFrame)) {
+            return;
+        }
+        if (frame.getOpcode() != Opcode.CONTINUOUS) {
+            // messages below the sender's threshold come without RSV1 and are left alone
+            inflatingMessage = frame.isRSV1();
+        } else if (frame.isRSV1()) {
+            throw new InvalidDataException(CloseFrame.POLICY_VALIDATION, "RSV1 bit can only be set for the first frame.");
+        }
+        if (!inflatingMessage) {
+            return;
+        }
+
+        long start = System.nanoTime();
+        ByteBuffer payload = frame.getPayloadData();
+        int size = payload.remaining();
+        int length;
+        try {
+            byte[] input = new byte[size];
+            payload.duplicate().get(input);
+            length = inflate(input, 0);
+            if (frame.isFin()) {
+                length = inflate(TAIL, length);
+            }
+        } catch (DataFormatException e) {
+            throw new InvalidDataException(CloseFrame.POLICY_VALIDATION, e.getMessage());
+        }
+        ((DataFrame) frame).setRSV1(false);
+        ((FramedataImpl1) frame).setPayload(ByteBuffer.wrap(Arrays.copyOf(scratch, length)));
+        stats.inflateNanos.add(System.nanoTime() - start);
+        stats.inflatedBytesIn.add(size);
+        stats.inflatedBytesOut.add(length);
+        if (frame.isFin()) {
+            stats.inflated.increment();
+        }
+    }
+
+    /**
+     * Inflates the input into the scratch buffer behind the given length.
+     * The window is kept between messages, which is right whether or not the
+     * sender keeps its own.
+     *
+     * @return the length of the inflated data in the scratch buffer
+     */
+    private int inflate(byte[] input, int length) throws DataFormatException {
+        if (inflater.finished()) {
+            // the sender ended its deflate stream, the next message starts a new one
+            inflater = new Inflater(true);
+        }
+        inflater.setInput(input);
+        while (true) {
+            if (length == scratch.length) {
+                scratch = Arrays.copyOf(scratch, scratch.length * 2);
+            }
+            int inflated = inflater.inflate(scratch, length, scratch.length - length);
+            length += inflated;
+            if (inflated == 0 && (inflater.needsInput() || inflater.finished() || inflater.needsDictionary())) {
+                return length;
+            }
+        }
+    }
+
+    /**
+     * Accepts data frames without RSV1 as well, which the base class doesn't,
+     * as those are the messages the sender left uncompressed.
+     */
+    @Override
+    public void isFrameValid(Framedata frame) throws InvalidDataException {
+        boolean rsv1Allowed = frame instanceof DataFrame && frame.getOpcode() != Opcode.CONTINUOUS;
+        if ((frame.isRSV1() && !rsv1Allowed) || frame.isRSV2() || frame.isRSV3()) {
+            throw new InvalidFrameException("bad rsv RSV1: " + frame.isRSV1() + " RSV2: " + frame.isRSV2()
+                    + " RSV3: " + frame.isRSV3());
+        }
+    }
+
+    @Override
+    public VitalsDeflateExtension copyInstance() {
+        return new VitalsDeflateExtension(level, threshold, stats);
+    }
+
+    /**
+     * Bytes and CPU time spent on compression, summed over every connection
+     * using the extension, to choose a level and threshold.
+     */
+    public static class Stats {
+        private final LongAdder deflated = new LongAdder();
+        private final LongAdder skipped = new LongAdder();
+        private final LongAdder deflatedBytesIn = new LongAdder();
+        private final LongAdder deflatedBytesOut = new LongAdder();
+        private final LongAdder deflateNanos = new LongAdder();
+        private final LongAdder inflated = new LongAdder();
+        private final LongAdder inflatedBytesIn = new LongAdder();
+        private final LongAdder inflatedBytesOut = new LongAdder();
+        private final LongAdder inflateNanos = new LongAdder();
+
+        /**
+         * Returns the number of messages sent compressed.
+         */
+        public long getDeflatedMessages() {
+            return deflated.sum();
+        }
+
+        /**
+         * Returns the number of messages sent as they are, being below the threshold.
+         */
+        public long getSkippedMessages() {
+            return skipped.sum();
+        }
+
+        public long getDeflatedBytesIn() {
+            return deflatedBytesIn.sum();
+        }
+
+        public long getDeflatedBytesOut() {
+            return deflatedBytesOut.sum();
+        }
+
+        public long getDeflateNanos() {
+            return deflateNanos.sum();
+        }
+
+        /**
+         * Returns the number of compressed messages received.
+         */
+        public long getInflatedMessages() {
+            return inflated.sum();
+        }
+
+        public long getInflatedBytesIn() {
+            return inflatedBytesIn.sum();
+        }
+
+        public long getInflatedBytesOut() {
+            return inflatedBytesOut.sum();
+        }
+
+        public long getInflateNanos() {
+            return inflateNanos.sum();
+        }
+
+        /**
+         * Returns a one line summary of what was sent and received, with the
+         * compression ratio and the CPU time per message.
+         */
+        public String report() {
+            return "deflated " + getDeflatedMessages() + " messages (" + getSkippedMessages() + " below threshold) "
+                    + summary(getDeflatedBytesIn(), getDeflatedBytesOut(), getDeflateNanos(), getDeflatedMessages())
+                    + ", inflated " + getInflatedMessages() + " messages "
+                    + summary(getInflatedBytesOut(), getInflatedBytesIn(), getInflateNanos(), getInflatedMessages());
+        }
+
+        private static String summary(long raw, long compressed, long nanos, long messages) {
+            return String.format("%d -> %d bytes (%.1f%%), %.1f us/message", raw, compressed,
+                    raw == 0 ? 0.0 : compressed * 100.0 / raw, messages == 0 ? 0.0 : nanos / 1000.0 / messages);
+        }
+    }
+}
@@ -0,0 +1,441 @@
+package com.data_management;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * Parses vitals text lines straight from bytes, without splitting them into Strings.
+ * Understands two layouts:
+ * <ul>
+ *   <li>the labelled lines written by the simulator's file and console outputs:
+ *       {@code Patient ID: 1, Timestamp: 1700000000000, Label: Saturation, Data: 97.0%}</li>
+ *   <li>plain comma separated lines: {@code 1,1700000000000,Saturation,97.0%}</li>
+ * </ul>
+ * The data part may carry a {@code %} suffix, a {@code BloodLevels} list like
+ * {@code cholesterol=180.2,glucose=95.1,...} (one record per entry) or an
+ * {@code Alert} state ({@code triggered} = 1, {@code resolved} = 0).
+ * Record type names are cached, so a parsed line allocates nothing in the usual case.
+ * Instances are not thread safe, use one per reading thread.
+ */
+public class VitalsLineParser {
+    private static final byte[] PATIENT_ID = ascii("Patient ID:");
+    private static final byte[] TIMESTAMP = ascii("Timestamp:");
+    private static final byte[] LABEL = ascii("Label:");
+    private static final byte[] DATA = ascii("Data:");
+
+    private static final String BLOOD_LEVELS = "BloodLevels";
+    private static final String ALERT = "Alert";
+    private static final byte[] TRIGGERED = ascii("triggered");
+    private static final byte[] RESOLVED = ascii("resolved");
+
+    // record types produced by the simulator, plus the names used for BloodLevels entries
+    private static final String[] KNOWN_TYPES = {
+        "ECG", "Saturation", "SystolicPressure", "DiastolicPressure", BLOOD_LEVELS, ALERT,
+        "HeartRate", "BloodSaturation", "BloodPressure"
+    };
+    private static final String[][] BLOOD_LEVEL_TYPES = {
+        {"cholesterol", "Cholesterol"}, {"glucose", "Glucose"},
+        {"hemoglobin", "Hemoglobin"}, {"platelets", "Platelets"},
+        {"whiteCells", "WhiteBloodCells"}, {"redCells", "RedBloodCells"}
+    };
+    private static final int MAX_CACHED_TYPES = 256;
+
+    // powers of ten that are exact as doubles, for the fast decimal path
+    private static final double[] POWERS_OF_TEN = new double[23];
+    static {
+        POWERS_OF_TEN[0] = 1;
+        for (int i = 1; i < POWERS_OF_TEN.length; i++) {
+            POWERS_OF_TEN[i] = POWERS_OF_TEN[i - 1] * 10;
+        }
+    }
+
+    private byte[][] typeBytes = new byte[16][];
+    private String[] typeNames = new String[16];
+    private int typeCount;
+
+    // read position inside the line being parsed
+    private int pos;
+
+    /**
+     * Creates a parser with the simulator's record types already cached.
+     */
+    public VitalsLineParser() {
+        for (String type : KNOWN_TYPES) {
+            cacheType(ascii(type), type);
+        }
+    }
+
+    /**
+     * Checks whether the line uses the simulator's labelled layout.
+     *
+     * @param buf  buffer holding the line
+     * @param from index of the first byte
+     * @param to   index after the last byte
+     * @return true if the line starts with {@code Patient ID:}
+     */
+    public static boolean isLabelledLine(ByteBuffer buf, int from, int to) {
+        from = skipSpaces(buf, from, to);
+        return startsWith(buf, from, to, PATIENT_ID);
+    }
+
+    /**
+     * Parses a labelled line and hands its records to the sink.
+     *
+     * @param buf  buffer holding the line
+     * @param from index of the first byte
+     * @param to   index after the last byte, without the line break
+     * @param sink where the records go
+     * @return the number of records produced
+     * @throws MalformedDataException if the line is malformed
+     */
+    public int parseLabelled(ByteBuffer buf, int from, int to, PatientDataSink sink) {
+        pos = skipSpaces(buf, from, to);
+        expectField(buf, to, PATIENT_ID);
+        int patientId = toInt(parseLong(buf, to));
+        expectSeparator(buf, to);
+        expectField(buf, to, TIMESTAMP);
+        long timestamp = parseLong(buf, to);
+        expectSeparator(buf, to);
+        expectField(buf, to, LABEL);
+
+        int labelStart = pos;
+        int labelEnd = indexOf(buf, pos, to, (byte) ',');
+        if (labelEnd < 0) {
+            throw malformed("Missing Data field", buf, from, to);
+        }
+        String label = recordType(buf, labelStart, labelEnd);
+        pos = labelEnd;
+        expectSeparator(buf, to);
+        expectField(buf, to, DATA);
+
+        return parsePayload(patientId, timestamp, label, buf, pos, to, sink);
+    }
+
+    /**
+     * Parses a comma separated line {@code PatientID,Timestamp,RecordType,Data}
+     * and hands its records to the sink.
+     *
+     * @param buf  buffer holding the line
+     * @param from index of the first byte
+     * @param to   index after the last byte, without the line break
+     * @param sink where the records go
+     * @return the number of records produced
+     * @throws MalformedDataException if the line is malformed
+     */
+    public int parseCsv(ByteBuffer buf, int from, int to, PatientDataSink sink) {
+        pos = skipSpaces(buf, from, to);
+        int patientId = toInt(parseLong(buf, to));
+        expectSeparator(buf, to);
+        long timestamp = parseLong(buf, to);
+        expectSeparator(buf, to);
+
+        int typeEnd = indexOf(buf, pos, to, (byte) ',');
+        if (typeEnd < 0) {
+            throw malformed("Missing value", buf, from, to);
+        }
+        String recordType = recordType(buf, pos, typeEnd);
+        return parsePayload(patientId, timestamp, recordType, buf, typeEnd + 1, to, sink);
+    }
+
+    /**
+     * Parses the data part of a reading, as the simulator hands it to an output strategy.
+     *
+     * @param patientId the patient
+     * @param timestamp when it was measured
+     * @param label     the reading's label
+     * @param data      the data text, e.g. {@code 97.0%}
+     * @param sink      where the records go
+     * @return the number of records produced
+     * @throws MalformedDataException if the data is malformed
+     */
+    public int parsePayload(int patientId, long timestamp, String label, String data, PatientDataSink sink) {
+        byte[] bytes = data.getBytes(StandardCharsets.UTF_8);
+        return parsePayload(patientId, timestamp, label, ByteBuffer.wrap(bytes), 0, bytes.length, sink);
+    }
+
+    private int parsePayload(int patientId, long timestamp, String label, ByteBuffer buf, int from, int to,
+                             PatientDataSink sink) {
+        from = skipSpaces(buf, from, to);
+        to = trimEnd(buf, from, to);
+        if (from == to) {
+            throw malformed("Missing value", buf, from, to);
+        }
+
+        if (BLOOD_LEVELS.equals(label)) {
+            return parseBloodLevels(patientId, timestamp, buf, from, to, sink);
+        }
+        if (ALERT.equals(label) && !isNumberStart(buf.get(from))) {
+            double state;
+            if (regionEquals(buf, from, to, TRIGGERED)) {
+                state = 1.0;
+            } else if (regionEquals(buf, from, to, RESOLVED)) {
+                state = 0.0;
+            } else {
+                throw malformed("Unknown alert state", buf, from, to);
+            }
+            sink.addPatientData(patientId, state, label, timestamp);
+            return 1;
+        }
+
+        if (buf.get(to - 1) == '%') {
+            to--;
+        }
+        sink.addPatientData(patientId, parseNumber(buf, from, to), label, timestamp);
+        return 1;
+    }
+
+    /**
+     * Parses {@code name=value} pairs separated by commas, one record per pair.
+     */
+    private int parseBloodLevels(int patientId, long timestamp, ByteBuffer buf, int from, int to,
+                                 PatientDataSink sink) {
+        int count = 0;
+        int start = from;
+        while (start < to) {
+            int end = indexOf(buf, start, to, (byte) ',');
+            if (end < 0) {
+                end = to;
+            }
+            int eq = indexOf(buf, start, end, (byte) '=');
+            if (eq < 0) {
+                throw malformed("Expected name=value", buf, start, end);
+            }
+            int nameStart = skipSpaces(buf, start, eq);
+            String type = bloodLevelType(buf, nameStart, trimEnd(buf, nameStart, eq));
+            int valueStart = skipSpaces(buf, eq + 1, end);
+            sink.addPatientData(patientId, parseNumber(buf, valueStart, trimEnd(buf, valueStart, end)),
+                    type, timestamp);
+            count++;
+            start = end + 1;
+        }
+        return count;
+    }
+
+    private String bloodLevelType(ByteBuffer buf, int from, int to) {
+        for (String[] entry : BLOOD_LEVEL_TYPES) {
+            if (regionEquals(buf, from, to, entry[0])) {
+                return entry[1];
+            }
+        }
+        String name = decode(buf, from, to);
+        if (name.isEmpty()) {
+            throw malformed("Empty blood level name", buf, from, to);
+        }
+        return Character.toUpperCase(name.charAt(0)) + name.substring(1);
+    }
+
+    /**
+     * Returns the cached record type name for the bytes, caching new names
+     * until the cache is full.
+     */
+    private String recordType(ByteBuffer buf, int from, int to) {
+        from = skipSpaces(buf, from, to);
+        to = trimEnd(buf, from, to);
+        if (from == to) {
+            throw malformed("Missing record type", buf, from, to);
+        }
+        for (int i = 0; i < typeCount; i++) {
+            if (regionEquals(buf, from, to, typeBytes[i])) {
+                return typeNames[i];
+            }
+        }
+        String name = decode(buf, from, to);
+        if (typeCount < MAX_CACHED_TYPES) {
+            cacheType(name.getBytes(StandardCharsets.UTF_8), name);
+        }
+        return name;
+    }
+
+    private void cacheType(byte[] bytes, String name) {
+        if (typeCount == typeBytes.length) {
+            typeBytes = Arrays.copyOf(typeBytes, typeCount * 2);
+            typeNames = Arrays.copyOf(typeNames, typeCount * 2);
+        }
+        typeBytes[typeCount] = bytes;
+        typeNames[typeCount] = name;
+        typeCount++;
+    }
+
+    private void expectField(ByteBuffer buf, int to, byte[] name) {
+        pos = skipSpaces(buf, pos, to);
+        if (!startsWith(buf, pos, to, name)) {
+            throw new MalformedDataException("Expected '" + new String(name, StandardCharsets.US_ASCII) + "'",
+                    "position " + pos);
+        }
+        pos = skipSpaces(buf, pos + name.length, to);
+    }
+
+    private void expectSeparator(ByteBuffer buf, int to) {
+        pos = skipSpaces(buf, pos, to);
+        if (pos >= to || buf.get(pos) != ',') {
+            throw new MalformedDataException("Expected ','", "position " + pos);
+        }
+        pos = skipSpaces(buf, pos + 1, to);
+    }
+
+    /**
+     * Parses a signed whole number at the cursor and moves the cursor past it.
+     */
+    private long parseLong(ByteBuffer buf, int to) {
+        int i = pos;
+        boolean negative = false;
+        if (i < to && (buf.get(i) == '-' || buf.get(i) == '+')) {
+            negative = buf.get(i) == '-';
+            i++;
+        }
+        int digitsStart = i;
+        long value = 0;
+        while (i < to) {
+            int digit = buf.get(i) - '0';
+            if (digit < 0 || digit > 9) {
+                break;
+            }
+            if (value > (Long.MAX_VALUE - digit) / 10) {
+                throw new MalformedDataException("Number too large", "position " + pos);
+            }
+            value = value * 10 + digit;
+            i++;
+        }
+        if (i == digitsStart) {
+            throw new MalformedDataException("Expected a number", "position " + pos);
+        }
+        pos = i;
+        return negative ? -value : value;
+    }
+
+    private static int toInt(long value) {
+        if (value < Integer.MIN_VALUE || value > Integer.MAX_VALUE) {
+            throw new MalformedDataException("Patient ID out of range", String.valueOf(value));
+        }
+        return (int) value;
+    }
+
+    /**
+     * Parses a decimal number filling the whole range. Plain decimals with up to
+     * 15 significant digits are computed exactly from their digits, anything else
+     * (exponents, NaN, long mantissas) goes through {@link Double#parseDouble}.
+     */
+    private double parseNumber(ByteBuffer buf, int from, int to) {
+        int i = from;
+        boolean negative = false;
+        if (i < to && (buf.get(i) == '-' || buf.get(i) == '+')) {
+            negative = buf.get(i) == '-';
+            i++;
+        }
+        long mantissa = 0;
+        boolean sawDigit = false;
+        int digits = 0;
+        int fractionDigits = 0;
+        boolean seenDot = false;
+        boolean fast = i < to;
+        for (; i < to; i++) {
+            byte b = buf.get(i);
+            if (b >= '0' && b <= '9') {
+                sawDigit = true;
+                if (mantissa == 0 && b == '0' && !seenDot) {
+                    continue; // leading zeros don't count
+                }
+                mantissa = mantissa * 10 + (b - '0');
+                if (seenDot) {
+                    fractionDigits++;
+                }
+                if (++digits > 15) {
+                    fast = false;
+                    break;
+                }
+            } else if (b == '.' && !seenDot) {
+                seenDot = true;
+            } else {
+                fast = false;
+                break;
+            }
+        }
+        if (fast && sawDigit && fractionDigits < POWERS_OF_TEN.length) {
+            double value = mantissa / POWERS_OF_TEN[fractionDigits];
+            return negative ? -value : value;
+        }
+        try {
+            return Double.parseDouble(decode(buf, from, to));
+        } catch (NumberFormatException e) {
+            throw malformed("Invalid number", buf, from, to);
+        }
+    }
+
+    private static boolean isNumberStart(byte b) {
+        return (b >= '0' && b <= '9') || b == '-' || b == '+' || b == '.';
+    }
+
+    private static int skipSpaces(ByteBuffer buf, int from, int to) {
+        while (from < to && (buf.get(from) == ' ' || buf.get(from) == '\t')) {
+            from++;
+        }
+        return from;
+    }
+
+    private static int trimEnd(ByteBuffer buf, int from, int to) {
+        while (to > from && (buf.get(to - 1) == ' ' || buf.get(to - 1) == '\t' || buf.get(to - 1) == '\r')) {
+            to--;
+        }
+        return to;
+    }
+
+    private static int indexOf(ByteBuffer buf, int from, int to, byte b) {
+        for (int i = from; i < to; i++) {
+            if (buf.get(i) == b) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private static boolean startsWith(ByteBuffer buf, int from, int to, byte[] prefix) {
+        if (to - from < prefix.length) {
+            return false;
+        }
+        for (int i = 0; i < prefix.length; i++) {
+            if (buf.get(from + i) != prefix[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static boolean regionEquals(ByteBuffer buf, int from, int to, byte[] expected) {
+        return to - from == expected.length && startsWith(buf, from, to, expected);
+    }
+
+    private static boolean regionEquals(ByteBuffer buf, int from, int to, String expected) {
+        if (to - from != expected.length()) {
+            return false;
+        }
+        for (int i = 0; i < expected.length(); i++) {
+            if (buf.get(from + i) != expected.charAt(i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Decodes a byte range as UTF-8.
+     */
+    static String decode(ByteBuffer buf, int from, int to) {
+        if (buf.hasArray()) {
+            return new String(buf.array(), buf.arrayOffset() + from, to - from, StandardCharsets.UTF_8);
+        }
+        byte[] bytes = new byte[to - from];
+        for (int i = 0; i < bytes.length; i++) {
+            bytes[i] = buf.get(from + i);
+        }
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    private static MalformedDataException malformed(String reason, ByteBuffer buf, int from, int to) {
+        return new MalformedDataException(reason, decode(buf, from, to));
+    }
+
+    private static byte[] ascii(String text) {
+        return text.getBytes(StandardCharsets.US_ASCII);
+    }
+}
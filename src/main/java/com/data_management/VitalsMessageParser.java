@@ -0,0 +1,282 @@
+package com.data_management;
+
+import java.io.IOException;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+
+/**
+ * Parses the JSON messages sent by the WebSocket server,
+ * {@code {"patientId":1,"value":120.5,"recordType":"ECG","timestamp":1700000000000}}
+ * or batches of them, in a single pass over the tokens without building a tree.
+ * A reading may carry its feed sequence number as {@code "seq"}, which is passed
+ * on when the sink is a {@link SequencedDataSink}, and the epoch of the server
+ * session it came from as {@code "epoch"}, see {@link #getEpoch()}.
+ * Field types are checked as the fields are read and unknown fields are skipped.
+ * One instance per connection; it is not thread safe.
+ */
+public class VitalsMessageParser {
+    /** Shared by all parsers, it recycles their buffers and field name tables. */
+    private static final JsonFactory JSON_FACTORY = new JsonFactory();
+    private static final int TYPE_CACHE_SIZE = 64;
+    private static final String REPLAY_REQUEST = "{\"replayFrom\":";
+    private static final String REPLAY_EPOCH = ",\"epoch\":";
+
+    private final String[] recordTypes = new String[TYPE_CACHE_SIZE];
+    // epoch of the last message's readings
+    private long epoch;
+
+    /**
+     * Parses one message and hands its readings to the sink. A message is a single
+     * reading object, a JSON array of them, or several of either separated by
+     * whitespace, as in newline delimited JSON. Invalid readings in a batch are
+     * skipped; the valid ones are still handed to the sink.
+     *
+     * @param message the JSON text
+     * @param sink    where the readings go
+     * @return the number of readings handed to the sink
+     * @throws MalformedDataException if the message is not valid JSON, or a
+     *                                reading misses a field or has a field of the wrong type
+     */
+    public int parse(String message, PatientDataSink sink) {
+        epoch = 0;
+        int readings = 0;
+        int invalid = 0;
+        IllegalArgumentException firstError = null;
+        try (JsonParser parser = JSON_FACTORY.createParser(message)) {
+            JsonToken token = parser.nextToken();
+            if (token == null) {
+                throw new MalformedDataException("Empty message", null);
+            }
+            for (; token != null; token = parser.nextToken()) {
+                if (token == JsonToken.START_OBJECT) {
+                    try {
+                        parseObject(parser, message, sink);
+                        readings++;
+                    } catch (IllegalArgumentException e) {
+                        invalid++;
+                        firstError = firstError == null ? e : firstError;
+                    }
+                } else if (token == JsonToken.START_ARRAY) {
+                    while ((token = parser.nextToken()) != JsonToken.END_ARRAY) {
+                        if (token != JsonToken.START_OBJECT) {
+                            throw new MalformedDataException("Batch item is not a JSON object", message);
+                        }
+                        try {
+                            parseObject(parser, message, sink);
+                            readings++;
+                        } catch (IllegalArgumentException e) {
+                            invalid++;
+                            firstError = firstError == null ? e : firstError;
+                        }
+                    }
+                } else {
+                    throw new MalformedDataException("Message is not a JSON object or array", message);
+                }
+            }
+        } catch (IOException e) {
+            throw new MalformedDataException("Bad json message", "Bad json message: " + e.getMessage(), e);
+        }
+
+        if (firstError != null) {
+            if (readings == 0 && invalid == 1) {
+                throw firstError;
+            }
+            // counted under the first error's reason, the cause of the skipped readings
+            String reason = firstError instanceof MalformedDataException
+                    ? ((MalformedDataException) firstError).getReason() : "Invalid readings in batch";
+            throw new MalformedDataException(reason, "Skipped " + invalid + " of " + (readings + invalid)
+                    + " readings, first: " + firstError.getMessage(), firstError);
+        }
+        return readings;
+    }
+
+    /**
+     * Returns the epoch the readings of the last parsed message carried, the
+     * server session they came from, or 0 if they had none.
+     */
+    public long getEpoch() {
+        return epoch;
+    }
+
+    /**
+     * Builds the message a client sends after reconnecting, asking the server to
+     * resend every reading of a session from the given sequence number on.
+     *
+     * @param epoch        the session the sequence number belongs to
+     * @param fromSequence the first sequence number to resend
+     * @return the request, {@code {"replayFrom":N,"epoch":E}}
+     */
+    public static String replayRequest(long epoch, long fromSequence) {
+        return REPLAY_REQUEST + fromSequence + REPLAY_EPOCH + epoch + "}";
+    }
+
+    /**
+     * Reads a message built by {@link #replayRequest(long, long)}.
+     *
+     * @param message a message sent by a client
+     * @return the request, or null if the message is not a replay request
+     */
+    public static ReplayRequest parseReplayRequest(String message) {
+        int epochAt = message.indexOf(REPLAY_EPOCH);
+        if (!message.startsWith(REPLAY_REQUEST) || epochAt < 0 || !message.endsWith("}")) {
+            return null;
+        }
+        try {
+            long from = Long.parseLong(message.substring(REPLAY_REQUEST.length(), epochAt).trim());
+            long epoch = Long.parseLong(message.substring(epochAt + REPLAY_EPOCH.length(), message.length() - 1).trim());
+            return from > 0 ? new ReplayRequest(epoch, from) : null;
+        } catch (NumberFormatException e) {
+            return null;
+        }
+    }
+
+    /**
+     * A client's request to resend readings it missed.
+     */
+    public static final class ReplayRequest {
+        private final long epoch;
+        private final long fromSequence;
+
+        ReplayRequest(long epoch, long fromSequence) {
+            this.epoch = epoch;
+            this.fromSequence = fromSequence;
+        }
+
+        /**
+         * Returns the server session the client was following.
+         */
+        public long getEpoch() {
+            return epoch;
+        }
+
+        /**
+         * Returns the first sequence number to resend.
+         */
+        public long getFromSequence() {
+            return fromSequence;
+        }
+    }
+
+    /**
+     * Reads the fields of an object whose START_OBJECT token was just read.
+     * The object is consumed up to its END_OBJECT even if it is invalid.
+     */
+    private void parseObject(JsonParser parser, String message, PatientDataSink sink) throws IOException {
+        int patientId = 0;
+        double value = 0;
+        String recordType = null;
+        long timestamp = 0;
+        long sequence = 0;
+        boolean hasPatientId = false;
+        boolean hasValue = false;
+        boolean hasTimestamp = false;
+        boolean badType = false;
+
+        String field;
+        while ((field = parser.nextFieldName()) != null) {
+            JsonToken token = parser.nextToken();
+            switch (field) {
+                case "patientId":
+                    hasPatientId = true;
+                    if (token == JsonToken.VALUE_NUMBER_INT && parser.getNumberType() == JsonParser.NumberType.INT) {
+                        patientId = parser.getIntValue();
+                    } else {
+                        parser.skipChildren();
+                        badType = true;
+                    }
+                    break;
+                case "value":
+                    hasValue = true;
+                    if (token == JsonToken.VALUE_NUMBER_INT || token == JsonToken.VALUE_NUMBER_FLOAT) {
+                        value = parser.getDoubleValue();
+                    } else {
+                        parser.skipChildren();
+                        badType = true;
+                    }
+                    break;
+                case "recordType":
+                    if (token == JsonToken.VALUE_STRING) {
+                        recordType = recordType(parser);
+                    } else {
+                        // still counts as present, the type is what's wrong
+                        parser.skipChildren();
+                        recordType = "";
+                        badType = true;
+                    }
+                    break;
+                case "timestamp":
+                    hasTimestamp = true;
+                    if (token == JsonToken.VALUE_NUMBER_INT && parser.getNumberType() != JsonParser.NumberType.BIG_INTEGER) {
+                        timestamp = parser.getLongValue();
+                    } else if (token == JsonToken.VALUE_NUMBER_FLOAT) {
+                        timestamp = (long) parser.getDoubleValue();
+                    } else {
+                        parser.skipChildren();
+                        badType = true;
+                    }
+                    break;
+                case "seq":
+                    // optional, a bad one is ignored rather than failing the reading
+                    if (token == JsonToken.VALUE_NUMBER_INT && parser.getNumberType() != JsonParser.NumberType.BIG_INTEGER) {
+                        sequence = parser.getLongValue();
+                    } else {
+                        parser.skipChildren();
+                    }
+                    break;
+                case "epoch":
+                    if (token == JsonToken.VALUE_NUMBER_INT && parser.getNumberType() != JsonParser.NumberType.BIG_INTEGER) {
+                        epoch = parser.getLongValue();
+                    } else {
+                        parser.skipChildren();
+                    }
+                    break;
+                default:
+                    parser.skipChildren();
+                    break;
+            }
+        }
+
+        if (!hasPatientId || !hasValue || recordType == null || !hasTimestamp) {
+            throw new MalformedDataException("Missing required fields in message", message);
+        }
+        if (badType) {
+            throw new MalformedDataException("Invalid field types in message", message);
+        }
+        if (sequence > 0 && sink instanceof SequencedDataSink) {
+            ((SequencedDataSink) sink).addPatientData(sequence, patientId, value, recordType, timestamp);
+        } else {
+            sink.addPatientData(patientId, value, recordType, timestamp);
+        }
+    }
+
+    /**
+     * Returns the current string token, reusing the String of an earlier
+     * message with the same record type so steady traffic allocates none.
+     */
+    private String recordType(JsonParser parser) throws IOException {
+        char[] chars = parser.getTextCharacters();
+        int offset = parser.getTextOffset();
+        int length = parser.getTextLength();
+
+        int hash = 0;
+        for (int i = 0; i < length; i++) {
+            hash = 31 * hash + chars[offset + i];
+        }
+        int slot = (hash ^ (hash >>> 16)) & (TYPE_CACHE_SIZE - 1);
+        String cached = recordTypes[slot];
+        if (cached != null && cached.length() == length) {
+            boolean same = true;
+            for (int i = 0; i < length && same; i++) {
+                same = cached.charAt(i) == chars[offset + i];
+            }
+            if (same) {
+                return cached;
+            }
+        }
+        String type = new String(chars, offset, length);
+        recordTypes[slot] = type;
+        return type;
+    }
+}
@@ -1,26 +1,29 @@
 package com.data_management;
 
 import java.io.IOException;
-import java.net.URI;
 import java.net.URISyntaxException;
 import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.TimeUnit;
 
-import org.java_websocket.client.WebSocketClient;
 import org.java_websocket.handshake.ServerHandshake;
-import com.fasterxml.jackson.databind.ObjectMapper;
-import com.fasterxml.jackson.databind.JsonNode;
-import com.fasterxml.jackson.core.JsonProcessingException;
 
 /**
  * Reads patient data from a websocket server,
  * connects to a server and processes incoming data messages.
+ * received frames are handed to an {@link IngestPipeline}, so the network thread
+ * never waits for parsing or storage. once connected, the client reconnects
+ * on its own and asks for the readings it missed
  */
 public class WebSocketDataReader implements DataReader {
     private final String serverUri;
     private PatientDataWebSocketClient client;
     private final CountDownLatch connectionLatch;
     private static final int CONNECTION_TIMEOUT_SECONDS = 10;
+    private IngestPipeline pipeline;
+    // whether stop() should close the pipeline, false when it was passed in
+    private final boolean ownsPipeline;
+    // permessage-deflate settings, null for none
+    private VitalsDeflateExtension compression;
 
     /**
      * Creates a new reader that connects to a websocket server
@@ -30,6 +33,29 @@ public class WebSocketDataReader implements DataReader {
     public WebSocketDataReader(String serverUri) {
         this.serverUri = serverUri;
         this.connectionLatch = new CountDownLatch(1);
+        this.ownsPipeline = true;
+    }
+
+    /**
+     * Creates a new reader that hands its frames to a shared pipeline
+     * 
+     * @param serverUri The address of the server to connect to
+     * @param pipeline Where received frames go, it is not closed by {@link #stop()}
+     */
+    public WebSocketDataReader(String serverUri, IngestPipeline pipeline) {
+        this.serverUri = serverUri;
+        this.connectionLatch = new CountDownLatch(1);
+        this.pipeline = pipeline;
+        this.ownsPipeline = false;
+    }
+
+    /**
+     * offers permessage-deflate to the server, call before {@link #readData}
+     *
+     * @param compression the compression settings, null to turn it off
+     */
+    public void setCompression(VitalsDeflateExtension compression) {
+        this.compression = compression;
     }
 
     /**
@@ -40,10 +66,13 @@ public class WebSocketDataReader implements DataReader {
      */
     @Override
     public void readData(DataStorage dataStorage) throws IOException {
+        if (pipeline == null) {
+            pipeline = new IngestPipeline(dataStorage);
+        }
         try {
              
              //make a new client that will store data
-            client = new PatientDataWebSocketClient(serverUri, dataStorage) {
+            client = new PatientDataWebSocketClient(serverUri, pipeline, compression) {
                 @Override
                 public void onOpen(ServerHandshake handshake) {
                     super.onOpen(handshake);
@@ -65,6 +94,10 @@ public class WebSocketDataReader implements DataReader {
             if (!client.isOpen()) {
                 throw new IOException("Failed to connect to server");
             }
+        } catch (IOException e) {
+            // don't keep retrying in the background for a caller that gave up
+            client.stopReconnecting();
+            throw e;
         } catch (URISyntaxException e) {
             throw new IOException("Bad server address: " + e.getMessage(), e);
         } catch (InterruptedException e) {
@@ -74,98 +107,23 @@ public class WebSocketDataReader implements DataReader {
     }
 
     /**
-     * disconnects from the server
+     * disconnects from the server, and stores the frames still queued
      */
     public void stop() {
         if (client != null) {
-            client.close();
+            client.stopReconnecting();
+        }
+        if (ownsPipeline && pipeline != null) {
+            pipeline.close();
         }
     }
 
     /**
-     * Handles the actual websocket connection and processes messages,
-     * converts json messages into patient data
+     * gets the pipeline frames are handed to, for its metrics
+     *
+     * @return the pipeline, or null before {@link #readData} was called
      */
-    private static class PatientDataWebSocketClient extends WebSocketClient {
-        private final DataStorage dataStorage;
-        private final ObjectMapper objectMapper;
-
-        /**
-         * creates new client that will store data
-         * 
-         * @param serverUri Server to connect to
-         * @param dataStorage Where to store the data
-         */
-        public PatientDataWebSocketClient(String serverUri, DataStorage dataStorage) throws URISyntaxException {
-            super(new URI(serverUri));
-            this.dataStorage = dataStorage;
-            this.objectMapper = new ObjectMapper();
-        }
-
-        @Override
-        public void onOpen(ServerHandshake handshake) {
-            System.out.println("Connected to server");
-        }
-
-        /**
-         * handles data messages from the server,
-         * expects json with patientId, value, recordType and timestamp
-         */
-        @Override
-        public void onMessage(String message) {
-            try {
-                // parse the json message
-                 JsonNode data = objectMapper.readTree(message);
-                
-
-                // make sure all required fields exist
-                if (!data.has("patientId") || !data.has("value") || 
-                    !data.has("recordType") || !data.has("timestamp")) {
-                    System.err.println("Missing required fields in message: " + message);
-                    return;
-
-                }
-
-                // check that fields have correct types
-                JsonNode patientIdNode = data.get("patientId");
-                JsonNode valueNode = data.get("value");
-                JsonNode recordTypeNode = data.get("recordType");
-                JsonNode timestampNode = data.get("timestamp");
-
-                if (!patientIdNode.isInt() || !valueNode.isNumber() || 
-                    !recordTypeNode.isTextual() || !timestampNode.isNumber()) {
-                    System.err.println("Invalid field types in message: " + message);
-                    return;
-                }
-
-                // get the values from json
-                int patientId = patientIdNode.asInt();
-                double value = valueNode.asDouble();
-                String recordType = recordTypeNode.asText();
-                long timestamp = timestampNode.asLong();
-
-                // store the data
-                dataStorage.addPatientData(patientId, value, recordType, timestamp);
-
-            } 
-            catch (JsonProcessingException e) {
-                System.err.println("Bad json message: " + e.getMessage());
-            } 
-            catch (Exception e) {
-                System.err.println("Error processing message: " + e.getMessage());
-            }
-        }
-
-        @Override
-        public void onClose(int code, String reason, boolean remote) {
-             System.out.println("Connection closed by " + (remote ? "server" : "us") + 
-                " Code: " + code + " Reason: " + reason);
-        }
-
-        @Override
-        public void onError(Exception ex) {
-
-            System.err.println("WebSocket error: " + ex.getMessage());
-        }
+    public IngestPipeline getPipeline() {
+        return pipeline;
     }
-} 
\ No newline at end of file
+}
@@ -7,7 +7,10 @@ import static org.junit.Assert.*;
 
 import com.data_management.DataStorage;
 import com.data_management.Patient;
+import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.atomic.AtomicInteger;
 
 public class AlertGeneratorTest {
     private AlertGenerator alertGenerator;
@@ -133,4 +136,162 @@ public class AlertGeneratorTest {
         assertNotNull("Alerts list should not be null", alerts);
         assertTrue("Should not generate alerts for invalid data", alerts.isEmpty());
     }
-}
\ No newline at end of file
+
+    private Patient freshPatient(int patientId) {
+        dataStorage.clearRecords(patientId);
+        dataStorage.addPatientData(patientId, 120.0, "SystolicPressure", 1000L);
+        for (Patient p : dataStorage.getAllPatients()) {
+            if (p.getPatientId() == patientId) {
+                return p;
+            }
+        }
+        throw new AssertionError("Test patient should exist");
+    }
+
+    @Test
+    public void testRecordsAreEvaluatedOnce() {
+        Patient patient = freshPatient(TEST_PATIENT_ID + 10);
+        dataStorage.addPatientData(TEST_PATIENT_ID + 10, 185.0, "SystolicPressure", 2000L);
+        AtomicInteger notified = new AtomicInteger();
+        alertManager.addListener(alert -> notified.incrementAndGet());
+
+        alertGenerator.evaluateData(patient);
+        int first = notified.get();
+        assertTrue(first > 0);
+        alertGenerator.evaluateData(patient);
+        alertGenerator.evaluateData(patient);
+
+        assertEquals("Old records should not be handed to the manager again", first, notified.get());
+    }
+
+    @Test
+    public void testOnlyNewRecordsAreEvaluated() {
+        Patient patient = freshPatient(TEST_PATIENT_ID + 11);
+        alertGenerator.evaluateData(patient);
+        assertTrue(alertManager.getAllAlerts().isEmpty());
+
+        dataStorage.addPatientData(TEST_PATIENT_ID + 11, 45.0, "DiastolicPressure", 2000L);
+        alertGenerator.evaluateData(patient);
+
+        assertOnlyAlertType("CriticalLowDiastolicPressure");
+    }
+
+    private void assertOnlyAlertType(String alertType) {
+        List<Alert> alerts = alertManager.getAllAlerts();
+        assertFalse(alerts.isEmpty());
+        for (Alert alert : alerts) {
+            assertEquals(alertType, alert.getAlertType());
+        }
+    }
+
+    @Test
+    public void testLateRecordsAreStillChecked() {
+        Patient patient = freshPatient(TEST_PATIENT_ID + 12);
+        dataStorage.addPatientData(TEST_PATIENT_ID + 12, 80.0, "HeartRate", 3000L);
+        alertGenerator.evaluateData(patient);
+        assertTrue(alertManager.getAllAlerts().isEmpty());
+
+        // older than the readings already evaluated, and out of order among themselves
+        dataStorage.addPatientData(TEST_PATIENT_ID + 12, 185.0, "SystolicPressure", 800L);
+        dataStorage.addPatientData(TEST_PATIENT_ID + 12, 160.0, "HeartRate", 2000L);
+        dataStorage.addPatientData(TEST_PATIENT_ID + 12, 80.0, "HeartRate", 1500L);
+        alertGenerator.evaluateData(patient);
+
+        List<String> types = new ArrayList<>();
+        for (Alert alert : alertManager.getAllAlerts()) {
+            types.add(alert.getAlertType());
+        }
+        assertTrue(types.toString(), types.contains("CriticalHighSystolicPressure"));
+        assertTrue(types.toString(), types.contains("CriticalTachycardia"));
+    }
+
+    @Test
+    public void testFailedRecordDoesNotSkipTheRest() {
+        Patient patient = freshPatient(TEST_PATIENT_ID + 16);
+        alertGenerator.evaluateData(patient);
+
+        // an alert can't be made for a zero timestamp, the reading after it must still be checked
+        dataStorage.addPatientData(TEST_PATIENT_ID + 16, 185.0, "SystolicPressure", 0L);
+        dataStorage.addPatientData(TEST_PATIENT_ID + 16, 45.0, "DiastolicPressure", 2000L);
+        alertGenerator.evaluateData(patient);
+
+        boolean diastolic = false;
+        for (Alert alert : alertManager.getAllAlerts()) {
+            diastolic |= alert.getAlertType().equals("CriticalLowDiastolicPressure");
+        }
+        assertTrue(diastolic);
+    }
+
+    @Test
+    public void testReadingsAtTheSameTimeAreAllChecked() {
+        Patient patient = freshPatient(TEST_PATIENT_ID + 15);
+        alertGenerator.evaluateData(patient);
+        assertTrue(alertManager.getAllAlerts().isEmpty());
+
+        // taken in the same millisecond as the reading already evaluated
+        dataStorage.addPatientData(TEST_PATIENT_ID + 15, 185.0, "SystolicPressure", 1000L);
+        alertGenerator.evaluateData(patient);
+
+        assertOnlyAlertType("CriticalHighSystolicPressure");
+    }
+
+    @Test
+    public void testRecordsOnlyReachTheirRules() {
+        Patient patient = freshPatient(TEST_PATIENT_ID + 14);
+        // a rising heart rate that used to look like a blood pressure trend
+        dataStorage.addPatientData(TEST_PATIENT_ID + 14, 60.0, "HeartRate", 2000L);
+        dataStorage.addPatientData(TEST_PATIENT_ID + 14, 75.0, "HeartRate", 3000L);
+        dataStorage.addPatientData(TEST_PATIENT_ID + 14, 90.0, "HeartRate", 4000L);
+        dataStorage.addPatientData(TEST_PATIENT_ID + 14, 1.0, "ECG", 5000L);
+        alertGenerator.evaluateData(patient);
+
+        assertTrue(alertManager.getAllAlerts().isEmpty());
+    }
+
+    @Test
+    public void testClearedPatientStartsOver() {
+        Patient patient = freshPatient(TEST_PATIENT_ID + 13);
+        alertGenerator.evaluateData(patient);
+
+        Patient again = freshPatient(TEST_PATIENT_ID + 13);
+        // older than the first patient's watermark, only evaluated if the state was reset
+        dataStorage.addPatientData(TEST_PATIENT_ID + 13, 185.0, "SystolicPressure", 500L);
+        alertGenerator.evaluateData(again);
+
+        assertOnlyAlertType("CriticalHighSystolicPressure");
+    }
+
+    @Test
+    public void testEvaluateAllInParallel() {
+        final int patients = 500;
+        final int firstId = TEST_PATIENT_ID + 1000;
+        List<Patient> toEvaluate = new ArrayList<>();
+        for (int i = 0; i < patients; i++) {
+            Patient patient = freshPatient(firstId + i);
+            // every other patient has a critical reading
+            if (i % 2 == 0) {
+                dataStorage.addPatientData(firstId + i, 185.0, "SystolicPressure", 2000L);
+            }
+            toEvaluate.add(patient);
+        }
+        AtomicInteger notified = new AtomicInteger();
+        alertManager.addListener(alert -> notified.incrementAndGet());
+
+        ForkJoinPool pool = new ForkJoinPool(4);
+        try {
+            AlertGenerator parallel = new AlertGenerator(dataStorage, alertManager, pool);
+            parallel.evaluateAll(toEvaluate);
+            parallel.evaluateAll(toEvaluate);
+        } finally {
+            pool.shutdown();
+            for (int i = 0; i < patients; i++) {
+                dataStorage.clearRecords(firstId + i);
+            }
+        }
+
+        for (int i = 0; i < patients; i++) {
+            assertEquals("Patient " + i, i % 2 == 0, !alertManager.getAlertsForPatient(firstId + i).isEmpty());
+        }
+        assertEquals(alertManager.getAllAlerts().size(), notified.get());
+    }
+}
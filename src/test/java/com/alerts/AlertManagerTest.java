@@ -144,4 +144,85 @@ public class AlertManagerTest {
         assertEquals(NUM_THREADS, alertsProcessed.get());
         assertEquals(NUM_THREADS, alertManager.getAllAlerts().size());
     }
-}
\ No newline at end of file
+
+    @Test
+    public void testConcurrentDuplicatesNotifyOnce() throws InterruptedException {
+        final int NUM_THREADS = 8;
+        final int NUM_ALERTS = 1000;
+        final CountDownLatch start = new CountDownLatch(1);
+        final CountDownLatch done = new CountDownLatch(NUM_THREADS);
+        AtomicInteger alertsProcessed = new AtomicInteger(0);
+        alertManager.addListener(alert -> alertsProcessed.incrementAndGet());
+
+        // every thread hands in the same alerts
+        ExecutorService executor = Executors.newFixedThreadPool(NUM_THREADS);
+        for (int i = 0; i < NUM_THREADS; i++) {
+            executor.execute(() -> {
+                try {
+                    start.await();
+                    for (int a = 0; a < NUM_ALERTS; a++) {
+                        alertManager.handleAlert(new Alert(a % 10, testRecord, 1000L + a, "TestAlert", "Test"));
+                    }
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                done.countDown();
+            });
+        }
+        start.countDown();
+        done.await();
+        executor.shutdown();
+
+        assertEquals(NUM_ALERTS, alertsProcessed.get());
+        assertEquals(NUM_ALERTS, alertManager.getAllAlerts().size());
+        assertEquals(NUM_ALERTS / 10, alertManager.getAlertsForPatient(3).size());
+    }
+
+    @Test
+    public void testDuplicatesWithinHorizon() {
+        long[] now = {0};
+        AlertManager manager = new AlertManager(1000, () -> now[0]);
+        AtomicInteger notified = new AtomicInteger();
+        manager.addListener(alert -> notified.incrementAndGet());
+
+        manager.handleAlert(new Alert(1, testRecord, 1000L, "TestAlert", "Test description"));
+        now[0] = 999;
+        manager.handleAlert(new Alert(1, testRecord, 1000L, "TestAlert", "Test description"));
+        // in the previous generation now, still remembered
+        now[0] = 1500;
+        manager.handleAlert(new Alert(1, testRecord, 1000L, "TestAlert", "Test description"));
+
+        assertEquals(1, notified.get());
+        assertEquals(1, manager.getAllAlerts().size());
+    }
+
+    @Test
+    public void testAlertsExpire() {
+        long[] now = {0};
+        AlertManager manager = new AlertManager(1000, () -> now[0]);
+        AtomicInteger notified = new AtomicInteger();
+        manager.addListener(alert -> notified.incrementAndGet());
+
+        manager.handleAlert(new Alert(1, testRecord, 1000L, "TestAlert", "Test description"));
+        now[0] = 1200;
+        manager.handleAlert(new Alert(2, testRecord, 1000L, "TestAlert", "Test description"));
+        assertEquals(2, manager.getAllAlerts().size());
+
+        // the first alert's generation is forgotten, the second is still remembered
+        now[0] = 2100;
+        assertEquals(1, manager.getAlertsForPatient(2).size());
+        assertTrue(manager.getAlertsForPatient(1).isEmpty());
+        manager.handleAlert(new Alert(1, testRecord, 1000L, "TestAlert", "Test description"));
+        manager.handleAlert(new Alert(2, testRecord, 1000L, "TestAlert", "Test description"));
+        assertEquals(3, notified.get());
+
+        // long idle, everything is forgotten at once
+        now[0] = 10_000;
+        assertTrue(manager.getAllAlerts().isEmpty());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testRejectsNonPositiveHorizon() {
+        new AlertManager(0);
+    }
+}
@@ -0,0 +1,100 @@
+package com.alerts;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import com.data_management.DataStorage;
+
+public class AlertSchedulerTest {
+    private static final int TEST_PATIENT_ID = 4242;
+
+    private DataStorage dataStorage;
+    private AlertManager alertManager;
+    private ExecutorService executor;
+    private AlertScheduler scheduler;
+
+    @Before
+    public void setUp() {
+        dataStorage = DataStorage.getInstance();
+        dataStorage.clearRecords(TEST_PATIENT_ID);
+        alertManager = new AlertManager();
+        executor = Executors.newSingleThreadExecutor();
+        scheduler = new AlertScheduler(dataStorage, new AlertGenerator(dataStorage, alertManager), executor);
+        scheduler.start();
+    }
+
+    @After
+    public void tearDown() {
+        scheduler.stop();
+        executor.shutdownNow();
+        dataStorage.clearRecords(TEST_PATIENT_ID);
+    }
+
+    private void awaitIdle() throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 5000;
+        while (!scheduler.isIdle() && System.currentTimeMillis() < deadline) {
+            Thread.sleep(5);
+        }
+        assertTrue(scheduler.isIdle());
+    }
+
+    @Test
+    public void testAlertOnIngest() throws InterruptedException {
+        CountDownLatch alerted = new CountDownLatch(1);
+        alertManager.addListener(alert -> alerted.countDown());
+
+        dataStorage.addPatientData(TEST_PATIENT_ID, 185.0, "SystolicPressure", 1000L);
+
+        assertTrue("Alert should follow the reading without polling", alerted.await(2, TimeUnit.SECONDS));
+    }
+
+    @Test
+    public void testBurstIsCoalesced() throws InterruptedException {
+        // keep the only thread busy while the burst arrives
+        CountDownLatch release = new CountDownLatch(1);
+        executor.execute(() -> {
+            try {
+                release.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        });
+        for (int i = 0; i < 1000; i++) {
+            dataStorage.addPatientData(TEST_PATIENT_ID, 120.0, "SystolicPressure", 1000L + i);
+        }
+        release.countDown();
+        awaitIdle();
+
+        assertEquals(1000, scheduler.getNotifications());
+        assertEquals("The burst should be one evaluation", 1, scheduler.getEvaluations());
+    }
+
+    @Test
+    public void testDataDuringEvaluationIsNotMissed() throws InterruptedException {
+        for (int i = 0; i < 200; i++) {
+            dataStorage.addPatientData(TEST_PATIENT_ID, 120.0, "SystolicPressure", 1000L + i);
+        }
+        dataStorage.addPatientData(TEST_PATIENT_ID, 185.0, "SystolicPressure", 5000L);
+        awaitIdle();
+
+        assertFalse(alertManager.getAlertsForPatient(TEST_PATIENT_ID).isEmpty());
+        assertTrue(scheduler.getEvaluations() <= scheduler.getNotifications());
+    }
+
+    @Test
+    public void testStopListening() throws InterruptedException {
+        scheduler.stop();
+        dataStorage.addPatientData(TEST_PATIENT_ID, 185.0, "SystolicPressure", 1000L);
+        Thread.sleep(100);
+
+        assertEquals(0, scheduler.getNotifications());
+        assertTrue(alertManager.getAllAlerts().isEmpty());
+    }
+}
@@ -0,0 +1,65 @@
+package com.alerts;
+
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class AlertTest {
+    private final PatientRecord vitals = new PatientRecord("HeartRate", "155.0");
+
+    // counts how often the description is rendered
+    private static class Counted {
+        final AtomicInteger renders = new AtomicInteger();
+
+        @Override
+        public String toString() {
+            renders.incrementAndGet();
+            return "rendered";
+        }
+    }
+
+    @Test
+    public void testFormattedDescription() {
+        Alert alert = Alert.formatted(1, vitals, 1000L, "CriticalTachycardia",
+            "Critical high heart rate: %.0f bpm (>%.0f)", 155.0, 150.0);
+
+        assertEquals("Critical high heart rate: 155 bpm (>150)", alert.getDescription());
+        assertArrayEquals(new Object[] {155.0, 150.0}, alert.getDescriptionArgs());
+        assertEquals(new Alert(1, vitals, 1000L, "CriticalTachycardia", "other"), alert);
+    }
+
+    @Test
+    public void testDescriptionIsRenderedOnDemand() {
+        Counted counted = new Counted();
+        Alert alert = Alert.formatted(1, vitals, 1000L, "Test", "value %s", counted);
+        assertEquals(0, counted.renders.get());
+
+        assertEquals("value rendered", alert.getDescription());
+        assertEquals("value rendered", alert.getDescription());
+        assertEquals(1, counted.renders.get());
+    }
+
+    @Test
+    public void testDuplicatesAreNeverRendered() {
+        AlertManager manager = new AlertManager();
+        Counted counted = new Counted();
+        manager.handleAlert(new Alert(1, vitals, 1000L, "Test", "first"));
+        manager.handleAlert(Alert.formatted(1, vitals, 1000L, "Test", "value %s", counted));
+
+        assertEquals(1, manager.getAllAlerts().size());
+        assertEquals(0, counted.renders.get());
+    }
+
+    @Test
+    public void testPlainDescription() {
+        Alert alert = new Alert(1, vitals, 1000L, "Test", "  spaced  ");
+        assertEquals("spaced", alert.getDescription());
+        assertEquals(0, alert.getDescriptionArgs().length);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testRejectsEmptyFormat() {
+        Alert.formatted(1, vitals, 1000L, "Test", " ");
+    }
+}
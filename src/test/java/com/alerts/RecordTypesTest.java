@@ -0,0 +1,30 @@
+package com.alerts;
+
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+public class RecordTypesTest {
+
+    @Test
+    public void testKnownTypes() {
+        assertEquals(RecordTypes.HEART_RATE, RecordTypes.idOf("HeartRate"));
+        assertEquals("ECG", RecordTypes.nameOf(RecordTypes.ECG));
+        assertNotEquals(RecordTypes.SATURATION, RecordTypes.BLOOD_SATURATION);
+    }
+
+    @Test
+    public void testNewTypeKeepsItsId() {
+        int count = RecordTypes.count();
+        int id = RecordTypes.idOf("RecordTypesTestType");
+
+        assertTrue(id >= 0 && id < RecordTypes.count());
+        assertTrue(RecordTypes.count() <= count + 1);
+        assertEquals(id, RecordTypes.idOf("RecordTypesTestType"));
+        assertEquals("RecordTypesTestType", RecordTypes.nameOf(id));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testUnknownId() {
+        RecordTypes.nameOf(RecordTypes.count());
+    }
+}
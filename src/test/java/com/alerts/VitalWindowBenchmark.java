@@ -0,0 +1,62 @@
+package com.alerts;
+
+/**
+ * Measures the cost per reading of the rapid change check, the window min
+ * and max against a scan of the readings in the time window, as the window
+ * holds more readings. Not a unit test, run it with
+ * {@code java -cp target/classes:target/test-classes com.alerts.VitalWindowBenchmark}.
+ */
+public class VitalWindowBenchmark {
+    private static final int SAMPLES = 2_000_000;
+    private static final int ROUNDS = 5;
+
+    public static void main(String[] args) {
+        int[] windowSizes = {10, 100, 1_000, 10_000, 100_000};
+        System.out.println("readings in window   min/max ns/reading   scan ns/reading");
+        for (int windowSize : windowSizes) {
+            double deque = Double.MAX_VALUE;
+            double scan = Double.MAX_VALUE;
+            // best of a few rounds, the first ones warm up the JIT
+            for (int round = 0; round < ROUNDS; round++) {
+                deque = Math.min(deque, run(windowSize, false));
+                scan = Math.min(scan, run(windowSize, true));
+            }
+            System.out.printf("%19d   %18.1f   %15.1f%n", windowSize, deque, scan);
+        }
+    }
+
+    // one reading per millisecond, the check looks back over the whole window
+    private static double run(int windowSize, boolean scan) {
+        VitalWindow window = new VitalWindow(windowSize, 0);
+        int samples = scan ? Math.max(1000, Math.min(SAMPLES, 200_000_000 / windowSize)) : SAMPLES;
+        long seed = 12345;
+        double sink = 0;
+        // fill the window first, so every timed reading sees a full one
+        for (int t = -windowSize; t < 0; t++) {
+            window.add(t, 60);
+        }
+        long start = System.nanoTime();
+        for (int t = 0; t < samples; t++) {
+            seed = seed * 6364136223846793005L + 1442695040888963407L;
+            double value = 60 + (seed >>> 58);
+            window.add(t, value);
+            long from = t - windowSize;
+            if (scan) {
+                double max = Double.NEGATIVE_INFINITY;
+                double min = Double.POSITIVE_INFINITY;
+                for (int i = window.indexFrom(from); i < window.size(); i++) {
+                    max = Math.max(max, window.getValue(i));
+                    min = Math.min(min, window.getValue(i));
+                }
+                sink += max - min;
+            } else {
+                sink += window.getValue(window.maxIndexFrom(from)) - window.getValue(window.minIndexFrom(from));
+            }
+        }
+        long elapsed = System.nanoTime() - start;
+        if (sink == 42) {
+            System.out.println();
+        }
+        return (double) elapsed / samples;
+    }
+}
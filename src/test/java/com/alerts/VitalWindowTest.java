@@ -0,0 +1,120 @@
+package com.alerts;
+
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+import java.util.Arrays;
+import java.util.Random;
+
+public class VitalWindowTest {
+
+    @Test
+    public void testEvictsReadingsOutOfSpan() {
+        VitalWindow window = new VitalWindow(1000, 0);
+        window.add(0, 1.0);
+        window.add(500, 2.0);
+        window.add(1000, 3.0);
+        assertEquals(3, window.size());
+
+        window.add(1600, 4.0);
+        assertEquals(2, window.size());
+        assertEquals(1000, window.getTimestamp(0));
+        assertEquals(4.0, window.getValue(1), 0.0);
+        assertEquals(1600, window.getLatestTimestamp());
+    }
+
+    @Test
+    public void testKeepsMinimumSize() {
+        VitalWindow window = new VitalWindow(1000, 3);
+        window.add(0, 1.0);
+        window.add(10_000, 2.0);
+        window.add(20_000, 3.0);
+        window.add(30_000, 4.0);
+
+        assertEquals(3, window.size());
+        assertEquals(2.0, window.getValue(0), 0.0);
+    }
+
+    @Test
+    public void testGrowsAcrossTheRingBoundary() {
+        VitalWindow window = new VitalWindow(100, 0);
+        // slide far enough that the ring wraps before it has to grow
+        for (int t = 0; t < 1000; t++) {
+            window.add(t, t);
+        }
+        assertEquals(101, window.size());
+        for (int i = 0; i < window.size(); i++) {
+            assertEquals(899 + i, window.getTimestamp(i));
+            assertEquals(899 + i, window.getValue(i), 0.0);
+        }
+
+        VitalWindow wide = new VitalWindow(10_000, 0);
+        for (int t = 0; t < 1000; t++) {
+            wide.add(t, t);
+        }
+        assertEquals(1000, wide.size());
+        assertEquals(500.0, wide.getValue(500), 0.0);
+    }
+
+    @Test
+    public void testIndexFrom() {
+        VitalWindow window = new VitalWindow(Long.MAX_VALUE, 0);
+        window.add(100, 1.0);
+        window.add(200, 2.0);
+        window.add(300, 3.0);
+
+        assertEquals(0, window.indexFrom(0));
+        assertEquals(1, window.indexFrom(150));
+        assertEquals(1, window.indexFrom(200));
+        assertEquals(3, window.indexFrom(301));
+    }
+
+    @Test
+    public void testExtremesMatchAScan() {
+        Random random = new Random(42);
+        VitalWindow window = new VitalWindow(500, 3);
+        for (int t = 0; t < 5000; t += 1 + random.nextInt(20)) {
+            // few distinct values, so there are ties
+            window.add(t, random.nextInt(10));
+            long from = t - random.nextInt(400);
+            int max = -1;
+            int min = -1;
+            for (int i = window.indexFrom(from); i < window.size(); i++) {
+                if (max < 0 || window.getValue(i) >= window.getValue(max)) {
+                    max = i;
+                }
+                if (min < 0 || window.getValue(i) <= window.getValue(min)) {
+                    min = i;
+                }
+            }
+            assertEquals("max from " + from + " in " + window, max, window.maxIndexFrom(from));
+            assertEquals("min from " + from + " in " + window, min, window.minIndexFrom(from));
+        }
+    }
+
+    @Test
+    public void testNoExtremesAfterTheNewestReading() {
+        VitalWindow window = new VitalWindow(1000, 0);
+        assertEquals(-1, window.maxIndexFrom(0));
+        window.add(100, 1.0);
+        assertEquals(0, window.maxIndexFrom(100));
+        assertEquals(-1, window.minIndexFrom(101));
+    }
+
+    @Test
+    public void testOf() {
+        VitalWindow window = VitalWindow.of(Arrays.asList(
+            new com.data_management.PatientRecord(1, 70.0, "HeartRate", 0L),
+            new com.data_management.PatientRecord(1, 71.0, "HeartRate", 100_000_000L)));
+
+        assertEquals(2, window.size());
+        assertEquals(70.0, window.getValue(0), 0.0);
+    }
+
+    @Test(expected = IndexOutOfBoundsException.class)
+    public void testIndexOutOfRange() {
+        VitalWindow window = new VitalWindow(1000, 0);
+        window.add(0, 1.0);
+        window.getValue(1);
+    }
+}
@@ -2,6 +2,7 @@ package com.alerts.factory;
 
 import com.alerts.Alert;
 import com.alerts.PatientRecord;
+import com.alerts.RecordTypes;
 import org.junit.Before;
 import org.junit.Test;
 import static org.junit.Assert.*;
@@ -70,6 +71,40 @@ public class AlertFactoryTest {
         assertTrue(alert.getDescription().contains("2.5"));
     }
     
+    @Test
+    public void testECGBaselinePerPatient() {
+        for (int i = 0; i < 10; i++) {
+            ecgFactory.createAlert(1, new PatientRecord("ECG", "1.0"), System.currentTimeMillis());
+            ecgFactory.createAlert(2, new PatientRecord("ECG", "3.0"), System.currentTimeMillis());
+        }
+
+        // normal for patient 2, anomalous against patient 1's baseline
+        assertNull(ecgFactory.createAlert(2, new PatientRecord("ECG", "3.2"), System.currentTimeMillis()));
+        assertNotNull(ecgFactory.createAlert(1, new PatientRecord("ECG", "3.2"), System.currentTimeMillis()));
+    }
+
+    @Test
+    public void testECGWaitsForFullWindow() {
+        for (int i = 0; i < 8; i++) {
+            ecgFactory.createAlert(1, new PatientRecord("ECG", "1.0"), System.currentTimeMillis());
+        }
+        // the ninth reading, one short of a baseline
+        assertNull(ecgFactory.createAlert(1, new PatientRecord("ECG", "9.0"), System.currentTimeMillis()));
+    }
+
+    @Test
+    public void testNumericEvaluate() {
+        assertNull(bpFactory.evaluate(1, RecordTypes.SYSTOLIC_PRESSURE, 1000L, 120.0));
+        Alert alert = bpFactory.evaluate(1, RecordTypes.DIASTOLIC_PRESSURE, 1000L, 125.0);
+        assertNotNull(alert);
+        assertEquals("CriticalHighDiastolicPressure", alert.getAlertType());
+        assertEquals(1000L, alert.getTimestamp());
+        assertEquals("DiastolicPressure", alert.getVitals().vitalType);
+
+        assertThrows(IllegalArgumentException.class, () ->
+            boFactory.evaluate(1, RecordTypes.ECG, 1000L, 1.0));
+    }
+
     @Test
     public void testInvalidVitalType() {
         PatientRecord invalidVitals = new PatientRecord("InvalidType", "100.0");
@@ -0,0 +1,73 @@
+package com.alerts.factory;
+
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.List;
+
+public class ECGBaselinesTest {
+
+    @Test
+    public void testRunningAverage() {
+        ECGBaselines baselines = new ECGBaselines(4);
+        assertTrue(Double.isNaN(baselines.add(7, 1.0)));
+        assertTrue(Double.isNaN(baselines.add(7, 2.0)));
+        assertTrue(Double.isNaN(baselines.add(7, 3.0)));
+        assertEquals(2.5, baselines.add(7, 4.0), 1e-9);
+        // 1.0 slides out
+        assertEquals(4.5, baselines.add(7, 9.0), 1e-9);
+        assertEquals(6.0, baselines.add(7, 8.0), 1e-9);
+    }
+
+    @Test
+    public void testZeroReadingsHoldTheBaseline() {
+        ECGBaselines baselines = new ECGBaselines(3);
+        baselines.add(1, 1.0);
+        baselines.add(1, 0.0);
+        assertTrue(Double.isNaN(baselines.add(1, 1.0)));
+        assertTrue(Double.isNaN(baselines.add(1, 1.0)));
+        // the zero is out of the window now
+        assertEquals(1.0, baselines.add(1, 1.0), 1e-9);
+    }
+
+    @Test
+    public void testManyPatients() {
+        ECGBaselines baselines = new ECGBaselines(2);
+        for (int id = -5000; id < 5000; id++) {
+            baselines.add(id, Math.abs(id) + 1.0);
+        }
+        for (int id = -5000; id < 5000; id++) {
+            assertEquals("patient " + id, Math.abs(id) + 1.5, baselines.add(id, Math.abs(id) + 2.0), 1e-9);
+        }
+    }
+
+    @Test
+    public void testParallelPatients() throws Exception {
+        ECGBaselines baselines = new ECGBaselines(10);
+        List<Thread> threads = new ArrayList<>();
+        List<Throwable> failures = new ArrayList<>();
+        for (int t = 0; t < 8; t++) {
+            final int first = t * 100;
+            Thread thread = new Thread(() -> {
+                for (int round = 0; round < 1000; round++) {
+                    for (int id = first; id < first + 100; id++) {
+                        double average = baselines.add(id, id + 1.0);
+                        if (round >= 9 && Math.abs(average - (id + 1.0)) > 1e-9) {
+                            synchronized (failures) {
+                                failures.add(new AssertionError("patient " + id + " average " + average));
+                            }
+                            return;
+                        }
+                    }
+                }
+            });
+            threads.add(thread);
+            thread.start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        assertTrue(failures.toString(), failures.isEmpty());
+    }
+}
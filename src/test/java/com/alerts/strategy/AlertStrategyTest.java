@@ -2,6 +2,8 @@ package com.alerts.strategy;
 
 import com.alerts.Alert;
 import com.alerts.PatientRecord;
+import com.alerts.RecordTypes;
+import com.alerts.VitalWindow;
 import org.junit.Before;
 import org.junit.Test;
 import java.util.ArrayList;
@@ -53,6 +55,33 @@ public class AlertStrategyTest {
         assertTrue(alert.getDescription().contains("165.0"));
     }
     
+    @Test
+    public void testNumericEvaluate() {
+        VitalWindow history = new VitalWindow(com.alerts.AlertGenerator.HISTORY_WINDOW_MS, 3);
+        history.add(baseTime - 2000, 97.0);
+        history.add(baseTime - 1000, 91.0);
+
+        assertNull(hrStrategy.evaluate(1, RecordTypes.SATURATION, baseTime - 1000, 91.0, history));
+        Alert alert = o2Strategy.evaluate(1, RecordTypes.SATURATION, baseTime - 1000, 91.0, history);
+        assertNotNull(alert);
+        assertEquals("LowOxygenSaturation", alert.getAlertType());
+        assertEquals("Saturation", alert.getVitals().vitalType);
+        assertEquals("91.0", alert.getVitals().vitalValue);
+        assertNull(o2Strategy.evaluate(1, RecordTypes.SATURATION, baseTime, 97.0, history));
+    }
+    
+    @Test
+    public void testDeclaredRecordTypes() {
+        assertArrayEquals(new int[] {RecordTypes.HEART_RATE}, hrStrategy.getRecordTypeIds());
+        assertEquals(2, bpStrategy.getRecordTypeIds().length);
+
+        VitalWindow rising = new VitalWindow(com.alerts.AlertGenerator.HISTORY_WINDOW_MS, 3);
+        rising.add(baseTime - 2000, 60.0);
+        rising.add(baseTime - 1000, 75.0);
+        rising.add(baseTime, 90.0);
+        assertNull(bpStrategy.evaluate(1, RecordTypes.HEART_RATE, baseTime, 90.0, rising));
+    }
+    
     @Test
     public void testHeartRateCriticalHigh() {
         PatientRecord record = new PatientRecord("HeartRate", "155.0");
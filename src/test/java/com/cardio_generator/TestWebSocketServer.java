@@ -12,6 +12,8 @@ public class TestWebSocketServer extends WebSocketServer {
 
     public TestWebSocketServer(int port) {
         super(new InetSocketAddress(port));
+        // tests reuse the port right after the previous server closed
+        setReuseAddr(true);
     }
 
     @Override
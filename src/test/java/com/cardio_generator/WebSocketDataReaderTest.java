@@ -6,14 +6,22 @@ import org.junit.Test;
 import static org.junit.Assert.*;
 
 import java.io.IOException;
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
 import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.TimeUnit;
 
 import com.data_management.DataStorage;
 import com.data_management.Patient;
+import com.data_management.PatientDataWebSocketClient;
 import com.data_management.PatientRecord;
+import com.data_management.VitalsDeflateExtension;
 import com.data_management.WebSocketDataReader;
+import com.cardio_generator.outputs.WebSocketOutputStrategy;
+import org.java_websocket.client.WebSocketClient;
+import org.java_websocket.handshake.ServerHandshake;
 
 public class WebSocketDataReaderTest {
     private WebSocketDataReader reader;
@@ -143,4 +151,210 @@ public class WebSocketDataReaderTest {
         List<Patient> patients = dataStorage.getAllPatients();
         assertTrue("Should not store data with invalid field types", patients.isEmpty());
     }
-} 
\ No newline at end of file
+
+    @Test
+    public void testBatchedMessages() throws Exception {
+        reader.readData(dataStorage);
+        Thread.sleep(500);
+
+        server.sendTestData("[{\"patientId\":1,\"value\":60,\"recordType\":\"HeartRate\",\"timestamp\":1000},"
+            + "{\"patientId\":1,\"value\":61,\"recordType\":\"HeartRate\",\"timestamp\":2000},"
+            + "{\"patientId\":2,\"value\":98,\"recordType\":\"Saturation\",\"timestamp\":1000}]");
+        server.sendTestData("{\"patientId\":1,\"value\":62,\"recordType\":\"HeartRate\",\"timestamp\":3000}\n"
+            + "{\"patientId\":1,\"value\":\"bad\",\"recordType\":\"HeartRate\",\"timestamp\":4000}\n"
+            + "{\"patientId\":1,\"value\":63,\"recordType\":\"HeartRate\",\"timestamp\":5000}\n");
+
+        Thread.sleep(1000);
+
+        assertEquals("Should have stored the valid batched readings", 4,
+            dataStorage.getRecords(1, 0L, Long.MAX_VALUE).size());
+        assertEquals(1, dataStorage.getRecords(2, 0L, Long.MAX_VALUE).size());
+    }
+
+    @Test
+    public void testBatchingOutputStrategy() throws Exception {
+        WebSocketOutputStrategy output = new WebSocketOutputStrategy(8026, 3, 50);
+        WebSocketDataReader batchReader = new WebSocketDataReader("ws://localhost:8026");
+        try {
+            Thread.sleep(200);
+            batchReader.readData(dataStorage);
+            Thread.sleep(200);
+
+            output.output(1, 1000, "HeartRate", "70.0");
+            output.output(1, 2000, "Saturation", "97.0%");
+            output.output(1, 3000, "Alert", "triggered");
+            // the fourth reading waits for the batch delay
+            output.output(2, 1000, "BloodLevels", "cholesterol=180.0,glucose=90.0,hemoglobin=14.0,platelets=250.0");
+
+            Thread.sleep(1000);
+
+            List<PatientRecord> first = dataStorage.getRecords(1, 0L, Long.MAX_VALUE);
+            assertEquals(3, first.size());
+            assertEquals(97.0, first.get(1).getMeasurementValue(), 0.0);
+            assertEquals(1.0, first.get(2).getMeasurementValue(), 0.0);
+            assertEquals(4, dataStorage.getRecords(2, 0L, Long.MAX_VALUE).size());
+        } finally {
+            batchReader.stop();
+            output.stop();
+        }
+    }
+
+    @Test
+    public void testOutputStrategyFallsBackToJson() throws Exception {
+        WebSocketOutputStrategy output = new WebSocketOutputStrategy(8027);
+        List<String> messages = Collections.synchronizedList(new ArrayList<>());
+        CountDownLatch opened = new CountDownLatch(1);
+        // a client that doesn't ask for the binary subprotocol
+        WebSocketClient jsonClient = new WebSocketClient(new URI("ws://localhost:8027")) {
+            @Override
+            public void onOpen(ServerHandshake handshake) {
+                opened.countDown();
+            }
+
+            @Override
+            public void onMessage(String message) {
+                messages.add(message);
+            }
+
+            @Override
+            public void onClose(int code, String reason, boolean remote) {
+            }
+
+            @Override
+            public void onError(Exception ex) {
+            }
+        };
+        try {
+            Thread.sleep(200);
+            jsonClient.connect();
+            assertTrue(opened.await(5, TimeUnit.SECONDS));
+
+            output.output(1, 1000, "Saturation", "97.0%");
+            Thread.sleep(500);
+
+            assertEquals(1, messages.size());
+            assertEquals("{\"epoch\":" + output.getEpoch()
+                + ",\"seq\":1,\"patientId\":1,\"timestamp\":1000,\"recordType\":\"Saturation\",\"value\":97.0}",
+                messages.get(0));
+        } finally {
+            jsonClient.close();
+            output.stop();
+        }
+    }
+
+    @Test
+    public void testCompressedFeed() throws Exception {
+        VitalsDeflateExtension serverCompression = new VitalsDeflateExtension(6, 100);
+        VitalsDeflateExtension clientCompression = new VitalsDeflateExtension();
+        WebSocketOutputStrategy output = new WebSocketOutputStrategy(8029, 20, 50,
+            WebSocketOutputStrategy.DEFAULT_REPLAY_CAPACITY, serverCompression);
+        WebSocketDataReader compressedReader = new WebSocketDataReader("ws://localhost:8029");
+        compressedReader.setCompression(clientCompression);
+        try {
+            Thread.sleep(200);
+            compressedReader.readData(dataStorage);
+            Thread.sleep(200);
+
+            for (int i = 0; i < 40; i++) {
+                output.output(1, 1000 + i, "HeartRate", String.valueOf(60.0 + i));
+            }
+            // a lone reading is below the threshold and goes uncompressed
+            output.output(2, 1000, "HeartRate", "70.0");
+            Thread.sleep(500);
+
+            assertEquals(40, dataStorage.getRecords(1, 0L, Long.MAX_VALUE).size());
+            assertEquals(1, dataStorage.getRecords(2, 0L, Long.MAX_VALUE).size());
+            assertEquals(2, serverCompression.getStats().getDeflatedMessages());
+            assertEquals(1, serverCompression.getStats().getSkippedMessages());
+            assertEquals(2, clientCompression.getStats().getInflatedMessages());
+            assertTrue(serverCompression.getStats().getDeflatedBytesOut()
+                < serverCompression.getStats().getDeflatedBytesIn());
+        } finally {
+            compressedReader.stop();
+            output.stop();
+        }
+    }
+
+    @Test
+    public void testReplayAfterReconnect() throws Exception {
+        WebSocketOutputStrategy output = new WebSocketOutputStrategy(8028);
+        PatientDataWebSocketClient client = new PatientDataWebSocketClient("ws://localhost:8028", dataStorage);
+        try {
+            Thread.sleep(200);
+            assertTrue(client.connectBlocking(5, TimeUnit.SECONDS));
+            // let the server register the connection
+            Thread.sleep(200);
+
+            output.output(1, 1000, "HeartRate", "70.0");
+            output.output(1, 2000, "HeartRate", "71.0");
+            Thread.sleep(300);
+
+            // drop the connection without a close handshake, as a network blip would
+            client.closeConnection(1006, "blip");
+            output.output(1, 3000, "HeartRate", "72.0");
+            output.output(1, 4000, "HeartRate", "73.0");
+
+            long deadline = System.currentTimeMillis() + 5000;
+            while (dataStorage.getRecords(1, 0L, Long.MAX_VALUE).size() < 4
+                    && System.currentTimeMillis() < deadline) {
+                Thread.sleep(20);
+            }
+            output.output(1, 5000, "HeartRate", "74.0");
+            Thread.sleep(300);
+
+            List<PatientRecord> records = dataStorage.getRecords(1, 0L, Long.MAX_VALUE);
+            assertEquals("Every reading stored exactly once", 5, records.size());
+            assertEquals(5, client.getSequenceTracker().getAcknowledged());
+            assertEquals(0, client.getSequenceTracker().getMissing());
+        } finally {
+            client.stopReconnecting();
+            output.stop();
+        }
+    }
+
+    @Test
+    public void testServerRestartStartsNewEpoch() throws Exception {
+        WebSocketOutputStrategy output = new WebSocketOutputStrategy(8030);
+        PatientDataWebSocketClient client = new PatientDataWebSocketClient("ws://localhost:8030", dataStorage);
+        try {
+            Thread.sleep(200);
+            assertTrue(client.connectBlocking(5, TimeUnit.SECONDS));
+            Thread.sleep(200);
+            for (int i = 0; i < 3; i++) {
+                output.output(1, 1000 + i, "HeartRate", "70.0");
+            }
+            waitForRecords(1, 3);
+            long firstEpoch = output.getEpoch();
+
+            // the new server numbers its readings from 1 again
+            output.stop();
+            output = new WebSocketOutputStrategy(8030);
+            long deadline = System.currentTimeMillis() + 5000;
+            while (!client.isOpen() && System.currentTimeMillis() < deadline) {
+                Thread.sleep(20);
+            }
+            assertTrue("Client should have reconnected", client.isOpen());
+            Thread.sleep(200);
+            output.output(1, 2000, "HeartRate", "75.0");
+            output.output(1, 2001, "HeartRate", "76.0");
+
+            waitForRecords(1, 5);
+            assertEquals(output.getEpoch(), client.getSequenceTracker().getEpoch());
+            assertTrue(output.getEpoch() > firstEpoch);
+            assertEquals(2, client.getSequenceTracker().getAcknowledged());
+            assertEquals(0, client.getSequenceTracker().getDuplicates());
+        } finally {
+            client.stopReconnecting();
+            output.stop();
+        }
+    }
+
+    private void waitForRecords(int patientId, int expected) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 5000;
+        while (dataStorage.getRecords(patientId, 0L, Long.MAX_VALUE).size() < expected
+                && System.currentTimeMillis() < deadline) {
+            Thread.sleep(20);
+        }
+        assertEquals(expected, dataStorage.getRecords(patientId, 0L, Long.MAX_VALUE).size());
+    }
+}
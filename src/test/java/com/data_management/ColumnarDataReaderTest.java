@@ -0,0 +1,148 @@
+package com.data_management;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.Rule;
+import org.junit.rules.TemporaryFolder;
+import static org.junit.Assert.*;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+
+import com.cardio_generator.outputs.ColumnarOutputStrategy;
+
+public class ColumnarDataReaderTest {
+    @Rule
+    public TemporaryFolder tempFolder = new TemporaryFolder();
+
+    private DataStorage dataStorage;
+    private File file;
+
+    @Before
+    public void setUp() throws IOException {
+        file = new File(tempFolder.getRoot(), "vitals.col");
+        dataStorage = DataStorage.getInstance();
+        for (int i = 1; i <= 100; i++) {
+            dataStorage.clearRecords(i);
+        }
+    }
+
+    @Test
+    public void testRoundTrip() throws IOException {
+        ColumnarOutputStrategy output = new ColumnarOutputStrategy(file.getPath(), 4);
+        for (int i = 0; i < 10; i++) {
+            output.output(1, 1000 + i * 10, "ECG", String.valueOf(0.1 * i));
+            output.output(1, 1000 + i * 10, "Saturation", "97.0%");
+        }
+        output.output(2, 5000, "Alert", "triggered");
+        output.output(2, 4000, "BloodLevels", "cholesterol=180.5,glucose=90.0,hemoglobin=14.0,platelets=250.0");
+        output.close();
+
+        new ColumnarDataReader(file.getPath()).readData(dataStorage);
+
+        List<PatientRecord> first = dataStorage.getRecords(1, 0L, Long.MAX_VALUE);
+        assertEquals(20, first.size());
+        int ecg = 0;
+        for (PatientRecord record : first) {
+            if (record.getRecordType().equals("ECG")) {
+                long i = (record.getTimestamp() - 1000) / 10;
+                assertEquals(0.1 * i, record.getMeasurementValue(), 0.0);
+                ecg++;
+            } else {
+                assertEquals("Saturation", record.getRecordType());
+                assertEquals(97.0, record.getMeasurementValue(), 0.0);
+            }
+        }
+        assertEquals(10, ecg);
+
+        List<PatientRecord> second = dataStorage.getRecords(2, 0L, Long.MAX_VALUE);
+        assertEquals(5, second.size());
+        assertEquals(1.0, valueOf(second, "Alert"), 0.0);
+        assertEquals(180.5, valueOf(second, "Cholesterol"), 0.0);
+        assertEquals(250.0, valueOf(second, "Platelets"), 0.0);
+    }
+
+    @Test
+    public void testTimeRangeSkipsBlocks() throws IOException {
+        ColumnarOutputStrategy output = new ColumnarOutputStrategy(file.getPath(), 5);
+        for (int i = 0; i < 20; i++) {
+            output.output(3, 1000 + i, "HeartRate", String.valueOf(60 + i));
+        }
+        output.close();
+
+        List<Long> timestamps = new ArrayList<>();
+        int read = new ColumnarDataReader(file.getPath(), 1007, 1012)
+                .readPatientData((id, value, type, ts) -> timestamps.add(ts), 3);
+
+        assertEquals(6, read);
+        assertEquals(Long.valueOf(1007), timestamps.get(0));
+        assertEquals(Long.valueOf(1012), timestamps.get(5));
+    }
+
+    @Test
+    public void testPatientFilter() throws IOException {
+        ColumnarOutputStrategy output = new ColumnarOutputStrategy(file.getPath());
+        output.output(4, 1000, "HeartRate", "70");
+        output.output(5, 1000, "HeartRate", "80");
+        output.close();
+
+        List<Integer> patients = new ArrayList<>();
+        new ColumnarDataReader(file.getPath()).readPatientData((id, value, type, ts) -> patients.add(id), 5);
+
+        assertEquals(1, patients.size());
+        assertEquals(Integer.valueOf(5), patients.get(0));
+    }
+
+    @Test(expected = IOException.class)
+    public void testUnclosedFileIsRejected() throws IOException {
+        ColumnarOutputStrategy output = new ColumnarOutputStrategy(file.getPath(), 2);
+        output.output(1, 1000, "HeartRate", "70");
+        output.output(1, 1001, "HeartRate", "71");
+        output.output(1, 1002, "HeartRate", "72");
+
+        new ColumnarDataReader(file.getPath()).readData(dataStorage);
+    }
+
+    @Test(expected = IOException.class)
+    public void testNotAColumnarFile() throws IOException {
+        Files.write(file.toPath(), "1,1000,HeartRate,70\n1,2000,HeartRate,75\n".getBytes());
+        new ColumnarDataReader(file.getPath()).readData(dataStorage);
+    }
+
+    @Test
+    public void testIndexRowCountMustMatchBlock() throws IOException {
+        ColumnarOutputStrategy output = new ColumnarOutputStrategy(file.getPath(), 4);
+        for (int i = 0; i < 4; i++) {
+            output.output(1, 1000 + i, "HeartRate", "70");
+        }
+        output.close();
+
+        // the row count is the last field of the first index entry
+        ByteBuffer bytes = ByteBuffer.wrap(Files.readAllBytes(file.toPath()));
+        long indexOffset = bytes.getLong(bytes.capacity() - ColumnarFormat.FOOTER_SIZE);
+        int rowCountAt = (int) indexOffset + Integer.BYTES + ColumnarFormat.INDEX_ENTRY_SIZE - Integer.BYTES;
+        bytes.putInt(rowCountAt, bytes.getInt(rowCountAt) + 1);
+        Files.write(file.toPath(), bytes.array());
+
+        try {
+            new ColumnarDataReader(file.getPath()).readData(dataStorage);
+            fail("A block that doesn't match its index entry should be rejected");
+        } catch (IOException e) {
+            assertTrue(e.getMessage(), e.getMessage().contains("index says 5 rows"));
+        }
+    }
+
+    private static double valueOf(List<PatientRecord> records, String type) {
+        for (PatientRecord record : records) {
+            if (record.getRecordType().equals(type)) {
+                return record.getMeasurementValue();
+            }
+        }
+        fail("No " + type + " record");
+        return 0;
+    }
+}
@@ -11,6 +11,7 @@ import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 import java.util.concurrent.TimeUnit;
 import java.util.ArrayList;
+import java.util.Arrays;
 
 /**
  * Comprehensive test class for DataStorage functionality
@@ -46,6 +47,54 @@ public class DataStorageTest {
         assertEquals("SystolicPressure", records.get(0).getRecordType());
     }
 
+    @Test
+    public void testAddBatch() {
+        RecordBatch batch = new RecordBatch(2);
+        batch.addPatientData(1, 120.0, "SystolicPressure", 1000L);
+        batch.addPatientData(1, 80.0, "DiastolicPressure", 1000L);
+        batch.addPatientData(2, 98.0, "Saturation", 1000L);
+        dataStorage.addBatch(batch);
+
+        assertEquals(2, dataStorage.getRecords(1, 0L, Long.MAX_VALUE).size());
+        assertEquals(98.0, dataStorage.getRecords(2, 0L, Long.MAX_VALUE).get(0).getMeasurementValue(), 0.001);
+
+        batch.clear();
+        assertTrue(batch.isEmpty());
+        dataStorage.addBatch(batch);
+        assertEquals(2, dataStorage.getAllPatients().size());
+    }
+
+    @Test
+    public void testListenersAreNotified() {
+        List<Integer> notified = new ArrayList<>();
+        PatientDataListener listener = patient -> notified.add(patient.getPatientId());
+        dataStorage.addListener(listener);
+
+        dataStorage.addPatientData(1, 120.0, "SystolicPressure", 1000L);
+        RecordBatch batch = new RecordBatch(4);
+        batch.addPatientData(1, 121.0, "SystolicPressure", 2000L);
+        batch.addPatientData(1, 80.0, "DiastolicPressure", 2000L);
+        batch.addPatientData(2, 98.0, "Saturation", 2000L);
+        batch.addPatientData(1, 122.0, "SystolicPressure", 3000L);
+        dataStorage.addBatch(batch);
+        // once per run of readings for the same patient
+        assertEquals(Arrays.asList(1, 1, 2, 1), notified);
+
+        dataStorage.removeListener(listener);
+        dataStorage.addPatientData(1, 123.0, "SystolicPressure", 4000L);
+        assertEquals(4, notified.size());
+    }
+
+    @Test
+    public void testFailingListenerDoesNotStopIngest() {
+        dataStorage.addListener(patient -> {
+            throw new IllegalStateException("listener bug");
+        });
+        dataStorage.addPatientData(1, 120.0, "SystolicPressure", 1000L);
+
+        assertEquals(1, dataStorage.getRecords(1, 0L, Long.MAX_VALUE).size());
+    }
+
     @Test
     public void testAddMultiplePatients() {
         dataStorage.addPatientData(1, 120.0, "SystolicPressure", 1000L);
@@ -9,9 +9,13 @@ import static org.junit.Assert.*;
 
 import java.io.File;
 import java.io.IOException;
+import java.io.OutputStream;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
 import java.util.List;
+import java.util.zip.GZIPOutputStream;
 
 public class FileDataReaderTest {
     @Rule
@@ -33,6 +37,7 @@ public class FileDataReaderTest {
 
     @After
     public void tearDown() {
+        reader.stop();
         tempFolder.delete();
     }
 
@@ -72,4 +77,211 @@ public class FileDataReaderTest {
         assertTrue("Invalid data should be skipped",
             dataStorage.getRecords(1, 0L, Long.MAX_VALUE).isEmpty());
     }
-}
\ No newline at end of file
+
+    @Test
+    public void testErrorsAreKeyedByPathBelowTheDirectory() throws IOException {
+        File north = new File(testDataDir, "north");
+        File south = new File(testDataDir, "south");
+        north.mkdir();
+        south.mkdir();
+        Files.write(new File(north, "vitals.csv").toPath(), "invalid data format\n".getBytes());
+        Files.write(new File(south, "vitals.csv").toPath(), "invalid data format\ninvalid again\n".getBytes());
+
+        IngestErrors errors = IngestErrors.getInstance();
+        errors.clear();
+        reader.readData(dataStorage);
+        assertEquals(1, errors.getCount("north" + File.separator + "vitals.csv"));
+        assertEquals(2, errors.getCount("south" + File.separator + "vitals.csv"));
+        errors.clear();
+    }
+
+    @Test
+    public void testRereadOnlyIngestsAppendedLines() throws IOException {
+        File dataFile = new File(testDataDir, "patient1.csv");
+        Files.write(dataFile.toPath(), "1,1000,HeartRate,70\n".getBytes());
+        reader.readData(dataStorage);
+
+        Files.write(dataFile.toPath(), "1,2000,HeartRate,75\n".getBytes(), StandardOpenOption.APPEND);
+        reader.readData(dataStorage);
+
+        assertEquals("Each line should be stored once", 2,
+            dataStorage.getRecords(1, 0L, Long.MAX_VALUE).size());
+    }
+
+    @Test
+    public void testRotatedFileIsReadFromTheStart() throws IOException {
+        File dataFile = new File(testDataDir, "patient1.csv");
+        Files.write(dataFile.toPath(), "1,1000,HeartRate,70\n".getBytes());
+        reader.readData(dataStorage);
+
+        // a new file moved into place, already longer than what was read of the old one
+        File rotated = new File(testDataDir, "patient1.tmp");
+        Files.write(rotated.toPath(), "1,2000,HeartRate,75\n1,3000,HeartRate,80\n".getBytes());
+        Files.move(rotated.toPath(), dataFile.toPath(), StandardCopyOption.REPLACE_EXISTING);
+        reader.readData(dataStorage);
+
+        assertEquals("The head of the new file should not be skipped", 3,
+            dataStorage.getRecords(1, 0L, Long.MAX_VALUE).size());
+    }
+
+    @Test
+    public void testFileRewrittenInPlaceIsReadFromTheStart() throws IOException {
+        File dataFile = new File(testDataDir, "patient1.csv");
+        Files.write(dataFile.toPath(), "1,1000,HeartRate,70\n".getBytes());
+        reader.readData(dataStorage);
+
+        // the old offset now lands in the middle of the first line
+        Files.write(dataFile.toPath(), "1,20000,HeartRate,75\n1,30000,HeartRate,80\n".getBytes());
+        dataFile.setLastModified(dataFile.lastModified() + 5000);
+        IngestErrors.getInstance().clear();
+        reader.readData(dataStorage);
+
+        assertEquals(3, dataStorage.getRecords(1, 0L, Long.MAX_VALUE).size());
+        assertEquals(0, IngestErrors.getInstance().getCount("patient1.csv"));
+    }
+
+    @Test
+    public void testFollowPicksUpAppendedDataAndNewFiles() throws Exception {
+        File dataFile = new File(testDataDir, "patient1.csv");
+        Files.write(dataFile.toPath(), "1,1000,HeartRate,70\n".getBytes());
+        reader = new FileDataReader(testDataDir.getAbsolutePath(), true, 50);
+        reader.readData(dataStorage);
+        assertEquals(1, dataStorage.getRecords(1, 0L, Long.MAX_VALUE).size());
+
+        // a half written line must wait for its newline
+        Files.write(dataFile.toPath(), "1,2000,HeartRate,75\n1,3000,Heart".getBytes(), StandardOpenOption.APPEND);
+        waitForRecords(1, 2);
+        Files.write(dataFile.toPath(), "Rate,80\n".getBytes(), StandardOpenOption.APPEND);
+        waitForRecords(1, 3);
+
+        Files.write(new File(testDataDir, "patient2.csv").toPath(), "2,1000,HeartRate,60\n".getBytes());
+        waitForRecords(2, 1);
+
+        List<PatientRecord> records = dataStorage.getRecords(1, 0L, Long.MAX_VALUE);
+        assertEquals(3, records.size());
+        assertEquals(80.0, records.get(2).getMeasurementValue(), 0.001);
+    }
+
+    @Test
+    public void testFollowForgetsDeletedFiles() throws Exception {
+        File dataFile = new File(testDataDir, "patient1.csv");
+        Files.write(dataFile.toPath(), "1,1000,HeartRate,70\n".getBytes());
+        reader = new FileDataReader(testDataDir.getAbsolutePath(), true, 50);
+        reader.readData(dataStorage);
+        assertEquals(1, dataStorage.getRecords(1, 0L, Long.MAX_VALUE).size());
+
+        // a rotated file comes back under the same name, longer than the old offset
+        Files.delete(dataFile.toPath());
+        Files.write(dataFile.toPath(), "1,2000,HeartRate,75\n1,3000,HeartRate,80\n".getBytes());
+        waitForRecords(1, 3);
+        assertEquals(2000L, dataStorage.getRecords(1, 0L, Long.MAX_VALUE).get(1).getTimestamp());
+    }
+
+    private void waitForRecords(int patientId, int expected) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 5000;
+        while (dataStorage.getRecords(patientId, 0L, Long.MAX_VALUE).size() < expected
+                && System.currentTimeMillis() < deadline) {
+            Thread.sleep(20);
+        }
+        assertEquals(expected, dataStorage.getRecords(patientId, 0L, Long.MAX_VALUE).size());
+    }
+
+    @Test
+    public void testCheckpointResumesAfterRestart() throws IOException {
+        File dataFile = new File(testDataDir, "patient1.csv");
+        String checkpoint = new File(tempFolder.getRoot(), "checkpoints.txt").getAbsolutePath();
+        Files.write(dataFile.toPath(), "1,1000,HeartRate,70\n1,2000,HeartRate,72\n".getBytes());
+        reader.setCheckpointFile(checkpoint);
+        reader.readData(dataStorage);
+        assertEquals(2, dataStorage.getRecords(1, 0L, Long.MAX_VALUE).size());
+
+        // a fresh reader is what a restarted run would create
+        dataStorage.clearRecords(1);
+        Files.write(dataFile.toPath(), "1,3000,HeartRate,74\n".getBytes(), StandardOpenOption.APPEND);
+        reader = new FileDataReader(testDataDir.getAbsolutePath());
+        reader.setCheckpointFile(checkpoint);
+        reader.readData(dataStorage);
+
+        List<PatientRecord> records = dataStorage.getRecords(1, 0L, Long.MAX_VALUE);
+        assertEquals("Only the appended line should be read again", 1, records.size());
+        assertEquals(3000L, records.get(0).getTimestamp());
+    }
+
+    @Test
+    public void testReadSimulatorOutputFormat() throws IOException {
+        File dataFile = new File(testDataDir, "Saturation.txt");
+        Files.write(dataFile.toPath(), ("Patient ID: 1, Timestamp: 1000, Label: Saturation, Data: 97.0%\n"
+            + "Patient ID: 1, Timestamp: 2000, Label: BloodLevels, Data: cholesterol=180.2,glucose=95.1\n").getBytes());
+
+        reader.readData(dataStorage);
+
+        List<PatientRecord> records = dataStorage.getRecords(1, 0L, Long.MAX_VALUE);
+        assertEquals(3, records.size());
+        assertEquals(97.0, records.get(0).getMeasurementValue(), 0.001);
+        assertEquals("Cholesterol", records.get(1).getRecordType());
+    }
+
+    @Test
+    public void testReadGzipFiles() throws IOException {
+        StringBuilder lines = new StringBuilder();
+        for (int i = 1; i <= 5000; i++) {
+            lines.append("1,").append(i).append(",HeartRate,").append(60 + i % 40).append('\n');
+        }
+        writeGzip(new File(testDataDir, "a.csv.gz"), lines.toString());
+        writeGzip(new File(testDataDir, "b.txt.gz"), "Patient ID: 2, Timestamp: 1000, Label: Saturation, Data: 95.0%\n");
+        String checkpoint = new File(tempFolder.getRoot(), "checkpoints.txt").getAbsolutePath();
+        reader.setCheckpointFile(checkpoint);
+
+        reader.readData(dataStorage);
+
+        assertEquals(5000, dataStorage.getRecords(1, 0L, Long.MAX_VALUE).size());
+        assertEquals(95.0, dataStorage.getRecords(2, 0L, Long.MAX_VALUE).get(0).getMeasurementValue(), 0.001);
+
+        // archives read to the end are skipped after a restart
+        dataStorage.clearRecords(1);
+        reader = new FileDataReader(testDataDir.getAbsolutePath());
+        reader.setCheckpointFile(checkpoint);
+        reader.readData(dataStorage);
+        assertTrue(dataStorage.getRecords(1, 0L, Long.MAX_VALUE).isEmpty());
+    }
+
+    @Test
+    public void testOneShotReadStopsDecompressors() throws Exception {
+        writeGzip(new File(testDataDir, "a.csv.gz"), "1,1000,HeartRate,70\n");
+        reader.readData(dataStorage);
+        assertEquals(1, dataStorage.getRecords(1, 0L, Long.MAX_VALUE).size());
+
+        long deadline = System.currentTimeMillis() + 5000;
+        while (decompressorThreads() > 0 && System.currentTimeMillis() < deadline) {
+            Thread.sleep(20);
+        }
+        assertEquals(0, decompressorThreads());
+    }
+
+    @Test
+    public void testStopWaitsForTheFollower() throws Exception {
+        writeGzip(new File(testDataDir, "a.csv.gz"), "1,1000,HeartRate,70\n");
+        reader = new FileDataReader(testDataDir.getAbsolutePath(), true);
+        reader.readData(dataStorage);
+        assertEquals(1, threadsNamed("file-data-follower"));
+
+        reader.stop();
+        assertEquals("The follower should have ended", 0, threadsNamed("file-data-follower"));
+    }
+
+    private static long decompressorThreads() {
+        return threadsNamed("file-data-decompressor");
+    }
+
+    private static long threadsNamed(String name) {
+        return Thread.getAllStackTraces().keySet().stream()
+            .filter(thread -> thread.getName().equals(name) && thread.isAlive())
+            .count();
+    }
+
+    private void writeGzip(File file, String content) throws IOException {
+        try (OutputStream out = new GZIPOutputStream(Files.newOutputStream(file.toPath()))) {
+            out.write(content.getBytes());
+        }
+    }
+}
@@ -0,0 +1,50 @@
+package com.data_management;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import static org.junit.Assert.*;
+
+import java.io.IOException;
+import java.nio.file.Path;
+
+public class IngestCheckpointsTest {
+    @Rule
+    public TemporaryFolder tempFolder = new TemporaryFolder();
+
+    @Test
+    public void testSaveAndLoad() throws IOException {
+        Path file = tempFolder.getRoot().toPath().resolve("checkpoints.txt");
+        Path input = tempFolder.getRoot().toPath().resolve("data with spaces.csv");
+
+        IngestCheckpoints checkpoints = new IngestCheckpoints(file);
+        checkpoints.put(input, new IngestCheckpoints.Checkpoint(120, 150, 5000L, 4));
+        checkpoints.save();
+
+        IngestCheckpoints loaded = new IngestCheckpoints(file);
+        loaded.load();
+        IngestCheckpoints.Checkpoint checkpoint = loaded.get(input);
+        assertNotNull(checkpoint);
+        assertEquals(120, checkpoint.getOffset());
+        assertEquals(150, checkpoint.getSize());
+        assertEquals(5000L, checkpoint.getModifiedTime());
+        assertEquals(4, checkpoint.getLineNumber());
+    }
+
+    @Test
+    public void testMissingFileLoadsEmpty() throws IOException {
+        IngestCheckpoints checkpoints = new IngestCheckpoints(tempFolder.getRoot().toPath().resolve("none.txt"));
+        checkpoints.load();
+        assertNull(checkpoints.get(tempFolder.getRoot().toPath().resolve("a.csv")));
+    }
+
+    @Test
+    public void testRewrittenFilesAreNotResumed() {
+        IngestCheckpoints.Checkpoint checkpoint = new IngestCheckpoints.Checkpoint(100, 100, 5000L, 2);
+
+        assertTrue("Unchanged file", checkpoint.isValidFor(100, 5000L));
+        assertTrue("Appended file", checkpoint.isValidFor(180, 6000L));
+        assertFalse("Truncated file", checkpoint.isValidFor(50, 6000L));
+        assertFalse("Rewritten with the same size", checkpoint.isValidFor(100, 6000L));
+    }
+}
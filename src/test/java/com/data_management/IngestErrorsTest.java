@@ -0,0 +1,125 @@
+package com.data_management;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+import java.io.ByteArrayOutputStream;
+import java.io.PrintStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+public class IngestErrorsTest {
+    private PrintStream originalErr;
+    private ByteArrayOutputStream err;
+
+    @Before
+    public void setUp() {
+        originalErr = System.err;
+        err = new ByteArrayOutputStream();
+        System.setErr(new PrintStream(err, true));
+    }
+
+    @After
+    public void tearDown() {
+        System.setErr(originalErr);
+    }
+
+    private int loggedLines() {
+        String output = err.toString();
+        return output.isEmpty() ? 0 : output.split("\n").length;
+    }
+
+    @Test
+    public void testCountsBySourceAndClass() {
+        IngestErrors errors = new IngestErrors(0);
+        errors.record("a.txt", "Bad value", "x");
+        errors.record("a.txt", "Bad value", "y");
+        errors.record("a.txt", "Missing field", "z");
+        errors.record("b.txt", "Bad value", "w");
+
+        assertEquals(4, errors.getTotal());
+        assertEquals(2, errors.getCount("a.txt", "Bad value"));
+        assertEquals(3, errors.getCount("a.txt"));
+        assertEquals(1, errors.getCount("b.txt"));
+        assertEquals(0, errors.getCount("c.txt"));
+    }
+
+    @Test
+    public void testClassesParserErrorsByReason() {
+        IngestErrors errors = new IngestErrors(0);
+        byte[] line = "1,abc,HeartRate,70".getBytes(StandardCharsets.US_ASCII);
+        try {
+            new VitalsLineParser().parseCsv(ByteBuffer.wrap(line), 0, line.length, new RecordBatch());
+            fail("Expected the line to be rejected");
+        } catch (MalformedDataException e) {
+            errors.record("a.txt", e);
+            assertEquals(1, errors.getCount("a.txt", e.getReason()));
+            assertEquals(0, e.getStackTrace().length);
+        }
+
+        errors.record("a.txt", new IllegalArgumentException("Unknown label: Foo"));
+        assertEquals(1, errors.getCount("a.txt", "Unknown label"));
+    }
+
+    @Test
+    public void testLogsReasonOnce() {
+        IngestErrors errors = new IngestErrors(0);
+        errors.record("a.txt", new MalformedDataException("Invalid numeric value", "1,abc,HeartRate,70"));
+        errors.record("a.txt", new MalformedDataException("Empty message", null));
+
+        String[] lines = err.toString().split("\n");
+        assertEquals("[a.txt] Invalid numeric value: 1,abc,HeartRate,70", lines[0].trim());
+        assertEquals("[a.txt] Empty message", lines[1].trim());
+        assertEquals("1,abc,HeartRate,70", errors.getSamples("a.txt", "Invalid numeric value").get(0));
+        assertTrue(errors.getSamples("a.txt", "Empty message").isEmpty());
+    }
+
+    @Test
+    public void testKeepsFewSamples() {
+        IngestErrors errors = new IngestErrors(0);
+        for (int i = 0; i < 10; i++) {
+            errors.record("a.txt", "Bad value", "line " + i);
+        }
+        assertEquals(IngestErrors.SAMPLES_PER_CLASS, errors.getSamples("a.txt", "Bad value").size());
+        assertEquals("line 0", errors.getSamples("a.txt", "Bad value").get(0));
+    }
+
+    @Test
+    public void testLogsOncePerInterval() {
+        IngestErrors errors = new IngestErrors(60_000);
+        for (int i = 0; i < 1000; i++) {
+            errors.record("a.txt", "Bad value", "line " + i);
+        }
+        errors.record("a.txt", "Missing field", "line 1000");
+
+        assertEquals("The first error of each class is logged", 2, loggedLines());
+        assertEquals(1000, errors.getCount("a.txt", "Bad value"));
+    }
+
+    @Test
+    public void testZeroIntervalLogsEveryError() {
+        IngestErrors errors = new IngestErrors(0);
+        errors.record("a.txt", "Bad value", "line 1");
+        errors.record("a.txt", "Bad value", "line 2");
+        assertEquals(2, loggedLines());
+        assertFalse(err.toString().contains("more since last logged"));
+    }
+
+    @Test
+    public void testReport() {
+        IngestErrors errors = new IngestErrors(0);
+        assertEquals("No ingest errors", errors.report());
+
+        errors.record("a.txt", "Bad value", "line 1");
+        errors.record("a.txt", "Bad value", "line 2");
+        String report = errors.report();
+        assertTrue(report.startsWith("Ingest errors: 2"));
+        assertTrue(report.contains("[a.txt] Bad value: 2"));
+        assertTrue(report.contains("e.g. line 1"));
+
+        errors.clear();
+        assertEquals("No ingest errors", errors.report());
+    }
+}
@@ -0,0 +1,120 @@
+package com.data_management;
+
+import org.junit.Before;
+import org.junit.After;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+import java.util.List;
+
+public class IngestPipelineTest {
+    private DataStorage dataStorage;
+    private IngestPipeline pipeline;
+
+    @Before
+    public void setUp() {
+        dataStorage = DataStorage.getInstance();
+        for (int i = 1; i <= 100; i++) {
+            dataStorage.clearRecords(i);
+        }
+    }
+
+    @After
+    public void tearDown() {
+        if (pipeline != null) {
+            pipeline.close();
+        }
+    }
+
+    private static String reading(int patientId, long timestamp) {
+        return "{\"patientId\":" + patientId + ",\"value\":" + timestamp
+                + ",\"recordType\":\"HeartRate\",\"timestamp\":" + timestamp + "}";
+    }
+
+    @Test
+    public void testStoresJsonAndBinaryFrames() {
+        pipeline = new IngestPipeline(dataStorage);
+        RecordBatch batch = new RecordBatch();
+        batch.addPatientData(1, 98.0, "Saturation", 3000L);
+
+        assertTrue(pipeline.submit(reading(1, 1000)));
+        assertTrue(pipeline.submit("[" + reading(1, 2000) + "," + reading(2, 2000) + "]"));
+        assertTrue(pipeline.submit(new VitalsBinaryCodec().encode(batch)));
+        assertTrue(pipeline.submit("invalid json data"));
+        pipeline.close();
+
+        List<PatientRecord> records = dataStorage.getRecords(1, 0L, Long.MAX_VALUE);
+        assertEquals(3, records.size());
+        assertEquals(1000L, records.get(0).getTimestamp());
+        assertEquals("Saturation", records.get(2).getRecordType());
+        assertEquals(1, dataStorage.getRecords(2, 0L, Long.MAX_VALUE).size());
+
+        assertEquals(4, pipeline.getSubmittedFrames());
+        assertEquals(4, pipeline.getProcessedFrames());
+        assertEquals(1, pipeline.getRejectedFrames());
+        assertEquals(4, pipeline.getStoredReadings());
+        assertEquals(0, pipeline.getQueueDepth());
+    }
+
+    @Test
+    public void testDropNewestWhenFull() throws Exception {
+        pipeline = new IngestPipeline(dataStorage, 2, 1, IngestPipeline.OverflowPolicy.DROP_NEWEST);
+        dataStorage.addPatientData(1, 0, "HeartRate", 0L);
+        Patient patient = dataStorage.getAllPatients().get(0);
+
+        synchronized (patient) {
+            // the worker takes the first frame and waits for the patient
+            pipeline.submit(reading(1, 1));
+            waitForEmptyQueue();
+            assertTrue(pipeline.submit(reading(1, 2)));
+            assertTrue(pipeline.submit(reading(1, 3)));
+            assertFalse(pipeline.submit(reading(1, 4)));
+            assertEquals(2, pipeline.getMaxQueueDepth());
+        }
+        pipeline.close();
+
+        List<PatientRecord> records = dataStorage.getRecords(1, 1L, Long.MAX_VALUE);
+        assertEquals(3, records.size());
+        assertEquals(3L, records.get(2).getTimestamp());
+        assertEquals(1, pipeline.getDroppedFrames());
+    }
+
+    @Test
+    public void testDropOldestWhenFull() throws Exception {
+        pipeline = new IngestPipeline(dataStorage, 2, 1, IngestPipeline.OverflowPolicy.DROP_OLDEST);
+        dataStorage.addPatientData(1, 0, "HeartRate", 0L);
+        Patient patient = dataStorage.getAllPatients().get(0);
+
+        synchronized (patient) {
+            pipeline.submit(reading(1, 1));
+            waitForEmptyQueue();
+            assertTrue(pipeline.submit(reading(1, 2)));
+            assertTrue(pipeline.submit(reading(1, 3)));
+            assertTrue(pipeline.submit(reading(1, 4)));
+        }
+        pipeline.close();
+
+        List<PatientRecord> records = dataStorage.getRecords(1, 1L, Long.MAX_VALUE);
+        assertEquals(3, records.size());
+        assertEquals(3L, records.get(1).getTimestamp());
+        assertEquals(4L, records.get(2).getTimestamp());
+        assertEquals(1, pipeline.getDroppedFrames());
+    }
+
+    @Test
+    public void testClosedPipelineDropsFrames() {
+        pipeline = new IngestPipeline(dataStorage);
+        pipeline.close();
+        assertFalse(pipeline.submit(reading(1, 1)));
+        assertEquals(1, pipeline.getDroppedFrames());
+    }
+
+    private void waitForEmptyQueue() throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 5000;
+        while (pipeline.getQueueDepth() > 0 && System.currentTimeMillis() < deadline) {
+            Thread.sleep(5);
+        }
+        // give the worker time to reach the patient lock
+        Thread.sleep(50);
+    }
+}
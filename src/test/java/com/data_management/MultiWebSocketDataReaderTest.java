@@ -0,0 +1,73 @@
+package com.data_management;
+
+import org.junit.Before;
+import org.junit.After;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+public class MultiWebSocketDataReaderTest {
+    private TestWebSocketServer first;
+    private TestWebSocketServer second;
+    private MultiWebSocketDataReader reader;
+    private DataStorage dataStorage;
+
+    @Before
+    public void setUp() throws Exception {
+        first = new TestWebSocketServer(8031);
+        second = new TestWebSocketServer(8032);
+        first.start();
+        second.start();
+        Thread.sleep(100);
+
+        dataStorage = DataStorage.getInstance();
+        for (Patient patient : dataStorage.getAllPatients()) {
+            dataStorage.clearRecords(patient.getPatientId());
+        }
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        if (reader != null) {
+            reader.stop();
+        }
+        first.stop(1000);
+        second.stop(1000);
+        Thread.sleep(100);
+    }
+
+    @Test
+    public void testFanInFromAllEndpoints() throws Exception {
+        reader = new MultiWebSocketDataReader(Arrays.asList("ws://localhost:8031", "ws://localhost:8032",
+                "ws://localhost:8033"));
+        reader.readData(dataStorage);
+        Thread.sleep(200);
+
+        first.sendTestData("{\"patientId\":1,\"value\":60,\"recordType\":\"HeartRate\",\"timestamp\":1000}");
+        first.sendTestData("{\"patientId\":1,\"value\":61,\"recordType\":\"HeartRate\",\"timestamp\":2000}");
+        second.sendTestData("{\"patientId\":2,\"value\":98,\"recordType\":\"Saturation\",\"timestamp\":1000}");
+        Thread.sleep(500);
+
+        assertEquals(2, dataStorage.getRecords(1, 0L, Long.MAX_VALUE).size());
+        assertEquals(1, dataStorage.getRecords(2, 0L, Long.MAX_VALUE).size());
+
+        List<MultiWebSocketDataReader.ConnectionStats> stats = reader.getConnectionStats();
+        assertEquals(3, stats.size());
+        assertTrue(stats.get(0).isConnected());
+        assertEquals(2, stats.get(0).getFrames());
+        assertEquals(1, stats.get(1).getFrames());
+        assertTrue(stats.get(1).getBytes() > 0);
+        assertFalse("Unreachable endpoint should not be connected", stats.get(2).isConnected());
+        assertEquals(3, reader.getPipeline().getStoredReadings());
+    }
+
+    @Test(expected = IOException.class)
+    public void testNoReachableEndpoint() throws IOException {
+        reader = new MultiWebSocketDataReader(Collections.singletonList("ws://localhost:8033"));
+        reader.readData(dataStorage);
+    }
+}
@@ -59,4 +59,17 @@ public class PatientTest {
         List<PatientRecord> records = patient.getRecords(1000L, 2000L);
         assertEquals(2, records.size());
     }
-}
\ No newline at end of file
+
+    @Test
+    public void testGetRecordsFrom() {
+        patient.addRecord(120.0, "SystolicPressure", 2000L);
+        patient.addRecord(125.0, "SystolicPressure", 1000L);
+        patient.addRecord(130.0, "SystolicPressure", 3000L);
+
+        List<PatientRecord> records = patient.getRecordsFrom(1);
+        assertEquals(2, records.size());
+        assertEquals("Records come in the order they were added", 1000L, records.get(0).getTimestamp());
+        assertTrue(patient.getRecordsFrom(3).isEmpty());
+        assertTrue(patient.getRecordsFrom(10).isEmpty());
+    }
+}
@@ -0,0 +1,95 @@
+package com.data_management;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import static org.junit.Assert.*;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.List;
+import java.util.zip.GZIPOutputStream;
+
+public class ReplayDataReaderTest {
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private DataStorage dataStorage;
+
+    @Before
+    public void setUp() {
+        dataStorage = DataStorage.getInstance();
+        for (Patient patient : dataStorage.getAllPatients()) {
+            dataStorage.clearRecords(patient.getPatientId());
+        }
+    }
+
+    private void write(String name, String content) throws IOException {
+        Files.write(folder.getRoot().toPath().resolve(name), content.getBytes(StandardCharsets.UTF_8));
+    }
+
+    @Test
+    public void testMergesFilesInTimestampOrder() throws Exception {
+        write("HeartRate.txt", "Patient ID: 1, Timestamp: 1000, Label: HeartRate, Data: 60.0\n"
+                + "Patient ID: 1, Timestamp: 3000, Label: HeartRate, Data: 62.0\n");
+        write("Saturation.csv", "1,2000,Saturation,97.0%\n1,4000,Saturation,96.0%");
+        try (OutputStream out = new GZIPOutputStream(new FileOutputStream(new File(folder.getRoot(),
+                "ECG.txt.gz")))) {
+            out.write("1,2500,ECG,0.5\nbad line\n".getBytes(StandardCharsets.UTF_8));
+        }
+
+        ReplayDataReader reader = new ReplayDataReader(folder.getRoot().getPath(), 0);
+        reader.readData(dataStorage);
+
+        List<PatientRecord> records = dataStorage.getRecords(1, 0L, Long.MAX_VALUE);
+        assertEquals(5, records.size());
+        long[] expected = {1000, 2000, 2500, 3000, 4000};
+        for (int i = 0; i < expected.length; i++) {
+            assertEquals(expected[i], records.get(i).getTimestamp());
+        }
+        assertEquals(5, reader.getReplayedRecords());
+        assertEquals(1, reader.getRejectedLines());
+        assertEquals(0, reader.getLateRecords());
+        assertTrue(Double.isInfinite(reader.getTargetRate()));
+    }
+
+    @Test
+    public void testPacesBySpeedFactor() throws Exception {
+        // 2 seconds of recording at 10x takes about 200ms
+        StringBuilder lines = new StringBuilder();
+        for (int i = 0; i <= 20; i++) {
+            lines.append("2,").append(i * 100).append(",HeartRate,70.0\n");
+        }
+        write("HeartRate.csv", lines.toString());
+
+        ReplayDataReader reader = new ReplayDataReader(folder.getRoot().getPath(), 10);
+        long start = System.nanoTime();
+        reader.readData(dataStorage);
+        long elapsedMs = (System.nanoTime() - start) / 1_000_000;
+
+        assertEquals(21, dataStorage.getRecords(2, 0L, Long.MAX_VALUE).size());
+        assertTrue("Replay was too fast: " + elapsedMs + "ms", elapsedMs >= 190);
+        assertTrue("Replay was too slow: " + elapsedMs + "ms", elapsedMs < 2000);
+        assertEquals(105.0, reader.getTargetRate(), 0.001);
+        assertTrue(reader.report().contains("target at 10.0x"));
+    }
+
+    @Test
+    public void testCountsLateRecords() throws Exception {
+        write("HeartRate.csv", "3,2000,HeartRate,70.0\n3,1000,HeartRate,71.0\n");
+        ReplayDataReader reader = new ReplayDataReader(folder.getRoot().getPath(), 0);
+        reader.readData(dataStorage);
+        assertEquals(1, reader.getLateRecords());
+        assertEquals(2, dataStorage.getRecords(3, 0L, Long.MAX_VALUE).size());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testNegativeSpeedIsRejected() {
+        new ReplayDataReader(folder.getRoot().getPath(), -1);
+    }
+}
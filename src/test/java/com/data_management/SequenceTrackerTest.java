@@ -0,0 +1,104 @@
+package com.data_management;
+
+import org.junit.Before;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+public class SequenceTrackerTest {
+    private SequenceTracker tracker;
+
+    @Before
+    public void setUp() {
+        tracker = new SequenceTracker();
+    }
+
+    @Test
+    public void testDropsDuplicates() {
+        assertTrue(tracker.accept(1));
+        assertTrue(tracker.accept(2));
+        assertFalse(tracker.accept(1));
+        assertFalse(tracker.accept(2));
+        assertEquals(2, tracker.getAcknowledged());
+        assertEquals(2, tracker.getDuplicates());
+    }
+
+    @Test
+    public void testOutOfOrderFillsGap() {
+        tracker.accept(1);
+        assertTrue(tracker.accept(4));
+        assertEquals(1, tracker.getAcknowledged());
+        assertEquals(2, tracker.getMissing());
+
+        assertTrue(tracker.accept(3));
+        assertTrue(tracker.accept(2));
+        assertFalse(tracker.accept(4));
+        assertEquals(4, tracker.getAcknowledged());
+        assertEquals(0, tracker.getMissing());
+    }
+
+    @Test
+    public void testStartsAtFirstSequenceSeen() {
+        assertTrue(tracker.accept(1000));
+        assertEquals(1000, tracker.getAcknowledged());
+        assertEquals(0, tracker.getMissing());
+    }
+
+    @Test
+    public void testUnsequencedReadingsAreKept() {
+        assertTrue(tracker.accept(0));
+        assertTrue(tracker.accept(0));
+        assertEquals(0, tracker.getDuplicates());
+    }
+
+    @Test
+    public void testSkipCountsLost() {
+        tracker.accept(1);
+        tracker.accept(3);
+        tracker.skipTo(5);
+        assertEquals(4, tracker.getAcknowledged());
+        assertEquals(2, tracker.getLost());
+    }
+
+    @Test
+    public void testJumpBeyondWindowGivesUpOldGap() {
+        tracker.accept(1);
+        tracker.accept(3);
+        assertTrue(tracker.accept(2 + SequenceTracker.WINDOW + 1));
+        // sequence 2 fell out of the window
+        assertEquals(1, tracker.getLost());
+        assertEquals(3, tracker.getAcknowledged());
+    }
+
+    @Test
+    public void testNewEpochStartsOver() {
+        assertTrue(tracker.accept(100, 1));
+        assertTrue(tracker.accept(100, 2));
+        assertTrue(tracker.accept(100, 3));
+
+        // the server restarted and numbers from 1 again
+        assertTrue(tracker.accept(200, 1));
+        assertTrue(tracker.accept(200, 2));
+        assertFalse(tracker.accept(200, 2));
+        assertEquals(200, tracker.getEpoch());
+        assertEquals(2, tracker.getAcknowledged());
+
+        // a straggler of the old run can't be checked any more, so it is kept
+        assertTrue(tracker.accept(100, 3));
+        assertEquals(200, tracker.getEpoch());
+        assertEquals(2, tracker.getAcknowledged());
+    }
+
+    @Test
+    public void testFilterCompactsBatch() {
+        RecordBatch batch = new RecordBatch();
+        batch.addPatientData(1, 1, 1.0, "ECG", 1L);
+        tracker.filter(batch, 0);
+
+        batch.addPatientData(1, 1, 1.0, "ECG", 1L);
+        batch.addPatientData(2, 1, 2.0, "ECG", 2L);
+        assertEquals(1, tracker.filter(batch, 1));
+        assertEquals(2, batch.size());
+        assertEquals(2, batch.getSequence(1));
+        assertEquals(2.0, batch.getMeasurementValue(1), 0.0);
+    }
+}
@@ -0,0 +1,170 @@
+package com.data_management;
+
+import org.junit.Before;
+import org.junit.After;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.Socket;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+import com.cardio_generator.outputs.TcpOutputStrategy;
+
+public class TcpDataReaderTest {
+    private DataStorage dataStorage;
+    private TcpDataReader reader;
+
+    @Before
+    public void setUp() {
+        dataStorage = DataStorage.getInstance();
+        for (Patient patient : dataStorage.getAllPatients()) {
+            dataStorage.clearRecords(patient.getPatientId());
+        }
+    }
+
+    @After
+    public void tearDown() {
+        if (reader != null) {
+            reader.stop();
+        }
+    }
+
+    private void waitForReadings(long readings) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 5000;
+        while (reader.getStoredReadings() < readings && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+    }
+
+    @Test
+    public void testReadsLinesSplitAcrossWrites() throws Exception {
+        reader = new TcpDataReader(0);
+        reader.readData(dataStorage);
+
+        try (Socket socket = new Socket("localhost", reader.getLocalPort())) {
+            OutputStream out = socket.getOutputStream();
+            out.write("1,1000,HeartRate,70.0\n1,2000,Satu".getBytes(StandardCharsets.US_ASCII));
+            out.flush();
+            Thread.sleep(100);
+            out.write(("ration,97.0%\nnot a line\n"
+                    + "Patient ID: 2, Timestamp: 1000, Label: ECG, Data: 0.5\n").getBytes(StandardCharsets.US_ASCII));
+            out.flush();
+            waitForReadings(3);
+        }
+
+        List<PatientRecord> records = dataStorage.getRecords(1, 0L, Long.MAX_VALUE);
+        assertEquals(2, records.size());
+        assertEquals("Saturation", records.get(1).getRecordType());
+        assertEquals(97.0, records.get(1).getMeasurementValue(), 0.0);
+        assertEquals(1, dataStorage.getRecords(2, 0L, Long.MAX_VALUE).size());
+        assertEquals(1, reader.getRejectedMessages());
+    }
+
+    @Test
+    public void testManyProducers() throws Exception {
+        reader = new TcpDataReader(0);
+        reader.readData(dataStorage);
+
+        List<Socket> sockets = new ArrayList<>();
+        try {
+            for (int p = 1; p <= 20; p++) {
+                sockets.add(new Socket("localhost", reader.getLocalPort()));
+            }
+            for (int p = 1; p <= 20; p++) {
+                StringBuilder lines = new StringBuilder();
+                for (int i = 0; i < 50; i++) {
+                    lines.append(p).append(',').append(i).append(",HeartRate,").append(60 + i).append('\n');
+                }
+                sockets.get(p - 1).getOutputStream().write(lines.toString().getBytes(StandardCharsets.US_ASCII));
+            }
+            waitForReadings(1000);
+            assertEquals(20, reader.getOpenConnections());
+        } finally {
+            for (Socket socket : sockets) {
+                socket.close();
+            }
+        }
+
+        for (int p = 1; p <= 20; p++) {
+            assertEquals(50, dataStorage.getRecords(p, 0L, Long.MAX_VALUE).size());
+        }
+        assertEquals(20, reader.getAcceptedConnections());
+    }
+
+    @Test
+    public void testResetProducersDoNotStopTheReader() throws Exception {
+        reader = new TcpDataReader(0);
+        reader.readData(dataStorage);
+
+        try (Socket producer = new Socket("localhost", reader.getLocalPort())) {
+            // producers that reset their connection before it is set up, some fail in accept or register
+            for (int i = 0; i < 50; i++) {
+                Socket reset = new Socket("localhost", reader.getLocalPort());
+                reset.setSoLinger(true, 0);
+                reset.close();
+            }
+            producer.getOutputStream().write("1,1000,HeartRate,70.0\n".getBytes(StandardCharsets.US_ASCII));
+            waitForReadings(1);
+
+            try (Socket late = new Socket("localhost", reader.getLocalPort())) {
+                late.getOutputStream().write("2,1000,HeartRate,71.0\n".getBytes(StandardCharsets.US_ASCII));
+                waitForReadings(2);
+            }
+        }
+
+        assertEquals(1, dataStorage.getRecords(1, 0L, Long.MAX_VALUE).size());
+        assertEquals(1, dataStorage.getRecords(2, 0L, Long.MAX_VALUE).size());
+        // the kernel may drop a reset connection before it is accepted
+        assertTrue(reader.getAcceptedConnections() >= 2);
+    }
+
+    @Test
+    public void testReadsBinaryFrames() throws Exception {
+        reader = new TcpDataReader(0);
+        reader.readData(dataStorage);
+
+        RecordBatch batch = new RecordBatch();
+        batch.addPatientData(1, 120.0, "SystolicPressure", 1000L);
+        batch.addPatientData(1, 80.0, "DiastolicPressure", 1000L);
+        ByteBuffer frame = new VitalsBinaryCodec().encode(batch);
+        ByteBuffer framed = ByteBuffer.allocate(2 * (4 + frame.remaining()));
+        framed.putInt(frame.remaining()).put(frame.duplicate()).putInt(frame.remaining()).put(frame);
+
+        try (Socket socket = new Socket("localhost", reader.getLocalPort())) {
+            OutputStream out = socket.getOutputStream();
+            // the second frame arrives in two pieces
+            out.write(framed.array(), 0, framed.capacity() - 10);
+            out.flush();
+            Thread.sleep(100);
+            out.write(framed.array(), framed.capacity() - 10, 10);
+            waitForReadings(4);
+        }
+
+        assertEquals(4, dataStorage.getRecords(1, 0L, Long.MAX_VALUE).size());
+    }
+
+    @Test
+    public void testConnectsToSimulatorOutput() throws Exception {
+        TcpOutputStrategy output = new TcpOutputStrategy(8041);
+        reader = new TcpDataReader("localhost", 8041);
+        reader.readData(dataStorage);
+        Thread.sleep(200);
+
+        output.output(3, 1000, "BloodLevels", "cholesterol=180.0,glucose=90.0,hemoglobin=14.0,platelets=250.0");
+        output.output(3, 2000, "Alert", "triggered");
+        waitForReadings(5);
+
+        assertEquals(5, dataStorage.getRecords(3, 0L, Long.MAX_VALUE).size());
+    }
+
+    @Test(expected = IOException.class)
+    public void testUnreachableServer() throws IOException {
+        reader = new TcpDataReader("localhost", 8042);
+        reader.readData(dataStorage);
+    }
+}
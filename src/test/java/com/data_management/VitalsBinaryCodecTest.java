@@ -0,0 +1,129 @@
+package com.data_management;
+
+import org.junit.Before;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+import java.nio.ByteBuffer;
+
+public class VitalsBinaryCodecTest {
+    private VitalsBinaryCodec codec;
+    private RecordBatch batch;
+
+    @Before
+    public void setUp() {
+        codec = new VitalsBinaryCodec();
+        batch = new RecordBatch();
+    }
+
+    @Test
+    public void testRoundTrip() {
+        batch.addPatientData(1, 120.5, "SystolicPressure", 1000L);
+        batch.addPatientData(1, 80.0, "DiastolicPressure", 1000L);
+        batch.addPatientData(2, 0.25, "ECG", Long.MAX_VALUE);
+        batch.addPatientData(3, -1.5, "SystolicPressure", 2000L);
+
+        ByteBuffer frame = codec.encode(batch);
+        assertEquals(18 + 3 + "SystolicPressure".length() + "DiastolicPressure".length() + "ECG".length()
+                + 4 + 4 * VitalsBinaryCodec.ROW_SIZE, frame.remaining());
+
+        RecordBatch decoded = new RecordBatch();
+        assertEquals(4, codec.decode(frame, decoded));
+        for (int i = 0; i < 4; i++) {
+            assertEquals(batch.getPatientId(i), decoded.getPatientId(i));
+            assertEquals(batch.getMeasurementValue(i), decoded.getMeasurementValue(i), 0.0);
+            assertEquals(batch.getRecordType(i), decoded.getRecordType(i));
+            assertEquals(batch.getTimestamp(i), decoded.getTimestamp(i));
+        }
+    }
+
+    @Test
+    public void testRecordTypeIsReused() {
+        batch.addPatientData(1, 1.0, "ECG", 1L);
+        RecordBatch first = new RecordBatch();
+        RecordBatch second = new RecordBatch();
+        codec.decode(codec.encode(batch), first);
+        codec.decode(codec.encode(batch), second);
+        assertSame(first.getRecordType(0), second.getRecordType(0));
+    }
+
+    @Test
+    public void testTruncatedFrameIsRejected() {
+        batch.addPatientData(1, 1.0, "ECG", 1L);
+        batch.addPatientData(1, 2.0, "ECG", 2L);
+        ByteBuffer frame = codec.encode(batch);
+        frame.limit(frame.limit() - 5);
+
+        RecordBatch decoded = new RecordBatch();
+        try {
+            codec.decode(frame, decoded);
+            fail("Expected truncated frame to be rejected");
+        } catch (IllegalArgumentException e) {
+            // expected
+        }
+        assertTrue(decoded.isEmpty());
+    }
+
+    @Test
+    public void testUnknownTypeIdIsRejected() {
+        batch.addPatientData(1, 1.0, "ECG", 1L);
+        ByteBuffer frame = codec.encode(batch);
+        // type id of the only row, after version, epoch, first sequence, dictionary, row count and patient id
+        frame.putShort(1 + 8 + 8 + 1 + 1 + 3 + 4 + 4, (short) 5);
+
+        RecordBatch decoded = new RecordBatch();
+        try {
+            codec.decode(frame, decoded);
+            fail("Expected unknown type id to be rejected");
+        } catch (IllegalArgumentException e) {
+            assertTrue(e.getMessage().startsWith("Unknown type id"));
+        }
+        assertTrue(decoded.isEmpty());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testUnknownVersionIsRejected() {
+        codec.decode(ByteBuffer.wrap(new byte[] {9, 0, 0, 0, 0, 0}), new RecordBatch());
+    }
+
+    @Test
+    public void testSequenceNumbers() {
+        batch.addPatientData(41, 1, 1.0, "ECG", 1L);
+        batch.addPatientData(42, 1, 2.0, "ECG", 2L);
+        RecordBatch decoded = new RecordBatch();
+        codec.decode(codec.encode(batch), decoded);
+        assertEquals(41, decoded.getSequence(0));
+        assertEquals(42, decoded.getSequence(1));
+
+        // a gap can't be described by the first sequence number, so none are sent
+        batch.addPatientData(50, 1, 3.0, "ECG", 3L);
+        decoded.clear();
+        codec.decode(codec.encode(batch), decoded);
+        assertEquals(0, decoded.getSequence(0));
+    }
+
+    @Test
+    public void testEpoch() {
+        batch.addPatientData(1, 1, 1.0, "ECG", 1L);
+        RecordBatch decoded = new RecordBatch();
+        codec.decode(codec.encode(batch, 1700000000000L), decoded);
+        assertEquals(1700000000000L, codec.getEpoch());
+        codec.decode(codec.encode(batch), decoded);
+        assertEquals(0, codec.getEpoch());
+    }
+
+    @Test
+    public void testVersionWithoutEpochIsDecoded() {
+        // version 2, first sequence 5, one type "ECG", one row
+        ByteBuffer frame = ByteBuffer.allocate(1 + 8 + 1 + 4 + 4 + VitalsBinaryCodec.ROW_SIZE);
+        frame.put((byte) 2).putLong(5).put((byte) 1).put((byte) 3).put("ECG".getBytes()).putInt(1);
+        frame.putInt(7).putShort((short) 0).putLong(1000L).putDouble(0.5);
+        frame.flip();
+
+        RecordBatch decoded = new RecordBatch();
+        assertEquals(1, codec.decode(frame, decoded));
+        assertEquals(5, decoded.getSequence(0));
+        assertEquals(7, decoded.getPatientId(0));
+        assertEquals(0, codec.getEpoch());
+    }
+}
@@ -0,0 +1,158 @@
+package com.data_management;
+
+import org.junit.Before;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+import org.java_websocket.framing.BinaryFrame;
+import org.java_websocket.framing.ContinuousFrame;
+import org.java_websocket.framing.DataFrame;
+import org.java_websocket.framing.TextFrame;
+
+public class VitalsDeflateExtensionTest {
+    private VitalsDeflateExtension sender;
+    private VitalsDeflateExtension receiver;
+
+    @Before
+    public void setUp() {
+        sender = new VitalsDeflateExtension(6, 100);
+        receiver = sender.copyInstance();
+    }
+
+    private static String readings(int count) {
+        StringBuilder json = new StringBuilder("[");
+        for (int i = 0; i < count; i++) {
+            if (i > 0) {
+                json.append(',');
+            }
+            json.append("{\"seq\":").append(i + 1).append(",\"patientId\":1,\"timestamp\":").append(1000 + i)
+                .append(",\"recordType\":\"HeartRate\",\"value\":").append(70.0 + i % 5).append('}');
+        }
+        return json.append(']').toString();
+    }
+
+    private static DataFrame textFrame(String text) {
+        TextFrame frame = new TextFrame();
+        frame.setPayload(ByteBuffer.wrap(text.getBytes(StandardCharsets.UTF_8)));
+        return frame;
+    }
+
+    private static String text(DataFrame frame) {
+        ByteBuffer payload = frame.getPayloadData();
+        return StandardCharsets.UTF_8.decode(payload.duplicate()).toString();
+    }
+
+    @Test
+    public void testRoundTrip() throws Exception {
+        String message = readings(50);
+        DataFrame frame = textFrame(message);
+        sender.encodeFrame(frame);
+        assertTrue(frame.isRSV1());
+        assertTrue("Repetitive JSON should shrink a lot", frame.getPayloadData().remaining() < message.length() / 4);
+
+        receiver.decodeFrame(frame);
+        assertFalse(frame.isRSV1());
+        assertEquals(message, text(frame));
+    }
+
+    @Test
+    public void testMessagesAreIndependent() throws Exception {
+        for (int i = 0; i < 3; i++) {
+            String message = readings(10 + i);
+            DataFrame frame = textFrame(message);
+            sender.encodeFrame(frame);
+            receiver.decodeFrame(frame);
+            assertEquals(message, text(frame));
+        }
+    }
+
+    @Test
+    public void testSmallMessagesAreSentAsTheyAre() throws Exception {
+        String message = readings(1);
+        assertTrue(message.length() < 100);
+        DataFrame frame = textFrame(message);
+        sender.encodeFrame(frame);
+        assertFalse(frame.isRSV1());
+        assertEquals(message, text(frame));
+
+        receiver.decodeFrame(frame);
+        assertEquals(message, text(frame));
+        assertEquals(1, sender.getStats().getSkippedMessages());
+        assertEquals(0, sender.getStats().getDeflatedMessages());
+    }
+
+    @Test
+    public void testFragmentedMessage() throws Exception {
+        String first = readings(20);
+        String second = readings(30);
+        DataFrame start = textFrame(first);
+        start.setFin(false);
+        ContinuousFrame end = new ContinuousFrame();
+        end.setPayload(ByteBuffer.wrap(second.getBytes(StandardCharsets.UTF_8)));
+
+        sender.encodeFrame(start);
+        sender.encodeFrame(end);
+        assertTrue(start.isRSV1());
+        assertFalse("Only the first frame carries RSV1", end.isRSV1());
+
+        receiver.decodeFrame(start);
+        receiver.decodeFrame(end);
+        assertEquals(first + second, text(start) + text(end));
+    }
+
+    @Test
+    public void testBinaryFrameWithOffset() throws Exception {
+        byte[] bytes = new byte[4096];
+        for (int i = 0; i < bytes.length; i++) {
+            bytes[i] = (byte) (i % 7);
+        }
+        BinaryFrame frame = new BinaryFrame();
+        // only the middle of the array is the payload
+        frame.setPayload(ByteBuffer.wrap(bytes, 1000, 2000).slice());
+        sender.encodeFrame(frame);
+        receiver.decodeFrame(frame);
+
+        ByteBuffer payload = frame.getPayloadData();
+        assertEquals(2000, payload.remaining());
+        for (int i = 0; i < 2000; i++) {
+            assertEquals((byte) ((1000 + i) % 7), payload.get(payload.position() + i));
+        }
+    }
+
+    @Test
+    public void testStats() throws Exception {
+        String message = readings(50);
+        DataFrame frame = textFrame(message);
+        sender.encodeFrame(frame);
+        int wireSize = frame.getPayloadData().remaining();
+        receiver.decodeFrame(frame);
+
+        VitalsDeflateExtension.Stats stats = sender.getStats();
+        assertSame("Copies share their counters", stats, receiver.getStats());
+        assertEquals(1, stats.getDeflatedMessages());
+        assertEquals(message.length(), stats.getDeflatedBytesIn());
+        assertEquals(wireSize, stats.getDeflatedBytesOut());
+        assertEquals(1, stats.getInflatedMessages());
+        assertEquals(message.length(), stats.getInflatedBytesOut());
+        assertTrue(stats.report().startsWith("deflated 1 messages (0 below threshold) " + message.length()
+            + " -> " + wireSize + " bytes"));
+    }
+
+    @Test
+    public void testParse() {
+        VitalsDeflateExtension fast = VitalsDeflateExtension.parse("1");
+        assertEquals(1, fast.getLevel());
+        assertEquals(VitalsDeflateExtension.DEFAULT_THRESHOLD, fast.getThreshold());
+        VitalsDeflateExtension small = VitalsDeflateExtension.parse("9:0");
+        assertEquals(9, small.getLevel());
+        assertEquals(0, small.getThreshold());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testRejectsBadLevel() {
+        VitalsDeflateExtension.parse("10");
+    }
+}
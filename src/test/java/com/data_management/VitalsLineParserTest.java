@@ -0,0 +1,108 @@
+package com.data_management;
+
+import org.junit.Before;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+public class VitalsLineParserTest {
+    private VitalsLineParser parser;
+    private List<PatientRecord> records;
+    private PatientDataSink sink;
+
+    @Before
+    public void setUp() {
+        parser = new VitalsLineParser();
+        records = new ArrayList<>();
+        sink = (patientId, value, recordType, timestamp) ->
+            records.add(new PatientRecord(patientId, value, recordType, timestamp));
+    }
+
+    private int parseLabelled(String line) {
+        ByteBuffer buf = ByteBuffer.wrap(line.getBytes(StandardCharsets.UTF_8));
+        return parser.parseLabelled(buf, 0, buf.limit(), sink);
+    }
+
+    private int parseCsv(String line) {
+        ByteBuffer buf = ByteBuffer.wrap(line.getBytes(StandardCharsets.UTF_8));
+        return parser.parseCsv(buf, 0, buf.limit(), sink);
+    }
+
+    @Test
+    public void testSaturationWithPercentSuffix() {
+        assertEquals(1, parseLabelled("Patient ID: 7, Timestamp: 1700000000123, Label: Saturation, Data: 97.0%"));
+
+        PatientRecord record = records.get(0);
+        assertEquals(7, record.getPatientId());
+        assertEquals(1700000000123L, record.getTimestamp());
+        assertEquals("Saturation", record.getRecordType());
+        assertEquals(97.0, record.getMeasurementValue(), 0.0);
+    }
+
+    @Test
+    public void testBloodLevelsBecomeOneRecordPerEntry() {
+        assertEquals(4, parseLabelled("Patient ID: 3, Timestamp: 1000, Label: BloodLevels, "
+            + "Data: cholesterol=180.2,glucose=95.1,hemoglobin=5.0,platelets=7.3"));
+
+        assertEquals("Cholesterol", records.get(0).getRecordType());
+        assertEquals(180.2, records.get(0).getMeasurementValue(), 0.0);
+        assertEquals("Glucose", records.get(1).getRecordType());
+        assertEquals("Platelets", records.get(3).getRecordType());
+        assertEquals(7.3, records.get(3).getMeasurementValue(), 0.0);
+    }
+
+    @Test
+    public void testAlertStates() {
+        parseLabelled("Patient ID: 1, Timestamp: 1000, Label: Alert, Data: triggered");
+        parseLabelled("Patient ID: 1, Timestamp: 2000, Label: Alert, Data: resolved");
+
+        assertEquals(1.0, records.get(0).getMeasurementValue(), 0.0);
+        assertEquals(0.0, records.get(1).getMeasurementValue(), 0.0);
+    }
+
+    @Test
+    public void testCsvLine() {
+        assertEquals(1, parseCsv("12,5000,ECG,-0.4523"));
+        assertEquals(-0.4523, records.get(0).getMeasurementValue(), 0.0);
+        assertEquals("ECG", records.get(0).getRecordType());
+    }
+
+    @Test
+    public void testUnknownRecordTypeIsCached() {
+        parseCsv("1,1000,Temperature,37.2");
+        parseCsv("1,2000,Temperature,37.4");
+        assertSame(records.get(0).getRecordType(), records.get(1).getRecordType());
+    }
+
+    @Test
+    public void testNumbersMatchDoubleParse() {
+        String[] values = {"0", "0.1", "97.0", "-1.25", "123456.789", "0.000123", "1e3", "3.14159265358979323846"};
+        for (String value : values) {
+            records.clear();
+            parseCsv("1,1000,ECG," + value);
+            assertEquals(value, Double.parseDouble(value), records.get(0).getMeasurementValue(), 0.0);
+        }
+    }
+
+    @Test
+    public void testMalformedLines() {
+        String[] lines = {
+            "Patient ID: x, Timestamp: 1000, Label: ECG, Data: 1.0",
+            "Patient ID: 1, Timestamp: 1000, Label: ECG",
+            "Patient ID: 1, Timestamp: 1000, Label: ECG, Data: abc",
+            "Patient ID: 1, Timestamp: 1000, Label: ECG, Data: ."
+        };
+        for (String line : lines) {
+            try {
+                parseLabelled(line);
+                fail("Should reject: " + line);
+            } catch (IllegalArgumentException expected) {
+            }
+        }
+        assertTrue(records.isEmpty());
+    }
+}
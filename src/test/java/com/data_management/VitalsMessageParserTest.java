@@ -0,0 +1,149 @@
+package com.data_management;
+
+import org.junit.Before;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.List;
+
+public class VitalsMessageParserTest {
+    private VitalsMessageParser parser;
+    private List<String> received;
+    private PatientDataSink sink;
+
+    @Before
+    public void setUp() {
+        parser = new VitalsMessageParser();
+        received = new ArrayList<>();
+        sink = (patientId, value, type, ts) -> received.add(patientId + "," + ts + "," + type + "," + value);
+    }
+
+    @Test
+    public void testParsesMessage() {
+        parser.parse("{\"patientId\":1,\"value\":120.5,\"recordType\":\"SystolicPressure\",\"timestamp\":1700}", sink);
+        assertEquals(1, received.size());
+        assertEquals("1,1700,SystolicPressure,120.5", received.get(0));
+    }
+
+    @Test
+    public void testFieldOrderAndUnknownFields() {
+        parser.parse("{\"timestamp\":5,\"extra\":{\"a\":[1,2]},\"recordType\":\"ECG\",\"value\":3,\"patientId\":7}", sink);
+        assertEquals("7,5,ECG,3.0", received.get(0));
+    }
+
+    @Test
+    public void testRecordTypeIsReused() {
+        List<String> types = new ArrayList<>();
+        PatientDataSink typeSink = (patientId, value, type, ts) -> types.add(type);
+        parser.parse("{\"patientId\":1,\"value\":1,\"recordType\":\"ECG\",\"timestamp\":1}", typeSink);
+        parser.parse("{\"patientId\":1,\"value\":2,\"recordType\":\"ECG\",\"timestamp\":2}", typeSink);
+        assertSame(types.get(0), types.get(1));
+    }
+
+    @Test
+    public void testMissingFieldsAreRejected() {
+        try {
+            parser.parse("{\"patientId\":1,\"value\":120.5}", sink);
+            fail("Expected missing fields to be rejected");
+        } catch (IllegalArgumentException e) {
+            assertTrue(e.getMessage().startsWith("Missing required fields"));
+        }
+        assertTrue(received.isEmpty());
+    }
+
+    @Test
+    public void testInvalidTypesAreRejected() {
+        String[] messages = {
+            "{\"patientId\":\"1\",\"value\":1,\"recordType\":\"ECG\",\"timestamp\":1}",
+            "{\"patientId\":1.5,\"value\":1,\"recordType\":\"ECG\",\"timestamp\":1}",
+            "{\"patientId\":1,\"value\":\"x\",\"recordType\":\"ECG\",\"timestamp\":1}",
+            "{\"patientId\":1,\"value\":1,\"recordType\":123,\"timestamp\":1}",
+            "{\"patientId\":1,\"value\":1,\"recordType\":\"ECG\",\"timestamp\":null}",
+        };
+        for (String message : messages) {
+            try {
+                parser.parse(message, sink);
+                fail("Expected invalid types to be rejected: " + message);
+            } catch (IllegalArgumentException e) {
+                assertTrue(e.getMessage().startsWith("Invalid field types"));
+            }
+        }
+        assertTrue(received.isEmpty());
+    }
+
+    @Test
+    public void testMalformedJsonIsRejected() {
+        String[] messages = {"invalid json data", "[1,2]", "{\"patientId\":1", ""};
+        for (String message : messages) {
+            try {
+                parser.parse(message, sink);
+                fail("Expected malformed json to be rejected: " + message);
+            } catch (IllegalArgumentException e) {
+                // expected
+            }
+        }
+        assertTrue(received.isEmpty());
+    }
+
+    @Test
+    public void testParsesJsonArrayBatch() {
+        int count = parser.parse("[{\"patientId\":1,\"value\":1,\"recordType\":\"ECG\",\"timestamp\":1},"
+                + "{\"patientId\":2,\"value\":2,\"recordType\":\"ECG\",\"timestamp\":2}]", sink);
+        assertEquals(2, count);
+        assertEquals("2,2,ECG,2.0", received.get(1));
+    }
+
+    @Test
+    public void testParsesNdjsonBatch() {
+        int count = parser.parse("{\"patientId\":1,\"value\":1,\"recordType\":\"ECG\",\"timestamp\":1}\n"
+                + "{\"patientId\":1,\"value\":2,\"recordType\":\"ECG\",\"timestamp\":2}\n", sink);
+        assertEquals(2, count);
+    }
+
+    @Test
+    public void testInvalidBatchItemIsSkipped() {
+        try {
+            parser.parse("[{\"patientId\":1,\"value\":1,\"recordType\":\"ECG\",\"timestamp\":1},"
+                    + "{\"patientId\":1,\"value\":{\"nested\":[1]},\"recordType\":\"ECG\",\"timestamp\":2},"
+                    + "{\"patientId\":1,\"value\":3,\"recordType\":\"ECG\",\"timestamp\":3}]", sink);
+            fail("Expected the invalid item to be reported");
+        } catch (IllegalArgumentException e) {
+            assertTrue(e.getMessage().startsWith("Skipped 1 of 3 readings"));
+        }
+        assertEquals(2, received.size());
+        assertEquals("1,3,ECG,3.0", received.get(1));
+    }
+
+    @Test
+    public void testSequenceNumberIsPassedOn() {
+        RecordBatch batch = new RecordBatch();
+        parser.parse("[{\"seq\":7,\"patientId\":1,\"value\":1,\"recordType\":\"ECG\",\"timestamp\":1},"
+                + "{\"patientId\":1,\"value\":2,\"recordType\":\"ECG\",\"timestamp\":2}]", batch);
+        assertEquals(7, batch.getSequence(0));
+        assertEquals(0, batch.getSequence(1));
+    }
+
+    @Test
+    public void testEpoch() {
+        RecordBatch batch = new RecordBatch();
+        parser.parse("{\"epoch\":1700000000000,\"seq\":7,\"patientId\":1,\"value\":1,\"recordType\":\"ECG\","
+                + "\"timestamp\":1}", batch);
+        assertEquals(1700000000000L, parser.getEpoch());
+        parser.parse("{\"seq\":8,\"patientId\":1,\"value\":1,\"recordType\":\"ECG\",\"timestamp\":2}", batch);
+        assertEquals(0, parser.getEpoch());
+    }
+
+    @Test
+    public void testReplayRequest() {
+        String request = VitalsMessageParser.replayRequest(1700000000000L, 42);
+        assertEquals("{\"replayFrom\":42,\"epoch\":1700000000000}", request);
+        VitalsMessageParser.ReplayRequest parsed = VitalsMessageParser.parseReplayRequest(request);
+        assertEquals(42, parsed.getFromSequence());
+        assertEquals(1700000000000L, parsed.getEpoch());
+        assertNull(VitalsMessageParser.parseReplayRequest("{\"replayFrom\":\"x\",\"epoch\":1}"));
+        // requests without an epoch come from clients that can't tell restarts apart
+        assertNull(VitalsMessageParser.parseReplayRequest("{\"replayFrom\":42}"));
+        assertNull(VitalsMessageParser.parseReplayRequest("hello"));
+    }
+}